@@ -15,13 +15,14 @@ import org.csstudio.alarm.beast.client.AlarmTreePV;
 import org.csstudio.alarm.beast.notifier.Activator;
 import org.csstudio.alarm.beast.notifier.AlarmNotifier;
 import org.csstudio.alarm.beast.ui.clientmodel.AlarmClientModel;
+import org.csstudio.alarm.beast.ui.clientmodel.AlarmClientModelPVListener;
 
 /**
  * Wrapper for alarm model.
  * @author Fred Arnaud (Sopra Group)
  *
  */
-public class AlarmRDBHandler implements IAlarmRDBHandler {
+public class AlarmRDBHandler implements IAlarmRDBHandler, AlarmClientModelPVListener {
 
     /** Server for which we communicate */
     private AlarmNotifier notifier;
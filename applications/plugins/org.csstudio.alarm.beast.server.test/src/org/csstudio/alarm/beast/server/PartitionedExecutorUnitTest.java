@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Oak Ridge National Laboratory.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.alarm.beast.server;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/** JUnit test of the {@link PartitionedExecutor}
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class PartitionedExecutorUnitTest
+{
+    /** Tasks for the same key must execute in order */
+    @Test(timeout=10000)
+    public void testOrder() throws Exception
+    {
+        final int keys = 10, tasks = 10000;
+        final PartitionedExecutor executor = new PartitionedExecutor("Test", 4);
+        final List<List<Integer>> results = new ArrayList<List<Integer>>();
+        for (int k=0; k<keys; ++k)
+            results.add(Collections.synchronizedList(new ArrayList<Integer>()));
+
+        for (int i=0; i<tasks; ++i)
+            for (int k=0; k<keys; ++k)
+            {
+                final List<Integer> result = results.get(k);
+                final int value = i;
+                executor.execute("Key" + k, new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        result.add(value);
+                    }
+                });
+            }
+        assertTrue(executor.shutdown(5));
+
+        for (List<Integer> result : results)
+        {
+            assertThat(result.size(), equalTo(tasks));
+            for (int i=0; i<tasks; ++i)
+                assertThat(result.get(i), equalTo(i));
+        }
+    }
+
+    /** A blocked key must not delay keys in other partitions */
+    @Test(timeout=10000)
+    public void testConcurrency() throws Exception
+    {
+        final PartitionedExecutor executor = new PartitionedExecutor("Test", 2);
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(1);
+        // Integer keys 0 and 1 end up in different partitions
+        executor.execute(0, new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    blocked.await();
+                }
+                catch (InterruptedException ex)
+                {
+                    // Ignore
+                }
+            }
+        });
+        executor.execute(1, new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        blocked.countDown();
+        assertTrue(executor.shutdown(5));
+        assertThat(executor.getQueueSize(), equalTo(0));
+    }
+}
@@ -193,8 +193,42 @@ public class AlarmPV extends TreeItem implements AlarmLogicListener, FilterListe
     	final boolean new_enable_state = value > 0.0;
     	Activator.getLogger().log(Level.FINE, "{0} filter changed to {1}",
     	        new Object[] { getName(), new_enable_state });
-        logic.setEnabled(new_enable_state);
+    	executeLogic(new Runnable()
+    	{
+    	    @Override
+    	    public void run()
+    	    {
+    	        logic.setEnabled(new_enable_state);
+    	    }
+    	});
 	}
+
+    /** Perform alarm logic
+     *  @param task Task that updates the alarm logic
+     *  @see AlarmServer#executeLogic(AlarmPV, Runnable)
+     */
+    private void executeLogic(final Runnable task)
+    {
+        if (server == null)
+            task.run();
+        else
+            server.executeLogic(this, task);
+    }
+
+    /** Compute new alarm state
+     *  @param received Received state
+     */
+    private void computeNewState(final AlarmState received)
+    {
+        executeLogic(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                logic.computeNewState(received);
+            }
+        });
+    }
     
     /** Invoked by <code>connection_timer</code> when PV fails to connect
      *  after <code>start()</code>
@@ -203,7 +237,7 @@ public class AlarmPV extends TreeItem implements AlarmLogicListener, FilterListe
     {
         final AlarmState received = new AlarmState(SeverityLevel.UNDEFINED,
             Messages.AlarmMessageNotConnected, "", Timestamp.now());
-        logic.computeNewState(received);
+        computeNewState(received);
     }
 
     /** @see PVListener */
@@ -219,7 +253,7 @@ public class AlarmPV extends TreeItem implements AlarmLogicListener, FilterListe
     {
         final AlarmState received = new AlarmState(SeverityLevel.UNDEFINED,
                 Messages.AlarmMessageDisconnected, "", Timestamp.now());
-        logic.computeNewState(received);
+        computeNewState(received);
     }
     
     /** @see PVListener */
@@ -232,7 +266,7 @@ public class AlarmPV extends TreeItem implements AlarmLogicListener, FilterListe
         final AlarmState received = new AlarmState(new_severity, new_message,
                 VTypeHelper.toString(value),
                 VTypeHelper.getTimestamp(value));
-        logic.computeNewState(received);
+        computeNewState(received);
     }
     
 	/** AlarmLogicListener: {@inheritDoc} */
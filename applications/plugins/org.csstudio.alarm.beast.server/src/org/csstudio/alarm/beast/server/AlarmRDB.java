@@ -10,10 +10,13 @@ package org.csstudio.alarm.beast.server;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.Statement;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 
 import org.csstudio.alarm.beast.SQL;
@@ -110,16 +113,16 @@ public class AlarmRDB
             statement.close();
         }
 
-        // Fetch children
-        final PreparedStatement sel_items_by_parent =
-            conn.prepareStatement(sql.sel_items_by_parent);
+        // Fetch all items in one query, then assemble the hierarchy
+        final Statement sel_all_items = conn.createStatement();
         try
         {
-            readChildren(root, sel_items_by_parent);
+            final Map<Integer, List<ItemInfo>> children = readItems(sel_all_items);
+            createChildren(root, children);
         }
         finally
         {
-            sel_items_by_parent.close();
+            sel_all_items.close();
         }
 
         // In transactional mode (Connection.setAutoCommit(false)),
@@ -142,108 +145,150 @@ public class AlarmRDB
         return root;
     }
 
-    /** Read alarm tree hierarchy
-     *  @param parent Parent entry
-     *  @param sel_items_by_parent Prepared statement for fetching child elements
+    /** Configuration of an alarm tree item as read from the RDB */
+    private static class ItemInfo
+    {
+        int id;
+        String name;
+        /** Is this a PV, or a component? */
+        boolean is_pv;
+        String description;
+        boolean enabled, annunciate, latch;
+        int min_alarm_delay, count;
+        String filter;
+        SeverityLevel current_severity;
+        String current_status;
+        SeverityLevel severity;
+        String status;
+        String value;
+        org.epics.util.time.Timestamp timestamp;
+    }
+
+    /** Read all items of all alarm configurations
+     *
+     *  <p>One query for the complete RDB content is much faster than
+     *  querying the children of each component, which took thousands of
+     *  round trips for large configurations.
+     *  Items of other configurations are read as well, but will
+     *  then simply not be used.
+     *
+     *  @param statement Statement for executing the query
+     *  @return Items by parent ID, each list ordered by item ID
      *  @throws Exception on error
      */
-    private void readChildren(final TreeItem parent, final PreparedStatement sel_items_by_parent) throws Exception
+    private Map<Integer, List<ItemInfo>> readItems(final Statement statement) throws Exception
     {
-        final List<TreeItem> recurse_items = new ArrayList<TreeItem>();
-
-        sel_items_by_parent.setInt(1, parent.getID());
-        final ResultSet result = sel_items_by_parent.executeQuery();
+        final Map<Integer, List<ItemInfo>> children = new HashMap<Integer, List<ItemInfo>>();
+        final ResultSet result = statement.executeQuery(sql.sel_all_items);
         try
         {
             while (result.next())
             {
-                final int id = result.getInt(1);
+                final int parent_id = result.getInt(18);
+                if (result.wasNull())
+                    continue; // Root of a configuration
+                final ItemInfo item = new ItemInfo();
+                item.id = result.getInt(1);
                 if (result.wasNull())
                     throw new Exception("NULL component ID");
-                final String name = result.getString(17);
+                item.name = result.getString(17);
                 if (result.wasNull())
                     throw new Exception("NULL component Name");
                 // Ignoring config. time from result.getTimestamp(2)
 
                 // Check PV's ID. If null, this is a component, not PV
                 final int pv_id = result.getInt(3);
-                if (result.wasNull())
-                {
-                    final TreeItem child = new TreeItem(parent, name, id);
-                    recurse_items.add(child);
-                }
-                else
+                item.is_pv = ! result.wasNull();
+                if (item.is_pv)
                 {   // Handle PV
-                    if (id != pv_id)
-                        throw new Exception("Internal RDB error: Item '" + name + "' as ID " + id + " but also PV ID " + pv_id);
+                    if (item.id != pv_id)
+                        throw new Exception("Internal RDB error: Item '" + item.name + "' as ID " + item.id + " but also PV ID " + pv_id);
                     // Easy results
-                    String description = result.getString(4);
+                    item.description = result.getString(4);
                     // Description should not be empty
-                    if (result.wasNull() || description == null || description.length() <= 0)
-                        description = name;
+                    if (result.wasNull() || item.description == null || item.description.length() <= 0)
+                        item.description = item.name;
                     // Default to most features turned 'on'
-                    boolean enabled = result.getBoolean(5);
+                    item.enabled = result.getBoolean(5);
                     if (result.wasNull())
-                        enabled = true;
-                    boolean annunciate = result.getBoolean(6);
+                        item.enabled = true;
+                    item.annunciate = result.getBoolean(6);
                     if (result.wasNull())
-                        annunciate = true;
-                    boolean latch = result.getBoolean(7);
+                        item.annunciate = true;
+                    item.latch = result.getBoolean(7);
                     if (result.wasNull())
-                        latch = true;
+                        item.latch = true;
                     // 0/null/empty disables these features
-                    final int min_alarm_delay = result.getInt(8);
-                    final int count = result.getInt(9);
-                    final String filter = result.getString(10);
+                    item.min_alarm_delay = result.getInt(8);
+                    item.count = result.getInt(9);
+                    item.filter = result.getString(10);
 
                     // Decode current severity/status IDs, handling NULL as "Ok"
                     int severity_id = result.getInt(11);
-                    final SeverityLevel current_severity = result.wasNull()
+                    item.current_severity = result.wasNull()
                         ? SeverityLevel.OK
                         : severity_mapping.getSeverityLevel(severity_id);
 
                     int status_id = result.getInt(12);
-                    final String current_status = result.wasNull()
+                    item.current_status = result.wasNull()
                         ? ""
                         : message_mapping.findMessageById(status_id);
 
                     // Alarm severity/status
                     severity_id = result.getInt(13);
-                    final SeverityLevel severity = result.wasNull()
+                    item.severity = result.wasNull()
                         ? SeverityLevel.OK
                         : severity_mapping.getSeverityLevel(severity_id);
 
                     status_id = result.getInt(14);
-                    final String status = result.wasNull()
+                    item.status = result.wasNull()
                         ? ""
                         : message_mapping.findMessageById(status_id);
 
                     // Alarm value, time
-                    final String value = result.getString(15);
+                    item.value = result.getString(15);
 
                     final Timestamp time = result.getTimestamp(16);
-                    final org.epics.util.time.Timestamp timestamp = result.wasNull()
+                    item.timestamp = result.wasNull()
                         ? org.epics.util.time.Timestamp.now()
                         : TimestampHelper.toEPICSTime(time);
-
-                    final int global_delay = AlarmServerPreferences.getGlobalAlarmDelay();
-
-                    new AlarmPV(server, parent, id, name, description,
-                            enabled, latch, annunciate, min_alarm_delay, count, global_delay, filter,
-                            current_severity, current_status, severity, status, value, timestamp);
                 }
+                List<ItemInfo> siblings = children.get(parent_id);
+                if (siblings == null)
+                {
+                    siblings = new ArrayList<ItemInfo>();
+                    children.put(parent_id, siblings);
+                }
+                siblings.add(item);
             }
         }
         finally
         {
             result.close();
         }
+        return children;
+    }
 
-        // Recurse to children
-        // Cannot do that inside the above while() because that would reuse
-        // the statement of the current ResultSet
-        for (TreeItem child : recurse_items)
-            readChildren(child, sel_items_by_parent);
+    /** Create alarm tree hierarchy
+     *  @param parent Parent entry
+     *  @param children Items by parent ID
+     *  @throws Exception on error
+     */
+    private void createChildren(final TreeItem parent, final Map<Integer, List<ItemInfo>> children) throws Exception
+    {
+        final List<ItemInfo> items = children.get(parent.getID());
+        if (items == null)
+            return;
+        final int global_delay = AlarmServerPreferences.getGlobalAlarmDelay();
+        for (ItemInfo item : items)
+        {
+            if (item.is_pv)
+                new AlarmPV(server, parent, item.id, item.name, item.description,
+                        item.enabled, item.latch, item.annunciate, item.min_alarm_delay, item.count, global_delay, item.filter,
+                        item.current_severity, item.current_status, item.severity, item.status, item.value, item.timestamp);
+            else
+                createChildren(new TreeItem(parent, item.name, item.id), children);
+        }
     }
 
     /** Read configuration for PV, update it from RDB
@@ -17,6 +17,11 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.logging.Level;
 
 import org.csstudio.alarm.beast.AlarmTreePath;
@@ -109,21 +114,25 @@ public class AlarmServer implements Runnable
     	}
     }
 	
-	/** A list holding all the updates, which have not yet been send to the JMS queue */
-	private List<Update> queuedUpdates = new ArrayList<Update>();
+	/** A queue holding all the updates, which have not yet been send to the JMS queue.
+	 *  <p>
+	 *  The update queues and maps are concurrent so that the threads
+	 *  that perform the alarm logic can add updates without locking each other.
+	 */
+	final private Queue<Update> queuedUpdates = new ConcurrentLinkedQueue<Update>();
 	
-	/** A list holding all the global updates, which have not yet been send to the JMS queue */
-	private List<Update> queuedGlobalUpdates = new ArrayList<Update>();
+	/** A queue holding all the global updates, which have not yet been send to the JMS queue */
+	final private Queue<Update> queuedGlobalUpdates = new ConcurrentLinkedQueue<Update>();
 	
     /** Updates to be persisted in the RDB, mapping the 'latest' by PV.
      *  While queuedUpdates contains all recent updates, the map only
      *  retains the most recent update for each PV
      *  because we only need to store the latest updates of the same PV.
      */
-    private Map<String,Update> queuedRDBUpdates = new HashMap<String,Update>();
+    final private ConcurrentMap<String,Update> queuedRDBUpdates = new ConcurrentHashMap<String,Update>();
     
     /** Global updates to be persisted in the RDB, mapping the 'latest' by PV */
-    private Map<String,Update> queuedRDBGlobalUpdates = new HashMap<String,Update>();
+    final private ConcurrentMap<String,Update> queuedRDBGlobalUpdates = new ConcurrentHashMap<String,Update>();
 	
     /** Name of alarm tree root element */
     final String root_name;
@@ -137,6 +146,9 @@ public class AlarmServer implements Runnable
     /** Messenger to communicate with clients */
     final private ServerCommunicator messenger;
 
+    /** Executor for the alarm logic of PVs or <code>null</code> if not used */
+    private volatile PartitionedExecutor logic_executor;
+
     /** {@link NagTimer} or <code>null</code> if not used */
     private volatile NagTimer nag_timer;
 
@@ -164,6 +176,8 @@ public class AlarmServer implements Runnable
     private final long updatePeriod;
     /** The maximum size of batches when persisting messages */
     private final int batchSize;
+    /** The maximum number of state updates per JMS message, 0 for one message per update */
+    private final int stateBatchSize;
 
     /** Initialize
      *  @param talker Talker that'll be used to annunciate
@@ -177,6 +191,7 @@ public class AlarmServer implements Runnable
         this.work_queue = work_queue;
         this.updatePeriod = (long)(Preferences.getBatchUpdatePeriod()*1000);
         this.batchSize = Preferences.getBatchSize();
+        this.stateBatchSize = Preferences.getJMS_StateBatchSize();
         rdb = new AlarmRDB(this, Preferences.getRDB_Url(),
         		Preferences.getRDB_User(),
         		Preferences.getRDB_Password(),
@@ -229,7 +244,13 @@ public class AlarmServer implements Runnable
         	alarm_tree.dump(out);
         }
 
-        out.println("Work queue size: " + work_queue.size());
+        out.format("Work queue size: %d (max. %d), %d commands, latency avg. %.1f ms, max. %.1f ms\n",
+                work_queue.size(), work_queue.getMaxSize(), work_queue.getExecutedCount(),
+                work_queue.getAverageLatency(), work_queue.getMaxLatency());
+        final PartitionedExecutor safe_executor = logic_executor;
+        if (safe_executor != null)
+            out.println("Alarm logic queue size: " + safe_executor.getQueueSize() +
+                        " (" + safe_executor.getThreadCount() + " threads)");
 
         // Log memory usage in MB
         final double free = Runtime.getRuntime().freeMemory() / (1024.0*1024.0);
@@ -278,6 +299,9 @@ public class AlarmServer implements Runnable
     {
         messenger.start();
         messenger.sendAnnunciation(Messages.StartupMessage);
+        final int logic_threads = AlarmServerPreferences.getLogicThreads();
+        if (logic_threads > 0)
+            logic_executor = new PartitionedExecutor("Alarm Logic", logic_threads);
         startPVs();
 
         // Conditionally enable nagging
@@ -373,6 +397,20 @@ public class AlarmServer implements Runnable
         }
         messenger.sendAnnunciation("Alarm server exiting");
         stopPVs();
+        final PartitionedExecutor safe_executor = logic_executor;
+        if (safe_executor != null)
+        {
+            logic_executor = null;
+            try
+            {
+                if (! safe_executor.shutdown(10))
+                    Activator.getLogger().log(Level.WARNING, "Alarm logic did not complete");
+            }
+            catch (InterruptedException ex)
+            {
+                // Ignore, server is stopping anyway
+            }
+        }
         messenger.stop();
         if (batchExecutor != null)
         	batchExecutor.terminate();
@@ -507,7 +545,41 @@ public class AlarmServer implements Runnable
         resetNagTimer();
         final AlarmPV pv = findPV(pv_name);
         if (pv != null)
-            pv.getAlarmLogic().acknowledge(acknowledge);
+            executeLogic(pv, new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    pv.getAlarmLogic().acknowledge(acknowledge);
+                }
+            });
+    }
+
+    /** Perform alarm logic for a PV
+     *
+     *  <p>When the server uses alarm logic threads,
+     *  the task is executed on the thread for that PV.
+     *  Otherwise it is executed right away on the calling thread.
+     *
+     *  @param pv Alarm PV
+     *  @param task Task that updates the alarm logic of the PV
+     */
+    void executeLogic(final AlarmPV pv, final Runnable task)
+    {
+        final PartitionedExecutor safe_executor = logic_executor;
+        if (safe_executor == null)
+        {
+            task.run();
+            return;
+        }
+        try
+        {
+            safe_executor.execute(pv, task);
+        }
+        catch (RejectedExecutionException ex)
+        {   // Server is stopping
+            Activator.getLogger().log(Level.FINE, "Ignoring alarm logic update for {0}", pv.getName());
+        }
     }
 
     /** Locate alarm PV by name
@@ -538,15 +610,12 @@ public class AlarmServer implements Runnable
             final String message,
             final String value, final Timestamp timestamp)
     {
-    	synchronized(queuedRDBUpdates)
-    	{
-    		final Update u = new Update(pv, current_severity,
-    				current_message, severity, message, value, timestamp);
-    		// We are only interested in the latest update of a particular PV
-    		// the rest don't need to be persisted
-    		queuedRDBUpdates.put(pv.getName(), u);
-    		queuedUpdates.add(u);
-    	}
+		final Update u = new Update(pv, current_severity,
+				current_message, severity, message, value, timestamp);
+		// We are only interested in the latest update of a particular PV
+		// the rest don't need to be persisted
+		queuedRDBUpdates.put(pv.getName(), u);
+		queuedUpdates.add(u);
     }
 
     /** Update 'global' JMS clients and RDB
@@ -561,15 +630,12 @@ public class AlarmServer implements Runnable
             final String message,
             final String value, final Timestamp timestamp)
     {
-        synchronized (queuedRDBGlobalUpdates)
-        {
-        	final Update u = new Update(pv, severity,
-    				message, severity, message, value, timestamp);
-    		// We are only interested in the latest update of a particular PV
-    		// the rest don't need to be persisted
-        	queuedRDBGlobalUpdates.put(pv.getName(), u);
-        	queuedGlobalUpdates.add(u);
-		}
+		final Update u = new Update(pv, severity,
+				message, severity, message, value, timestamp);
+		// We are only interested in the latest update of a particular PV
+		// the rest don't need to be persisted
+		queuedRDBGlobalUpdates.put(pv.getName(), u);
+		queuedGlobalUpdates.add(u);
     }
 
     /** Update JMS clients and RDB about 'enabled' state of PV
@@ -579,8 +645,10 @@ public class AlarmServer implements Runnable
 	public void sendEnablementUpdate(final AlarmPV pv, final boolean enabled)
 	{
 		messenger.sendEnablementUpdate(pv, enabled);
-        // Handle in separate queue & thread
-        work_queue.execute(new Runnable()
+        // Handle in separate queue & thread.
+        // Only the most recent enablement of a PV needs to be written,
+        // so this replaces a pending update for the same PV
+        work_queue.execute(pv, new Runnable()
         {
             @Override
             public void run()
@@ -633,16 +701,10 @@ public class AlarmServer implements Runnable
     /** Send all queue updates to RDB as well as JMS */
     private void sendQueuedUpdates()
     {
-    	// Create thread-save copy
-    	Update[] updates = null;
-		Update[] rdbUpdates = null;
-		synchronized (queuedRDBUpdates)
-		{
-			rdbUpdates = queuedRDBUpdates.values().toArray(new Update[queuedRDBUpdates.size()]);
-			queuedRDBUpdates.clear();
-			updates = queuedUpdates.toArray(new Update[queuedUpdates.size()]);
-			queuedUpdates.clear();
-		}
+    	// Take the queued updates.
+    	// Updates added meanwhile remain queued for the next call.
+		final Update[] rdbUpdates = drain(queuedRDBUpdates);
+		final Update[] updates = drain(queuedUpdates);
 		
 		if (rdbUpdates.length > 0)
 		{					
@@ -658,21 +720,18 @@ public class AlarmServer implements Runnable
 	        }
 		}
 		
-		for (Update u : updates)
-		{
-			messenger.sendStateUpdate(u.pv, u.currentSeverity, u.currentMessage,
-    	        u.alarmSeverity, u.alarmMessage, u.value, u.timestamp);
-		}
+		// Several updates per message, unless clients need the original format
+		if (stateBatchSize > 0  &&  updates.length > 1)
+			messenger.sendStateUpdates(updates, stateBatchSize);
+		else
+			for (Update u : updates)
+			{
+				messenger.sendStateUpdate(u.pv, u.currentSeverity, u.currentMessage,
+	    	        u.alarmSeverity, u.alarmMessage, u.value, u.timestamp);
+			}
 		
-		Update[] rdbGlobals = null;
-		Update[] globals = null;
-		synchronized(queuedRDBGlobalUpdates)
-		{
-			rdbGlobals = queuedRDBGlobalUpdates.values().toArray(new Update[queuedRDBGlobalUpdates.size()]);
-			queuedRDBGlobalUpdates.clear();
-			globals = queuedGlobalUpdates.toArray(new Update[queuedGlobalUpdates.size()]);
-			queuedGlobalUpdates.clear();
-		}
+		final Update[] rdbGlobals = drain(queuedRDBGlobalUpdates);
+		final Update[] globals = drain(queuedGlobalUpdates);
 		
 		if (rdbGlobals.length > 0)
 		{
@@ -694,6 +753,37 @@ public class AlarmServer implements Runnable
 		}
     }
 
+    /** @param queue Queue of updates
+     *  @return Updates that were removed from the queue
+     */
+    private static Update[] drain(final Queue<Update> queue)
+    {
+    	final List<Update> updates = new ArrayList<Update>();
+    	Update u = queue.poll();
+    	while (u != null)
+    	{
+    		updates.add(u);
+    		u = queue.poll();
+    	}
+    	return updates.toArray(new Update[updates.size()]);
+    }
+
+    /** @param map Latest update by PV name
+     *  @return Updates that were removed from the map
+     */
+    private static Update[] drain(final ConcurrentMap<String, Update> map)
+    {
+    	final List<Update> updates = new ArrayList<Update>(map.size());
+    	for (Map.Entry<String, Update> entry : map.entrySet())
+    	{
+    		// Only remove the update that's added to the list.
+    		// If a PV sent a newer update meanwhile, that one stays in the map
+    		if (map.remove(entry.getKey(), entry.getValue()))
+    			updates.add(entry.getValue());
+    	}
+    	return updates.toArray(new Update[updates.size()]);
+    }
+
     /** Runnable entry point used by BatchUpdater */
 	@Override
 	public void run()
@@ -24,6 +24,7 @@ public class AlarmServerPreferences
 {
     final public static String GLOBAL_ALARM_DELAY = "global_alarm_delay";
     final public static String NAG_PERIOD = "nag_period";
+    final public static String LOGIC_THREADS = "logic_threads";
 
     /** @return Period for repeated 'There are .. active alarms' annunciations [seconds]
      *  @throws Exception on error in period specification
@@ -45,4 +46,13 @@ public class AlarmServerPreferences
             return 0;
         return service.getInt(Activator.ID, GLOBAL_ALARM_DELAY, 0, null);
     }
+
+    /** @return Number of threads for the alarm logic, 0 to use the threads of the PV updates */
+    public static int getLogicThreads()
+    {
+        final IPreferencesService service = Platform.getPreferencesService();
+        if (service == null)
+            return 0;
+        return service.getInt(Activator.ID, LOGIC_THREADS, 0, null);
+    }
 }
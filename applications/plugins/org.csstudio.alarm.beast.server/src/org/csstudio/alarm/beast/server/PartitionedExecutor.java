@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Oak Ridge National Laboratory.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.alarm.beast.server;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/** Executor with several threads, where each key is handled by one thread.
+ *  <p>
+ *  All tasks for the same key execute in the order in which
+ *  they were submitted, while tasks for different keys
+ *  can run concurrently.
+ *
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class PartitionedExecutor
+{
+    final private ThreadPoolExecutor[] partitions;
+
+    /** Initialize
+     *  @param name Name used for the threads
+     *  @param threads Number of threads
+     */
+    public PartitionedExecutor(final String name, final int threads)
+    {
+        partitions = new ThreadPoolExecutor[threads];
+        for (int i=0; i<threads; ++i)
+        {
+            final String thread_name = name + " " + (i+1);
+            partitions[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory()
+            {
+                @Override
+                public Thread newThread(final Runnable runnable)
+                {
+                    final Thread thread = new Thread(runnable, thread_name);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+    }
+
+    /** @return Number of threads */
+    public int getThreadCount()
+    {
+        return partitions.length;
+    }
+
+    /** @return Number of tasks that are waiting to be executed */
+    public int getQueueSize()
+    {
+        int size = 0;
+        for (ThreadPoolExecutor partition : partitions)
+            size += partition.getQueue().size();
+        return size;
+    }
+
+    /** @param key Key that identifies the partition
+     *  @param task Task to execute in the thread for that key
+     */
+    public void execute(final Object key, final Runnable task)
+    {
+        final int index = (key.hashCode() & Integer.MAX_VALUE) % partitions.length;
+        partitions[index].execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    task.run();
+                }
+                catch (Throwable ex)
+                {
+                    Activator.getLogger().log(Level.SEVERE, "Error in " + Thread.currentThread().getName(), ex);
+                }
+            }
+        });
+    }
+
+    /** Stop accepting new tasks, wait for queued tasks to complete
+     *  @param seconds Time to wait
+     *  @return <code>true</code> if all tasks completed
+     *  @throws InterruptedException when interrupted while waiting
+     */
+    public boolean shutdown(final long seconds) throws InterruptedException
+    {
+        for (ThreadPoolExecutor partition : partitions)
+            partition.shutdown();
+        final long end = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(seconds);
+        for (ThreadPoolExecutor partition : partitions)
+            if (! partition.awaitTermination(Math.max(0, end - System.currentTimeMillis()), TimeUnit.MILLISECONDS))
+                return false;
+        return true;
+    }
+}
@@ -9,6 +9,7 @@ package org.csstudio.alarm.beast.server;
 
 import java.net.InetAddress;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.logging.Level;
 
 import javax.jms.MapMessage;
@@ -18,6 +19,7 @@ import javax.jms.MessageListener;
 import javax.jms.MessageProducer;
 
 import org.csstudio.alarm.beast.JMSAlarmMessage;
+import org.csstudio.alarm.beast.JMSAlarmStateBatch;
 import org.csstudio.alarm.beast.JMSCommunicationWorkQueueThread;
 import org.csstudio.alarm.beast.Preferences;
 import org.csstudio.alarm.beast.SeverityLevel;
@@ -304,6 +306,48 @@ public class ServerCommunicator extends JMSCommunicationWorkQueueThread
         idle_timer.reset();
     }
 
+    /** Notify clients of new alarm states, several per message.
+     *  @param updates State updates
+     *  @param batch_size Maximum number of updates per message
+     *  @see JMSAlarmStateBatch
+     */
+    protected void sendStateUpdates(final AlarmServer.Update[] updates, final int batch_size)
+    {
+        execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                final String text = AlarmLogic.getMaintenanceMode()
+                                  ? JMSAlarmMessage.TEXT_STATES_MAINTENANCE
+                                  : JMSAlarmMessage.TEXT_STATES;
+                int i = 0;
+                while (i < updates.length)
+                {
+                    try
+                    {
+                        final JMSAlarmStateBatch batch = new JMSAlarmStateBatch();
+                        while (i < updates.length  &&  batch.size() < batch_size)
+                        {
+                            final AlarmServer.Update u = updates[i++];
+                            batch.add(u.pv.getName(), u.currentSeverity.name(), u.currentMessage,
+                                      u.alarmSeverity.name(), u.alarmMessage, u.value, u.timestamp);
+                        }
+                        final MapMessage map = createAlarmMessage(text);
+                        map.setInt(JMSAlarmMessage.COUNT, batch.size());
+                        map.setBytes(JMSAlarmMessage.UPDATES, batch.toByteArray());
+                        server_producer.send(map);
+                    }
+                    catch (Exception ex)
+                    {
+                        Activator.getLogger().log(Level.WARNING, "Cannot send state update message", ex);
+                    }
+                }
+            }
+        });
+        idle_timer.reset();
+    }
+
     /** Notify 'global' clients of new alarm state.
      *  @param pv PV that changes alarm state
      *  @param alarm_severity Alarm severity
@@ -425,7 +469,9 @@ public class ServerCommunicator extends JMSCommunicationWorkQueueThread
             else if (JMSAlarmMessage.TEXT_UNACKNOWLEDGE.equals(text))
                 server.acknowledge(name, false);
             else if (JMSAlarmMessage.TEXT_CONFIG.equals(text))
-                work_queue.execute(new Runnable()
+                // Several requests to update the same item while
+                // a previous update is still pending result in one update
+                work_queue.execute(Arrays.asList(text, name), new Runnable()
                 {
                     @Override
                     public void run()
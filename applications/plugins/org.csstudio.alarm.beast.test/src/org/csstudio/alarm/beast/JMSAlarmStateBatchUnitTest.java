@@ -0,0 +1,74 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Oak Ridge National Laboratory.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.alarm.beast;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.epics.util.time.Timestamp;
+import org.junit.Test;
+
+/** JUnit test of the {@link JMSAlarmStateBatch}
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class JMSAlarmStateBatchUnitTest
+{
+    @Test
+    public void testEncodeDecode() throws Exception
+    {
+        final JMSAlarmStateBatch batch = new JMSAlarmStateBatch();
+        final int N = 100;
+        for (int i=0; i<N; ++i)
+            batch.add("pv" + i, "MAJOR", "HIHI_ALARM", "MAJOR", "HIHI_ALARM",
+                      i % 2 == 0 ? null : Integer.toString(i), Timestamp.of(1000 + i, i));
+        assertThat(batch.size(), equalTo(N));
+
+        final byte[] data = batch.toByteArray();
+        System.out.println(N + " updates in " + data.length + " bytes");
+        // Repeated severities and messages are only sent once
+        assertTrue(data.length < N * 60);
+
+        final List<String> names = new ArrayList<String>();
+        final int count = JMSAlarmStateBatch.decode(data, new JMSAlarmStateBatch.Handler()
+        {
+            @Override
+            public void handleUpdate(final String name,
+                    final String current_severity, final String current_message,
+                    final String severity, final String message,
+                    final String value, final Timestamp timestamp) throws Exception
+            {
+                final int i = names.size();
+                assertThat(name, equalTo("pv" + i));
+                assertThat(current_severity, equalTo("MAJOR"));
+                assertThat(current_message, equalTo("HIHI_ALARM"));
+                assertThat(severity, equalTo("MAJOR"));
+                assertThat(message, equalTo("HIHI_ALARM"));
+                if (i % 2 == 0)
+                    assertThat(value, nullValue());
+                else
+                    assertThat(value, equalTo(Integer.toString(i)));
+                assertThat(timestamp, equalTo(Timestamp.of(1000 + i, i)));
+                names.add(name);
+            }
+        });
+        assertThat(count, equalTo(N));
+        assertThat(names.size(), equalTo(N));
+    }
+
+    @Test(expected=Exception.class)
+    public void testInvalidData() throws Exception
+    {
+        JMSAlarmStateBatch.decode(new byte[] { 42, 0, 0, 0, 1 }, null);
+    }
+}
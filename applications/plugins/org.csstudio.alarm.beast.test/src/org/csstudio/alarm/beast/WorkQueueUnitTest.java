@@ -99,6 +99,119 @@ public class WorkQueueUnitTest
         assertEquals(0.0, seconds, 0.01);
     }
     
+    @Test
+    public void testKeyedExecute() throws Exception
+    {
+        final WorkQueue queue = new WorkQueue();
+        final StringBuilder buf = new StringBuilder();
+        for (String text : new String[] { "a1", "b1", "a2", "c1", "b2", "a3" })
+        {
+            final String key = text.substring(0, 1);
+            final String value = text;
+            queue.execute(key, new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    buf.append(value).append(' ');
+                }
+            });
+        }
+        // Plain commands are never replaced
+        final Runnable plain = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                buf.append("x ");
+            }
+        };
+        queue.execute(plain);
+        queue.execute(plain);
+        // Command that is its own key is only added once
+        queue.executeIfNotPending(plain);
+        queue.executeIfNotPending(plain);
+        assertEquals(6, queue.size());
+        assertEquals(6, queue.getMaxSize());
+
+        queue.performQueuedCommands();
+        // Latest command for each key, in the order of the first command for that key
+        assertEquals("a3 b2 c1 x x x ", buf.toString());
+        assertEquals(0, queue.size());
+        assertEquals(6, queue.getExecutedCount());
+        assertTrue(queue.getMaxLatency() >= queue.getAverageLatency());
+
+        // Key can be used again once its command was executed
+        queue.executeIfNotPending(plain);
+        assertEquals(1, queue.size());
+
+        queue.resetMetrics();
+        assertEquals(1, queue.getMaxSize());
+        assertEquals(0, queue.getExecutedCount());
+        assertEquals(0.0, queue.getAverageLatency(), 0.0);
+    }
+
+    @Test
+    public void testManyKeys() throws Exception
+    {
+        // Enough commands to index the keys instead of scanning the queue
+        final int N = 100;
+        final WorkQueue queue = new WorkQueue();
+        final StringBuilder buf = new StringBuilder();
+        final Runnable[] own = new Runnable[N];
+        for (int i=0; i<N; ++i)
+        {
+            final int value = i;
+            own[i] = new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    buf.append('o').append(value).append(' ');
+                }
+            };
+        }
+        for (int round=0; round<2; ++round)
+            for (int i=0; i<N; ++i)
+            {
+                final String value = "k" + i + "." + round;
+                queue.execute(Integer.valueOf(i), new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        buf.append(value).append(' ');
+                    }
+                });
+                queue.executeIfNotPending(own[i]);
+            }
+        assertEquals(2*N, queue.size());
+
+        // Command that was added as its own key is replaced in its position
+        queue.execute(own[N-1], new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                buf.append("replaced");
+            }
+        });
+        assertEquals(2*N, queue.size());
+
+        final StringBuilder expected = new StringBuilder();
+        for (int i=0; i<N-1; ++i)
+            expected.append("k").append(i).append(".1 o").append(i).append(' ');
+        expected.append("k").append(N-1).append(".1 replaced");
+        queue.performQueuedCommands();
+        assertEquals(expected.toString(), buf.toString());
+        assertEquals(0, queue.size());
+
+        // Keys are detected again after the queue was drained
+        queue.executeIfNotPending(own[0]);
+        queue.executeIfNotPending(own[0]);
+        assertEquals(1, queue.size());
+    }
+
     // Meant to run in JProfiler, used to
     // determine queue performance
     // @Ignore
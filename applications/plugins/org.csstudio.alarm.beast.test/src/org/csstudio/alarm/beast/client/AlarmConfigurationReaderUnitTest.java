@@ -9,6 +9,12 @@ package org.csstudio.alarm.beast.client;
 
 import static org.junit.Assert.*;
 
+import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.HashMap;
+import java.util.Map;
+
 import org.csstudio.alarm.beast.AlarmTreePath;
 import org.csstudio.alarm.beast.SQL;
 import org.csstudio.apputil.test.TestProperties;
@@ -71,4 +77,94 @@ public class AlarmConfigurationReaderUnitTest
         System.out.println("Sub-tree to item:");
         root.dump(System.out);
     }
+
+    /** @return First PV in the snapshot below the given item, or <code>null</code> */
+    private AlarmConfigurationSnapshot.Item findPV(final AlarmConfigurationSnapshot snapshot, final int id)
+    {
+        for (AlarmConfigurationSnapshot.Item item : snapshot.getChildren(id))
+        {
+            if (item.is_pv)
+                return item;
+            final AlarmConfigurationSnapshot.Item pv = findPV(snapshot, item.id);
+            if (pv != null)
+                return pv;
+        }
+        return null;
+    }
+
+    /** The alarm server changes the enablement of a PV
+     *  without changing the configuration signature.
+     *  A client that starts from a saved snapshot must still
+     *  get the current enablement.
+     */
+    @Test
+    public void testSnapshotEnablement() throws Exception
+    {
+        final TestProperties settings = new TestProperties();
+        final String rdb_url = settings.getString("alarm_rdb_url");
+        final String rdb_user = settings.getString("alarm_rdb_user");
+        final String rdb_password = settings.getString("alarm_rdb_password");
+        final String full_path = settings.getString("alarm_test_path");
+        if (rdb_url == null  ||  full_path == null)
+        {
+            System.out.println("Need test RDB URL and path, skipping test");
+            return;
+        }
+        final String root_name = AlarmTreePath.splitPath(full_path)[0];
+
+        final RDBUtil rdb = RDBUtil.connect(rdb_url, rdb_user, rdb_password, false);
+        try
+        {
+            final SQL sql = new SQL(rdb, "ALARM");
+            final AlarmConfigurationReader reader = new AlarmConfigurationReader(rdb, sql);
+            final int root_id = reader.readRootID(root_name);
+
+            // Save snapshot, read it back
+            final File file = File.createTempFile("alarm_config", ".snapshot");
+            file.deleteOnExit();
+            reader.readSnapshot(root_name, root_id).write(file);
+            final AlarmConfigurationSnapshot snapshot = AlarmConfigurationSnapshot.read(file);
+            final AlarmConfigurationSnapshot.Item info = findPV(snapshot, root_id);
+            if (info == null)
+            {
+                System.out.println("No PV in " + root_name + ", skipping test");
+                return;
+            }
+
+            // Toggle enablement like the alarm server
+            final Connection connection = rdb.getConnection();
+            final PreparedStatement update = connection.prepareStatement(sql.update_pv_enablement);
+            try
+            {
+                update.setBoolean(1, !info.enabled);
+                update.setInt(2, info.id);
+                update.executeUpdate();
+
+                // Snapshot still appears current ...
+                assertTrue(reader.isCurrent(snapshot));
+
+                // ... but PV configured from the snapshot
+                // gets the enablement from the RDB
+                final AlarmTreeRoot root = new AlarmTreeRoot(root_name, root_id);
+                final AlarmTreePV pv = new AlarmTreePV(root, info.name, info.id);
+                pv.setEnabled(info.enabled);
+                final Map<Integer, AlarmTreePV> pvs = new HashMap<Integer, AlarmTreePV>();
+                pvs.put(info.id, pv);
+                reader.readAlarmStates(pvs, new SeverityReader(rdb, sql), new MessageReader(rdb, sql));
+                assertEquals(!info.enabled, pv.isEnabled());
+            }
+            finally
+            {
+                update.setBoolean(1, info.enabled);
+                update.setInt(2, info.id);
+                update.executeUpdate();
+                update.close();
+            }
+            reader.closeStatements();
+        }
+        finally
+        {
+            rdb.close();
+        }
+    }
 }
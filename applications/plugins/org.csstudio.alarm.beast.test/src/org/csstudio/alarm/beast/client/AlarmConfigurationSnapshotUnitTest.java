@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Oak Ridge National Laboratory.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.alarm.beast.client;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.List;
+
+import org.epics.util.time.Timestamp;
+import org.junit.Test;
+
+/** JUnit test of the {@link AlarmConfigurationSnapshot}
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class AlarmConfigurationSnapshotUnitTest
+{
+    @Test
+    public void testFile() throws Exception
+    {
+        final Timestamp time = Timestamp.of(1400000000, 42);
+        final AlarmConfigurationSnapshot snapshot = new AlarmConfigurationSnapshot("Test", 1, 4, 42);
+        snapshot.getItem(1).guidance = new GDCDataStructure[] { new GDCDataStructure("Root", "Help") };
+
+        final AlarmConfigurationSnapshot.Item area = new AlarmConfigurationSnapshot.Item(2, "Area", time, false);
+        area.displays = new GDCDataStructure[] { new GDCDataStructure("Overview", "/some/display.opi") };
+        snapshot.add(1, area);
+
+        final AlarmConfigurationSnapshot.Item pv = new AlarmConfigurationSnapshot.Item(3, "pv1", null, true);
+        pv.description = "Some PV °C";
+        pv.enabled = true;
+        pv.latch = true;
+        pv.delay = 5;
+        pv.count = 2;
+        pv.filter = null;
+        pv.automated_actions = new AADataStructure[] { new AADataStructure("Mail", "mailto:x@y", 30) };
+        snapshot.add(2, pv);
+        snapshot.add(2, new AlarmConfigurationSnapshot.Item(4, "pv2", null, true));
+        assertThat(snapshot.size(), equalTo(3));
+
+        final File file = File.createTempFile("alarm_config", ".snapshot");
+        file.deleteOnExit();
+        snapshot.write(file);
+
+        final AlarmConfigurationSnapshot copy = AlarmConfigurationSnapshot.read(file);
+        assertThat(copy.getRootName(), equalTo("Test"));
+        assertThat(copy.getRootID(), equalTo(1));
+        assertThat(copy.size(), equalTo(3));
+        assertTrue(copy.hasSameSignature(snapshot));
+        assertFalse(copy.hasSameSignature(new AlarmConfigurationSnapshot("Test", 1, 5, 42)));
+        assertFalse(copy.hasSameSignature(new AlarmConfigurationSnapshot("Test", 1, 4, 43)));
+
+        assertThat(copy.getItem(1).guidance[0], equalTo(new GDCDataStructure("Root", "Help")));
+
+        final List<AlarmConfigurationSnapshot.Item> areas = copy.getChildren(1);
+        assertThat(areas.size(), equalTo(1));
+        assertThat(areas.get(0).name, equalTo("Area"));
+        assertThat(areas.get(0).config_time, equalTo(time));
+        assertThat(areas.get(0).displays[0].getDetails(), equalTo("/some/display.opi"));
+
+        final List<AlarmConfigurationSnapshot.Item> pvs = copy.getChildren(2);
+        assertThat(pvs.size(), equalTo(2));
+        final AlarmConfigurationSnapshot.Item pv1 = pvs.get(0);
+        assertThat(pv1.id, equalTo(3));
+        assertTrue(pv1.is_pv);
+        assertThat(pv1.description, equalTo("Some PV °C"));
+        assertTrue(pv1.enabled);
+        assertFalse(pv1.annunciate);
+        assertTrue(pv1.latch);
+        assertThat(pv1.delay, equalTo(5));
+        assertThat(pv1.count, equalTo(2));
+        assertThat(pv1.filter, nullValue());
+        assertThat(pv1.config_time, nullValue());
+        assertThat(pv1.automated_actions[0], equalTo(new AADataStructure("Mail", "mailto:x@y", 30)));
+        assertThat(pvs.get(1).name, equalTo("pv2"));
+        assertThat(pvs.get(1).guidance.length, equalTo(0));
+        assertThat(copy.getChildren(3).size(), equalTo(0));
+    }
+
+    @Test
+    public void testChecksum() throws Exception
+    {
+        final java.sql.Timestamp time = new java.sql.Timestamp(1400000000000L);
+        final java.sql.Timestamp later = new java.sql.Timestamp(1400000000000L);
+        later.setNanos(1);
+        final long item = AlarmConfigurationSnapshot.checksum(2, 1, "Area", time);
+        final long other = AlarmConfigurationSnapshot.checksum(3, 2, "pv1", time);
+        final long sum = item + other;
+
+        // Order of items doesn't matter
+        assertThat(other + item, equalTo(sum));
+        assertThat(AlarmConfigurationSnapshot.checksum(2, 1, "Area", new java.sql.Timestamp(time.getTime())),
+                   equalTo(item));
+
+        // Any change of an item changes the sum,
+        // including a change to a time that's older than
+        // the most recent configuration time
+        assertFalse(AlarmConfigurationSnapshot.checksum(2, 1, "Area", later) + other == sum);
+        assertFalse(AlarmConfigurationSnapshot.checksum(2, 1, "Area", new java.sql.Timestamp(0)) + other == sum);
+        assertFalse(AlarmConfigurationSnapshot.checksum(2, 1, "Area", null) + other == sum);
+        assertFalse(AlarmConfigurationSnapshot.checksum(2, 1, "Area2", time) + other == sum);
+        assertFalse(AlarmConfigurationSnapshot.checksum(2, 3, "Area", time) + other == sum);
+
+        // Swapping names of two items changes the sum
+        assertFalse(AlarmConfigurationSnapshot.checksum(2, 1, "pv1", time) +
+                    AlarmConfigurationSnapshot.checksum(3, 2, "Area", time) == sum);
+    }
+}
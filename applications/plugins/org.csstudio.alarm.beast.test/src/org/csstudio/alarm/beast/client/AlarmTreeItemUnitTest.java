@@ -117,4 +117,57 @@ public class AlarmTreeItemUnitTest
         System.out.println("Total tree element count: " + tree.getElementCount());
         assertEquals(11, tree.getElementCount());
     }
+
+    @Test
+    public void testSeverityCounts() throws Exception
+    {
+        // Root
+        //    Area
+        //       one, two, three
+        final AlarmTreeRoot tree = new AlarmTreeRoot("Root", 0);
+        final AlarmTreeItem area = new AlarmTreeItem(tree, "Area", 0);
+        final AlarmTreePV one = new AlarmTreePV(area, "one", 0);
+        final AlarmTreePV two = new AlarmTreePV(area, "two", 0);
+        final AlarmTreePV three = new AlarmTreePV(area, "three", 0);
+
+        one.setAlarmState(SeverityLevel.MINOR, "Low", SeverityLevel.MINOR, "Low", "1", Timestamp.now());
+        two.setAlarmState(SeverityLevel.MAJOR, "LoLo", SeverityLevel.MAJOR, "LoLo", "2", Timestamp.now());
+        three.setAlarmState(SeverityLevel.MAJOR, "HiHi", SeverityLevel.MAJOR, "HiHi", "3", Timestamp.now());
+        assertEquals(SeverityLevel.MAJOR, tree.getCurrentSeverity());
+        assertEquals(SeverityLevel.MAJOR, tree.getSeverity());
+        // Message of first PV that reached the highest severity
+        assertEquals("LoLo", tree.getMessage());
+        assertEquals(3, area.getAlarmChildCount());
+        assertEquals(1, tree.getAlarmChildCount());
+
+        // Message of that PV changes
+        two.setAlarmState(SeverityLevel.MAJOR, "Broken", SeverityLevel.MAJOR, "Broken", "2", Timestamp.now());
+        assertEquals("Broken", tree.getMessage());
+
+        // Other PV remains at highest severity
+        two.setAlarmState(SeverityLevel.OK, "OK", SeverityLevel.MINOR_ACK, "LoLo", "2", Timestamp.now());
+        assertEquals(SeverityLevel.MAJOR, tree.getSeverity());
+        assertEquals("HiHi", tree.getMessage());
+        assertEquals(3, area.getAlarmChildCount());
+
+        three.setAlarmState(SeverityLevel.OK, "OK", SeverityLevel.OK, "OK", "3", Timestamp.now());
+        assertEquals(SeverityLevel.MINOR, tree.getCurrentSeverity());
+        assertEquals(SeverityLevel.MINOR, tree.getSeverity());
+        assertEquals("Low", tree.getMessage());
+        assertEquals(2, area.getAlarmChildCount());
+
+        // Disabled PV is no longer counted after maximizing its parent
+        one.setEnabled(false);
+        area.maximizeSeverity();
+        assertEquals(SeverityLevel.OK, tree.getCurrentSeverity());
+        assertEquals(SeverityLevel.MINOR_ACK, tree.getSeverity());
+        assertEquals("LoLo", tree.getMessage());
+        assertEquals(1, area.getAlarmChildCount());
+
+        // Removing the PV in alarm clears the alarm
+        two.detachFromParent();
+        assertEquals(SeverityLevel.OK, tree.getSeverity());
+        assertEquals(0, area.getAlarmChildCount());
+        assertEquals(0, tree.getAlarmChildCount());
+    }
 }
@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Oak Ridge National Laboratory.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.alarm.beast.client;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.csstudio.alarm.beast.SeverityLevel;
+import org.csstudio.apputil.time.BenchmarkTimer;
+import org.epics.util.time.Timestamp;
+import org.junit.Test;
+
+/** Benchmark of alarm state updates in a large alarm tree
+ *
+ *  Tree of 10 areas, each with 10 systems of 1000 PVs,
+ *  receives a storm of random PV updates
+ *  as they would arrive in the AlarmClientModel.
+ *
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class AlarmTreeSeverityBenchmarkDemo
+{
+    final private static int AREAS = 10, SYSTEMS = 10, PVS = 1000;
+    final private static int UPDATES = 1000000;
+
+    final private static SeverityLevel[] SEVERITIES =
+    {
+        SeverityLevel.OK, SeverityLevel.MINOR, SeverityLevel.MAJOR,
+        SeverityLevel.MINOR_ACK, SeverityLevel.MAJOR_ACK, SeverityLevel.INVALID
+    };
+
+    @Test
+    public void benchmarkUpdates() throws Exception
+    {
+        final AlarmTreeRoot tree = new AlarmTreeRoot("Root", 0);
+        final List<AlarmTreePV> pvs = new ArrayList<AlarmTreePV>();
+        for (int a=0; a<AREAS; ++a)
+        {
+            final AlarmTreeItem area = new AlarmTreeItem(tree, "Area" + a, 0);
+            for (int s=0; s<SYSTEMS; ++s)
+            {
+                final AlarmTreeItem system = new AlarmTreeItem(area, "System" + s, 0);
+                for (int p=0; p<PVS; ++p)
+                    pvs.add(new AlarmTreePV(system, "pv" + a + "_" + s + "_" + p, 0));
+            }
+        }
+        System.out.println("Alarm tree with " + pvs.size() + " PVs");
+
+        final Random random = new Random(42);
+        final Timestamp now = Timestamp.now();
+        final BenchmarkTimer timer = new BenchmarkTimer();
+        for (int i=0; i<UPDATES; ++i)
+        {
+            final AlarmTreePV pv = pvs.get(random.nextInt(pvs.size()));
+            final SeverityLevel current = SEVERITIES[random.nextInt(3)];
+            final SeverityLevel severity = SEVERITIES[random.nextInt(SEVERITIES.length)];
+            pv.setAlarmState(current, current.name(), severity, severity.name(), "value", now);
+        }
+        timer.stop();
+        System.out.format("%d updates in %.2f seconds: %.0f updates/sec\n",
+                UPDATES, timer.getSeconds(), UPDATES / timer.getSeconds());
+
+        // Compare with severities maximized by scanning all children
+        checkSeverities(tree);
+    }
+
+    /** @param item Item to check against its children */
+    private void checkSeverities(final AlarmTreeItem item)
+    {
+        if (item instanceof AlarmTreeLeaf)
+            return;
+        SeverityLevel current = SeverityLevel.OK, severity = SeverityLevel.OK;
+        int alarm_children = 0;
+        for (int i=0; i<item.getChildCount(); ++i)
+        {
+            final AlarmTreeItem child = item.getChild(i);
+            checkSeverities(child);
+            if (child.getCurrentSeverity().ordinal() > current.ordinal())
+                current = child.getCurrentSeverity();
+            if (child.getSeverity().ordinal() > severity.ordinal())
+                severity = child.getSeverity();
+            if (child.getSeverity() != SeverityLevel.OK)
+                ++alarm_children;
+        }
+        assertEquals(current, item.getCurrentSeverity());
+        assertEquals(severity, item.getSeverity());
+        assertEquals(alarm_children, item.getAlarmChildCount());
+    }
+}
@@ -54,6 +54,16 @@ public class JMSAlarmMessage
      */
     final public static String TEXT_STATE_MAINTENANCE = "STATE_MAINTENANCE";
 
+    /** Value for TEXT that indicates state changes of several PVs.
+     *  UPDATES will contain the {@link JMSAlarmStateBatch}
+     */
+    final public static String TEXT_STATES = "STATES";
+
+    /** Value for TEXT that indicates state changes of several PVs while in maintenance mode
+     *  UPDATES will contain the {@link JMSAlarmStateBatch}
+     */
+    final public static String TEXT_STATES_MAINTENANCE = "STATES_MAINTENANCE";
+
     /** Value for TEXT that indicates a configuration change.
      *  NAME will contain path to item that was added, removed,
      *  reconfigured, or null for an overall change.
@@ -94,4 +104,10 @@ public class JMSAlarmMessage
 
     /** Value that caused the severity/message update */
     final public static String VALUE = "VALUE";
+
+    /** Encoded updates of a TEXT_STATES message */
+    final public static String UPDATES = "UPDATES";
+
+    /** Number of updates in a TEXT_STATES message */
+    final public static String COUNT = "COUNT";
 }
@@ -0,0 +1,200 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Oak Ridge National Laboratory.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.alarm.beast;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.epics.util.time.Timestamp;
+
+/** Encoding of several alarm state updates for one
+ *  {@link JMSAlarmMessage#TEXT_STATES} message.
+ *  <p>
+ *  Each update contains the PV name, current severity and message,
+ *  alarm severity and message, value and time stamp.
+ *  Strings are written once per batch and then referenced by index,
+ *  so the severity names and the common alarm messages
+ *  take only a few bytes per update.
+ *  <p>
+ *  Format: Version byte, number of updates, then for each update
+ *  the strings as described and the time stamp as seconds and nanoseconds.
+ *  A string is either an index into the strings read so far,
+ *  or <code>NEW_STRING</code> followed by its UTF-8 bytes,
+ *  or <code>NULL_STRING</code>.
+ *
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class JMSAlarmStateBatch
+{
+    /** Version of the encoding */
+    final private static byte VERSION = 1;
+
+    /** String reference for a new string */
+    final private static int NEW_STRING = -1;
+
+    /** String reference for <code>null</code> */
+    final private static int NULL_STRING = -2;
+
+    final private static Charset UTF8 = Charset.forName("UTF-8");
+
+    /** Handler for decoded updates */
+    public interface Handler
+    {
+        /** @param name PV name
+         *  @param current_severity Current severity of the PV
+         *  @param current_message Current message of the PV
+         *  @param severity Alarm severity
+         *  @param message Alarm message
+         *  @param value Value that triggered update, may be <code>null</code>
+         *  @param timestamp Time stamp for alarm severity/status
+         *  @throws Exception on error
+         */
+        public void handleUpdate(String name, String current_severity, String current_message,
+                String severity, String message, String value, Timestamp timestamp) throws Exception;
+    }
+
+    final private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    final private DataOutputStream out = new DataOutputStream(buffer);
+
+    /** Index of each string written so far */
+    final private Map<String, Integer> strings = new HashMap<>();
+
+    /** Number of updates */
+    private int count = 0;
+
+    /** Add an update to the batch
+     *  @param name PV name
+     *  @param current_severity Name of current severity of the PV
+     *  @param current_message Current message of the PV
+     *  @param severity Name of alarm severity
+     *  @param message Alarm message
+     *  @param value Value that triggered update, may be <code>null</code>
+     *  @param timestamp Time stamp for alarm severity/status
+     *  @throws IOException on error
+     */
+    public void add(final String name, final String current_severity, final String current_message,
+            final String severity, final String message, final String value,
+            final Timestamp timestamp) throws IOException
+    {
+        writeString(name);
+        writeString(current_severity);
+        writeString(current_message);
+        writeString(severity);
+        writeString(message);
+        writeString(value);
+        out.writeLong(timestamp.getSec());
+        out.writeInt(timestamp.getNanoSec());
+        ++count;
+    }
+
+    /** @param text String to write, may be <code>null</code>
+     *  @throws IOException on error
+     */
+    private void writeString(final String text) throws IOException
+    {
+        if (text == null)
+        {
+            out.writeInt(NULL_STRING);
+            return;
+        }
+        final Integer index = strings.get(text);
+        if (index != null)
+        {
+            out.writeInt(index);
+            return;
+        }
+        strings.put(text, strings.size());
+        final byte[] bytes = text.getBytes(UTF8);
+        out.writeInt(NEW_STRING);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /** @return Number of updates in batch */
+    public int size()
+    {
+        return count;
+    }
+
+    /** @return Encoded updates
+     *  @throws IOException on error
+     */
+    public byte[] toByteArray() throws IOException
+    {
+        out.flush();
+        final ByteArrayOutputStream result = new ByteArrayOutputStream(buffer.size() + 5);
+        final DataOutputStream header = new DataOutputStream(result);
+        header.writeByte(VERSION);
+        header.writeInt(count);
+        header.flush();
+        buffer.writeTo(result);
+        return result.toByteArray();
+    }
+
+    /** Decode updates
+     *  @param data Encoded updates
+     *  @param handler Handler that is called for each update
+     *  @return Number of updates
+     *  @throws Exception on error in data or handler
+     */
+    public static int decode(final byte[] data, final Handler handler) throws Exception
+    {
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        final byte version = in.readByte();
+        if (version != VERSION)
+            throw new Exception("Cannot decode alarm state batch version " + version);
+        final int count = in.readInt();
+        final List<String> strings = new ArrayList<>();
+        for (int i=0; i<count; ++i)
+        {
+            final String name = readString(in, strings);
+            final String current_severity = readString(in, strings);
+            final String current_message = readString(in, strings);
+            final String severity = readString(in, strings);
+            final String message = readString(in, strings);
+            final String value = readString(in, strings);
+            final long secs = in.readLong();
+            final int nano = in.readInt();
+            handler.handleUpdate(name, current_severity, current_message,
+                    severity, message, value, Timestamp.of(secs, nano));
+        }
+        return count;
+    }
+
+    /** @param in Input
+     *  @param strings Strings read so far
+     *  @return String, may be <code>null</code>
+     *  @throws Exception on error
+     */
+    private static String readString(final DataInputStream in, final List<String> strings) throws Exception
+    {
+        final int index = in.readInt();
+        if (index == NULL_STRING)
+            return null;
+        if (index == NEW_STRING)
+        {
+            final byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            final String text = new String(bytes, UTF8);
+            strings.add(text);
+            return text;
+        }
+        if (index < 0  ||  index >= strings.size())
+            throw new Exception("Invalid string reference " + index + " in alarm state batch");
+        return strings.get(index);
+    }
+}
@@ -56,6 +56,8 @@ public class Preferences
     final public static String GUI_UPDATE_INITIAL_MILLIS = "gui_update_initial_millis";
     final public static String BATCH_UPDATE_PERIOD = "batch_update_period";
     final public static String BATCH_SIZE = "batch_size";
+    final public static String JMS_STATE_BATCH_SIZE = "jms_state_batch_size";
+    final public static String CONFIG_SNAPSHOT_DIRECTORY = "config_snapshot_directory";
 
     final private static String SERVER_SUFFIX = "_SERVER";
     final private static String CLIENT_SUFFIX = "_CLIENT";
@@ -217,6 +219,17 @@ public class Preferences
         }
     }
 
+    /** @return Directory for snapshots of the alarm configuration,
+     *          or <code>null</code> when snapshots are disabled
+     */
+    public static String getConfigSnapshotDirectory()
+    {
+        final String directory = getString(CONFIG_SNAPSHOT_DIRECTORY);
+        if (directory == null  ||  directory.trim().isEmpty())
+            return null;
+        return directory.trim();
+    }
+
     /** @return Time in seconds to wait for OK or error from command */
     public static int getCommandCheckTime()
     {
@@ -316,4 +329,13 @@ public class Preferences
     	final IPreferencesService service = Platform.getPreferencesService();
         return service.getInt(Activator.ID, BATCH_SIZE, 3000, null);
     }
+    
+    /** @return Maximum number of alarm state updates that the server sends
+     *          in one JMS message, 0 to send one message per update
+     */
+    public static int getJMS_StateBatchSize()
+    {
+        final IPreferencesService service = Platform.getPreferencesService();
+        return service.getInt(Activator.ID, JMS_STATE_BATCH_SIZE, 0, null);
+    }
 }
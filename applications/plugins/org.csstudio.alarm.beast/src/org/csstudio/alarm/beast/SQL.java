@@ -29,6 +29,13 @@ public class SQL
 	final public String sel_commands_by_id;
 	final public String sel_auto_actions_by_id;
     final public String sel_items_by_parent;
+    final public String sel_all_items;
+    final public String sel_all_guidance;
+    final public String sel_all_displays;
+    final public String sel_all_commands;
+    final public String sel_all_auto_actions;
+    final public String sel_all_pv_states;
+    final public String sel_config_signature;
     final public String sel_item_by_parent_and_name;
     final public String sel_last_item_id;
     final public String insert_item;
@@ -43,6 +50,7 @@ public class SQL
 	final public String insert_auto_action;
 
 	final public String update_item_config_time;
+	final public String sel_item_config_time;
 
     final public String delete_component_by_id;
 
@@ -119,6 +127,59 @@ public class SQL
             " LEFT JOIN " + schema_prefix + "PV p ON p.COMPONENT_ID = t.COMPONENT_ID" +
             " WHERE t.PARENT_CMPNT_ID=? ORDER BY t.COMPONENT_ID";
 
+        // Selects all components and PVs of all configurations in one query,
+        // so that a complete alarm tree can be assembled in memory instead of
+        // querying each component for its children.
+        // Columns match sel_items_by_parent, plus the parent ID
+        // which is NULL for the root elements.
+        sel_all_items =
+            //        1               2
+            "SELECT t.COMPONENT_ID, t.CONFIG_TIME," +
+            //  3               4        5              6
+            " p.COMPONENT_ID, p.DESCR, p.ENABLED_IND, p.ANNUNCIATE_IND," +
+            //  7            8        9              10        11
+            " p.LATCH_IND, p.DELAY, p.DELAY_COUNT, p.FILTER, p.CUR_SEVERITY_ID," +
+            //  12               13             14           15          16
+            " p.CUR_STATUS_ID, p.SEVERITY_ID, p.STATUS_ID, p.PV_VALUE, p.ALARM_TIME," +
+            //  17      18
+            " t.NAME, t.PARENT_CMPNT_ID" +
+            " FROM " + schema_prefix + "ALARM_TREE t" +
+            " LEFT JOIN " + schema_prefix + "PV p ON p.COMPONENT_ID = t.COMPONENT_ID" +
+            " ORDER BY t.COMPONENT_ID";
+
+        // Guidance, displays, ... of all items, ordered by item
+        sel_all_guidance =
+            "SELECT COMPONENT_ID, TITLE, DETAIL FROM " + schema_prefix + "GUIDANCE ORDER BY COMPONENT_ID, GUIDANCE_ORDER";
+        sel_all_displays =
+            "SELECT COMPONENT_ID, TITLE, DETAIL FROM " + schema_prefix + "DISPLAY ORDER BY COMPONENT_ID, DISPLAY_ORDER";
+        sel_all_commands =
+            "SELECT COMPONENT_ID, TITLE, DETAIL FROM " + schema_prefix + "COMMAND ORDER BY COMPONENT_ID, COMMAND_ORDER";
+        sel_all_auto_actions =
+            "SELECT COMPONENT_ID, TITLE, DETAIL, DELAY FROM " + schema_prefix + "AUTOMATED_ACTION ORDER BY COMPONENT_ID, AUTO_ACTION_ORDER";
+
+        // Alarm state and enablement of all PVs.
+        // The alarm server updates the enablement without changing
+        // the CONFIG_TIME, so it's read with the state instead of
+        // relying on a configuration snapshot
+        sel_all_pv_states =
+            //      1             2                3
+            "SELECT COMPONENT_ID, CUR_SEVERITY_ID, CUR_STATUS_ID," +
+            //  4            5          6         7           8
+            " SEVERITY_ID, STATUS_ID, PV_VALUE, ALARM_TIME, ENABLED_IND" +
+            " FROM " + schema_prefix + "PV";
+
+        // Items for the configuration signature, see AlarmConfigurationSnapshot.checksum.
+        // Every change to the configuration hierarchy adds or removes items
+        // or updates their name, parent or CONFIG_TIME, so the checksum
+        // over all items changes whenever a snapshot of the configuration
+        // needs to be re-read.
+        // The most recent CONFIG_TIME alone would miss changes to items
+        // that don't result in a new maximum.
+        // update_pv_enablement does not change the signature,
+        // see sel_all_pv_states.
+        sel_config_signature =
+            "SELECT COMPONENT_ID, PARENT_CMPNT_ID, NAME, CONFIG_TIME FROM " + schema_prefix + "ALARM_TREE";
+
         // Selects component or PV by parent ID and name. For PV, all the p.* columns are null.
         // Columns must match sel_items_by_parent except for the t.NAME that's not in here!
         sel_item_by_parent_and_name =
@@ -163,8 +224,16 @@ public class SQL
         insert_auto_action =
                 "INSERT INTO " + schema_prefix + "AUTOMATED_ACTION(COMPONENT_ID, AUTO_ACTION_ORDER, TITLE, DETAIL, DELAY) VALUES(?,?,?,?,?)";
         
+        // Config time is always set from the database clock,
+        // not the clocks of the various clients.
+        // It must change with each update to change the configuration
+        // signature, even when the clock has only a resolution of seconds
         update_item_config_time =
-            "UPDATE " + schema_prefix + "ALARM_TREE SET CONFIG_TIME=? WHERE COMPONENT_ID=?";
+            "UPDATE " + schema_prefix + "ALARM_TREE SET CONFIG_TIME=" +
+            " CASE WHEN CONFIG_TIME >= " + now + " THEN CONFIG_TIME + INTERVAL '1' SECOND ELSE " + now + " END" +
+            " WHERE COMPONENT_ID=?";
+        sel_item_config_time =
+            "SELECT CONFIG_TIME FROM " + schema_prefix + "ALARM_TREE WHERE COMPONENT_ID=?";
 
         delete_component_by_id = "DELETE FROM " + schema_prefix + "ALARM_TREE WHERE COMPONENT_ID = ?";
 
@@ -200,8 +269,10 @@ public class SQL
         update_pv_enablement =
             "UPDATE " + schema_prefix + "PV SET ENABLED_IND=?  WHERE COMPONENT_ID=?";
         delete_pv_by_id = "DELETE FROM " + schema_prefix + "PV WHERE COMPONENT_ID = ?";
-        rename_item = "UPDATE " + schema_prefix + "ALARM_TREE SET NAME=? WHERE COMPONENT_ID=?";
-        move_item = "UPDATE " + schema_prefix + "ALARM_TREE SET PARENT_CMPNT_ID=? WHERE COMPONENT_ID=?";
+        // Renaming or moving an item also updates its config time
+        // to invalidate snapshots, see sel_config_signature
+        rename_item = "UPDATE " + schema_prefix + "ALARM_TREE SET NAME=?, CONFIG_TIME=" + now + " WHERE COMPONENT_ID=?";
+        move_item = "UPDATE " + schema_prefix + "ALARM_TREE SET PARENT_CMPNT_ID=?, CONFIG_TIME=" + now + " WHERE COMPONENT_ID=?";
 
         sel_severity =
             "SELECT SEVERITY_ID FROM " + schema_prefix + "SEVERITY WHERE NAME=?";
@@ -185,6 +185,16 @@ public class TreeItem
     {
         if (! children.remove(child))
             throw new Error("Corrupted tree item: " + toString());
+        childRemoved(child);
+    }
+
+    /** Called after a child was removed.
+     *  Derived classes can update information about their children.
+     *  @param child Child that was removed
+     */
+    protected void childRemoved(final TreeItem child)
+    {
+        // NOP
     }
 
     /** Locate alarm tree item by path, starting at this element
@@ -7,8 +7,8 @@
  ******************************************************************************/
 package org.csstudio.alarm.beast;
 
-import java.util.LinkedList;
-import java.util.Queue;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.Executor;
 import java.util.logging.Level;
 
@@ -21,6 +21,10 @@ import java.util.logging.Level;
  *  For example used to re-direct execution of commands to a 'main'
  *  thread, to assert that all interactions with a certain resource
  *  happen on the same thread.
+ *  <p>
+ *  Commands can be added with a key, in which case a command
+ *  that is still pending for the same key is replaced,
+ *  keeping its position in the queue.
  *
  *  @author Kay Kasemir
  *  @author Jaka Bobnar - RDB batching
@@ -28,36 +32,79 @@ import java.util.logging.Level;
 @SuppressWarnings("nls")
 public class WorkQueue implements Executor
 {
-    /** Task queue */
-    final Queue<Runnable> tasks = new LinkedList<Runnable>();
-    
-    // Compared these data structures for 'tasks':
-    //
-    // final Queue<Runnable> tasks = new LinkedList<Runnable>();
-    // final LinkedHashMap<Object, Runnable> tasks = new LinkedHashMap<Object, Runnable>();
-    //
-    // Considered LinkedHashSet, but didn't work:
-    // Inserting a 'new' ReplacableRunnable would simply keep
-    // an older entry, not update it.
+    /** Marker for no command being timed */
+    final private static long NOT_TIMED = -1;
 
-    // JProfile results for 100 tasks, replaced 4 times:
-    //
-    //                     LinkedList  LinkedHashMap
-    // execute                 4us         10us
-    // executeReplacable      44us         10us
-    // getOldestRunnable       1us         12us
-    //
-    // Linked list is obviously slower when asked to replaced an existing
-    // runnable for the same object because of the linear lookup.
-    // But how long is the list going to be?
-    // Usually only a few noisy PVs, so maybe just 2 or 3 entries
-    // that keep getting replaced.
-    // If the test is run with only 10 tasks in the queue,
-    // executeReplacable for the LinkedList takes only 11us,
-    // i.e. similar to LinkedHashMap
+    /** Only every N-th added command may be timed. Power of 2 */
+    final private static long TIMED_INTERVAL = 64;
+
+    /** Lock for access to the queue, pending keys and the metrics */
+    final private Object lock = new Object();
+
+    /** Queued commands, circular buffer. Size is a power of 2 */
+    private Runnable[] commands = new Runnable[16];
+
+    /** Key of the command at the same index in <code>commands</code>,
+     *  or <code>null</code> for a plain command
+     */
+    private Object[] keys = new Object[16];
+
+    /** Index of oldest command */
+    private int head = 0;
+
+    /** Number of queued commands */
+    private int count = 0;
+
+    /** Position of keyed commands by key while <code>indexed</code>,
+     *  i.e. the value of <code>removed</code> when the command will be removed
+     */
+    final private Map<Object, Long> pending = new HashMap<Object, Long>();
+
+    /** Are all queued keys in <code>pending</code>? */
+    private boolean indexed = false;
+
+    /** Queue size up to which keyed commands are found by scanning the queue */
+    final private static int SCAN_LIMIT = 16;
+
+    // Earlier implementations used a LinkedList of Runnables,
+    // which needed a linear lookup to check for a pending command.
     //
-    // -> Simple linked list is probably good enough for the
-    // common use case, plus uses less memory.
+    // Commands and their keys are placed in circular buffers,
+    // without allocating a wrapper or list node.
+    // While few commands are queued, which is the common case,
+    // for example the periodic AlarmServer check,
+    // a pending command is found by scanning the keys,
+    // which is faster than updating a hash for each command.
+    // Once more commands are queued, for example many PVs
+    // during an alarm storm, all keys are indexed,
+    // so the lookup and replacement of a pending command
+    // takes constant time, until the queue is empty again.
+
+    /** Maximum queue size since metrics were reset */
+    private int max_size = 0;
+
+    /** Number of commands removed from the queue for execution */
+    private long removed = 0;
+
+    /** Value of <code>removed</code> when metrics were reset */
+    private long removed_at_reset = 0;
+
+    /** Position of the timed command, i.e. the value of <code>removed</code>
+     *  when it will be removed, or {@link #NOT_TIMED}
+     */
+    private long timed_position = NOT_TIMED;
+
+    /** Time when the timed command was queued, {@link System#nanoTime()} */
+    private long timed_start;
+
+    /** Number of commands that were timed */
+    private long timed = 0;
+
+    /** Total and maximum time in nanoseconds that timed tasks were queued */
+    private long total_latency = 0, max_latency = 0;
+
+    /** Is a thread waiting on the lock for commands? */
+    private boolean waiting = false;
 
     /** Thread that executes the queue. Set on first access */
     private Thread thread;
@@ -65,12 +112,156 @@ public class WorkQueue implements Executor
     /** @return Number of currently queued commands on the work queue */
     public int size()
     {
-        synchronized (tasks)
+        synchronized (lock)
+        {
+            return count;
+        }
+    }
+
+    /** @return Maximum number of queued commands since metrics were reset */
+    public int getMaxSize()
+    {
+        synchronized (lock)
+        {
+            return max_size;
+        }
+    }
+
+    /** @return Number of executed commands since metrics were reset */
+    public long getExecutedCount()
+    {
+        synchronized (lock)
+        {
+            return removed - removed_at_reset;
+        }
+    }
+
+    /** @return Average time in milliseconds that a sample of the commands waited in the queue */
+    public double getAverageLatency()
+    {
+        synchronized (lock)
+        {
+            if (timed <= 0)
+                return 0.0;
+            return total_latency / 1e6 / timed;
+        }
+    }
+
+    /** @return Maximum time in milliseconds that a sample of the commands waited in the queue */
+    public double getMaxLatency()
+    {
+        synchronized (lock)
+        {
+            return max_latency / 1e6;
+        }
+    }
+
+    /** Reset the queue size and latency metrics */
+    public void resetMetrics()
+    {
+        synchronized (lock)
+        {
+            max_size = count;
+            removed_at_reset = removed;
+            timed = 0;
+            total_latency = 0;
+            max_latency = 0;
+        }
+    }
+
+    /** @param command Command to add to queue
+     *  @param key Key of the command or <code>null</code>. Caller must SYNC on lock
+     */
+    private void add(final Runnable command, final Object key)
+    {
+        if (count >= commands.length)
+            grow();
+        final int index = (head + count) & (commands.length - 1);
+        commands[index] = command;
+        keys[index] = key;
+        // Value of 'removed' when this command will be removed
+        final long position = removed + count;
+        if (key != null  &&  indexed)
+            pending.put(key, position);
+        // Reading the clock costs about as much as adding
+        // and executing a plain command.
+        // Only one command at a time is timed, and only
+        // every TIMED_INTERVAL-th command.
+        // When the queue is mostly idle, that is each such command,
+        // and while busy, the next one added after the timed
+        // one has been executed.
+        if (timed_position == NOT_TIMED  &&  (position & (TIMED_INTERVAL - 1)) == 0)
+        {
+            timed_position = position;
+            timed_start = System.nanoTime();
+        }
+        if (++count > max_size)
+            max_size = count;
+        if (waiting)
+            lock.notifyAll();
+    }
+
+    /** Double the size of the circular buffer. Caller must SYNC on lock */
+    private void grow()
+    {
+        final int size = commands.length;
+        final Runnable[] new_commands = new Runnable[2 * size];
+        final Object[] new_keys = new Object[2 * size];
+        // Copy head..end, then start..head
+        final int tail = size - head;
+        System.arraycopy(commands, head, new_commands, 0, tail);
+        System.arraycopy(commands, 0, new_commands, tail, head);
+        System.arraycopy(keys, head, new_keys, 0, tail);
+        System.arraycopy(keys, 0, new_keys, tail, head);
+        commands = new_commands;
+        keys = new_keys;
+        head = 0;
+    }
+
+    /** @param key Key of a command
+     *  @return Index of pending command for that key or -1. Caller must SYNC on lock
+     */
+    private int getPendingIndex(final Object key)
+    {
+        if (indexed  ||  count > SCAN_LIMIT)
+            return getIndexedIndex(key);
+        // Scan head..end, then start of buffer.
+        // Plain commands have a null key, which equals no key
+        final int end = head + count;
+        final int first_end = Math.min(end, keys.length);
+        for (int index=head; index<first_end; ++index)
+            if (key.equals(keys[index]))
+                return index;
+        final int second_end = end - first_end;
+        for (int index=0; index<second_end; ++index)
+            if (key.equals(keys[index]))
+                return index;
+        return -1;
+    }
+
+    /** @param key Key of a command
+     *  @return Index of pending command for that key or -1,
+     *          indexing all keys if they aren't, yet. Caller must SYNC on lock
+     */
+    private int getIndexedIndex(final Object key)
+    {
+        final int mask = commands.length - 1;
+        if (! indexed)
         {
-            return tasks.size();
+            for (int i=0; i<count; ++i)
+            {
+                final Object queued = keys[(head + i) & mask];
+                if (queued != null)
+                    pending.put(queued, removed + i);
+            }
+            indexed = true;
         }
+        final Long position = pending.get(key);
+        if (position == null)
+            return -1;
+        return (head + (int) (position - removed)) & mask;
     }
-    
+
     /** Add a command to the queue
      *  @param command Command to be executed
      *  @see Executor#execute(Runnable)
@@ -78,52 +269,98 @@ public class WorkQueue implements Executor
     @Override
     public void execute(final Runnable command)
     {
-        synchronized (tasks)
+        synchronized (lock)
+        {
+            add(command, null);
+        }
+    }
+
+    /** Add a command to the queue, replacing a pending command for the same key.
+     *
+     *  <p>If a command for the key is already queued, it is replaced
+     *  by the new command, which then executes in the queue position
+     *  of the original command.
+     *
+     *  @param key Key that identifies the command, for example the PV that it updates
+     *  @param command Command to be executed
+     */
+    public void execute(final Object key, final Runnable command)
+    {
+        synchronized (lock)
         {
-            // Hash: Use dummy key to add a new element
-            // tasks.put(new Object(), command);
-            
-            // Queue:
-            tasks.add(command);
-            
-            tasks.notifyAll();
+            final int index = getPendingIndex(key);
+            if (index >= 0)
+                commands[index] = command;
+            else
+                add(command, key);
         }
     }
-    
+
     /** Add a command to the queue but only if that same command is not already in the queue.
      *  If it is, do nothing.
+     *  <p>
+     *  The command is used as its own key,
+     *  see {@link #execute(Object, Runnable)}.
+     *  Only commands that were added via this method
+     *  or as a key via {@link #execute(Object, Runnable)}
+     *  are detected as pending.
+     *  A command that was queued via the plain {@link #execute(Runnable)}
+     *  is not tracked by key, so it will be added again.
      * 
      *  @param command the command to be added to the queue
      */
     public void executeIfNotPending(final Runnable command)
     {
-        synchronized (tasks)
+        synchronized (lock)
         {
-            if (!tasks.contains(command))
-            {
-                tasks.add(command);
-                tasks.notifyAll();
-            }
+            if (getPendingIndex(command) < 0)
+                add(command, command);
         }
     }
 
+    /** Update latency once the timed command has been removed. Caller must SYNC on lock */
+    private void updateLatency()
+    {
+        final long latency = System.nanoTime() - timed_start;
+        timed_position = NOT_TIMED;
+        ++timed;
+        total_latency += latency;
+        if (latency > max_latency)
+            max_latency = latency;
+    }
+
+    /** @param key Key of command that has been removed or <code>null</code>.
+     *  Caller must SYNC on lock
+     */
+    private void removeIndexed(final Object key)
+    {
+        if (count == 0)
+        {   // Scan again once more commands are queued
+            pending.clear();
+            indexed = false;
+        }
+        else if (key != null)
+            pending.remove(key);
+    }
+
     /** @return Oldest runnable in the queue or <code>null</code> */
     private Runnable getOldestRunnable()
     {
-        synchronized (tasks)
+        synchronized (lock)
         {
-            // Hash: Need iterator to get oldest
-            //final Iterator<Runnable> iter = tasks.values().iterator();
-            //if (iter.hasNext())
-            //{
-            //    final Runnable result = iter.next();
-            //    iter.remove();
-            //    return result;
-            //}
-            //return null;
-            
-            // Queue was designed for this
-            return tasks.poll();
+            if (count <= 0)
+                return null;
+            final Runnable command = commands[head];
+            final Object key = keys[head];
+            commands[head] = null;
+            keys[head] = null;
+            head = (head + 1) & (commands.length - 1);
+            --count;
+            if (removed++ == timed_position)
+                updateLatency();
+            if (indexed)
+                removeIndexed(key);
+            return command;
         }
     }
 
@@ -162,19 +399,24 @@ public class WorkQueue implements Executor
         // Wait in case there aren't any tasks in the queue
         // Do this while sync'ed to not miss
         // a notify.
-        synchronized (tasks)
+        synchronized (lock)
         {
             task = getOldestRunnable();
             if (task == null)
             {
+                waiting = true;
                 try
                 {
-                    tasks.wait(millisecs);
+                    lock.wait(millisecs);
                 }
                 catch (InterruptedException ex)
                 {
                     return;
                 }
+                finally
+                {
+                    waiting = false;
+                }
                 task = getOldestRunnable();
             }
         }
@@ -7,6 +7,7 @@
  ******************************************************************************/
 package org.csstudio.alarm.beast.client;
 
+import java.io.File;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -15,15 +16,16 @@ import java.sql.Statement;
 import java.sql.Timestamp;
 import java.sql.Types;
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 
 import org.csstudio.alarm.beast.Activator;
 import org.csstudio.alarm.beast.AlarmTreePath;
 import org.csstudio.alarm.beast.Messages;
+import org.csstudio.alarm.beast.Preferences;
 import org.csstudio.alarm.beast.SQL;
 import org.csstudio.alarm.beast.TimestampHelper;
 import org.csstudio.apputil.time.DelayCheck;
@@ -73,7 +75,10 @@ public class AlarmConfiguration
     private HashMap<String, AlarmTreePV> pvs = new HashMap<String, AlarmTreePV>();
 
     /** Re-used statements */
-    private PreparedStatement sel_items_by_parent_statement, sel_pv_by_id_statement;
+    private PreparedStatement sel_pv_by_id_statement;
+
+    /** Identifies the RDB in names of snapshot files */
+    final private String rdb_hash;
 
 
     /** Initialize
@@ -89,6 +94,7 @@ public class AlarmConfiguration
     {
         // Allow auto-reconnect?
         this.auto_reconnect = auto_reconnect;
+        rdb_hash = Integer.toHexString(url.hashCode());
         try
         {
         	rdb = RDBUtil.connect(url, user, password, auto_reconnect);
@@ -246,8 +252,11 @@ public class AlarmConfiguration
             }
             final int id = result.getInt(1);
             final AlarmTreeRoot root = createAlarmTreeRoot(id, root_name);
-            config_reader.readGuidanceDisplaysCommands(root);
-            readChildren(root, monitor, monitor_update_delay);
+            final AlarmConfigurationSnapshot snapshot = getSnapshot(root_name, id);
+            configureFromSnapshot(root, snapshot.getItem(id));
+            final Map<Integer, AlarmTreePV> new_pvs = new HashMap<Integer, AlarmTreePV>();
+            createChildren(root, snapshot, new_pvs, monitor, monitor_update_delay);
+            config_reader.readAlarmStates(new_pvs, severity_mapping, message_mapping);
             return root;
         }
         finally
@@ -257,60 +266,125 @@ public class AlarmConfiguration
         }
     }
 
-    /** Read configuration for child elements
+    /** @param root_name Name of root component
+     *  @return Snapshot file or <code>null</code> when snapshots are disabled
+     */
+    @SuppressWarnings("nls")
+    private File getSnapshotFile(final String root_name)
+    {
+        final String directory = Preferences.getConfigSnapshotDirectory();
+        if (directory == null)
+            return null;
+        return new File(directory,
+                root_name.replaceAll("[^A-Za-z0-9_\\-]", "_") + "_" + rdb_hash + ".snapshot");
+    }
+
+    /** Get configuration snapshot
+     *
+     *  <p>Uses the snapshot file when it exists and
+     *  the configuration in the RDB has not changed.
+     *  Otherwise reads the configuration from the RDB
+     *  and updates the snapshot file.
+     *
+     *  @param root_name Name of root component
+     *  @param root_id RDB ID of root component
+     *  @return {@link AlarmConfigurationSnapshot}
+     *  @throws Exception on error
+     */
+    @SuppressWarnings("nls")
+    private AlarmConfigurationSnapshot getSnapshot(final String root_name, final int root_id) throws Exception
+    {
+        final File file = getSnapshotFile(root_name);
+        if (file != null  &&  file.exists())
+        {
+            try
+            {
+                final AlarmConfigurationSnapshot snapshot = AlarmConfigurationSnapshot.read(file);
+                if (snapshot.getRootID() == root_id  &&
+                    snapshot.getRootName().equals(root_name)  &&
+                    config_reader.isCurrent(snapshot))
+                {
+                    Activator.getLogger().log(Level.FINE, "Using configuration snapshot {0}", file);
+                    return snapshot;
+                }
+            }
+            catch (Exception ex)
+            {
+                Activator.getLogger().log(Level.WARNING, "Cannot read configuration snapshot " + file, ex);
+            }
+        }
+        final AlarmConfigurationSnapshot snapshot = config_reader.readSnapshot(root_name, root_id);
+        if (file != null)
+        {
+            try
+            {
+                file.getParentFile().mkdirs();
+                snapshot.write(file);
+            }
+            catch (Exception ex)
+            {
+                Activator.getLogger().log(Level.WARNING, "Cannot write configuration snapshot " + file, ex);
+            }
+        }
+        return snapshot;
+    }
+
+    /** Configure item from snapshot
+     *  @param item Item to configure
+     *  @param info Configuration of the item
+     */
+    private void configureFromSnapshot(final AlarmTreeItem item, final AlarmConfigurationSnapshot.Item info)
+    {
+        if (info.config_time != null)
+            item.setConfigTime(info.config_time);
+        item.setGuidance(info.guidance);
+        item.setDisplays(info.displays);
+        item.setCommands(info.commands);
+        item.setAutomatedActions(info.automated_actions);
+    }
+
+    /** Create child elements from snapshot
      *  @param parent Parent node. Children get added to it.
+     *  @param snapshot Configuration snapshot
+     *  @param new_pvs PVs by ID. New PVs get added to it.
      *  @param monitor Progress monitor
      *  @param monitor_update_delay Delay for updates to monitor
-     *  @throws Exception on error
      */
-    private void readChildren(final AlarmTreeItem parent,
-            final IProgressMonitor monitor, final DelayCheck monitor_update_delay) throws Exception
+    private void createChildren(final AlarmTreeItem parent, final AlarmConfigurationSnapshot snapshot,
+            final Map<Integer, AlarmTreePV> new_pvs,
+            final IProgressMonitor monitor, final DelayCheck monitor_update_delay)
     {
-        if (sel_items_by_parent_statement == null)
-            sel_items_by_parent_statement =
-                rdb.getConnection().prepareStatement(sql.sel_items_by_parent);
-        sel_items_by_parent_statement.setInt(1, parent.getID());
-        final ResultSet result = sel_items_by_parent_statement.executeQuery();
-
-        final List<AlarmTreeItem> recurse_items = new ArrayList<AlarmTreeItem>();
-        while (result.next()  &&  !monitor.isCanceled())
+        for (AlarmConfigurationSnapshot.Item info : snapshot.getChildren(parent.getID()))
         {
-            final int id = result.getInt(1);
-            final String name = result.getString(17);
-            final Timestamp config_time = result.getTimestamp(2);
-            final AlarmTreeItem item;
-            // Check PV's ID. If null, this is a component, not PV
-            result.getInt(3);
-            if (result.wasNull())
-            {   // Component (area, system), not a PV
-                item = new AlarmTreeItem(parent, name, id);
-                recurse_items.add(item);
-            }
-            else
+            if (monitor.isCanceled())
+                return;
+            if (info.is_pv)
             {
-                final AlarmTreePV pv = new AlarmTreePV(parent, name, id);
-                pvs.put(name, pv);
+                final AlarmTreePV pv = new AlarmTreePV(parent, info.name, info.id);
+                pvs.put(info.name, pv);
+                new_pvs.put(info.id, pv);
                 // Periodically update progress monitor
                 if (monitor_update_delay.expired())
                 {
                     final int count = pvs.size();
                     monitor.subTask(NLS.bind(Messages.ReadConfigProgressFmt, count));
                 }
-                config_reader.configurePVfromResult(pv, result, severity_mapping, message_mapping);
-                item = pv;
+                pv.setDescription(info.description);
+                pv.setEnabled(info.enabled);
+                pv.setAnnunciating(info.annunciate);
+                pv.setLatching(info.latch);
+                pv.setDelay(info.delay);
+                pv.setCount(info.count);
+                pv.setFilter(info.filter);
+                configureFromSnapshot(pv, info);
+            }
+            else
+            {   // Component (area, system), not a PV
+                final AlarmTreeItem item = new AlarmTreeItem(parent, info.name, info.id);
+                configureFromSnapshot(item, info);
+                createChildren(item, snapshot, new_pvs, monitor, monitor_update_delay);
             }
-            if (config_time != null)
-                item.setConfigTime(TimestampHelper.toEPICSTime(config_time));
-            config_reader.readGuidanceDisplaysCommands(item);
         }
-        result.close();
-
-        // Recurse to children
-        // Cannot do that inside the above while() because that would reuse
-        // the statement of the current ResultSet
-        for (AlarmTreeItem item : recurse_items)
-            readChildren(item, monitor, monitor_update_delay);
-        recurse_items.clear();
     }
 
     /** Add a component to the model and RDB
@@ -533,16 +607,29 @@ public class AlarmConfiguration
             insert_auto_actions.close();
         }
 
-        // Update item's config time after RDB commit succeeded
+        // Update item's config time after RDB commit succeeded,
+        // using the time of the RDB
         final PreparedStatement    update_item_config_time = connection.prepareStatement(sql.update_item_config_time);
+        final PreparedStatement    sel_item_config_time = connection.prepareStatement(sql.sel_item_config_time);
         try
         {
-            final Timestamp config_time = new Timestamp(new Date().getTime());
-            update_item_config_time.setTimestamp(1, config_time);
-            update_item_config_time.setInt(2, item.getID());
+            update_item_config_time.setInt(1, item.getID());
             update_item_config_time.executeUpdate();
+            sel_item_config_time.setInt(1, item.getID());
+            Timestamp config_time = null;
+            final ResultSet result = sel_item_config_time.executeQuery();
+            try
+            {
+                if (result.next())
+                    config_time = result.getTimestamp(1);
+            }
+            finally
+            {
+                result.close();
+            }
             connection.commit();
-            item.setConfigTime(TimestampHelper.toEPICSTime(config_time));
+            if (config_time != null)
+                item.setConfigTime(TimestampHelper.toEPICSTime(config_time));
         }
         catch (SQLException ex)
         {
@@ -551,6 +638,7 @@ public class AlarmConfiguration
         }
         finally
         {
+            sel_item_config_time.close();
             update_item_config_time.close();
             connection.setAutoCommit(true);
         }
@@ -577,7 +665,6 @@ public class AlarmConfiguration
         final GDCDataStructure guidance[], final GDCDataStructure displays[],
         final GDCDataStructure commands[], final AADataStructure automated_actions[]) throws Exception
     {
-        configureItem(pv, guidance, displays, commands, automated_actions);
         rdb.getConnection().setAutoCommit(false);
         final PreparedStatement    update_pv_config_statement = rdb.getConnection().prepareStatement(sql.update_pv_config);
         try
@@ -603,6 +690,9 @@ public class AlarmConfiguration
             update_pv_config_statement.close();
             rdb.getConnection().setAutoCommit(true);
         }
+        // Configure item last because that updates the config time
+        // which invalidates configuration snapshots
+        configureItem(pv, guidance, displays, commands, automated_actions);
     }
 
     /** Change item's name
@@ -936,11 +1026,6 @@ public class AlarmConfiguration
     {
         try
         {
-            if (sel_items_by_parent_statement != null)
-            {
-                sel_items_by_parent_statement.close();
-                sel_items_by_parent_statement = null;
-            }
             if (sel_pv_by_id_statement != null)
             {
                 sel_pv_by_id_statement.close();
@@ -10,9 +10,12 @@ package org.csstudio.alarm.beast.client;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 
 import org.csstudio.alarm.beast.Activator;
@@ -216,6 +219,273 @@ public class AlarmConfigurationReader
         item.setAutomatedActions(readAutomatedActions(id));
     }
 
+    /** Read complete configuration
+     *
+     *  <p>Reads all items of all configurations, then their guidance,
+     *  displays, commands and automated actions,
+     *  each in one query instead of several queries per item.
+     *  Only the items below the root are kept.
+     *
+     *  @param root_name Name of root (i.e. configuration name)
+     *  @param root_id RDB ID of the root
+     *  @return {@link AlarmConfigurationSnapshot}
+     *  @throws Exception on error
+     */
+    public AlarmConfigurationSnapshot readSnapshot(final String root_name, final int root_id) throws Exception
+    {
+        final Statement statement = rdb.getConnection().createStatement();
+        try
+        {
+            // Read signature first.
+            // A concurrent change will then invalidate the snapshot on the next read
+            final AlarmConfigurationSnapshot snapshot = readSignature(statement, root_name, root_id);
+
+            // Collect all items by parent, then keep those in this configuration
+            final Map<Integer, List<AlarmConfigurationSnapshot.Item>> children =
+                new HashMap<Integer, List<AlarmConfigurationSnapshot.Item>>();
+            ResultSet result = statement.executeQuery(sql.sel_all_items);
+            while (result.next())
+            {
+                final int parent_id = result.getInt(18);
+                if (result.wasNull())
+                    continue; // Root of a configuration
+                final int id = result.getInt(1);
+                final String name = result.getString(17);
+                final Timestamp config_time = result.getTimestamp(2);
+                // Check PV's ID. If null, this is a component, not PV
+                result.getInt(3);
+                final boolean is_pv = ! result.wasNull();
+                final AlarmConfigurationSnapshot.Item item = new AlarmConfigurationSnapshot.Item(id, name,
+                        config_time == null ? null : TimestampHelper.toEPICSTime(config_time), is_pv);
+                if (is_pv)
+                {
+                    item.description = result.getString(4);
+                    item.enabled = result.getBoolean(5);
+                    item.annunciate = result.getBoolean(6);
+                    item.latch = result.getBoolean(7);
+                    item.delay = result.getInt(8);
+                    item.count = result.getInt(9);
+                    item.filter = result.getString(10);
+                }
+                List<AlarmConfigurationSnapshot.Item> siblings = children.get(parent_id);
+                if (siblings == null)
+                {
+                    siblings = new ArrayList<AlarmConfigurationSnapshot.Item>();
+                    children.put(parent_id, siblings);
+                }
+                siblings.add(item);
+            }
+            result.close();
+            addChildren(snapshot, root_id, children);
+
+            // GUI info, ordered by item
+            for (Map.Entry<Integer, GDCDataStructure[]> entry : readAllGDC(statement, sql.sel_all_guidance).entrySet())
+            {
+                final AlarmConfigurationSnapshot.Item item = snapshot.getItem(entry.getKey());
+                if (item != null)
+                    item.guidance = entry.getValue();
+            }
+            for (Map.Entry<Integer, GDCDataStructure[]> entry : readAllGDC(statement, sql.sel_all_displays).entrySet())
+            {
+                final AlarmConfigurationSnapshot.Item item = snapshot.getItem(entry.getKey());
+                if (item != null)
+                    item.displays = entry.getValue();
+            }
+            for (Map.Entry<Integer, GDCDataStructure[]> entry : readAllGDC(statement, sql.sel_all_commands).entrySet())
+            {
+                final AlarmConfigurationSnapshot.Item item = snapshot.getItem(entry.getKey());
+                if (item != null)
+                    item.commands = entry.getValue();
+            }
+
+            final Map<Integer, List<AADataStructure>> actions = new HashMap<Integer, List<AADataStructure>>();
+            result = statement.executeQuery(sql.sel_all_auto_actions);
+            while (result.next())
+            {
+                final int id = result.getInt(1);
+                if (snapshot.getItem(id) == null)
+                    continue;
+                List<AADataStructure> list = actions.get(id);
+                if (list == null)
+                {
+                    list = new ArrayList<AADataStructure>();
+                    actions.put(id, list);
+                }
+                list.add(new AADataStructure(result.getString(2), result.getString(3), result.getInt(4)));
+            }
+            result.close();
+            for (Map.Entry<Integer, List<AADataStructure>> entry : actions.entrySet())
+                snapshot.getItem(entry.getKey()).automated_actions =
+                    entry.getValue().toArray(new AADataStructure[entry.getValue().size()]);
+
+            return snapshot;
+        }
+        finally
+        {
+            statement.close();
+        }
+    }
+
+    /** Add items of the configuration to snapshot
+     *  @param snapshot Snapshot to update
+     *  @param parent_id Parent ID
+     *  @param children Items of all configurations by parent ID
+     */
+    private void addChildren(final AlarmConfigurationSnapshot snapshot, final int parent_id,
+            final Map<Integer, List<AlarmConfigurationSnapshot.Item>> children)
+    {
+        final List<AlarmConfigurationSnapshot.Item> items = children.get(parent_id);
+        if (items == null)
+            return;
+        for (AlarmConfigurationSnapshot.Item item : items)
+        {
+            snapshot.add(parent_id, item);
+            if (! item.is_pv)
+                addChildren(snapshot, item.id, children);
+        }
+    }
+
+    /** Read guidance, displays or commands of all items
+     *  @param statement Statement to use
+     *  @param query Query for COMPONENT_ID, TITLE, DETAIL, ordered by ID
+     *  @return GUI info by item ID
+     *  @throws Exception on error
+     */
+    private Map<Integer, GDCDataStructure[]> readAllGDC(final Statement statement, final String query) throws Exception
+    {
+        final Map<Integer, GDCDataStructure[]> gdcs = new HashMap<Integer, GDCDataStructure[]>();
+        final List<GDCDataStructure> gdcList = new ArrayList<GDCDataStructure>();
+        int last_id = -1;
+        final ResultSet result = statement.executeQuery(query);
+        while (result.next())
+        {
+            final int id = result.getInt(1);
+            if (id != last_id  &&  gdcList.size() > 0)
+            {
+                gdcs.put(last_id, gdcList.toArray(new GDCDataStructure[gdcList.size()]));
+                gdcList.clear();
+            }
+            last_id = id;
+            final String title = result.getString(2);
+            final String details = result.getString(3);
+            gdcList.add(new GDCDataStructure(title, details));
+        }
+        result.close();
+        if (gdcList.size() > 0)
+            gdcs.put(last_id, gdcList.toArray(new GDCDataStructure[gdcList.size()]));
+        return gdcs;
+    }
+
+    /** Read configuration signature
+     *  @param statement Statement to use
+     *  @param root_name Name of root (i.e. configuration name)
+     *  @param root_id RDB ID of the root
+     *  @return Empty {@link AlarmConfigurationSnapshot} with current signature
+     *  @throws Exception on error
+     */
+    private AlarmConfigurationSnapshot readSignature(final Statement statement,
+            final String root_name, final int root_id) throws Exception
+    {
+        final ResultSet result = statement.executeQuery(sql.sel_config_signature);
+        try
+        {
+            long count = 0, checksum = 0;
+            while (result.next())
+            {
+                ++count;
+                checksum += AlarmConfigurationSnapshot.checksum(result.getInt(1),
+                        result.getInt(2), result.getString(3), result.getTimestamp(4));
+            }
+            return new AlarmConfigurationSnapshot(root_name, root_id, count, checksum);
+        }
+        finally
+        {
+            result.close();
+        }
+    }
+
+    /** Check if snapshot matches the configuration in the RDB
+     *  @param snapshot Snapshot, for example one that was read from a file
+     *  @return <code>true</code> if the configuration in the RDB has not changed
+     *  @throws Exception on error
+     */
+    public boolean isCurrent(final AlarmConfigurationSnapshot snapshot) throws Exception
+    {
+        final Statement statement = rdb.getConnection().createStatement();
+        try
+        {
+            return readSignature(statement, snapshot.getRootName(), snapshot.getRootID())
+                    .hasSameSignature(snapshot);
+        }
+        finally
+        {
+            statement.close();
+        }
+    }
+
+    /** Read alarm state and enablement of all PVs
+     *  <p>
+     *  The enablement is updated by the alarm server
+     *  without changing the configuration signature,
+     *  so the value from a configuration snapshot might be stale.
+     *
+     *  @param pvs PVs by RDB ID. PVs in the RDB that are not in this map are ignored.
+     *  @param severity_mapping
+     *  @param message_mapping
+     *  @throws Exception on error
+     */
+    public void readAlarmStates(final Map<Integer, AlarmTreePV> pvs,
+            final SeverityReader severity_mapping, final MessageReader message_mapping) throws Exception
+    {
+        final Statement statement = rdb.getConnection().createStatement();
+        try
+        {
+            final ResultSet result = statement.executeQuery(sql.sel_all_pv_states);
+            while (result.next())
+            {
+                final AlarmTreePV pv = pvs.get(result.getInt(1));
+                if (pv == null)
+                    continue;
+                pv.setEnabled(result.getBoolean(8));
+                // Like configurePVfromResult():
+                // If there is severity/status info, use it.
+                // Otherwise leave PV "OK" as it was initialized.
+                int severity_id = result.getInt(2);
+                final SeverityLevel current_severity = result.wasNull()
+                    ? SeverityLevel.OK
+                    : severity_mapping.getSeverity(severity_id);
+
+                int status_id = result.getInt(3);
+                final String current_message = result.wasNull()
+                    ? ""
+                    : message_mapping.getMessage(status_id);
+
+                severity_id = result.getInt(4);
+                final SeverityLevel severity = result.wasNull()
+                    ? SeverityLevel.OK
+                    : severity_mapping.getSeverity(severity_id);
+
+                status_id = result.getInt(5);
+                final String message =  result.wasNull()
+                    ? ""
+                    : message_mapping.getMessage(status_id);
+
+                final String value = result.getString(6); // OK to have null value
+                final Timestamp sql_time = result.getTimestamp(7);
+                if (!result.wasNull())
+                {
+                    final org.epics.util.time.Timestamp timestamp = TimestampHelper.toEPICSTime(sql_time);
+                    pv.setAlarmState(current_severity, current_message, severity, message, value, timestamp);
+                }
+            }
+            result.close();
+        }
+        finally
+        {
+            statement.close();
+        }
+    }
+
     /** Read alarm tree component or PV.
      *  Does <u>not</u> initialize the GUI info nor alarm state
      *  @param name Name of item
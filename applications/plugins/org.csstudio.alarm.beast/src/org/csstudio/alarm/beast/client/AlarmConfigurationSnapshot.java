@@ -0,0 +1,426 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Oak Ridge National Laboratory.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.alarm.beast.client;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.epics.util.time.Timestamp;
+
+/** Snapshot of an alarm configuration: Hierarchy, PV settings,
+ *  guidance, displays, commands and automated actions,
+ *  but not the alarm state.
+ *  The PV enablement in the snapshot may be stale because
+ *  the alarm server changes it without updating the
+ *  configuration time, so it is read again with the alarm state.
+ *  <p>
+ *  Read from the RDB in a few queries for all items,
+ *  and can be saved to a local file.
+ *  A saved snapshot remains valid as long as the configuration
+ *  signature, i.e. the number of items in the RDB and a checksum
+ *  of their ID, parent, name and configuration time, doesn't change.
+ *
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class AlarmConfigurationSnapshot
+{
+    /** Version of the file format */
+    final private static int VERSION = 2;
+
+    /** Start of the file */
+    final private static int MAGIC = 0x42454153; // "BEAS"
+
+    final private static Charset UTF8 = Charset.forName("UTF-8");
+
+    final private static GDCDataStructure[] NO_GDC = new GDCDataStructure[0];
+
+    final private static AADataStructure[] NO_AA = new AADataStructure[0];
+
+    /** Configuration of one component or PV */
+    static class Item
+    {
+        final int id;
+        final String name;
+        /** Time of last configuration change, may be <code>null</code> */
+        final Timestamp config_time;
+        final boolean is_pv;
+        String description;
+        boolean enabled, annunciate, latch;
+        int delay, count;
+        String filter;
+        GDCDataStructure[] guidance = NO_GDC;
+        GDCDataStructure[] displays = NO_GDC;
+        GDCDataStructure[] commands = NO_GDC;
+        AADataStructure[] automated_actions = NO_AA;
+
+        Item(final int id, final String name, final Timestamp config_time, final boolean is_pv)
+        {
+            this.id = id;
+            this.name = name;
+            this.config_time = config_time;
+            this.is_pv = is_pv;
+        }
+    }
+
+    final private String root_name;
+    final private int root_id;
+    final private long item_count;
+    final private long checksum;
+
+    /** Items by ID, including the root */
+    final private Map<Integer, Item> items = new HashMap<>();
+
+    /** Items by parent ID, each list in the order of the RDB IDs */
+    final private Map<Integer, List<Item>> children = new HashMap<>();
+
+    /** Initialize empty snapshot
+     *  @param root_name Name of the configuration
+     *  @param root_id RDB ID of the root element
+     *  @param item_count Number of items in RDB
+     *  @param checksum Sum of the {@link #checksum} of all items in the RDB
+     */
+    AlarmConfigurationSnapshot(final String root_name, final int root_id,
+            final long item_count, final long checksum)
+    {
+        this.root_name = root_name;
+        this.root_id = root_id;
+        this.item_count = item_count;
+        this.checksum = checksum;
+        items.put(root_id, new Item(root_id, root_name, null, false));
+    }
+
+    /** @return Name of the configuration */
+    public String getRootName()
+    {
+        return root_name;
+    }
+
+    /** @return RDB ID of the root element */
+    public int getRootID()
+    {
+        return root_id;
+    }
+
+    /** @return Number of components and PVs, not counting the root */
+    public int size()
+    {
+        return items.size() - 1;
+    }
+
+    /** Compute checksum of one item in the RDB
+     *  <p>
+     *  The checksums of all items are added up,
+     *  so the result does not depend on the order in which
+     *  items are read.
+     *  Each value is mixed into all bits of the checksum,
+     *  so a change in any item is very likely to change the sum,
+     *  unlike for example the most recent configuration time.
+     *
+     *  @param id RDB ID
+     *  @param parent_id RDB ID of parent, 0 for root
+     *  @param name Name
+     *  @param config_time Configuration time, may be <code>null</code>
+     *  @return Checksum of the item
+     */
+    static long checksum(final int id, final int parent_id, final String name,
+            final java.sql.Timestamp config_time)
+    {
+        long hash = mix(id);
+        hash = mix(hash + parent_id);
+        hash = mix(hash + (name == null ? 0 : name.hashCode()));
+        if (config_time != null)
+        {
+            hash = mix(hash + config_time.getTime());
+            hash = mix(hash + config_time.getNanos());
+        }
+        return hash;
+    }
+
+    /** @param value Value
+     *  @return Value with bits mixed, see finalizer of MurmurHash3
+     */
+    private static long mix(long value)
+    {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+
+    /** @param other Other snapshot
+     *  @return <code>true</code> if both snapshots were read with the same configuration signature
+     */
+    boolean hasSameSignature(final AlarmConfigurationSnapshot other)
+    {
+        return item_count == other.item_count  &&  checksum == other.checksum;
+    }
+
+    /** @param parent_id RDB ID of an item already in the snapshot
+     *  @param item Item to add to that parent
+     */
+    void add(final int parent_id, final Item item)
+    {
+        items.put(item.id, item);
+        List<Item> siblings = children.get(parent_id);
+        if (siblings == null)
+        {
+            siblings = new ArrayList<>();
+            children.put(parent_id, siblings);
+        }
+        siblings.add(item);
+    }
+
+    /** @param id RDB ID
+     *  @return Item or <code>null</code> if not part of this configuration
+     */
+    Item getItem(final int id)
+    {
+        return items.get(id);
+    }
+
+    /** @param id RDB ID of parent
+     *  @return Child items, may be empty
+     */
+    List<Item> getChildren(final int id)
+    {
+        final List<Item> result = children.get(id);
+        if (result == null)
+            return Collections.emptyList();
+        return result;
+    }
+
+    /** Write snapshot to file
+     *  <p>
+     *  Writes a temporary file which then replaces the existing snapshot,
+     *  so readers never see a partially written file.
+     *
+     *  @param file File to write
+     *  @throws IOException on error
+     */
+    public void write(final File file) throws IOException
+    {
+        final File tmp = new File(file.getPath() + ".tmp");
+        final DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp)));
+        try
+        {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeString(out, root_name);
+            out.writeInt(root_id);
+            out.writeLong(item_count);
+            out.writeLong(checksum);
+            writeGUIInfo(out, items.get(root_id));
+            writeChildren(out, root_id);
+        }
+        finally
+        {
+            out.close();
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /** Write children of an item, recursing into their sub-trees
+     *  @param out Output
+     *  @param parent_id Parent ID
+     *  @throws IOException on error
+     */
+    private void writeChildren(final DataOutputStream out, final int parent_id) throws IOException
+    {
+        final List<Item> siblings = getChildren(parent_id);
+        out.writeInt(siblings.size());
+        for (Item item : siblings)
+        {
+            out.writeInt(item.id);
+            writeString(out, item.name);
+            writeTime(out, item.config_time);
+            out.writeBoolean(item.is_pv);
+            if (item.is_pv)
+            {
+                writeString(out, item.description);
+                out.writeBoolean(item.enabled);
+                out.writeBoolean(item.annunciate);
+                out.writeBoolean(item.latch);
+                out.writeInt(item.delay);
+                out.writeInt(item.count);
+                writeString(out, item.filter);
+            }
+            writeGUIInfo(out, item);
+            writeChildren(out, item.id);
+        }
+    }
+
+    private static void writeGUIInfo(final DataOutputStream out, final Item item) throws IOException
+    {
+        writeGDC(out, item.guidance);
+        writeGDC(out, item.displays);
+        writeGDC(out, item.commands);
+        out.writeInt(item.automated_actions.length);
+        for (AADataStructure aa : item.automated_actions)
+        {
+            writeString(out, aa.getTitle());
+            writeString(out, aa.getDetails());
+            out.writeInt(aa.getDelay());
+        }
+    }
+
+    private static void writeGDC(final DataOutputStream out, final GDCDataStructure[] gdcs) throws IOException
+    {
+        out.writeInt(gdcs.length);
+        for (GDCDataStructure gdc : gdcs)
+        {
+            writeString(out, gdc.getTitle());
+            writeString(out, gdc.getDetails());
+        }
+    }
+
+    private static void writeTime(final DataOutputStream out, final Timestamp time) throws IOException
+    {
+        out.writeBoolean(time != null);
+        if (time != null)
+        {
+            out.writeLong(time.getSec());
+            out.writeInt(time.getNanoSec());
+        }
+    }
+
+    /** Write string as UTF-8 bytes. Unlike writeUTF, this has no 64k limit.
+     *  @param out Output
+     *  @param text Text, may be <code>null</code>
+     *  @throws IOException on error
+     */
+    private static void writeString(final DataOutputStream out, final String text) throws IOException
+    {
+        if (text == null)
+        {
+            out.writeInt(-1);
+            return;
+        }
+        final byte[] bytes = text.getBytes(UTF8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /** Read snapshot from file
+     *  @param file File to read
+     *  @return {@link AlarmConfigurationSnapshot}
+     *  @throws Exception on error, including files written by a different version
+     */
+    public static AlarmConfigurationSnapshot read(final File file) throws Exception
+    {
+        final DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)));
+        try
+        {
+            if (in.readInt() != MAGIC)
+                throw new Exception("No alarm configuration snapshot: " + file);
+            final int version = in.readInt();
+            if (version != VERSION)
+                throw new Exception("Cannot read alarm configuration snapshot version " + version + " from " + file);
+            final String root_name = readString(in);
+            final int root_id = in.readInt();
+            final long item_count = in.readLong();
+            final long checksum = in.readLong();
+            final AlarmConfigurationSnapshot snapshot =
+                new AlarmConfigurationSnapshot(root_name, root_id, item_count, checksum);
+            readGUIInfo(in, snapshot.getItem(root_id));
+            snapshot.readChildren(in, root_id);
+            return snapshot;
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    private void readChildren(final DataInputStream in, final int parent_id) throws IOException
+    {
+        final int count = in.readInt();
+        for (int i=0; i<count; ++i)
+        {
+            final int id = in.readInt();
+            final String name = readString(in);
+            final Timestamp config_time = readTime(in);
+            final Item item = new Item(id, name, config_time, in.readBoolean());
+            if (item.is_pv)
+            {
+                item.description = readString(in);
+                item.enabled = in.readBoolean();
+                item.annunciate = in.readBoolean();
+                item.latch = in.readBoolean();
+                item.delay = in.readInt();
+                item.count = in.readInt();
+                item.filter = readString(in);
+            }
+            readGUIInfo(in, item);
+            add(parent_id, item);
+            readChildren(in, id);
+        }
+    }
+
+    private static void readGUIInfo(final DataInputStream in, final Item item) throws IOException
+    {
+        item.guidance = readGDC(in);
+        item.displays = readGDC(in);
+        item.commands = readGDC(in);
+        final AADataStructure[] aas = new AADataStructure[in.readInt()];
+        for (int i=0; i<aas.length; ++i)
+        {
+            final String title = readString(in);
+            final String details = readString(in);
+            aas[i] = new AADataStructure(title, details, in.readInt());
+        }
+        item.automated_actions = aas;
+    }
+
+    private static GDCDataStructure[] readGDC(final DataInputStream in) throws IOException
+    {
+        final GDCDataStructure[] gdcs = new GDCDataStructure[in.readInt()];
+        for (int i=0; i<gdcs.length; ++i)
+        {
+            final String title = readString(in);
+            gdcs[i] = new GDCDataStructure(title, readString(in));
+        }
+        return gdcs;
+    }
+
+    private static Timestamp readTime(final DataInputStream in) throws IOException
+    {
+        if (! in.readBoolean())
+            return null;
+        final long secs = in.readLong();
+        return Timestamp.of(secs, in.readInt());
+    }
+
+    private static String readString(final DataInputStream in) throws IOException
+    {
+        final int length = in.readInt();
+        if (length < 0)
+            return null;
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, UTF8);
+    }
+}
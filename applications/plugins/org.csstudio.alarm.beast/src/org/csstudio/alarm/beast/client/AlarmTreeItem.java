@@ -9,9 +9,10 @@ package org.csstudio.alarm.beast.client;
 
 import java.io.PrintStream;
 import java.io.PrintWriter;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.Set;
 
 import org.csstudio.alarm.beast.Messages;
 import org.csstudio.alarm.beast.SeverityLevel;
@@ -23,6 +24,12 @@ import org.eclipse.osgi.util.NLS;
 import org.epics.util.time.Timestamp;
 
 /** Base class for items in the <u>client's</u> alarm configuration tree.
+ *  <p>
+ *  Each item keeps count of the severities of its child items.
+ *  When a child changes its alarm state, only the counts for the
+ *  old and new severity of that child are updated,
+ *  and the parent is informed if that changed the
+ *  severity or message of the item.
  *  <p>
  *  Basic hierarchy:
  *  <ul>
@@ -38,8 +45,40 @@ import org.epics.util.time.Timestamp;
  */
 public class AlarmTreeItem extends TreeItem
 {
-    /** Sub-tree elements of this item which are currently in alarm */
-    final private List<AlarmTreeItem> alarm_children = new ArrayList<AlarmTreeItem>();
+    /** Severity levels, indexed by ordinal */
+    final private static SeverityLevel[] LEVELS = SeverityLevel.values();
+
+    /** Sub-tree elements of this item which are currently in alarm,
+     *  in the order in which they entered the alarm state
+     */
+    final private Set<AlarmTreeItem> alarm_children = new LinkedHashSet<AlarmTreeItem>();
+
+    /** Array of the alarm_children for access by index,
+     *  <code>null</code> when it needs to be re-created
+     */
+    private AlarmTreeItem[] alarm_child_array = null;
+
+    /** Number of child elements by their current severity.
+     *  Index is the severity's ordinal, OK is not counted.
+     *  <code>null</code> until a child reports a current severity.
+     */
+    private int[] current_counts = null;
+
+    /** Child elements by their latched severity.
+     *  OK is not listed.
+     *  <code>null</code> until a child reports an alarm.
+     */
+    private EnumMap<SeverityLevel, Set<AlarmTreeItem>> severity_children = null;
+
+    /** Current severity of this item as counted by the parent.
+     *  <br><b>SYNC:</b> Access needs to synchronize on the parent
+     */
+    private SeverityLevel counted_current_severity = SeverityLevel.OK;
+
+    /** Latched severity of this item as counted by the parent.
+     *  <br><b>SYNC:</b> Access needs to synchronize on the parent
+     */
+    private SeverityLevel counted_severity = SeverityLevel.OK;
 
     // Using arrays for guidance, ..., commands to be thread-safe
 
@@ -237,7 +276,11 @@ public class AlarmTreeItem extends TreeItem
      */
     public synchronized AlarmTreeItem getAlarmChild(final int index)
     {
-        return alarm_children.get(index);
+        // Array is re-created after changes, so a tree viewer that
+        // fetches all children by index doesn't iterate the set each time
+        if (alarm_child_array == null)
+            alarm_child_array = alarm_children.toArray(new AlarmTreeItem[alarm_children.size()]);
+        return alarm_child_array[index];
     }
 
     /** @return Current severity */
@@ -278,7 +321,7 @@ public class AlarmTreeItem extends TreeItem
         this.message = message;
         final AlarmTreeItem parent = getParent();
         if (parent != null)
-            parent.maximizeSeverity();
+            parent.updateChild(this);
         return true;
     }
 
@@ -310,47 +353,150 @@ public class AlarmTreeItem extends TreeItem
 
     /** Set severity/status of this item by maximizing over its child
      *  severities.
-     *  Recursively updates parent items.
+     *  <p>
+     *  Counts the severities of all child elements.
+     *  Only needed when a child changed its severity without
+     *  calling <code>setAlarmState</code>, for example when
+     *  a PV was disabled.
+     *  Updates parent items if the severity/status of this item changed.
      */
     public synchronized void maximizeSeverity()
     {
-    	// Get maximum child severity and its status
-    	SeverityLevel new_current_severity = SeverityLevel.OK;
-    	SeverityLevel new_severity = SeverityLevel.OK;
-        String new_message = SeverityLevel.OK.getDisplayName();
+        current_counts = null;
+        severity_children = null;
         alarm_children.clear();
+        alarm_child_array = null;
         final int n = getChildCount();
         for (int i=0; i<n; ++i)
         {
             final AlarmTreeItem child = getChild(i);
-            // Maximize 'current' severity
-            if (child.getCurrentSeverity().ordinal() > new_current_severity.ordinal())
-            	new_current_severity = child.getCurrentSeverity();
-            // Maximize latched severity/status
-            final SeverityLevel child_sevr = child.getSeverity();
-            final int level = child_sevr.ordinal();
-            if (level > 0)
+            child.counted_current_severity = SeverityLevel.OK;
+            child.counted_severity = SeverityLevel.OK;
+            countChild(child);
+        }
+        updateFromCounts();
+    }
+
+    /** Update severity/status of this item after a child changed its alarm state.
+     *  Updates parent items if the severity/status of this item changed.
+     *  @param child Child item with new alarm state
+     */
+    protected synchronized void updateChild(final AlarmTreeItem child)
+    {
+        countChild(child);
+        updateFromCounts();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected synchronized void childRemoved(final TreeItem child)
+    {
+        final AlarmTreeItem item = (AlarmTreeItem) child;
+        if (current_counts != null  &&  item.counted_current_severity != SeverityLevel.OK)
+            --current_counts[item.counted_current_severity.ordinal()];
+        if (item.counted_severity != SeverityLevel.OK)
+        {
+            severity_children.get(item.counted_severity).remove(item);
+            alarm_children.remove(item);
+            alarm_child_array = null;
+        }
+        item.counted_current_severity = SeverityLevel.OK;
+        item.counted_severity = SeverityLevel.OK;
+        updateFromCounts();
+    }
+
+    /** Update the counts for the current alarm state of a child
+     *  @param child Child item
+     */
+    private void countChild(final AlarmTreeItem child)
+    {
+        final SeverityLevel old_current = child.counted_current_severity;
+        final SeverityLevel new_current = child.getCurrentSeverity();
+        if (old_current != new_current)
+        {
+            if (current_counts == null)
+                current_counts = new int[LEVELS.length];
+            if (old_current != SeverityLevel.OK)
+                --current_counts[old_current.ordinal()];
+            if (new_current != SeverityLevel.OK)
+                ++current_counts[new_current.ordinal()];
+            child.counted_current_severity = new_current;
+        }
+
+        final SeverityLevel old_severity = child.counted_severity;
+        final SeverityLevel new_severity = child.getSeverity();
+        if (old_severity != new_severity)
+        {
+            if (severity_children == null)
+                severity_children = new EnumMap<SeverityLevel, Set<AlarmTreeItem>>(SeverityLevel.class);
+            if (old_severity == SeverityLevel.OK)
+            {
                 alarm_children.add(child);
-            if (level > new_severity.ordinal())
+                alarm_child_array = null;
+            }
+            else
+                severity_children.get(old_severity).remove(child);
+            if (new_severity == SeverityLevel.OK)
+            {
+                alarm_children.remove(child);
+                alarm_child_array = null;
+            }
+            else
             {
-            	new_severity = child_sevr;
-            	new_message = child.getMessage();
+                Set<AlarmTreeItem> children = severity_children.get(new_severity);
+                if (children == null)
+                {
+                    children = new LinkedHashSet<AlarmTreeItem>();
+                    severity_children.put(new_severity, children);
+                }
+                children.add(child);
             }
+            child.counted_severity = new_severity;
         }
+    }
 
-        if (new_current_severity != current_severity  ||
-            new_severity != severity  ||
-            !new_message.equals(message))
-        {
-            current_severity = new_current_severity;
-            severity = new_severity;
-            message = new_message;
-        }
+    /** Set severity/status of this item from the child counts.
+     *  The message is taken from the first child that reached
+     *  the highest severity.
+     *  Updates parent items if the severity/status of this item changed.
+     */
+    private void updateFromCounts()
+    {
+        SeverityLevel new_current_severity = SeverityLevel.OK;
+        if (current_counts != null)
+            for (int level=LEVELS.length-1; level>0; --level)
+                if (current_counts[level] > 0)
+                {
+                    new_current_severity = LEVELS[level];
+                    break;
+                }
+
+        SeverityLevel new_severity = SeverityLevel.OK;
+        String new_message = SeverityLevel.OK.getDisplayName();
+        if (severity_children != null)
+            for (int level=LEVELS.length-1; level>0; --level)
+            {
+                final Set<AlarmTreeItem> children = severity_children.get(LEVELS[level]);
+                if (children != null  &&  !children.isEmpty())
+                {
+                    new_severity = LEVELS[level];
+                    new_message = children.iterator().next().getMessage();
+                    break;
+                }
+            }
+
+        if (new_current_severity == current_severity  &&
+            new_severity == severity  &&
+            new_message.equals(message))
+            return;
+        current_severity = new_current_severity;
+        severity = new_severity;
+        message = new_message;
 
         // Percolate changes towards root
         final AlarmTreeItem parent = getParent();
         if (parent != null)
-            parent.maximizeSeverity();
+            parent.updateChild(this);
     }
 
     /** {@inheritDoc} */
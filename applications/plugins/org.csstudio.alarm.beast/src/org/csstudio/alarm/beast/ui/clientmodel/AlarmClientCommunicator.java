@@ -8,6 +8,7 @@
 package org.csstudio.alarm.beast.ui.clientmodel;
 
 import java.net.InetAddress;
+import java.util.List;
 import java.util.logging.Level;
 
 import javax.jms.MapMessage;
@@ -70,6 +71,29 @@ class AlarmClientCommunicator extends JMSCommunicationWorkQueueThread
         }
     }
 
+    /** Action to update the state of several PVs */
+    private class BatchUpdateAction implements Runnable
+    {
+        final private List<AlarmUpdateInfo> infos;
+
+        public BatchUpdateAction(final List<AlarmUpdateInfo> infos)
+        {
+            this.infos = infos;
+        }
+
+        @Override
+        public void run()
+        {
+            model.updatePVs(infos);
+        }
+
+        @Override
+        public String toString()
+        {
+            return "Update " + infos.size() + " PVs";
+        }
+    }
+
     /** Action to enable/disable a PV */
     private class EnableAction implements Runnable
     {
@@ -369,6 +393,19 @@ class AlarmClientCommunicator extends JMSCommunicationWorkQueueThread
                 action = new UpdateAction(AlarmUpdateInfo.fromMapMessage(message));
                 model.updateServerState(true);
             }
+            // State changes of several PVs?
+            else if (JMSAlarmMessage.TEXT_STATES.equals(text))
+            {
+                timeout_timer.reset();
+                action = new BatchUpdateAction(AlarmUpdateInfo.fromBatchMessage(message));
+                model.updateServerState(false);
+            }
+            else if (JMSAlarmMessage.TEXT_STATES_MAINTENANCE.equals(text))
+            {
+                timeout_timer.reset();
+                action = new BatchUpdateAction(AlarmUpdateInfo.fromBatchMessage(message));
+                model.updateServerState(true);
+            }
             // Idle messages in absence of 'real' traffic?
             else if (JMSAlarmMessage.TEXT_IDLE.equals(text))
             {
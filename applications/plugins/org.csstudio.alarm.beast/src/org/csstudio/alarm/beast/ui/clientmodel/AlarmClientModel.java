@@ -8,6 +8,8 @@
 package org.csstudio.alarm.beast.ui.clientmodel;
 
 import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -122,6 +124,22 @@ public class AlarmClientModel
     /** Send events? */
     private boolean notify_listeners = true;
 
+    /** Thread that applies a batch of PV updates, <code>null</code> if none.
+     *  Events from that thread are collected in <code>batch_pvs</code>.
+     *  <br><b>SYNC:</b> Access needs to synchronize on <code>this</code>
+     */
+    private Thread batch_thread = null;
+
+    /** PVs that changed in the current batch
+     *  <br><b>SYNC:</b> Access needs to synchronize on <code>this</code>
+     */
+    final private Set<AlarmTreePV> batch_pvs = new LinkedHashSet<>();
+
+    /** Did the current batch change any parent items?
+     *  <br><b>SYNC:</b> Access needs to synchronize on <code>this</code>
+     */
+    private boolean batch_parent_changed = false;
+
     /** @return <code>true</code> for read-only model */
     final private boolean allow_write = ! Preferences.isReadOnly();
 
@@ -931,6 +949,55 @@ public class AlarmClientModel
             "Received update for unknown PV {0}", name);
     }
 
+    /** Update the state of several PVs in model.
+     *  <p>
+     *  Listeners receive one event for the whole batch:
+     *  The PV if only one PV changed, otherwise <code>null</code>.
+     *  An {@link AlarmClientModelPVListener} receives an event for each changed PV.
+     *  <p>
+     *  Called by AlarmUpdateCommunicator, i.e. from JMS thread.
+     *
+     *  @param infos Alarm update info for each PV
+     */
+    void updatePVs(final List<AlarmUpdateInfo> infos)
+    {
+        synchronized (this)
+        {
+            batch_thread = Thread.currentThread();
+        }
+        final AlarmTreePV[] changed;
+        final boolean parent_changed, notify;
+        try
+        {
+            for (AlarmUpdateInfo info : infos)
+                updatePV(info);
+        }
+        finally
+        {
+            synchronized (this)
+            {
+                batch_thread = null;
+                changed = batch_pvs.toArray(new AlarmTreePV[batch_pvs.size()]);
+                parent_changed = batch_parent_changed;
+                batch_pvs.clear();
+                batch_parent_changed = false;
+                notify = notify_listeners;
+            }
+        }
+        if (! notify  ||  changed.length == 0)
+            return;
+        for (AlarmClientModelListener listener : listeners)
+        {
+            if (changed.length == 1)
+                notifyListener(listener, changed[0], parent_changed);
+            else if (listener instanceof AlarmClientModelPVListener)
+                for (AlarmTreePV pv : changed)
+                    notifyListener(listener, pv, parent_changed);
+            else
+                notifyListener(listener, null, parent_changed);
+        }
+    }
+
     /** Locate PV by name
      *  @param name Name of PV to locate. May be <code>null</code>.
      *  @return PV or <code>null</code> when not found
@@ -1066,19 +1133,34 @@ public class AlarmClientModel
                 }
                 if (!notify_listeners )
                     return;
+                if (batch_thread == Thread.currentThread())
+                {   // Notify once for the whole batch
+                    batch_pvs.add(pv);
+                    batch_parent_changed |= parent_changed;
+                    return;
+                }
             }
         }
         for (AlarmClientModelListener listener : listeners)
+            notifyListener(listener, pv, parent_changed);
+    }
+
+    /** Notify one listener of new alarm state
+     *  @param listener Listener
+     *  @param pv PV that changed state or <code>null</code>
+     *  @param parent_changed true if a parent item was updated as well
+     */
+    private void notifyListener(final AlarmClientModelListener listener,
+            final AlarmTreePV pv, final boolean parent_changed)
+    {
+        try
         {
-            try
-            {
-                listener.newAlarmState(this, pv, parent_changed);
-            }
-            catch (Throwable ex)
-            {
-                Activator.getLogger().log(Level.WARNING,
-                    "Alarm update notification error", ex);
-            }
+            listener.newAlarmState(this, pv, parent_changed);
+        }
+        catch (Throwable ex)
+        {
+            Activator.getLogger().log(Level.WARNING,
+                "Alarm update notification error", ex);
         }
     }
 
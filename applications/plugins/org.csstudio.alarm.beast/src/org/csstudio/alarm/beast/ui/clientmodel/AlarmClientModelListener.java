@@ -12,6 +12,7 @@ import org.csstudio.alarm.beast.client.AlarmTreePV;
 /** Listener to the AlarmClientModel.
  *
  *  @see AlarmClientModelConfigListener
+ *  @see AlarmClientModelPVListener
  *  @author Kay Kasemir
  */
 public interface AlarmClientModelListener extends AlarmClientModelConfigListener
@@ -38,7 +39,8 @@ public interface AlarmClientModelListener extends AlarmClientModelConfigListener
      *  <p>
      *  Typically, this is invoked with the PV that changed state.
      *  May be called with a <code>null</code> PV
-     *  to indicate that messages were received after a server timeout.
+     *  to indicate that messages were received after a server timeout,
+     *  or that the state of several PVs changed.
      *  <p>
      *  May originate from non-UI thread
      *
@@ -0,0 +1,23 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Oak Ridge National Laboratory.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.alarm.beast.ui.clientmodel;
+
+/** Listener to the AlarmClientModel that needs
+ *  a {@link #newAlarmState} notification for each PV.
+ *  <p>
+ *  When the model receives state updates for several PVs
+ *  in one message, other listeners receive a single notification
+ *  with a <code>null</code> PV.
+ *  This listener receives a notification for each PV that changed.
+ *
+ *  @author Kay Kasemir
+ */
+public interface AlarmClientModelPVListener extends AlarmClientModelListener
+{
+    // No additional methods
+}
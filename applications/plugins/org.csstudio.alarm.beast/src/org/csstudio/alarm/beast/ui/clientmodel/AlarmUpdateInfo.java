@@ -9,13 +9,16 @@ package org.csstudio.alarm.beast.ui.clientmodel;
 
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.logging.Level;
 
 import javax.jms.MapMessage;
 
 import org.csstudio.alarm.beast.Activator;
 import org.csstudio.alarm.beast.JMSAlarmMessage;
+import org.csstudio.alarm.beast.JMSAlarmStateBatch;
 import org.csstudio.alarm.beast.SeverityLevel;
 import org.csstudio.logging.JMSLogMessage;
 import org.epics.util.time.Timestamp;
@@ -66,6 +69,32 @@ public class AlarmUpdateInfo
                 severity, status, value, timestamp);
     }
 
+    /** Initialize from JMS MapMessage with several updates
+     *  @param message {@link JMSAlarmMessage#TEXT_STATES} message
+     *  @return {@link AlarmUpdateInfo} for each update in the message
+     *  @throws Exception on error in JMS access or decoding of received data
+     */
+    public static List<AlarmUpdateInfo> fromBatchMessage(final MapMessage message)
+            throws Exception
+    {
+        final List<AlarmUpdateInfo> updates = new ArrayList<>();
+        JMSAlarmStateBatch.decode(message.getBytes(JMSAlarmMessage.UPDATES),
+                                  new JMSAlarmStateBatch.Handler()
+        {
+            @Override
+            public void handleUpdate(final String name,
+                    final String current_severity, final String current_message,
+                    final String severity, final String message,
+                    final String value, final Timestamp timestamp) throws Exception
+            {
+                updates.add(new AlarmUpdateInfo(name,
+                        SeverityLevel.parse(current_severity), current_message,
+                        SeverityLevel.parse(severity), message, value, timestamp));
+            }
+        });
+        return updates;
+    }
+
     /** Initialize from pieces
      *  @param name_or_path
      *  @param current_severity
@@ -0,0 +1,73 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.archive.engine.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/** JUnit test of the {@link AdaptiveWriteControl}
+ *  @author Kay Kasemir
+ */
+public class AdaptiveWriteControlUnitTest
+{
+    @Test
+    public void testWritePeriod()
+    {
+        final AdaptiveWriteControl control =
+            new AdaptiveWriteControl(5000, 60000, 100, 5000, 30000, 500);
+        // Overruns reduce the period, down to the minimum
+        control.update(0.1, 10, 1, 0, 10);
+        assertEquals(15000, control.getDelay());
+        control.update(0.9, 0, 1, 0, 10);
+        assertEquals(7500, control.getDelay());
+        control.update(0.9, 0, 1, 0, 10);
+        control.update(0.9, 0, 1, 0, 10);
+        assertEquals(5000, control.getDelay());
+        // Moderate fill keeps the period
+        control.update(0.4, 0, 1, 0, 10);
+        assertEquals(5000, control.getDelay());
+        // Low fill slowly grows it, up to the maximum
+        control.update(0.0, 0, 1, 0, 10);
+        assertEquals(6250, control.getDelay());
+        for (int i=0; i<100; ++i)
+            control.update(0.0, 0, 1, 0, 10);
+        assertEquals(60000, control.getDelay());
+    }
+
+    @Test
+    public void testBatchSize()
+    {
+        final AdaptiveWriteControl control =
+            new AdaptiveWriteControl(10000, 10000, 100, 5000, 10000, 500);
+        // 10% of 10 seconds: Commits of 1 second or more are too slow
+        control.update(0.4, 0, 2, 2, 4000);
+        assertEquals(250, control.getBatchSize());
+        // Fast commits of full batches grow the batch size
+        control.update(0.4, 0, 2, 2, 200);
+        assertEquals(313, control.getBatchSize());
+        // .. but not when batches weren't filled
+        control.update(0.4, 0, 1, 0, 10);
+        assertEquals(313, control.getBatchSize());
+        for (int i=0; i<100; ++i)
+            control.update(0.4, 0, 1, 1, 10);
+        assertEquals(5000, control.getBatchSize());
+        assertTrue(control.toString().contains("5000"));
+    }
+
+    @Test
+    public void testLimits()
+    {
+        // Initial values are clamped to limits
+        final AdaptiveWriteControl control =
+            new AdaptiveWriteControl(5000, 30000, 100, 1000, 60000, 10);
+        assertEquals(30000, control.getDelay());
+        assertEquals(100, control.getBatchSize());
+    }
+}
@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.archive.engine.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/** JUnit test of the {@link LatencyHistogram}
+ *  @author Kay Kasemir
+ */
+public class LatencyHistogramUnitTest
+{
+    @Test
+    public void testSmallValues()
+    {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(0.5));
+        for (int i=1; i<=5; ++i)
+            histogram.record(i);
+        assertEquals(5, histogram.getCount());
+        assertEquals(15, histogram.getSum());
+        assertEquals(3.0, histogram.getMean(), 0.01);
+        assertEquals(5, histogram.getMax());
+        // Small values are exact
+        assertEquals(3, histogram.getPercentile(0.5));
+        assertEquals(5, histogram.getPercentile(1.0));
+        final long[] counts = histogram.getCumulativeCounts(new long[] { 0, 2, 3, 10 });
+        assertEquals(0, counts[0]);
+        assertEquals(2, counts[1]);
+        assertEquals(3, counts[2]);
+        assertEquals(5, counts[3]);
+        assertEquals(5, counts[4]);
+    }
+
+    @Test
+    public void testPrecision()
+    {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int i=1; i<=10000; ++i)
+            histogram.record(i);
+        // Reported percentiles are within 1/SUB_BUCKETS of the actual value
+        final long p50 = histogram.getPercentile(0.5);
+        assertTrue("50% at " + p50, Math.abs(p50 - 5000) <= 5000 / LatencyHistogram.SUB_BUCKETS);
+        final long p99 = histogram.getPercentile(0.99);
+        assertTrue("99% at " + p99, Math.abs(p99 - 9900) <= 9900 / LatencyHistogram.SUB_BUCKETS);
+        assertEquals(10000, histogram.getPercentile(1.0));
+        // One less than powers of two are exact bucket limits
+        final long[] counts = histogram.getCumulativeCounts(new long[] { 1023, 4095 });
+        assertEquals(1023, counts[0]);
+        assertEquals(4095, counts[1]);
+        assertEquals(10000, counts[2]);
+    }
+
+    @Test
+    public void testLimits()
+    {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-10);
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(2, histogram.getCount());
+        assertEquals(LatencyHistogram.MAX_VALUE, histogram.getMax());
+        assertEquals(0, histogram.getPercentile(0.5));
+        assertEquals(LatencyHistogram.MAX_VALUE, histogram.getPercentile(1.0));
+    }
+
+    @Test
+    public void testCombine()
+    {
+        final LatencyHistogram a = new LatencyHistogram();
+        final LatencyHistogram b = new LatencyHistogram();
+        a.record(10);
+        b.record(1000);
+        b.record(2000);
+        final LatencyHistogram total = new LatencyHistogram();
+        a.addTo(total);
+        b.addTo(total);
+        assertEquals(3, total.getCount());
+        assertEquals(2000, total.getMax());
+        assertEquals(10, total.getPercentile(0.1));
+
+        total.reset();
+        assertEquals(0, total.getCount());
+        assertEquals(0, total.getMax());
+    }
+}
@@ -9,6 +9,9 @@ package org.csstudio.archive.engine.model;
 
 import static org.junit.Assert.assertEquals;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.csstudio.archive.vtype.VTypeHelper;
 import org.epics.vtype.VType;
 import org.junit.Test;
@@ -53,6 +56,26 @@ public class SampleBufferUnitTest
 		assertEquals(1.0, VTypeHelper.toDouble(value), 0.01);
 	}
 
+	/** Remove samples in bulk */
+	@Test
+	public void testDrain()
+	{
+		for (int i=0; i<5; ++i)
+			buffer.add(TestHelper.newValue(i));
+		final List<VType> samples = new ArrayList<VType>();
+		assertEquals(3, buffer.drainTo(samples, 3));
+		assertEquals(3, samples.size());
+		assertEquals(0.0, VTypeHelper.toDouble(samples.get(0)), 0.01);
+		assertEquals(2.0, VTypeHelper.toDouble(samples.get(2)), 0.01);
+		assertEquals(2, buffer.getQueueSize());
+
+		samples.clear();
+		assertEquals(2, buffer.drainTo(samples, 10));
+		assertEquals(3.0, VTypeHelper.toDouble(samples.get(0)), 0.01);
+		assertEquals(0, buffer.drainTo(samples, 10));
+		assertEquals(0, buffer.getQueueSize());
+	}
+
 	final private static long TEST_RUNS = 1000L;
 
 	class FillThread extends Thread
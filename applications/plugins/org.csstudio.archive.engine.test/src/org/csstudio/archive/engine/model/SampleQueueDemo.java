@@ -0,0 +1,80 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.archive.engine.model;
+
+import org.epics.vtype.VType;
+import org.junit.Test;
+
+/** Benchmark of the {@link SampleQueue} implementations
+ *  with one thread adding while another thread removes samples.
+ *  <p>
+ *  Adds samples as fast as possible, which keeps the queue mostly full,
+ *  while the consumer competes for the queue.
+ *  Compare the number of values added and removed per second.
+ *  Results are only meaningful on a multi-core host.
+ *
+ * @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class SampleQueueDemo
+{
+    private static final long RUNTIME = 10 * 1000l;
+
+    private static final int CAPACITY = 100;
+
+    private volatile boolean run;
+
+    private void benchmark(final String title, final SampleQueue queue) throws Exception
+    {
+        final VType value = TestHelper.newValue(3.14);
+        final long[] added = new long[1];
+        run = true;
+        final Thread producer = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                long count = 0;
+                while (run)
+                {
+                    queue.add(value, 0);
+                    ++count;
+                }
+                added[0] = count;
+            }
+        };
+
+        final long start = System.currentTimeMillis();
+        final long end = start + RUNTIME;
+        producer.start();
+        long removed = 0;
+        while (end > System.currentTimeMillis())
+        {
+            for (int i=0; i<1000; ++i)
+                if (queue.remove() != null)
+                    ++removed;
+        }
+        run = false;
+        producer.join();
+        final double secs = (System.currentTimeMillis() - start) / 1000.0;
+        System.out.format("%-20s: %12.1f added, %12.1f removed vals/sec\n",
+                title, added[0] / secs, removed / secs);
+    }
+
+    @Test
+    public void testMonitorQueue() throws Exception
+    {
+        benchmark("VTypeSampleQueue", new VTypeSampleQueue(CAPACITY));
+    }
+
+    @Test
+    public void testScalarQueue() throws Exception
+    {
+        benchmark("ScalarSampleQueue", new ScalarSampleQueue(CAPACITY));
+    }
+}
@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.archive.engine.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import org.csstudio.archive.vtype.ArchiveVString;
+import org.csstudio.archive.vtype.VTypeHelper;
+import org.epics.util.time.Timestamp;
+import org.epics.vtype.AlarmSeverity;
+import org.epics.vtype.VNumber;
+import org.epics.vtype.VString;
+import org.junit.Test;
+
+/** JUnit test of the {@link SampleSpill}
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class SampleSpillUnitTest
+{
+    @Test
+    public void testAddReplay() throws Exception
+    {
+        final File file = File.createTempFile("samples", ".spill");
+        file.deleteOnExit();
+        SampleSpill spill = new SampleSpill(file, 1024);
+        assertTrue(spill.isEmpty());
+
+        assertTrue(spill.add("a", TestHelper.newValue(1.0)));
+        assertTrue(spill.add("b", new ArchiveVString(Timestamp.now(), AlarmSeverity.MINOR, "Test", "Hello")));
+        assertTrue(spill.add("a", TestHelper.newValue(2.0)));
+        assertEquals(3, spill.size());
+
+        // Peek doesn't remove
+        List<SampleSpill.Sample> samples = spill.peek(2);
+        assertEquals(2, samples.size());
+        assertEquals("a", samples.get(0).getChannel());
+        assertEquals(1.0, VTypeHelper.toDouble(samples.get(0).getValue()), 0.01);
+        assertEquals("Eggs", ((VNumber)samples.get(0).getValue()).getUnits());
+        assertEquals("b", samples.get(1).getChannel());
+        assertEquals("Hello", ((VString)samples.get(1).getValue()).getValue());
+        assertEquals(AlarmSeverity.MINOR, VTypeHelper.getSeverity(samples.get(1).getValue()));
+        assertEquals(3, spill.size());
+
+        spill.remove();
+        assertEquals(1, spill.size());
+        spill.close();
+
+        // Remaining sample is still there after re-opening the file
+        spill = new SampleSpill(file, 1024);
+        assertEquals(1, spill.size());
+        samples = spill.peek(10);
+        assertEquals(1, samples.size());
+        assertEquals(2.0, VTypeHelper.toDouble(samples.get(0).getValue()), 0.01);
+        spill.remove();
+        assertTrue(spill.isEmpty());
+        spill.close();
+    }
+
+    @Test
+    public void testFull() throws Exception
+    {
+        final File file = File.createTempFile("samples", ".spill");
+        file.deleteOnExit();
+        final SampleSpill spill = new SampleSpill(file, 1024);
+        int count = 0;
+        while (spill.add("a", TestHelper.newValue(count)))
+            ++count;
+        assertTrue(count > 0);
+        assertEquals(count, spill.size());
+        assertFalse(spill.add("a", TestHelper.newValue(-1)));
+        spill.close();
+    }
+
+    @Test
+    public void testCorrupted() throws Exception
+    {
+        final File file = File.createTempFile("samples", ".spill");
+        file.deleteOnExit();
+        SampleSpill spill = new SampleSpill(file, 1024);
+        assertTrue(spill.add("a", TestHelper.newValue(1.0)));
+        assertTrue(spill.add("b", new ArchiveVString(Timestamp.now(), AlarmSeverity.MINOR, "Test", "Hello")));
+        assertTrue(spill.add("a", TestHelper.newValue(2.0)));
+        assertTrue(spill.add("a", TestHelper.newValue(3.0)));
+        spill.close();
+
+        // Records start after the 16 byte header with their size,
+        // followed by the channel name and the value type
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.seek(16);
+        final int second = 16 + 4 + raf.readInt();
+        raf.seek(second);
+        final int third = second + 4 + raf.readInt();
+        raf.seek(third);
+        final int fourth = third + 4 + raf.readInt();
+        // Unknown value type for "b"
+        raf.seek(second + 4 + 4 + 1);
+        raf.writeByte(99);
+        // Size of last record points beyond the end of the data
+        raf.seek(fourth);
+        raf.writeInt(100000);
+        raf.close();
+
+        // Corrupted records are skipped and removed
+        spill = new SampleSpill(file, 1024);
+        assertEquals(4, spill.size());
+        final List<SampleSpill.Sample> samples = spill.peek(10);
+        assertEquals(2, samples.size());
+        assertEquals(1.0, VTypeHelper.toDouble(samples.get(0).getValue()), 0.01);
+        assertEquals(2.0, VTypeHelper.toDouble(samples.get(1).getValue()), 0.01);
+        spill.remove();
+        assertTrue(spill.isEmpty());
+        assertTrue(spill.peek(10).isEmpty());
+        spill.close();
+    }
+}
@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.archive.engine.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.csstudio.archive.vtype.ArchiveVNumber;
+import org.csstudio.archive.vtype.ArchiveVString;
+import org.csstudio.archive.vtype.VTypeHelper;
+import org.epics.util.time.Timestamp;
+import org.epics.vtype.AlarmSeverity;
+import org.epics.vtype.VNumber;
+import org.epics.vtype.VType;
+import org.junit.Test;
+
+/** JUnit test of the {@link ScalarSampleQueue}
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class ScalarSampleQueueUnitTest
+{
+    @Test
+    public void testScalar()
+    {
+        final ScalarSampleQueue queue = new ScalarSampleQueue(3);
+        final Timestamp time = Timestamp.of(1000, 42);
+        queue.add(new ArchiveVNumber(time, AlarmSeverity.MAJOR, "HIHI", TestHelper.display, 3.14), 0);
+        assertEquals(1, queue.size());
+
+        final VType value = queue.get(0);
+        assertTrue(value instanceof VNumber);
+        assertEquals(3.14, VTypeHelper.toDouble(value), 0.001);
+        assertEquals(time, VTypeHelper.getTimestamp(value));
+        assertEquals(AlarmSeverity.MAJOR, VTypeHelper.getSeverity(value));
+        assertEquals("HIHI", VTypeHelper.getMessage(value));
+        assertEquals("Eggs", ((VNumber) value).getUnits());
+        assertEquals(TestHelper.display.getUpperAlarmLimit(), ((VNumber) value).getUpperAlarmLimit());
+        // Remains a 'double'
+        assertTrue(((VNumber) value).getValue() instanceof Double);
+    }
+
+    @Test
+    public void testMixed()
+    {
+        final ScalarSampleQueue queue = new ScalarSampleQueue(3);
+        final VType info = new ArchiveVString(Timestamp.now(), AlarmSeverity.INVALID, "Disconnected", "Disconnected");
+        final VType integer = new ArchiveVNumber(Timestamp.now(), AlarmSeverity.NONE, "", TestHelper.display, 42);
+        queue.add(TestHelper.newValue(1.0), 0);
+        queue.add(info, 0);
+        queue.add(integer, 0);
+        assertTrue(queue.isFull());
+
+        // Non-double samples are kept as is
+        assertEquals(1.0, VTypeHelper.toDouble(queue.remove()), 0.01);
+        assertSame(info, queue.remove());
+        assertSame(integer, queue.remove());
+        assertNull(queue.remove());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testOverwrite()
+    {
+        final ScalarSampleQueue queue = new ScalarSampleQueue(3);
+        for (int i=0; i<10; ++i)
+            queue.add(TestHelper.newValue(i), 0);
+        assertEquals(3, queue.size());
+        // Oldest samples were dropped
+        assertEquals(7.0, VTypeHelper.toDouble(queue.remove()), 0.01);
+        assertEquals(8.0, VTypeHelper.toDouble(queue.remove()), 0.01);
+        assertEquals(9.0, VTypeHelper.toDouble(queue.remove()), 0.01);
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testReceived()
+    {
+        final ScalarSampleQueue queue = new ScalarSampleQueue(3);
+        queue.add(TestHelper.newValue(1.0), 100);
+        queue.add(new ArchiveVString(Timestamp.now(), AlarmSeverity.INVALID, "Disconnected", "Disconnected"), 200);
+        queue.add(TestHelper.newValue(3.0), 300);
+        queue.add(TestHelper.newValue(4.0), 400);
+
+        // Receive time of each drained sample, placed at offset
+        final List<VType> samples = new ArrayList<VType>();
+        final long[] received = new long[5];
+        assertEquals(3, queue.drainTo(samples, received, 2, 5));
+        assertEquals(3, samples.size());
+        assertEquals(0, received[1]);
+        assertEquals(200, received[2]);
+        assertEquals(300, received[3]);
+        assertEquals(400, received[4]);
+        assertTrue(queue.isEmpty());
+    }
+}
@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.archive.engine.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.csstudio.archive.writer.ArchiveWriter;
+import org.csstudio.archive.writer.WriteChannel;
+import org.epics.vtype.VType;
+import org.junit.Test;
+
+/** JUnit test of the {@link WriteThread} that doesn't need an archive
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class WriteThreadUnitTest
+{
+    /** {@link ArchiveWriter} that only knows some channels */
+    private static class TestWriter implements ArchiveWriter
+    {
+        final private List<String> known;
+        final List<String> written = new ArrayList<String>();
+        boolean archive_error = false;
+
+        TestWriter(final String... known)
+        {
+            this.known = Arrays.asList(known);
+        }
+
+        @Override
+        public WriteChannel getChannel(final String name) throws Exception
+        {
+            if (archive_error)
+                throw new Exception("Archive is down");
+            if (! known.contains(name))
+                throw new Exception("Unknown channel " + name);
+            return new WriteChannel()
+            {
+                @Override
+                public String getName()
+                {
+                    return name;
+                }
+            };
+        }
+
+        @Override
+        public void addSample(final WriteChannel channel, final VType sample) throws Exception
+        {
+            written.add(channel.getName());
+        }
+
+        @Override
+        public void flush() throws Exception
+        {
+            // NOP
+        }
+
+        @Override
+        public void close()
+        {
+            // NOP
+        }
+    }
+
+    @Test
+    public void testReplayUnknownChannel() throws Exception
+    {
+        final File file = File.createTempFile("samples", ".spill");
+        file.deleteOnExit();
+        final SampleSpill spill = new SampleSpill(file, 1024);
+        assertTrue(spill.add("a", TestHelper.newValue(1.0)));
+        assertTrue(spill.add("gone", TestHelper.newValue(2.0)));
+        assertTrue(spill.add("a", TestHelper.newValue(3.0)));
+
+        final WriteThread thread = new WriteThread();
+        thread.addSampleBuffer(new SampleBuffer("a", 10));
+
+        // Samples of the unknown channel are dropped, the others written
+        final TestWriter writer = new TestWriter("a");
+        assertEquals(2, thread.replay(writer, spill));
+        assertEquals(2, writer.written.size());
+        assertEquals("a", writer.written.get(0));
+        assertEquals("a", writer.written.get(1));
+        assertTrue(spill.isEmpty());
+        spill.close();
+    }
+
+    @Test
+    public void testReplayArchiveError() throws Exception
+    {
+        final File file = File.createTempFile("samples", ".spill");
+        file.deleteOnExit();
+        final SampleSpill spill = new SampleSpill(file, 1024);
+        assertTrue(spill.add("a", TestHelper.newValue(1.0)));
+
+        final WriteThread thread = new WriteThread();
+        thread.addSampleBuffer(new SampleBuffer("a", 10));
+
+        // When a channel of the thread can't be found, the sample is kept
+        final TestWriter writer = new TestWriter("a");
+        writer.archive_error = true;
+        try
+        {
+            thread.replay(writer, spill);
+            fail("Replay succeeded while the archive is down");
+        }
+        catch (Exception ex)
+        {
+            // Expected
+        }
+        assertEquals(1, spill.size());
+
+        writer.archive_error = false;
+        assertEquals(1, thread.replay(writer, spill));
+        assertTrue(spill.isEmpty());
+        spill.close();
+    }
+}
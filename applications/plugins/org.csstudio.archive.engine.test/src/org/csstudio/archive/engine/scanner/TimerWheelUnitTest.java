@@ -0,0 +1,166 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.archive.engine.scanner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/** Unit test of the {@link TimerWheel}
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class TimerWheelUnitTest
+{
+    /** Item with settable due time */
+    static class Item implements Scheduleable
+    {
+        final String name;
+        long due;
+
+        Item(final String name, final long due)
+        {
+            this.name = name;
+            this.due = due;
+        }
+
+        @Override
+        public boolean isDueAtAll()
+        {
+            return true;
+        }
+
+        @Override
+        public long getNextDueTime()
+        {
+            return due;
+        }
+
+        @Override
+        public String toString()
+        {
+            return name;
+        }
+    }
+
+    @Test
+    public void testExpire()
+    {
+        final TimerWheel<Item> wheel = new TimerWheel<Item>(10, 100);
+        assertFalse(wheel.isDueAtAll());
+        final long now = System.currentTimeMillis();
+        final Item a = new Item("a", now + 100);
+        final Item b = new Item("b", now + 500);
+        wheel.schedule(b);
+        wheel.schedule(a);
+        assertEquals(2, wheel.size());
+        // Due time is rounded up to the next tick
+        long due = wheel.getNextDueTime();
+        assertTrue(due >= a.due  &&  due < a.due + 10);
+
+        final List<Item> expired = new ArrayList<Item>();
+        wheel.expire(now + 50, expired);
+        assertEquals(0, expired.size());
+        wheel.expire(now + 120, expired);
+        assertEquals(1, expired.size());
+        assertEquals(a, expired.get(0));
+        assertEquals(1, wheel.size());
+        due = wheel.getNextDueTime();
+        assertTrue(due >= b.due  &&  due < b.due + 10);
+
+        expired.clear();
+        wheel.expire(now + 1000, expired);
+        assertEquals(1, expired.size());
+        assertEquals(b, expired.get(0));
+        assertFalse(wheel.isDueAtAll());
+    }
+
+    @Test
+    public void testRevolutions()
+    {
+        // Wheel with 16 slots of 10ms covers 160ms
+        final TimerWheel<Item> wheel = new TimerWheel<Item>(10, 16);
+        final long now = System.currentTimeMillis();
+        // Items several revolutions out share slots with closer items
+        final Item near = new Item("near", now + 50);
+        final Item far = new Item("far", now + 50 + 3*160);
+        wheel.schedule(far);
+        assertTrue(wheel.getNextDueTime() >= far.due);
+        wheel.schedule(near);
+
+        final List<Item> expired = new ArrayList<Item>();
+        wheel.expire(now + 100, expired);
+        assertEquals(1, expired.size());
+        assertEquals(near, expired.get(0));
+        // Next due time is found even though it's beyond one revolution
+        assertTrue(wheel.getNextDueTime() >= far.due);
+
+        // Being behind by more than one revolution still expires the item
+        expired.clear();
+        wheel.expire(now + 2000, expired);
+        assertEquals(1, expired.size());
+        assertEquals(far, expired.get(0));
+    }
+
+    @Test
+    public void testRescheduleAndCancel()
+    {
+        final TimerWheel<Item> wheel = new TimerWheel<Item>(10, 64);
+        final long now = System.currentTimeMillis();
+        final Item a = new Item("a", now + 100);
+        final Item b = new Item("b", now + 200);
+        wheel.schedule(a);
+        wheel.schedule(b);
+        // Moving an item doesn't add it twice
+        a.due = now + 300;
+        wheel.schedule(a);
+        assertEquals(2, wheel.size());
+
+        final List<Item> expired = new ArrayList<Item>();
+        wheel.expire(now + 250, expired);
+        assertEquals(1, expired.size());
+        assertEquals(b, expired.get(0));
+
+        assertTrue(wheel.cancel(a));
+        assertFalse(wheel.cancel(a));
+        assertFalse(wheel.isDueAtAll());
+
+        // Item that's already due expires on the next tick
+        final Item late = new Item("late", now - 1000);
+        wheel.schedule(late);
+        expired.clear();
+        wheel.expire(now + 260, expired);
+        assertEquals(1, expired.size());
+    }
+
+    @Test
+    public void testManyItems()
+    {
+        final TimerWheel<Item> wheel = new TimerWheel<Item>(10, 1024);
+        final long now = System.currentTimeMillis();
+        final int N = 10000;
+        for (int i=0; i<N; ++i)
+            wheel.schedule(new Item("Item " + i, now + 10 + i));
+        final List<Item> expired = new ArrayList<Item>();
+        int total = 0;
+        for (long time = now; time <= now + N + 200; time += 100)
+        {
+            wheel.expire(time, expired);
+            for (Item item : expired)
+                assertTrue(item + " expired early", item.due <= time);
+            total += expired.size();
+            expired.clear();
+        }
+        assertEquals(N, total);
+    }
+}
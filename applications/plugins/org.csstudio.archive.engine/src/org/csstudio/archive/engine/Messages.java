@@ -15,6 +15,8 @@ package org.csstudio.archive.engine;
 @SuppressWarnings("nls")
 public class Messages
 {
+    final public static String HTTP_AddAge = "Age when Queued";
+    final public static String HTTP_Adaptive = "adaptive";
     final public static String HTTP_BatchSize = "Batch Size";
     final public static String HTTP_Channel = "Channel";
     final public static String HTTP_ChannelCount = "Channels";
@@ -33,11 +35,14 @@ public class Messages
     final public static String HTTP_Host = "HTTP Server";
     final public static String HTTP_Idletime = "Idle Time";
     final public static String HTTP_InternalState = "Internal State";
+    final public static String HTTP_Jitter = "Avg. Delay";
     final public static String HTTP_CurrentValue = "Current Value";
     final public static String HTTP_LastArchivedValue = "Last Archived Value";
     final public static String HTTP_LastWriteTime = "Last Written";
     final public static String HTTP_MainTitle = "Archive Engine";
+    final public static String HTTP_MaxJitter = "Max. Delay";
     final public static String HTTP_Mechanism = "Mechanism";
+    final public static String HTTP_Metrics = "Metrics";
     final public static String HTTP_Never = "never";
     final public static String HTTP_QueueAvg = "Queue Avg.";
     final public static String HTTP_QueueLen = "Queue Len.";
@@ -45,16 +50,25 @@ public class Messages
     final public static String HTTP_QueueCapacity = "Capacity";
     final public static String HTTP_QueueOverruns = "Overruns";
     final public static String HTTP_ReceivedValues = "Received Values";
+    final public static String HTTP_ScanCount = "Scans";
+    final public static String HTTP_ScanLists = "Scan Lists";
+    final public static String HTTP_ScanPeriod = "Scan Period";
+    final public static String HTTP_Spilled = "Spilled";
     final public static String HTTP_StartTime = "Start Time";
     final public static String HTTP_State = "State";
     final public static String HTTP_Status = "Status";
     final public static String HTTP_Total = "Total";
     final public static String HTTP_Uptime = "Uptime";
     final public static String HTTP_Version = "Version";
+    final public static String HTTP_WriteAge = "Age when Written";
+    final public static String HTTP_WriteBacklog = "Backlog";
     final public static String HTTP_Workspace = "Workspace";
     final public static String HTTP_WriteCount = "Write Count";
     final public static String HTTP_WriteDuration = "Write Duration";
     final public static String HTTP_WriteError = "Write Error";
     final public static String HTTP_WritePeriod = "Write Period";
+    final public static String HTTP_WriteRate = "Write Rate";
     final public static String HTTP_WriteState = "Write State";
+    final public static String HTTP_WriteThread = "Write Thread";
+    final public static String HTTP_WriteThreads = "Write Threads";
 }
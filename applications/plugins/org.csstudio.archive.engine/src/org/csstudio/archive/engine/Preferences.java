@@ -48,7 +48,79 @@ public class Preferences
         	return batch_size;
         return prefs.getInt(Activator.ID, "batch_size", batch_size, null);
 	}
+
+	public static boolean isAdaptiveWrite()
+	{
+        final IPreferencesService prefs = Platform.getPreferencesService();
+        final boolean adaptive_write = false;
+        if (prefs == null)
+        	return adaptive_write;
+        return prefs.getBoolean(Activator.ID, "adaptive_write", adaptive_write, null);
+	}
+
+	public static double getMinWritePeriodSecs()
+	{
+        final IPreferencesService prefs = Platform.getPreferencesService();
+        final double min_write_period = 5.0;
+        if (prefs == null)
+        	return min_write_period;
+        return prefs.getDouble(Activator.ID, "min_write_period", min_write_period, null);
+	}
+
+	public static double getMaxWritePeriodSecs()
+	{
+        final IPreferencesService prefs = Platform.getPreferencesService();
+        final double max_write_period = 60.0;
+        if (prefs == null)
+        	return max_write_period;
+        return prefs.getDouble(Activator.ID, "max_write_period", max_write_period, null);
+	}
+
+	public static int getMinBatchSize()
+	{
+        final IPreferencesService prefs = Platform.getPreferencesService();
+        final int min_batch_size = 100;
+        if (prefs == null)
+        	return min_batch_size;
+        return prefs.getInt(Activator.ID, "min_batch_size", min_batch_size, null);
+	}
+
+	public static int getMaxBatchSize()
+	{
+        final IPreferencesService prefs = Platform.getPreferencesService();
+        final int max_batch_size = 5000;
+        if (prefs == null)
+        	return max_batch_size;
+        return prefs.getInt(Activator.ID, "max_batch_size", max_batch_size, null);
+	}
+
+	public static int getWriteThreads()
+	{
+        final IPreferencesService prefs = Platform.getPreferencesService();
+        final int write_threads = 1;
+        if (prefs == null)
+        	return write_threads;
+        return prefs.getInt(Activator.ID, "write_threads", write_threads, null);
+	}
 	
+	public static String getSpillDirectory()
+	{
+        final IPreferencesService prefs = Platform.getPreferencesService();
+        final String spill_directory = "";
+        if (prefs == null)
+        	return spill_directory;
+        return prefs.getString(Activator.ID, "spill_directory", spill_directory, null);
+	}
+
+	public static int getSpillSize()
+	{
+        final IPreferencesService prefs = Platform.getPreferencesService();
+        final int spill_size = 100;
+        if (prefs == null)
+        	return spill_size;
+        return prefs.getInt(Activator.ID, "spill_size", spill_size, null);
+	}
+
 	public static double getBufferReserve()
 	{
         final IPreferencesService prefs = Platform.getPreferencesService();
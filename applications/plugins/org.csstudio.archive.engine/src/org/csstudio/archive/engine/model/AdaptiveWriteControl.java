@@ -0,0 +1,152 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.archive.engine.model;
+
+/** Adjusts the write period and batch size of a {@link WriteThread}
+ *  within configured limits.
+ *  <p>
+ *  A long write period and large batches are most efficient for the
+ *  archive, but the sample buffers need to hold all samples that
+ *  arrive within one write period.
+ *  After each write run, the control is informed about the buffer fill level
+ *  seen at the start of the run, new buffer overruns and the time it took
+ *  to commit one batch:
+ *  <ul>
+ *  <li>When buffers overrun or fill beyond {@link #HIGH_FILL},
+ *      the write period is halved.
+ *      When they stay below {@link #LOW_FILL},
+ *      the write period slowly grows again.
+ *  <li>When committing a batch takes longer than {@link #COMMIT_FRACTION}
+ *      of the write period, the batch size is halved.
+ *      When commits are fast and batches are filled,
+ *      the batch size slowly grows again.
+ *  </ul>
+ *  @author Kay Kasemir
+ */
+public class AdaptiveWriteControl
+{
+    /** Buffer fill level (0..1) above which the write period is reduced */
+    final public static double HIGH_FILL = 0.5;
+
+    /** Buffer fill level (0..1) below which the write period may grow */
+    final public static double LOW_FILL = 0.25;
+
+    /** Maximum fraction of the write period that committing one batch should take */
+    final public static double COMMIT_FRACTION = 0.1;
+
+    /** Factor for slowly growing the write period or batch size */
+    final private static double GROWTH = 1.25;
+
+    final private long min_delay, max_delay;
+    final private int min_batch, max_batch;
+
+    private long delay;
+    private int batch;
+
+    /** Initialize
+     *  @param min_delay Minimum write period in milliseconds
+     *  @param max_delay Maximum write period in milliseconds
+     *  @param min_batch Minimum batch size
+     *  @param max_batch Maximum batch size
+     *  @param delay Initial write period in milliseconds
+     *  @param batch Initial batch size
+     */
+    public AdaptiveWriteControl(final long min_delay, final long max_delay,
+                                final int min_batch, final int max_batch,
+                                final long delay, final int batch)
+    {
+        this.min_delay = Math.max(1, min_delay);
+        this.max_delay = Math.max(this.min_delay, max_delay);
+        this.min_batch = Math.max(1, min_batch);
+        this.max_batch = Math.max(this.min_batch, max_batch);
+        this.delay = clamp(delay, this.min_delay, this.max_delay);
+        this.batch = (int) clamp(batch, this.min_batch, this.max_batch);
+    }
+
+    /** @return Minimum write period in milliseconds */
+    public long getMinDelay()
+    {
+        return min_delay;
+    }
+
+    /** @return Maximum write period in milliseconds */
+    public long getMaxDelay()
+    {
+        return max_delay;
+    }
+
+    /** @return Minimum batch size */
+    public int getMinBatchSize()
+    {
+        return min_batch;
+    }
+
+    /** @return Maximum batch size */
+    public int getMaxBatchSize()
+    {
+        return max_batch;
+    }
+
+    /** @return Current write period in milliseconds */
+    public long getDelay()
+    {
+        return delay;
+    }
+
+    /** @return Current batch size */
+    public int getBatchSize()
+    {
+        return batch;
+    }
+
+    /** Update write period and batch size based on the last write run
+     *  @param fill Largest buffer fill level 0..1 at start of the write run
+     *  @param new_overruns Number of buffer overruns since the last write run
+     *  @param batches Number of batches committed in the write run
+     *  @param full_batches Number of those batches that were filled to the batch size
+     *  @param commit_millis Total time spent committing the batches in milliseconds
+     */
+    public void update(final double fill, final int new_overruns,
+                       final int batches, final int full_batches,
+                       final long commit_millis)
+    {
+        // Write period: Decrease quickly under pressure, grow slowly
+        if (new_overruns > 0  ||  fill > HIGH_FILL)
+            delay = clamp(delay / 2, min_delay, max_delay);
+        else if (fill < LOW_FILL)
+            delay = clamp(Math.round(delay * GROWTH), min_delay, max_delay);
+
+        // Batch size: Same for the commit latency
+        if (batches <= 0)
+            return;
+        final long commit_limit = (long) (delay * COMMIT_FRACTION);
+        final long per_batch = commit_millis / batches;
+        if (per_batch > commit_limit)
+            batch = (int) clamp(batch / 2, min_batch, max_batch);
+        else if (per_batch < commit_limit / 2  &&  full_batches > 0)
+            batch = (int) clamp(Math.round(batch * GROWTH), min_batch, max_batch);
+    }
+
+    private static long clamp(final long value, final long min, final long max)
+    {
+        if (value < min)
+            return min;
+        if (value > max)
+            return max;
+        return value;
+    }
+
+    @SuppressWarnings("nls")
+    @Override
+    public String toString()
+    {
+        return String.format("Write period %.1f sec (%.1f .. %.1f), batch size %d (%d .. %d)",
+                delay / 1000.0, min_delay / 1000.0, max_delay / 1000.0,
+                batch, min_batch, max_batch);
+    }
+}
@@ -98,6 +98,13 @@ abstract public class ArchiveChannel extends PVListenerAdapter
      */
     protected VType most_recent_value = null;
 
+    /** Time when the PV callback received the <code>most_recent_value</code>,
+     *  milliseconds since epoch.
+     *  <p>
+     *  SYNC:Lock on <code>this</code> for access.
+     */
+    private long most_recent_received = 0;
+
     /** Counter for received values (monitor updates) */
     private long received_value_count = 0;
 
@@ -121,11 +128,28 @@ abstract public class ArchiveChannel extends PVListenerAdapter
                           final Enablement enablement,
                           final int buffer_capacity,
                           final VType last_archived_value) throws Exception
+    {
+        this(name, enablement, buffer_capacity, last_archived_value, false);
+    }
+
+    /** Construct an archive channel
+     *  @param name Name of the channel (PV)
+     *  @param enablement How channel affects its groups
+     *  @param buffer_capacity Size of sample buffer
+     *  @param last_archived_value Last value from storage, or <code>null</code>.
+     *  @param scalar_buffer Optimize sample buffer for scalar 'double' samples?
+     *  @throws Exception On error in PV setup
+     */
+    protected ArchiveChannel(final String name,
+                             final Enablement enablement,
+                             final int buffer_capacity,
+                             final VType last_archived_value,
+                             final boolean scalar_buffer) throws Exception
     {
         this.name = name;
         this.enablement = enablement;
         this.last_archived_value = last_archived_value;
-        this.buffer = new SampleBuffer(name, buffer_capacity);
+        this.buffer = new SampleBuffer(name, buffer_capacity, scalar_buffer);
         if (last_archived_value == null)
             Activator.getLogger().log(Level.INFO, "No known last value for {0}", name);
     }
@@ -343,6 +367,7 @@ abstract public class ArchiveChannel extends PVListenerAdapter
         {
             ++received_value_count;
             most_recent_value = value;
+            most_recent_received = System.currentTimeMillis();
         }
         // NaN test
         if (value instanceof VNumber)
@@ -439,6 +464,7 @@ abstract public class ArchiveChannel extends PVListenerAdapter
             return false;
         }
 
+        final long received;
         synchronized (this)
         {
             if (last_archived_value != null &&
@@ -456,8 +482,15 @@ abstract public class ArchiveChannel extends PVListenerAdapter
             }
             // else ...
 	        last_archived_value = value;
+	        // Age of a received value is measured from the PV callback.
+	        // Samples created by the engine, like info samples or
+	        // values with adjusted time stamp, are new right now.
+	        if (value == most_recent_value)
+	            received = most_recent_received;
+	        else
+	            received = System.currentTimeMillis();
         }
-        buffer.add(value);
+        buffer.add(value, received);
         if (SampleBuffer.isInErrorState())
             need_write_error_sample = true;
         return true;
@@ -19,6 +19,12 @@ public class BufferStats
     private Average average_size = new Average();
 
     private int overruns = 0;
+
+    /** Age of samples when added to the buffer */
+    final private LatencyHistogram add_age = new LatencyHistogram();
+
+    /** Age of samples when written */
+    final private LatencyHistogram write_age = new LatencyHistogram();
     
     /** @return Maximum queue size so far
      *  @see #reset()
@@ -40,12 +46,30 @@ public class BufferStats
         return overruns;
     }
 
+    /** @return Histogram of sample age, i.e. time since the PV callback received the sample,
+     *          when the sample was added to the buffer
+     */
+    public final LatencyHistogram getAddAge()
+    {
+        return add_age;
+    }
+
+    /** @return Histogram of sample age, i.e. time since the PV callback received the sample,
+     *          when the sample was handed to the archive writer's flush
+     */
+    public final LatencyHistogram getWriteAge()
+    {
+        return write_age;
+    }
+
     /** Reset the statistics. */
     synchronized public void reset()
     {
         max_size = 0;
         average_size.reset();
         overruns = 0;
+        add_age.reset();
+        write_age.reset();
     }
     
     /** Update the buffer stats.
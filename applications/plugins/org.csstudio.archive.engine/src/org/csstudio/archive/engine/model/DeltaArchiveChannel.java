@@ -42,7 +42,7 @@ public class DeltaArchiveChannel extends ArchiveChannel
                                final double period_estimate,
                                final double delta) throws Exception
     {
-        super(name, enablement, buffer_capacity, last_archived_value);
+        super(name, enablement, buffer_capacity, last_archived_value, true);
         this.delta = delta;
         this.period_estimate = period_estimate;
     }
@@ -7,10 +7,12 @@
  ******************************************************************************/
 package org.csstudio.archive.engine.model;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.logging.Level;
 
 import org.csstudio.archive.config.ArchiveConfig;
 import org.csstudio.archive.config.ChannelConfig;
@@ -19,6 +21,7 @@ import org.csstudio.archive.config.GroupConfig;
 import org.csstudio.archive.config.SampleMode;
 import org.csstudio.archive.engine.Activator;
 import org.csstudio.archive.engine.Preferences;
+import org.csstudio.archive.engine.scanner.ScanList;
 import org.csstudio.archive.engine.scanner.ScanThread;
 import org.csstudio.archive.engine.scanner.Scanner;
 import org.csstudio.archive.vtype.ArchiveVString;
@@ -40,8 +43,10 @@ public class EngineModel
     /** Name of this model */
     private String name = "Archive Engine";  //$NON-NLS-1$
 
-    /** Thread that writes to the <code>archive</code> */
-    final private WriteThread writer;
+    /** Threads that write to the <code>archive</code>.
+     *  Each channel is assigned to one of them based on the channel name.
+     */
+    final private WriteThread[] writers;
 
     /** All the channels.
      *  <p>
@@ -97,6 +102,18 @@ public class EngineModel
     /** Write batch size */
     final private static int batch_size = Preferences.getBatchSize();
 
+    /** Adapt write period and batch size? */
+    final private static boolean adaptive_write = Preferences.isAdaptiveWrite();
+
+    /** Number of write threads */
+    final private static int write_threads = Math.max(1, Preferences.getWriteThreads());
+
+    /** Directory for spill files, empty to disable */
+    final private static String spill_directory = Preferences.getSpillDirectory().trim();
+
+    /** Size of each spill file in MB */
+    final private static int spill_size = Preferences.getSpillSize();
+
     /** Buffer reserve (N times what's ideally needed) */
     final private static double buffer_reserve = Preferences.getBufferReserve();
 
@@ -106,7 +123,20 @@ public class EngineModel
     /** Construct model that writes to archive */
     public EngineModel()
     {
-        writer = new WriteThread();
+        writers = new WriteThread[write_threads];
+        if (writers.length == 1)
+            writers[0] = new WriteThread();
+        else
+            for (int i=0; i<writers.length; ++i)
+                writers[i] = new WriteThread("WriteThread " + (i+1)); //$NON-NLS-1$
+        if (! spill_directory.isEmpty())
+            for (int i=0; i<writers.length; ++i)
+                writers[i].setSpillFile(new File(spill_directory, "samples" + (i+1) + ".spill"), //$NON-NLS-1$ //$NON-NLS-2$
+                                        spill_size * 1024L * 1024L);
+        if (adaptive_write)
+            for (WriteThread writer : writers)
+                writer.setAdaptiveLimits(Preferences.getMinWritePeriodSecs(), Preferences.getMaxWritePeriodSecs(),
+                                         Preferences.getMinBatchSize(), Preferences.getMaxBatchSize());
     }
 
     /** @return Name (description) */
@@ -133,6 +163,29 @@ public class EngineModel
         return batch_size;
     }
 
+    /** @return Number of write threads */
+    public int getWriteThreadCount()
+    {
+        return writers.length;
+    }
+
+    /** @param index Write thread index, 0 ... <code>getWriteThreadCount()-1</code>
+     *  @return {@link WriteThread}
+     */
+    public WriteThread getWriteThread(final int index)
+    {
+        return writers[index];
+    }
+
+    /** @param name Channel name
+     *  @return {@link WriteThread} that handles the channel
+     */
+    private WriteThread getWriteThread(final String name)
+    {
+        final int index = (name.hashCode() & Integer.MAX_VALUE) % writers.length;
+        return writers[index];
+    }
+
     /** @return Current model state */
     public State getState()
     {
@@ -277,7 +330,7 @@ public class EngineModel
             channels.add(channel);
             channel_by_name.put(channel.getName(), channel);
         }
-        writer.addChannel(channel);
+        getWriteThread(name).addChannel(channel);
 
         // Connect new or old channel to group
         channel.addGroup(group);
@@ -291,7 +344,8 @@ public class EngineModel
     {
         start_time = Timestamp.now();
         state = State.RUNNING;
-        writer.start(write_period, batch_size);
+        for (WriteThread writer : writers)
+            writer.start(write_period, batch_size);
         for (ArchiveGroup group : groups)
         {
             group.start();
@@ -307,19 +361,32 @@ public class EngineModel
     /** @return Timestamp of end of last write run */
     public Timestamp getLastWriteTime()
     {
-        return writer.getLastWriteTime();
+        Timestamp last = null;
+        for (WriteThread writer : writers)
+        {
+            final Timestamp stamp = writer.getLastWriteTime();
+            if (stamp != null  &&  (last == null  ||  stamp.compareTo(last) > 0))
+                last = stamp;
+        }
+        return last;
     }
 
-    /** @return Average number of values per write run */
+    /** @return Average number of values per write run, summed over all write threads */
     public double getWriteCount()
     {
-        return writer.getWriteCount();
+        double count = 0.0;
+        for (WriteThread writer : writers)
+            count += writer.getWriteCount();
+        return count;
     }
 
-    /** @return  Average duration of write run in seconds */
+    /** @return  Average duration of write run in seconds, maximum of all write threads */
     public double getWriteDuration()
     {
-        return writer.getWriteDuration();
+        double duration = 0.0;
+        for (WriteThread writer : writers)
+            duration = Math.max(duration, writer.getWriteDuration());
+        return duration;
     }
 
     /** @see Scanner#getIdlePercentage() */
@@ -328,6 +395,20 @@ public class EngineModel
         return scanner.getIdlePercentage();
     }
 
+    /** @return Number of scan lists, i.e. distinct scan periods */
+    public int getScanListCount()
+    {
+        return (int) scanner.size();
+    }
+
+    /** @param index Scan list index, 0 ... <code>getScanListCount()-1</code>
+     *  @return {@link ScanList}
+     */
+    public ScanList getScanList(final int index)
+    {
+        return scanner.get(index);
+    }
+
     /** Ask the model to stop.
      *  Merely updates the model state.
      *  @see #getState()
@@ -352,7 +433,8 @@ public class EngineModel
     /** Reset engine statistics */
     public void reset()
     {
-        writer.reset();
+        for (WriteThread writer : writers)
+            writer.reset();
         scanner.reset();
         synchronized (this)
         {
@@ -377,7 +459,23 @@ public class EngineModel
             group.stop();
         // Flush all values out
         Activator.getLogger().info("Stopping writer");
-        writer.shutdown();
+        Exception error = null;
+        for (WriteThread writer : writers)
+        {
+            try
+            {
+                writer.shutdown();
+            }
+            catch (Exception ex)
+            {
+                if (error == null)
+                    error = ex;
+                else
+                    Activator.getLogger().log(Level.WARNING, writer.getName() + " shutdown error", ex);
+            }
+        }
+        if (error != null)
+            throw error;
         // Update state
         state = State.IDLE;
         start_time = null;
@@ -434,6 +532,8 @@ public class EngineModel
             channel_by_name.clear();
             channels.clear();
         }
+        for (WriteThread writer : writers)
+            writer.clear();
         scanner.clear();
     }
 
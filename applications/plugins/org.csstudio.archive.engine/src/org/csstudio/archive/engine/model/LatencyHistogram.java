@@ -0,0 +1,222 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.archive.engine.model;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Histogram of latencies in milliseconds
+ *  <p>
+ *  Similar to an HDR histogram, the buckets are linear within
+ *  each power of two, so the relative error of a reported value
+ *  is below 1/{@link #SUB_BUCKETS} over the whole range
+ *  of 0 to {@link #MAX_VALUE} milliseconds,
+ *  while the histogram only holds a few hundred counters.
+ *  <p>
+ *  Recording a value is lock-free, so it can be called on the
+ *  'hot path' of adding and writing samples.
+ *  Reading while values are recorded gives an approximate snapshot.
+ *
+ *  @author Kay Kasemir
+ */
+public class LatencyHistogram
+{
+    /** Bits used for linear sub-buckets within each power of two */
+    final private static int SUB_BUCKET_BITS = 3;
+
+    /** Number of linear sub-buckets within each power of two */
+    final public static int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /** Largest value that's recorded, larger values are clipped (about 49 days) */
+    final public static long MAX_VALUE = (1L << 32) - 1;
+
+    /** Number of buckets */
+    final private static int BUCKETS = getBucket(MAX_VALUE) + 1;
+
+    /** Counts per bucket */
+    final private AtomicIntegerArray counts = new AtomicIntegerArray(BUCKETS);
+
+    /** Total number of recorded values */
+    final private AtomicLong count = new AtomicLong();
+
+    /** Sum of recorded values */
+    final private AtomicLong sum = new AtomicLong();
+
+    /** Maximum recorded value */
+    final private AtomicLong max = new AtomicLong();
+
+    /** @param value Value, 0 .. {@link #MAX_VALUE}
+     *  @return Index of bucket for that value
+     */
+    private static int getBucket(final long value)
+    {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+        final int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        final int shift = magnitude - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >> shift) & (SUB_BUCKETS - 1));
+    }
+
+    /** @param bucket Bucket index
+     *  @return Smallest value in bucket
+     */
+    private static long getLowerBound(final int bucket)
+    {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+        final int shift = bucket / SUB_BUCKETS - 1;
+        return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+    }
+
+    /** @param bucket Bucket index
+     *  @return Largest value in bucket
+     */
+    private static long getUpperBound(final int bucket)
+    {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+        final int shift = bucket / SUB_BUCKETS - 1;
+        return getLowerBound(bucket) + (1L << shift) - 1;
+    }
+
+    /** Record a value
+     *  @param millis Latency in milliseconds. Negative values are recorded as 0
+     */
+    public void record(long millis)
+    {
+        if (millis < 0)
+            millis = 0;
+        else if (millis > MAX_VALUE)
+            millis = MAX_VALUE;
+        counts.incrementAndGet(getBucket(millis));
+        count.incrementAndGet();
+        sum.addAndGet(millis);
+        long current = max.get();
+        while (millis > current  &&  !max.compareAndSet(current, millis))
+            current = max.get();
+    }
+
+    /** @return Number of recorded values */
+    public long getCount()
+    {
+        return count.get();
+    }
+
+    /** @return Sum of recorded values in milliseconds */
+    public long getSum()
+    {
+        return sum.get();
+    }
+
+    /** @return Maximum recorded value in milliseconds */
+    public long getMax()
+    {
+        return max.get();
+    }
+
+    /** @return Average of recorded values in milliseconds, 0 if nothing was recorded */
+    public double getMean()
+    {
+        final long n = count.get();
+        if (n <= 0)
+            return 0.0;
+        return sum.get() / (double) n;
+    }
+
+    /** @param fraction Fraction 0..1, for example 0.99 for the 99th percentile
+     *  @return Value in milliseconds below which the given fraction of the recorded values fall,
+     *          0 if nothing was recorded
+     */
+    public long getPercentile(final double fraction)
+    {
+        long total = 0;
+        for (int i=0; i<BUCKETS; ++i)
+            total += counts.get(i);
+        if (total <= 0)
+            return 0;
+        final long threshold = Math.max(1, (long) Math.ceil(fraction * total));
+        long seen = 0;
+        for (int i=0; i<BUCKETS; ++i)
+        {
+            seen += counts.get(i);
+            if (seen >= threshold)
+                return Math.min(getUpperBound(i), getMax());
+        }
+        return getMax();
+    }
+
+    /** Get cumulative counts for histogram buckets with given upper limits,
+     *  for example to export as a Prometheus histogram.
+     *  <p>
+     *  A limit is exact when it is the upper bound of an internal bucket,
+     *  which is the case for values below {@link #SUB_BUCKETS}
+     *  and for values one less than a power of two.
+     *  Otherwise, values in the internal bucket that holds the limit
+     *  are not counted.
+     *
+     *  @param limits Upper limits in milliseconds, ascending
+     *  @return Number of recorded values at or below each limit,
+     *          followed by the number of all values.
+     *          All counts are taken from the same snapshot.
+     */
+    public long[] getCumulativeCounts(final long[] limits)
+    {
+        final long[] result = new long[limits.length + 1];
+        int l = 0;
+        long total = 0;
+        for (int i=0; i<BUCKETS; ++i)
+        {
+            final long upper = getUpperBound(i);
+            while (l < limits.length  &&  limits[l] < upper)
+                result[l++] = total;
+            total += counts.get(i);
+        }
+        while (l < limits.length)
+            result[l++] = total;
+        result[limits.length] = total;
+        return result;
+    }
+
+    /** Add the values of this histogram to another histogram,
+     *  for example to combine the histograms of all channels in a group.
+     *  @param other Histogram to which this histogram is added
+     */
+    public void addTo(final LatencyHistogram other)
+    {
+        for (int i=0; i<BUCKETS; ++i)
+        {
+            final int n = counts.get(i);
+            if (n > 0)
+                other.counts.addAndGet(i, n);
+        }
+        other.count.addAndGet(count.get());
+        other.sum.addAndGet(sum.get());
+        final long my_max = max.get();
+        long current = other.max.get();
+        while (my_max > current  &&  !other.max.compareAndSet(current, my_max))
+            current = other.max.get();
+    }
+
+    /** Reset the histogram */
+    public void reset()
+    {
+        for (int i=0; i<BUCKETS; ++i)
+            counts.set(i, 0);
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    @SuppressWarnings("nls")
+    @Override
+    public String toString()
+    {
+        return String.format("%d values, mean %.1f ms, 50%% < %d ms, 99%% < %d ms, max %d ms",
+                getCount(), getMean(), getPercentile(0.5), getPercentile(0.99), getMax());
+    }
+}
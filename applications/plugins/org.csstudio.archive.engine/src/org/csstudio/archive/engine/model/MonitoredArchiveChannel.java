@@ -29,7 +29,7 @@ public class MonitoredArchiveChannel extends ArchiveChannel
                                    final VType last_archived_value,
                                    final double period_estimate) throws Exception
     {
-        super(name, enablement, buffer_capacity, last_archived_value);
+        super(name, enablement, buffer_capacity, last_archived_value, true);
         this.period_estimate = period_estimate;
     }
 
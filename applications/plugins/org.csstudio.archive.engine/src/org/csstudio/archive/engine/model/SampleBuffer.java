@@ -7,9 +7,10 @@
  ******************************************************************************/
 package org.csstudio.archive.engine.model;
 
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 
-import org.csstudio.apputil.ringbuffer.RingBuffer;
 import org.csstudio.archive.engine.ThrottledLogger;
 import org.epics.vtype.VType;
 
@@ -18,6 +19,9 @@ import org.epics.vtype.VType;
  *  Assumes that one thread adds samples, while a different
  *  thread removes them.
  *  When the queue size is reached, older samples get dropped.
+ *  <p>
+ *  The {@link SampleQueue} handles the thread safety
+ *  of adding and removing samples.
  *
  *  @author Kay Kasemir
  */
@@ -29,29 +33,54 @@ public class SampleBuffer
      */
     final private String channel_name;
 
-    /** The actual samples in a thread-save queue. */
-    final private RingBuffer<VType> samples;
+    /** The actual samples in a thread-safe queue. */
+    final private SampleQueue samples;
+
+    /** Spill for samples that don't fit into the queue while in error state, or <code>null</code> */
+    private volatile SampleSpill spill = null;
 
     /** Statistics */
     final private BufferStats stats = new BufferStats();
 
-    /** Number of overruns when new string of overruns started, or <code>null</code> */
-    private Integer start_of_overruns;
+    /** Number of overruns when new string of overruns started, or <code>null</code>.
+     *  SYNC on stats for updates
+     */
+    private volatile Integer start_of_overruns;
 
     /** Logger for overrun messages */
     final private static ThrottledLogger overrun_msg =
         new ThrottledLogger(Level.WARNING, "log_overrun"); //$NON-NLS-1$
 
-    /** Is the buffer in an error state because of RDB write errors?
+    /** Number of write threads that are in an error state because of RDB write errors.
      *  Note that this is global for all buffers, not per instance!
      */
-    private static volatile boolean error = false;
+    private static final AtomicInteger error_count = new AtomicInteger();
 
     /** Create sample buffer of given capacity */
     SampleBuffer(final String channel_name, final int capacity)
+    {
+        this(channel_name, capacity, false);
+    }
+
+    /** Create sample buffer
+     *  @param channel_name Channel name
+     *  @param samples Queue for the samples
+     */
+    SampleBuffer(final String channel_name, final SampleQueue samples)
     {
         this.channel_name = channel_name;
-        samples = new RingBuffer<VType>(capacity);
+        this.samples = samples;
+    }
+
+    /** Create sample buffer of given capacity
+     *  @param channel_name Channel name
+     *  @param capacity Queue capacity
+     *  @param scalar Optimize for scalar 'double' samples?
+     *  @see ScalarSampleQueue
+     */
+    SampleBuffer(final String channel_name, final int capacity, final boolean scalar)
+    {
+        this(channel_name, scalar ? new ScalarSampleQueue(capacity) : new VTypeSampleQueue(capacity));
     }
 
     /** @return channel name of this buffer */
@@ -63,41 +92,87 @@ public class SampleBuffer
     /** @return Queue capacity, i.e. maximum queue size. */
     public int getCapacity()
     {
-    	synchronized (samples)
-        {
-    		return samples.getCapacity();
-        }
+        return samples.getCapacity();
     }
 
     /** @return Current queue size, i.e. number of samples in the queue. */
     public int getQueueSize()
     {
-    	synchronized (samples)
-        {
-    		return samples.size();
-        }
+        return samples.size();
     }
 
     /** @return <code>true</code> if currently experiencing write errors */
     public static boolean isInErrorState()
     {
-        return error;
+        return error_count.get() > 0;
     }
 
-    /** Set the error state. */
+    /** Update the error state.
+     *  <p>
+     *  Each write thread calls this when it enters resp. leaves
+     *  the error state. Buffers remain in the error state
+     *  until all write threads recovered.
+     *  @param error <code>true</code> when entering, <code>false</code> when leaving the error state
+     */
     static void setErrorState(final boolean error)
     {
-        SampleBuffer.error = error;
+        if (error)
+            error_count.incrementAndGet();
+        else
+            error_count.decrementAndGet();
     }
 
-    /** Add a sample to the queue, maybe dropping older samples */
-    @SuppressWarnings("nls")
+    /** @param spill Spill for samples that don't fit into the queue while in error state, or <code>null</code> */
+    void setSpill(final SampleSpill spill)
+    {
+        this.spill = spill;
+    }
+
+    /** Add a sample that was just received or created to the queue, maybe dropping older samples
+     *  @param value Sample to add
+     */
     void add(final VType value)
     {
-    	synchronized (samples)
+        add(value, System.currentTimeMillis());
+    }
+
+    /** Add a sample to the queue, maybe dropping older samples
+     *  @param value Sample to add
+     *  @param received Time when the PV callback received the sample in milliseconds since epoch
+     */
+    void add(final VType value, final long received)
+    {
+        stats.getAddAge().record(System.currentTimeMillis() - received);
+        final VType dropped = samples.add(value, received);
+        // Dropped sample is older than any sample left in the queue,
+        // so it can be appended to the spill
+        final boolean overrun = dropped != null  &&  !spill(dropped);
+        if (overrun  ||  start_of_overruns != null)
+            updateOverruns(overrun);
+    }
+
+    /** Move a dropped sample into the spill
+     *  @param dropped Sample that was dropped from the queue
+     *  @return <code>true</code> if the sample was moved into the spill
+     */
+    private boolean spill(final VType dropped)
+    {
+        final SampleSpill safe_spill = spill;
+        if (safe_spill == null  ||  !isInErrorState())
+            return false;
+        return safe_spill.add(channel_name, dropped);
+    }
+
+    /** Update overrun statistics
+     *  @param overrun Was a sample dropped?
+     */
+    @SuppressWarnings("nls")
+    private void updateOverruns(final boolean overrun)
+    {
+        synchronized (stats)
         {
-            if (samples.isFull())
-            {   // Note start of overruns, then drop older sample
+            if (overrun)
+            {   // Note start of overruns
                 if (start_of_overruns == null)
                     start_of_overruns = Integer.valueOf(stats.getOverruns());
                 stats.addOverrun();
@@ -108,17 +183,51 @@ public class SampleBuffer
                 overrun_msg.log(channel_name + ": " + overruns + " overruns");
                 start_of_overruns = null;
             }
-            samples.add(value);
         }
     }
 
+    /** Move all samples from the queue into the spill
+     *  @return <code>true</code> if all samples were moved into the spill
+     */
+    boolean spillAll()
+    {
+        final SampleSpill safe_spill = spill;
+        if (safe_spill == null)
+            return false;
+        VType sample;
+        while ((sample = samples.remove()) != null)
+            if (! safe_spill.add(channel_name, sample))
+                return false;
+        return true;
+    }
+
     /** @return latest sample in queue or <code>null</code> if empty */
     VType remove()
     {
-    	synchronized (samples)
-        {
-            return samples.remove();
-        }
+        return samples.remove();
+    }
+
+    /** Remove up to a maximum number of the oldest samples
+     *  @param collection Collection to which the samples are added, oldest first
+     *  @param max Maximum number of samples to remove
+     *  @return Number of samples that were added to the collection
+     */
+    int drainTo(final Collection<? super VType> collection, final int max)
+    {
+        return samples.drainTo(collection, null, 0, max);
+    }
+
+    /** Remove up to a maximum number of the oldest samples
+     *  @param collection Collection to which the samples are added, oldest first
+     *  @param received Array for the time when each sample was received, filled from <code>offset</code>
+     *  @param offset Index in <code>received</code> for the first sample
+     *  @param max Maximum number of samples to remove
+     *  @return Number of samples that were added to the collection
+     */
+    int drainTo(final Collection<? super VType> collection, final long[] received,
+                final int offset, final int max)
+    {
+        return samples.drainTo(collection, received, offset, max);
     }
 
     /** Update stats with current values */
@@ -136,8 +245,11 @@ public class SampleBuffer
     /** Reset statistics */
     public void reset()
     {
-        start_of_overruns = null;
-        stats.reset();
+        synchronized (stats)
+        {
+            start_of_overruns = null;
+            stats.reset();
+        }
     }
 
     @SuppressWarnings("nls")
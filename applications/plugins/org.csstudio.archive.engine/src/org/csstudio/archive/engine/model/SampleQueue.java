@@ -0,0 +1,64 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.archive.engine.model;
+
+import java.util.Collection;
+
+import org.epics.vtype.VType;
+
+/** Ring buffer for the samples of a {@link SampleBuffer}.
+ *  <p>
+ *  When the queue is full, adding a sample overwrites the oldest sample.
+ *  <p>
+ *  Implementations must be thread-safe for several threads adding
+ *  while another thread removes samples.
+ *  Samples are added by the PV callback, the periodic scan
+ *  and changes in the enablement of a channel,
+ *  and adding to a full queue also removes the oldest sample.
+ *  A single-producer, single-consumer queue thus does not apply,
+ *  so the implementations synchronize on the queue.
+ *
+ *  @author Kay Kasemir
+ */
+interface SampleQueue
+{
+    /** @return <code>true</code> if queue is empty */
+    public boolean isEmpty();
+
+    /** @return <code>true</code> if queue is full,
+     *          i.e. the next addition will override the oldest sample
+     */
+    public boolean isFull();
+
+    /** @return Number of samples in queue */
+    public int size();
+
+    /** @return Maximum number of samples in queue */
+    public int getCapacity();
+
+    /** @param value Sample to add
+     *  @param received Time when the sample was received in milliseconds since epoch
+     *  @return Oldest sample that was dropped because queue was full, or <code>null</code>
+     */
+    public VType add(VType value, long received);
+
+    /** Remove the oldest sample.
+     *  @return Oldest sample or <code>null</code>
+     */
+    public VType remove();
+
+    /** Remove up to a maximum number of the oldest samples.
+     *  @param samples Collection to which the samples are added, oldest first
+     *  @param received Array for the time when each sample was received, filled from <code>offset</code>,
+     *                  or <code>null</code>
+     *  @param offset Index in <code>received</code> for the first sample
+     *  @param max Maximum number of samples to remove
+     *  @return Number of samples that were added to the collection
+     */
+    public int drainTo(Collection<? super VType> samples, long[] received, int offset, int max);
+}
@@ -0,0 +1,544 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.archive.engine.model;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.BufferOverflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.logging.Level;
+
+import org.csstudio.archive.engine.Activator;
+import org.csstudio.archive.vtype.ArchiveVEnum;
+import org.csstudio.archive.vtype.ArchiveVNumber;
+import org.csstudio.archive.vtype.ArchiveVNumberArray;
+import org.csstudio.archive.vtype.ArchiveVString;
+import org.csstudio.archive.vtype.VTypeHelper;
+import org.epics.util.array.ListNumber;
+import org.epics.util.text.NumberFormats;
+import org.epics.util.time.Timestamp;
+import org.epics.vtype.AlarmSeverity;
+import org.epics.vtype.Display;
+import org.epics.vtype.VEnum;
+import org.epics.vtype.VNumber;
+import org.epics.vtype.VNumberArray;
+import org.epics.vtype.VString;
+import org.epics.vtype.VType;
+import org.epics.vtype.ValueFactory;
+
+/** Memory-mapped, append-only spill file for samples.
+ *  <p>
+ *  While the archive cannot be written, a {@link SampleBuffer}
+ *  moves the samples that would otherwise be dropped from its
+ *  full ring buffer into the spill.
+ *  Once writing succeeds again, the {@link WriteThread}
+ *  replays the spilled samples before it writes the samples
+ *  that remained in the sample buffers.
+ *  <p>
+ *  The spill file is kept on disk, so samples that were spilled
+ *  when the engine stopped are replayed after the next start.
+ *  <p>
+ *  File layout:
+ *  <pre>
+ *  int   magic
+ *  int   read position
+ *  int   write position
+ *  int   number of samples
+ *  ...   records
+ *  </pre>
+ *  Each record:
+ *  <pre>
+ *  int   size of the remaining record
+ *  str   channel name
+ *  byte  value type
+ *  long  seconds, int nanoseconds
+ *  byte  severity
+ *  str   status
+ *  ...   value for the type, optional display info
+ *  </pre>
+ *  Strings are stored as int length followed by UTF-8 bytes.
+ *
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class SampleSpill
+{
+    /** Sample read from the spill */
+    public static class Sample
+    {
+        final private String channel;
+        final private VType value;
+
+        Sample(final String channel, final VType value)
+        {
+            this.channel = channel;
+            this.value = value;
+        }
+
+        /** @return Channel name */
+        public String getChannel()
+        {
+            return channel;
+        }
+
+        /** @return Value */
+        public VType getValue()
+        {
+            return value;
+        }
+    }
+
+    /** Orders samples by time stamp */
+    final private static Comparator<Sample> time_order = new Comparator<Sample>()
+    {
+        @Override
+        public int compare(final Sample a, final Sample b)
+        {
+            return VTypeHelper.getTimestamp(a.value).compareTo(VTypeHelper.getTimestamp(b.value));
+        }
+    };
+
+    final private static int MAGIC = 0x53504C31; // "SPL1"
+    final private static int HEADER_SIZE = 16;
+
+    final private static byte TYPE_STRING = 0;
+    final private static byte TYPE_DOUBLE = 1;
+    final private static byte TYPE_LONG = 2;
+    final private static byte TYPE_ENUM = 3;
+    final private static byte TYPE_ARRAY = 4;
+
+    final private static Charset UTF8 = Charset.forName("UTF-8");
+
+    final private static AlarmSeverity[] severities = AlarmSeverity.values();
+
+    /** Spill file */
+    final private File file;
+
+    /** File that's mapped into memory */
+    final private RandomAccessFile raf;
+
+    /** Memory-mapped file content.
+     *  SYNC on this for access
+     */
+    final private MappedByteBuffer buffer;
+
+    /** Position of the oldest record that was not replayed */
+    private int read_pos;
+
+    /** Position where the next record is appended */
+    private int write_pos;
+
+    /** Position after the records returned by the last <code>peek</code> */
+    private int peek_pos;
+
+    /** Number of records returned by the last <code>peek</code> */
+    private int peek_count;
+
+    /** Number of records between read and write position */
+    private int count;
+
+    /** Open spill file, replaying any samples that are already in the file
+     *  @param file Spill file
+     *  @param capacity Size of the file in bytes
+     *  @throws Exception on error
+     */
+    public SampleSpill(final File file, final long capacity) throws Exception
+    {
+        this.file = file;
+        final File dir = file.getParentFile();
+        if (dir != null  &&  !dir.exists()  &&  !dir.mkdirs())
+            throw new Exception("Cannot create spill directory " + dir);
+        raf = new RandomAccessFile(file, "rw");
+        // Keep all of an existing, larger file
+        final long size = Math.max(capacity, raf.length());
+        if (size > Integer.MAX_VALUE  ||  size <= HEADER_SIZE)
+        {
+            raf.close();
+            throw new Exception("Invalid spill file size " + size);
+        }
+        buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        if (buffer.getInt(0) == MAGIC)
+        {
+            read_pos = buffer.getInt(4);
+            write_pos = buffer.getInt(8);
+            count = buffer.getInt(12);
+            if (read_pos < HEADER_SIZE  ||  read_pos > write_pos  ||  write_pos > size  ||  count < 0)
+            {
+                Activator.getLogger().log(Level.WARNING, "Ignoring corrupted spill file {0}", file);
+                clear();
+            }
+            else if (count > 0)
+                Activator.getLogger().log(Level.INFO, "Spill file {0} holds {1} samples",
+                        new Object[] { file, count });
+        }
+        else
+            clear();
+        peek_pos = read_pos;
+    }
+
+    /** @return Spill file */
+    public File getFile()
+    {
+        return file;
+    }
+
+    /** @return Number of samples in the spill */
+    public synchronized int size()
+    {
+        return count;
+    }
+
+    /** @return <code>true</code> if there are no samples in the spill */
+    public synchronized boolean isEmpty()
+    {
+        return count <= 0;
+    }
+
+    /** @return Number of bytes used */
+    public synchronized int getUsedBytes()
+    {
+        return write_pos - read_pos;
+    }
+
+    /** @return Capacity in bytes */
+    public int getCapacity()
+    {
+        return buffer.capacity() - HEADER_SIZE;
+    }
+
+    /** Remove all samples */
+    private void clear()
+    {
+        read_pos = write_pos = peek_pos = HEADER_SIZE;
+        count = peek_count = 0;
+        buffer.putInt(0, MAGIC);
+        updateHeader();
+    }
+
+    /** Write read/write positions to header */
+    private void updateHeader()
+    {
+        buffer.putInt(4, read_pos);
+        buffer.putInt(8, write_pos);
+        buffer.putInt(12, count);
+    }
+
+    /** Append a sample
+     *  @param channel Channel name
+     *  @param value Value
+     *  @return <code>true</code> if added, <code>false</code> if spill is full
+     */
+    public synchronized boolean add(final String channel, final VType value)
+    {
+        try
+        {
+            buffer.position(write_pos + 4);
+            putString(channel);
+            final Timestamp time = VTypeHelper.getTimestamp(value);
+            if (value instanceof VNumber)
+            {
+                final Number number = ((VNumber) value).getValue();
+                if (number instanceof Double  ||  number instanceof Float)
+                {
+                    putHeader(TYPE_DOUBLE, time, value);
+                    buffer.putDouble(number.doubleValue());
+                }
+                else
+                {
+                    putHeader(TYPE_LONG, time, value);
+                    buffer.putLong(number.longValue());
+                }
+                putDisplay((Display) value);
+            }
+            else if (value instanceof VNumberArray)
+            {
+                putHeader(TYPE_ARRAY, time, value);
+                final ListNumber data = ((VNumberArray) value).getData();
+                final int N = data.size();
+                buffer.putInt(N);
+                for (int i=0; i<N; ++i)
+                    buffer.putDouble(data.getDouble(i));
+                putDisplay((Display) value);
+            }
+            else if (value instanceof VEnum)
+            {
+                putHeader(TYPE_ENUM, time, value);
+                final VEnum enumerated = (VEnum) value;
+                buffer.putInt(enumerated.getIndex());
+                final List<String> labels = enumerated.getLabels();
+                buffer.putInt(labels.size());
+                for (String label : labels)
+                    putString(label);
+            }
+            else
+            {
+                putHeader(TYPE_STRING, time, value);
+                if (value instanceof VString)
+                    putString(((VString) value).getValue());
+                else
+                    putString(VTypeHelper.toString(value));
+            }
+        }
+        catch (BufferOverflowException ex)
+        {   // Spill is full
+            return false;
+        }
+        final int end = buffer.position();
+        buffer.putInt(write_pos, end - write_pos - 4);
+        write_pos = end;
+        ++count;
+        updateHeader();
+        return true;
+    }
+
+    /** Read the oldest samples without removing them
+     *  <p>
+     *  Corrupted records are skipped, and the following
+     *  <code>remove</code> drops them together with the returned samples.
+     *
+     *  @param max Maximum number of samples to read
+     *  @return Samples, sorted by time stamp within this batch.
+     *          Samples of a later <code>peek</code> may be older,
+     *          but never for the same channel.
+     *          Empty if there are none
+     *  @see #remove()
+     */
+    public synchronized List<Sample> peek(final int max)
+    {
+        final List<Sample> samples = new ArrayList<Sample>(Math.min(max, count));
+        int pos = read_pos;
+        int records = 0;
+        while (pos < write_pos  &&  samples.size() < max)
+        {
+            final int size = write_pos - pos >= 4 ? buffer.getInt(pos) : -1;
+            if (size < 0  ||  size > write_pos - pos - 4)
+            {   // Cannot locate the following records
+                Activator.getLogger().log(Level.WARNING,
+                        "Spill file {0} is corrupted at position {1}, dropping the remaining samples",
+                        new Object[] { file, pos });
+                pos = write_pos;
+                break;
+            }
+            final Sample sample = readSample(pos + 4, size);
+            if (sample != null)
+                samples.add(sample);
+            ++records;
+            pos += 4 + size;
+        }
+        peek_pos = pos;
+        peek_count = records;
+        Collections.sort(samples, time_order);
+        return samples;
+    }
+
+    /** Remove the samples returned by the last <code>peek</code>
+     *  @see #peek(int)
+     */
+    public synchronized void remove()
+    {
+        read_pos = peek_pos;
+        count -= peek_count;
+        peek_count = 0;
+        if (read_pos >= write_pos)
+            clear();
+        else
+            updateHeader();
+    }
+
+    /** Write changes to disk */
+    public void force()
+    {
+        buffer.force();
+    }
+
+    /** Close the spill file */
+    public void close()
+    {
+        force();
+        try
+        {
+            raf.close();
+        }
+        catch (Exception ex)
+        {
+            Activator.getLogger().log(Level.WARNING, "Error closing spill file " + file, ex);
+        }
+    }
+
+    private void putHeader(final byte type, final Timestamp time, final VType value)
+    {
+        buffer.put(type);
+        buffer.putLong(time.getSec());
+        buffer.putInt(time.getNanoSec());
+        buffer.put((byte) VTypeHelper.getSeverity(value).ordinal());
+        putString(VTypeHelper.getMessage(value));
+    }
+
+    private void putDisplay(final Display display)
+    {
+        putDouble(display.getLowerDisplayLimit());
+        putDouble(display.getLowerAlarmLimit());
+        putDouble(display.getLowerWarningLimit());
+        putString(display.getUnits());
+        final NumberFormat format = display.getFormat();
+        buffer.putInt(format == null ? -1 : format.getMaximumFractionDigits());
+        putDouble(display.getUpperWarningLimit());
+        putDouble(display.getUpperAlarmLimit());
+        putDouble(display.getUpperDisplayLimit());
+        putDouble(display.getLowerCtrlLimit());
+        putDouble(display.getUpperCtrlLimit());
+    }
+
+    private void putDouble(final Double value)
+    {
+        buffer.putDouble(value == null ? Double.NaN : value.doubleValue());
+    }
+
+    private void putString(final String text)
+    {
+        final byte[] bytes = (text == null ? "" : text).getBytes(UTF8);
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    /** @param start Start of record, after its size
+     *  @param size Size of record
+     *  @return Sample or <code>null</code> if the record is corrupted
+     */
+    private Sample readSample(final int start, final int size)
+    {
+        // Limit reading to the record
+        buffer.limit(start + size);
+        buffer.position(start);
+        try
+        {
+            return readSample();
+        }
+        catch (RuntimeException ex)
+        {
+            Activator.getLogger().log(Level.WARNING,
+                    "Skipping corrupted sample at position " + start + " of spill file " + file, ex);
+            return null;
+        }
+        finally
+        {
+            buffer.limit(buffer.capacity());
+        }
+    }
+
+    /** @return Sample read from the current buffer position
+     *  @throws RuntimeException if the record is corrupted
+     */
+    private Sample readSample()
+    {
+        final String channel = getString();
+        if (channel.isEmpty())
+            throw new IllegalArgumentException("Missing channel name");
+        final byte type = buffer.get();
+        final long seconds = buffer.getLong();
+        final int nanos = buffer.getInt();
+        if (nanos < 0  ||  nanos > 999999999)
+            throw new IllegalArgumentException("Invalid nanoseconds " + nanos);
+        final Timestamp time = Timestamp.of(seconds, nanos);
+        final int severity_index = buffer.get();
+        if (severity_index < 0  ||  severity_index >= severities.length)
+            throw new IllegalArgumentException("Invalid severity " + severity_index);
+        final AlarmSeverity severity = severities[severity_index];
+        final String status = getString();
+        final VType value;
+        switch (type)
+        {
+        case TYPE_DOUBLE:
+        {
+            final double number = buffer.getDouble();
+            value = new ArchiveVNumber(time, severity, status, getDisplay(), number);
+            break;
+        }
+        case TYPE_LONG:
+        {
+            final long number = buffer.getLong();
+            value = new ArchiveVNumber(time, severity, status, getDisplay(), number);
+            break;
+        }
+        case TYPE_ARRAY:
+        {
+            final double[] data = new double[getCount(8)];
+            for (int i=0; i<data.length; ++i)
+                data[i] = buffer.getDouble();
+            value = new ArchiveVNumberArray(time, severity, status, getDisplay(), data);
+            break;
+        }
+        case TYPE_ENUM:
+        {
+            final int index = buffer.getInt();
+            final int N = getCount(4);
+            final List<String> labels = new ArrayList<String>(N);
+            for (int i=0; i<N; ++i)
+                labels.add(getString());
+            value = new ArchiveVEnum(time, severity, status, labels, index);
+            break;
+        }
+        case TYPE_STRING:
+            value = new ArchiveVString(time, severity, status, getString());
+            break;
+        default:
+            throw new IllegalArgumentException("Unknown value type " + type);
+        }
+        return new Sample(channel, value);
+    }
+
+    private Display getDisplay()
+    {
+        final double lower_display = buffer.getDouble();
+        final double lower_alarm = buffer.getDouble();
+        final double lower_warning = buffer.getDouble();
+        final String units = getString();
+        final int precision = buffer.getInt();
+        final NumberFormat format = precision < 0
+            ? NumberFormats.toStringFormat()
+            : NumberFormats.format(precision);
+        final double upper_warning = buffer.getDouble();
+        final double upper_alarm = buffer.getDouble();
+        final double upper_display = buffer.getDouble();
+        final double lower_ctrl = buffer.getDouble();
+        final double upper_ctrl = buffer.getDouble();
+        return ValueFactory.newDisplay(lower_display, lower_alarm, lower_warning, units, format,
+                upper_warning, upper_alarm, upper_display, lower_ctrl, upper_ctrl);
+    }
+
+    /** @param element_size Minimum size of each element in bytes
+     *  @return Number of elements, checked against the remaining bytes of the record
+     */
+    private int getCount(final int element_size)
+    {
+        final int count = buffer.getInt();
+        if (count < 0  ||  count > buffer.remaining() / element_size)
+            throw new IllegalArgumentException("Invalid element count " + count);
+        return count;
+    }
+
+    private String getString()
+    {
+        final byte[] bytes = new byte[getCount(1)];
+        buffer.get(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "Sample spill " + file + ": " + size() + " samples";
+    }
+}
@@ -0,0 +1,213 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.archive.engine.model;
+
+import java.util.Collection;
+
+import org.csstudio.archive.vtype.ArchiveVNumber;
+import org.csstudio.archive.vtype.MetaDataHelper;
+import org.epics.util.time.Timestamp;
+import org.epics.vtype.AlarmSeverity;
+import org.epics.vtype.Display;
+import org.epics.vtype.VNumber;
+import org.epics.vtype.VType;
+import org.epics.vtype.ValueFactory;
+
+/** {@link SampleQueue} that keeps scalar 'double' samples in primitive arrays.
+ *  <p>
+ *  Time stamp, value and severity of each scalar double sample
+ *  are stored in parallel arrays, with the status and display info
+ *  shared between samples.
+ *  The received {@link VType} can thus be garbage-collected right away
+ *  instead of remaining in the queue until the next write run.
+ *  A {@link VType} is re-created when the sample is fetched for writing.
+ *  <p>
+ *  Other samples, like strings for 'disconnected' info or
+ *  integer and array samples, are kept as received.
+ *  <p>
+ *  Synchronizes on the queue.
+ *
+ *  @author Kay Kasemir
+ */
+class ScalarSampleQueue implements SampleQueue
+{
+    final private static AlarmSeverity[] severities = AlarmSeverity.values();
+
+    // Ring buffer of valid entries
+    // [start], [start+1], ..., [start+size-1]
+    // with wrap-around at [capacity-1],
+    // same as org.csstudio.apputil.ringbuffer.RingBuffer
+    final private int capacity;
+    private int start = 0, size = 0;
+
+    // Columns for scalar samples
+    final private long[] seconds;
+    final private int[] nanos;
+    final private double[] values;
+    final private byte[] severity;
+    final private String[] status;
+    final private Display[] displays;
+
+    /** Time when each sample was received */
+    final private long[] received;
+
+    /** Samples that are not kept in the scalar columns, <code>null</code> for scalar samples */
+    final private VType[] others;
+
+    /** Display info of most recent scalar sample, shared by samples with same display info */
+    private Display display = null;
+
+    /** @param capacity Queue capacity */
+    ScalarSampleQueue(final int capacity)
+    {
+        this.capacity = capacity;
+        seconds = new long[capacity];
+        nanos = new int[capacity];
+        values = new double[capacity];
+        severity = new byte[capacity];
+        status = new String[capacity];
+        displays = new Display[capacity];
+        received = new long[capacity];
+        others = new VType[capacity];
+    }
+
+    @Override
+    public synchronized boolean isEmpty()
+    {
+        return size <= 0;
+    }
+
+    @Override
+    public synchronized boolean isFull()
+    {
+        return size >= capacity;
+    }
+
+    @Override
+    public synchronized int size()
+    {
+        return size;
+    }
+
+    @Override
+    public int getCapacity()
+    {
+        return capacity;
+    }
+
+    @Override
+    public synchronized VType add(final VType value, final long received)
+    {
+        VType dropped = null;
+        if (size >= capacity)
+        {
+            dropped = get(0);
+            ++start; // Overwrite oldest element
+            if (start >= capacity)
+                start = 0;
+        }
+        else
+            ++size;
+        final int i = (start + size - 1) % capacity;
+        this.received[i] = received;
+        if (isScalarDouble(value))
+        {
+            final VNumber number = (VNumber) value;
+            final Timestamp time = number.getTimestamp();
+            seconds[i] = time.getSec();
+            nanos[i] = time.getNanoSec();
+            values[i] = number.getValue().doubleValue();
+            severity[i] = (byte) number.getAlarmSeverity().ordinal();
+            status[i] = number.getAlarmName();
+            displays[i] = getDisplay(number);
+            others[i] = null;
+        }
+        else
+        {
+            status[i] = null;
+            displays[i] = null;
+            others[i] = value;
+        }
+        return dropped;
+    }
+
+    /** @param value Value
+     *  @return <code>true</code> if value can be kept in the scalar columns
+     */
+    private static boolean isScalarDouble(final VType value)
+    {
+        if (! (value instanceof VNumber))
+            return false;
+        final VNumber number = (VNumber) value;
+        // Keep integer types as they are, since writer handles them differently
+        return number.getValue() instanceof Double  &&
+               number.getTimestamp() != null  &&
+               number.getAlarmSeverity() != null  &&
+               number.getUnits() != null;
+    }
+
+    /** @param number Received sample
+     *  @return Display info, shared with previous sample if identical
+     */
+    private Display getDisplay(final VNumber number)
+    {
+        if (display == null  ||  !MetaDataHelper.equals(display, number))
+            display = ValueFactory.newDisplay(number.getLowerDisplayLimit(),
+                    number.getLowerAlarmLimit(), number.getLowerWarningLimit(),
+                    number.getUnits(), number.getFormat(),
+                    number.getUpperWarningLimit(), number.getUpperAlarmLimit(),
+                    number.getUpperDisplayLimit(),
+                    number.getLowerCtrlLimit(), number.getUpperCtrlLimit());
+        return display;
+    }
+
+    /** @param i Index 0 .. size()-1
+     *  @return Sample at given index
+     */
+    public synchronized VType get(int i)
+    {
+        if (i<0 || i >= size)
+            throw new ArrayIndexOutOfBoundsException(i);
+        i = (start + i) % capacity;
+        if (others[i] != null)
+            return others[i];
+        return new ArchiveVNumber(Timestamp.of(seconds[i], nanos[i]),
+                severities[severity[i]], status[i], displays[i],
+                Double.valueOf(values[i]));
+    }
+
+    @Override
+    public synchronized VType remove()
+    {
+        if (isEmpty())
+            return null;
+        final VType result = get(0);
+        status[start] = null;
+        displays[start] = null;
+        others[start] = null;
+        --size;
+        ++start;
+        if (start >= capacity)
+            start = 0;
+        return result;
+    }
+
+    @Override
+    public synchronized int drainTo(final Collection<? super VType> samples,
+                                    final long[] received, final int offset, final int max)
+    {
+        final int count = Math.min(max, size);
+        for (int i=0; i<count; ++i)
+        {
+            if (received != null)
+                received[offset + i] = this.received[start];
+            samples.add(remove());
+        }
+        return count;
+    }
+}
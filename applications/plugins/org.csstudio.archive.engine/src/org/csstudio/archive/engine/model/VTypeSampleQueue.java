@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.archive.engine.model;
+
+import java.util.Collection;
+
+import org.epics.vtype.VType;
+
+/** {@link SampleQueue} that holds the {@link VType} samples as received.
+ *  <p>
+ *  Synchronizes on the queue.
+ *  @author Kay Kasemir
+ */
+class VTypeSampleQueue implements SampleQueue
+{
+    // Ring buffer of valid entries
+    // [start], [start+1], ..., [start+size-1]
+    // with wrap-around at [capacity-1],
+    // same as org.csstudio.apputil.ringbuffer.RingBuffer
+    final private int capacity;
+    private int start = 0, size = 0;
+
+    final private VType[] samples;
+
+    /** Time when each sample was received */
+    final private long[] received;
+
+    /** @param capacity Queue capacity */
+    VTypeSampleQueue(final int capacity)
+    {
+        this.capacity = capacity;
+        samples = new VType[capacity];
+        received = new long[capacity];
+    }
+
+    @Override
+    public synchronized boolean isEmpty()
+    {
+        return size <= 0;
+    }
+
+    @Override
+    public synchronized boolean isFull()
+    {
+        return size >= capacity;
+    }
+
+    @Override
+    public synchronized int size()
+    {
+        return size;
+    }
+
+    @Override
+    public int getCapacity()
+    {
+        return capacity;
+    }
+
+    @Override
+    public synchronized VType add(final VType value, final long received)
+    {
+        VType dropped = null;
+        if (size >= capacity)
+        {
+            dropped = samples[start];
+            ++start; // Overwrite oldest element
+            if (start >= capacity)
+                start = 0;
+        }
+        else
+            ++size;
+        final int i = (start + size - 1) % capacity;
+        samples[i] = value;
+        this.received[i] = received;
+        return dropped;
+    }
+
+    @Override
+    public synchronized VType remove()
+    {
+        if (size <= 0)
+            return null;
+        final VType result = samples[start];
+        samples[start] = null;
+        --size;
+        ++start;
+        if (start >= capacity)
+            start = 0;
+        return result;
+    }
+
+    @Override
+    public synchronized int drainTo(final Collection<? super VType> collection,
+                                    final long[] received, final int offset, final int max)
+    {
+        final int count = Math.min(max, size);
+        for (int i=0; i<count; ++i)
+        {
+            if (received != null)
+                received[offset + i] = this.received[start];
+            collection.add(remove());
+        }
+        return count;
+    }
+}
@@ -7,13 +7,18 @@
  ******************************************************************************/
 package org.csstudio.archive.engine.model;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 
 import org.csstudio.apputil.time.BenchmarkTimer;
 import org.csstudio.archive.engine.Activator;
 import org.csstudio.archive.writer.ArchiveWriter;
 import org.csstudio.archive.writer.ArchiveWriterFactory;
+import org.csstudio.archive.writer.BatchArchiveWriter;
 import org.csstudio.archive.writer.WriteChannel;
 import org.csstudio.util.stats.Average;
 import org.epics.util.time.Timestamp;
@@ -29,6 +34,14 @@ import org.epics.vtype.VType;
  *  be lost.
  *  The channels that add samples to the sample buffer supposedly notice
  *  the error condition and add a special indicator once we recover.
+ *  <p>
+ *  The engine may use several write threads, each handling a subset
+ *  of the channels with its own <code>ArchiveWriter</code>,
+ *  so that one slow write does not stall all channels.
+ *  <p>
+ *  Optionally, samples that overflow the sample buffers while
+ *  in the error state are kept in a {@link SampleSpill} and
+ *  written once the archive is available again.
  *
  *  @author Kay Kasemir
  */
@@ -37,6 +50,9 @@ public class WriteThread implements Runnable
     /** Minimum write period [seconds] */
     private static final double MIN_WRITE_PERIOD = 5.0;
 
+    /** Name of this write thread */
+    final private String name;
+
     /** Server to which this thread writes. */
     private ArchiveWriter writer;
 
@@ -53,10 +69,21 @@ public class WriteThread implements Runnable
     private Object wait_block = new Object();
 
     /** Delay between write runs. */
-    private long millisec_delay = 5000;
+    private volatile long millisec_delay = 5000;
 
     /** Number of values to place into one batch */
-    private int batch_size = 500;
+    private volatile int batch_size = 500;
+
+    /** Limits for adapting write period and batch size [seconds, seconds, samples, samples],
+     *  or <code>null</code> to use fixed write period and batch size
+     */
+    private double[] adaptive_limits = null;
+
+    /** Control that adapts write period and batch size, or <code>null</code> */
+    private AdaptiveWriteControl adaptive = null;
+
+    /** Total buffer overruns at start of last write run */
+    private long last_overruns = 0;
 
     /** Time of end of last write run */
     private Timestamp last_write_stamp = null;
@@ -67,9 +94,44 @@ public class WriteThread implements Runnable
     /** Average duration of write run */
     private Average write_time = new Average();
 
+    /** Average number of values written per second */
+    private Average write_rate = new Average();
+
+    /** Spill file or <code>null</code> */
+    private File spill_file = null;
+
+    /** Size of spill file in bytes */
+    private long spill_capacity;
+
+    /** Spill for samples that overflow the buffers, or <code>null</code> */
+    private volatile SampleSpill spill = null;
+
+    /** Is this thread currently experiencing write errors? */
+    private volatile boolean write_error = false;
+
     /** Thread the executes this.run() */
     private Thread thread;
 
+    /** Construct write thread */
+    public WriteThread()
+    {
+        this("WriteThread"); //$NON-NLS-1$
+    }
+
+    /** Construct write thread
+     *  @param name Name of the thread
+     */
+    public WriteThread(final String name)
+    {
+        this.name = name;
+    }
+
+    /** @return Name of this write thread */
+    public String getName()
+    {
+        return name;
+    }
+
     /** Add a channel's buffer that this thread reads */
     public void addChannel(final ArchiveChannel channel)
     {
@@ -79,7 +141,107 @@ public class WriteThread implements Runnable
     /** Add a sample buffer that this thread reads */
     void addSampleBuffer(final SampleBuffer buffer)
     {
-        buffers.add(buffer);
+        synchronized (buffers)
+        {
+            buffers.add(buffer);
+        }
+        buffer.setSpill(spill);
+    }
+
+    /** Configure spill for samples that overflow the buffers while in error state
+     *  @param file Spill file
+     *  @param capacity Size of spill file in bytes
+     */
+    public void setSpillFile(final File file, final long capacity)
+    {
+        spill_file = file;
+        spill_capacity = capacity;
+    }
+
+    /** @return Number of samples in spill, 0 if there is no spill */
+    public int getSpillSize()
+    {
+        final SampleSpill safe_spill = spill;
+        return safe_spill == null ? 0 : safe_spill.size();
+    }
+
+    /** @param spill Spill to use for all buffers, or <code>null</code> */
+    private void setSpill(final SampleSpill spill)
+    {
+        this.spill = spill;
+        synchronized (buffers)
+        {
+            for (SampleBuffer buffer : buffers)
+                buffer.setSpill(spill);
+        }
+    }
+
+    /** Remove all sample buffers */
+    void clear()
+    {
+        synchronized (buffers)
+        {
+            buffers.clear();
+        }
+    }
+
+    /** @return Number of sample buffers handled by this thread */
+    public int getBufferCount()
+    {
+        synchronized (buffers)
+        {
+            return buffers.size();
+        }
+    }
+
+    /** Configure adaptive write period and batch size.
+     *  <p>
+     *  Must be called before <code>start()</code>.
+     *  The write period and batch size passed to <code>start()</code>
+     *  are then used as initial values.
+     *
+     *  @param min_period Minimum write period in seconds
+     *  @param max_period Maximum write period in seconds
+     *  @param min_batch Minimum batch size
+     *  @param max_batch Maximum batch size
+     *  @see AdaptiveWriteControl
+     */
+    public void setAdaptiveLimits(final double min_period, final double max_period,
+                                  final int min_batch, final int max_batch)
+    {
+        adaptive_limits = new double[] { min_period, max_period, min_batch, max_batch };
+    }
+
+    /** @return Control that adapts write period and batch size,
+     *          <code>null</code> when using fixed values
+     */
+    public AdaptiveWriteControl getAdaptiveControl()
+    {
+        return adaptive;
+    }
+
+    /** @return Current write period in seconds */
+    public double getWritePeriod()
+    {
+        return millisec_delay / 1000.0;
+    }
+
+    /** @return Current batch size */
+    public int getBatchSize()
+    {
+        return batch_size;
+    }
+
+    /** @return Number of samples currently queued in this thread's buffers */
+    public int getBacklog()
+    {
+        int backlog = 0;
+        synchronized (buffers)
+        {
+            for (SampleBuffer buffer : buffers)
+                backlog += buffer.getQueueSize();
+        }
+        return backlog;
     }
 
     /** Start the write thread.
@@ -97,7 +259,30 @@ public class WriteThread implements Runnable
         }
         millisec_delay = (int)(1000.0 * write_period);
         this.batch_size = batch_size;
-        thread = new Thread(this, "WriteThread");
+        if (adaptive_limits != null)
+        {
+            final double min_period = Math.max(MIN_WRITE_PERIOD, adaptive_limits[0]);
+            adaptive = new AdaptiveWriteControl(
+                    (long) (1000.0 * min_period), (long) (1000.0 * adaptive_limits[1]),
+                    (int) adaptive_limits[2], (int) adaptive_limits[3],
+                    millisec_delay, batch_size);
+            millisec_delay = adaptive.getDelay();
+            this.batch_size = adaptive.getBatchSize();
+            Activator.getLogger().log(Level.INFO, "{0}: Adaptive {1}",
+                    new Object[] { name, adaptive });
+        }
+        if (spill_file != null)
+        {
+            try
+            {
+                setSpill(new SampleSpill(spill_file, spill_capacity));
+            }
+            catch (Exception ex)
+            {
+                Activator.getLogger().log(Level.WARNING, "Cannot open spill file " + spill_file, ex);
+            }
+        }
+        thread = new Thread(this, name);
         thread.start();
     }
 
@@ -106,6 +291,7 @@ public class WriteThread implements Runnable
     {
         write_count.reset();
         write_time.reset();
+        write_rate.reset();
     }
 
     /** Ask the write thread to stop ASAP. */
@@ -136,6 +322,18 @@ public class WriteThread implements Runnable
         return write_time.get();
     }
 
+    /** @return Average number of values written per second */
+    public double getWriteRate()
+    {
+        return write_rate.get();
+    }
+
+    /** @return <code>true</code> if this thread is experiencing write errors */
+    public boolean isInErrorState()
+    {
+        return write_error;
+    }
+
     /** 'Main loop' of the write thread.
      *  <p>
      *  Writes all values out, then waits.
@@ -153,15 +351,17 @@ public class WriteThread implements Runnable
     @SuppressWarnings("nls")
     public void run()
     {
-        Activator.getLogger().info("WriteThread starts");
+        Activator.getLogger().info(name + " starts");
         final BenchmarkTimer timer = new BenchmarkTimer();
         boolean write_error = false;
+        long last_run_start = 0;
         do_run = true;
         while (do_run)
         {
             long delay;
             try
             {
+                final long run_start = System.currentTimeMillis();
                 // If there was an error before...
                 if (write_error)
                 {   // .. try to reconnect
@@ -184,17 +384,26 @@ public class WriteThread implements Runnable
                 last_write_stamp = Timestamp.now();
                 write_count.update(written);
                 write_time.update(timer.getSeconds());
+                if (last_run_start > 0  &&  run_start > last_run_start)
+                    write_rate.update(written * 1000.0 / (run_start - last_run_start));
+                last_run_start = run_start;
                 // How much of the scheduled delay is left after write()?
                 delay = millisec_delay - timer.getMilliseconds();
             }
             catch (Exception ex)
             {   // Error in write() or the preceding reconnect()...
-                Activator.getLogger().log(Level.WARNING, "Error, will try to reconnect", ex);
+                Activator.getLogger().log(Level.WARNING, name + " error, will try to reconnect", ex);
                 // Use max. delay
                 delay = millisec_delay;
                 write_error = true;
             }
-            SampleBuffer.setErrorState(write_error);
+            if (write_error != this.write_error)
+            {
+                this.write_error = write_error;
+                SampleBuffer.setErrorState(write_error);
+            }
+            if (write_error  &&  spill != null)
+                spill.force();
             // See if there's any time left to wait,
             // or if we already used all that time in the last 'write'
             if (delay > 0)
@@ -212,7 +421,7 @@ public class WriteThread implements Runnable
                 }
             }
         }
-        Activator.getLogger().info("WriteThread exists");
+        Activator.getLogger().info(name + " exits");
     }
 
     /** Stop the write thread, performing a final write. */
@@ -228,6 +437,11 @@ public class WriteThread implements Runnable
         {
         	write();
         }
+        catch (Exception ex)
+        {   // Keep what can't be written in the spill
+            spillBuffers();
+            throw ex;
+        }
         finally
         {
         	if (writer != null)
@@ -235,7 +449,37 @@ public class WriteThread implements Runnable
         		writer.close();
         		writer = null;
         	}
+        	if (write_error)
+        	{
+        	    write_error = false;
+        	    SampleBuffer.setErrorState(false);
+        	}
+        	final SampleSpill safe_spill = spill;
+        	if (safe_spill != null)
+        	{
+        	    setSpill(null);
+        	    safe_spill.close();
+        	}
+        }
+    }
+
+    /** Move all samples from the buffers into the spill */
+    @SuppressWarnings("nls")
+    private void spillBuffers()
+    {
+        if (spill == null)
+            return;
+        synchronized (buffers)
+        {
+            for (SampleBuffer buffer : buffers)
+                if (! buffer.spillAll())
+                {
+                    Activator.getLogger().log(Level.WARNING, "Spill file {0} is full", spill.getFile());
+                    return;
+                }
         }
+        Activator.getLogger().log(Level.INFO, "{0} samples remain in spill file {1}",
+                new Object[] { spill.size(), spill.getFile() });
     }
 
     /** Write right now until all sample buffers are empty
@@ -245,32 +489,226 @@ public class WriteThread implements Runnable
     {
         int total_count = 0;
         int count = 0;
+        // Spilled samples are older than those in the buffers
+        final SampleSpill safe_spill = spill;
+        if (safe_spill != null)
+            total_count += replay(writer, safe_spill);
+        final int batch_size = this.batch_size;
+        final List<VType> samples = new ArrayList<VType>(batch_size);
+        // Buffer and receive time of each sample in batch, to record their age once written
+        final SampleBuffer[] batch_buffers = new SampleBuffer[batch_size];
+        final long[] batch_times = new long[batch_size];
+        // Observations for adapting write period and batch size
+        double max_fill = 0.0;
+        long overruns = 0;
+        int batches = 0;
+        long commit_millis = 0;
         for (SampleBuffer buffer : buffers)
         {
+            if (adaptive != null)
+            {
+                final int capacity = buffer.getCapacity();
+                if (capacity > 0)
+                    max_fill = Math.max(max_fill, buffer.getQueueSize() / (double) capacity);
+                overruns += buffer.getBufferStats().getOverruns();
+            }
             // Update max buffer length etc. before we start to remove samples
             buffer.updateStats();
             // Write samples for one channel
             final String name = buffer.getChannelName();
             final WriteChannel channel = writer.getChannel(name);
-            VType sample = buffer.remove();
-            while (sample != null)
-            {   // Write one value
-                writer.addSample(channel, sample);
-                // Note: count across different sample buffers!
-                ++count;
-                if (count > batch_size)
-                {
+            // Note: count across different sample buffers!
+            int chunk;
+            while ((chunk = buffer.drainTo(samples, batch_times, count, batch_size - count)) > 0)
+            {   // Write a chunk of values
+                addSamples(channel, samples);
+                for (int i=0; i<chunk; ++i)
+                    batch_buffers[count++] = buffer;
+                samples.clear();
+                if (count >= batch_size)
+                {   // Writer may submit this batch while we fill the next one
+                    final long start = System.currentTimeMillis();
+                    startFlush();
+                    commit_millis += System.currentTimeMillis() - start;
+                    ++batches;
+                    recordWriteAge(batch_buffers, batch_times, count);
                     total_count += count;
                     count = 0;
-                    writer.flush();
                 }
-                // next
-                sample = buffer.remove();
             }
         }
         // Flush remaining samples (less than batch_size)
+        final long start = System.currentTimeMillis();
         writer.flush();
+        commit_millis += System.currentTimeMillis() - start;
+        final int full_batches = batches;
+        if (count > 0)
+            ++batches;
+        recordWriteAge(batch_buffers, batch_times, count);
         total_count += count;
+        if (adaptive != null)
+            adapt(max_fill, overruns, batches, full_batches, commit_millis);
         return total_count;
     }
+
+    /** Adapt write period and batch size to observations of last write run
+     *  @param fill Largest buffer fill level 0..1 at start of the write run
+     *  @param overruns Total buffer overruns at start of the write run
+     *  @param batches Number of batches committed in the write run
+     *  @param full_batches Number of those batches that were filled to the batch size
+     *  @param commit_millis Total time spent committing the batches in milliseconds
+     */
+    @SuppressWarnings("nls")
+    private void adapt(final double fill, final long overruns,
+                       final int batches, final int full_batches,
+                       final long commit_millis)
+    {
+        // Overruns may have been reset via the web interface
+        final int new_overruns = (int) Math.max(0, overruns - last_overruns);
+        last_overruns = overruns;
+        adaptive.update(fill, new_overruns, batches, full_batches, commit_millis);
+        final long new_delay = adaptive.getDelay();
+        final int new_batch_size = adaptive.getBatchSize();
+        if (new_delay != millisec_delay  ||  new_batch_size != batch_size)
+        {
+            Activator.getLogger().log(Level.FINE, "{0}: {1}",
+                    new Object[] { name, adaptive });
+            millisec_delay = new_delay;
+            batch_size = new_batch_size;
+        }
+    }
+
+    /** Add samples of one channel to the writer, in bulk if supported
+     *  @param channel Channel to which to add the samples
+     *  @param samples Samples to add
+     *  @throws Exception on error
+     */
+    private void addSamples(final WriteChannel channel, final List<VType> samples) throws Exception
+    {
+        if (writer instanceof BatchArchiveWriter)
+            ((BatchArchiveWriter) writer).addSamples(channel, samples);
+        else
+            for (VType sample : samples)
+                writer.addSample(channel, sample);
+    }
+
+    /** Start to write the added samples, in the background if supported
+     *  @throws Exception on error
+     */
+    private void startFlush() throws Exception
+    {
+        if (writer instanceof BatchArchiveWriter)
+            ((BatchArchiveWriter) writer).startFlush();
+        else
+            writer.flush();
+    }
+
+    /** Record the age of written samples
+     *  @param batch_buffers Buffer of each written sample
+     *  @param batch_times Time when each written sample was received in milliseconds
+     *  @param count Number of written samples
+     */
+    private void recordWriteAge(final SampleBuffer[] batch_buffers, final long[] batch_times, final int count)
+    {
+        final long now = System.currentTimeMillis();
+        for (int i=0; i<count; ++i)
+        {
+            batch_buffers[i].getBufferStats().getWriteAge().record(now - batch_times[i]);
+            batch_buffers[i] = null;
+        }
+    }
+
+    /** Write all samples from the spill
+     *
+     *  <p>The samples of each channel are replayed in the order
+     *  in which they were spilled, which is their time order.
+     *  Samples of different channels are only sorted by time
+     *  within each batch, not across batches,
+     *  since that would require reading the complete spill.
+     *
+     *  <p>Samples that cannot be written, for example because
+     *  their channel is no longer known, are dropped
+     *  so that they don't block the replay of the remaining samples.
+     *
+     *  @param writer {@link ArchiveWriter}
+     *  @param spill {@link SampleSpill}
+     *  @return number of samples written
+     *  @throws Exception on error writing to the archive
+     */
+    // Allow access from 'package' for tests
+    @SuppressWarnings("nls")
+    int replay(final ArchiveWriter writer, final SampleSpill spill) throws Exception
+    {
+        int total_count = 0;
+        // Channels by name, null for unknown channels
+        final Map<String, WriteChannel> channels = new HashMap<String, WriteChannel>();
+        List<SampleSpill.Sample> samples = spill.peek(batch_size);
+        while (! samples.isEmpty())
+        {
+            int dropped = 0;
+            Exception error = null;
+            for (SampleSpill.Sample sample : samples)
+            {
+                final String channel_name = sample.getChannel();
+                WriteChannel channel = channels.get(channel_name);
+                if (channel == null  &&  ! channels.containsKey(channel_name))
+                {
+                    channel = getSpilledChannel(writer, channel_name);
+                    channels.put(channel_name, channel);
+                }
+                if (channel == null)
+                {
+                    ++dropped;
+                    continue;
+                }
+                try
+                {
+                    writer.addSample(channel, sample.getValue());
+                    ++total_count;
+                }
+                catch (Exception ex)
+                {
+                    ++dropped;
+                    if (error == null)
+                        error = ex;
+                }
+            }
+            if (error != null)
+                Activator.getLogger().log(Level.WARNING,
+                        name + " dropped " + dropped + " spilled samples that cannot be written", error);
+            writer.flush();
+            // Only remove samples from spill once they have been written
+            spill.remove();
+            samples = spill.peek(batch_size);
+        }
+        return total_count;
+    }
+
+    /** @param writer {@link ArchiveWriter}
+     *  @param channel_name Name of a channel in the spill
+     *  @return {@link WriteChannel} or <code>null</code> if the channel is unknown
+     *  @throws Exception on error for a channel handled by this thread
+     */
+    @SuppressWarnings("nls")
+    private WriteChannel getSpilledChannel(final ArchiveWriter writer, final String channel_name) throws Exception
+    {
+        try
+        {
+            return writer.getChannel(channel_name);
+        }
+        catch (Exception ex)
+        {
+            // Channels of this thread need to be known to write their buffers,
+            // so this is a write error as in write()
+            synchronized (buffers)
+            {
+                for (SampleBuffer buffer : buffers)
+                    if (buffer.getChannelName().equals(channel_name))
+                        throw ex;
+            }
+            Activator.getLogger().log(Level.WARNING,
+                    name + " dropping spilled samples of unknown channel " + channel_name, ex);
+            return null;
+        }
+    }
 }
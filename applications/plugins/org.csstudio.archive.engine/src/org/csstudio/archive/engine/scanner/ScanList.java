@@ -11,6 +11,7 @@ import java.util.ArrayList;
 import java.util.logging.Level;
 
 import org.csstudio.archive.engine.Activator;
+import org.csstudio.util.stats.Average;
 
 /** A Scan list scans a list of channels at a given rate.
  *  <p>
@@ -29,6 +30,15 @@ public class ScanList implements Scheduleable
 
     private long next_due_time = System.currentTimeMillis();
 
+    /** Number of scans */
+    private long scans = 0;
+
+    /** Average delay of scan start after due time in milliseconds */
+    final private Average jitter = new Average();
+
+    /** Maximum delay of scan start after due time in milliseconds */
+    private long max_jitter = 0;
+
     /** Construct scan list.
      *  @param scan_period Scan period in seconds
      */
@@ -87,6 +97,32 @@ public class ScanList implements Scheduleable
         return items.get(index);
     }
 
+    /** @return Number of scans */
+    public long getScanCount()
+    {
+        return scans;
+    }
+
+    /** @return Average delay of scans after their due time in seconds */
+    public double getJitter()
+    {
+        return jitter.get() / 1000.0;
+    }
+
+    /** @return Maximum delay of scans after their due time in seconds */
+    public double getMaxJitter()
+    {
+        return max_jitter / 1000.0;
+    }
+
+    /** Reset statistics */
+    public void reset()
+    {
+        scans = 0;
+        jitter.reset();
+        max_jitter = 0;
+    }
+
     /** Scan all items on this scan list.
      *  Doesn't care if they're due or not,
      *  that's up to the code that invokes this.
@@ -94,6 +130,12 @@ public class ScanList implements Scheduleable
     void scanItems()
     {
         final long start = System.currentTimeMillis();
+        // Track how late the scan starts
+        final long late = Math.max(0, start - next_due_time);
+        ++scans;
+        jitter.update(late);
+        if (late > max_jitter)
+            max_jitter = late;
         // Scan all items
         for (Runnable item : items)
         {
@@ -106,9 +148,13 @@ public class ScanList implements Scheduleable
                 Activator.getLogger().log(Level.SEVERE, toString() + " scan error", ex);
             }
         }
-        // Determine next due time relative to start,
-        // swallowing the time used to scan the items.
-        next_due_time = start + scan_period_millis;
+        // Determine next due time relative to the previous due time,
+        // so a late scan doesn't shift all following scans.
+        // When more than a period late, continue relative to start,
+        // swallowing the missed scans.
+        next_due_time += scan_period_millis;
+        if (next_due_time <= start)
+            next_due_time = start + scan_period_millis;
     }
 
     @Override
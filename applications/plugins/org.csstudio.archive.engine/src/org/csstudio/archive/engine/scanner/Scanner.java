@@ -8,6 +8,8 @@
 package org.csstudio.archive.engine.scanner;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.logging.Level;
 
 import org.csstudio.archive.engine.Activator;
@@ -17,6 +19,11 @@ import org.csstudio.util.stats.Average;
  *  <p>
  *  Places runnable items on scan lists,
  *  determines how long to wait to the scan next.
+ *  <p>
+ *  The scan lists are scheduled on a {@link TimerWheel},
+ *  so adding items and locating the due scan lists
+ *  doesn't depend on the number of scan lists,
+ *  even with many different scan periods.
  *  @author Kay Kasemir
  */
 public class Scanner implements Scheduleable
@@ -24,21 +31,36 @@ public class Scanner implements Scheduleable
     /** Granularity in seconds for the supported lists. */
     final private static double GRANULARITY = 0.1;
 
+    /** Duration of one timer wheel tick in milliseconds */
+    final private static long TICK_MILLIS = 10;
+
+    /** Number of timer wheel slots, about 40 seconds */
+    final private static int SLOTS = 4096;
+
     /** Default idle delay */
     final private static long DEFAULT_IDLE_DELAY = 500;
 
     /** Time to wait in system millis when nothing to do */
     final private long idle_delay;
 
-    /** All the single-period scan lists.
+    /** All the single-period scan lists, in the order they were created.
      *  <p>
      *  Note that we don't keep empty lists around,
      *  so every list should have a valid 'due time'.
      */
     final private ArrayList<ScanList> lists = new ArrayList<ScanList>();
 
-    /** Next due time in system millis */
-    private long next_due_time;
+    /** Scan lists by their period in units of GRANULARITY */
+    final private Map<Long, ScanList> lists_by_period = new HashMap<Long, ScanList>();
+
+    /** Scan list of each item */
+    final private Map<Runnable, ScanList> list_by_item = new HashMap<Runnable, ScanList>();
+
+    /** Schedule of the scan lists */
+    final private TimerWheel<ScanList> wheel = new TimerWheel<ScanList>(TICK_MILLIS, SLOTS);
+
+    /** Scan lists that are due, used within scanDueScanLists() */
+    final private ArrayList<ScanList> due_lists = new ArrayList<ScanList>();
 
     /** Average idle time in percent. */
     final private Average idle_percentage = new Average();
@@ -67,45 +89,44 @@ public class Scanner implements Scheduleable
         remove(item);
 
         // Locate suitable scan list
-        ScanList the_list = null;
-        for (ScanList list : lists)
-        {
-            if (Math.abs(list.getPeriod() - period) < GRANULARITY)
-            {
-                the_list = list;
-                break;
-            }
-        }
+        final Long key = Long.valueOf(Math.round(period / GRANULARITY));
+        ScanList the_list = lists_by_period.get(key);
         // Nothing found?
         if (the_list == null)
         {   // Create new scan list
-            the_list = new ScanList(Math.round(period / GRANULARITY) * GRANULARITY);
+            the_list = new ScanList(key.longValue() * GRANULARITY);
             lists.add(the_list);
+            lists_by_period.put(key, the_list);
+            the_list.add(item);
+            wheel.schedule(the_list);
         }
-        // Add item to list
-        the_list.add(item);
-        computeDueTime();
+        else
+            the_list.add(item);
+        list_by_item.put(item, the_list);
     }
 
     /** Remove an item from the scanner */
     public void remove(final Runnable item)
     {
-        // Brute-force remove from all lists,
-        // stopping as soon as item was found
-        for (ScanList list : lists)
-            if (list.remove(item))
-            {
-                // If this leaves an empty list, remove it.
-                if (! list.isDueAtAll())
-                    lists.remove(list);
-                return;
-            }
+        final ScanList list = list_by_item.remove(item);
+        if (list == null  ||  !list.remove(item))
+            return;
+        // If this leaves an empty list, remove it.
+        if (! list.isDueAtAll())
+        {
+            wheel.cancel(list);
+            lists.remove(list);
+            lists_by_period.remove(Long.valueOf(Math.round(list.getPeriod() / GRANULARITY)));
+        }
     }
 
     /** Remove all items from this scanner */
     public void clear()
     {
+        wheel.clear();
         lists.clear();
+        lists_by_period.clear();
+        list_by_item.clear();
     }
 
     /** @return Number of scan lists. */
@@ -124,39 +145,29 @@ public class Scanner implements Scheduleable
     @Override
     public boolean isDueAtAll()
     {
-        return lists.size() > 0;
+        return wheel.isDueAtAll();
     }
 
     /** {@inheritDoc} */
     @Override
     public long getNextDueTime()
     {
-        if (lists.size() == 0)
+        if (! wheel.isDueAtAll())
             throw new Error("Scanner never due"); //$NON-NLS-1$
-        return next_due_time;
+        return wheel.getNextDueTime();
     }
 
     /** Scan all the scan lists which are currently due */
     void scanDueScanLists()
     {
-        final long now = System.currentTimeMillis();
-        next_due_time = Long.MAX_VALUE;
-        for (ScanList list : lists)
-        {   // Scan (run) what's due now, and update the next due time
-            if (list.getNextDueTime() <= now)
-                list.scanItems();
-            // Update the next due time - which could change in run()
-            if (list.getNextDueTime() < next_due_time)
-                next_due_time = list.getNextDueTime();
+        wheel.expire(System.currentTimeMillis(), due_lists);
+        for (ScanList list : due_lists)
+        {   // Scan (run) what's due now, then schedule the next scan
+            list.scanItems();
+            if (list.isDueAtAll())
+                wheel.schedule(list);
         }
-    }
-
-    /** Compute the next due time */
-    private void computeDueTime()
-    {
-        next_due_time = Long.MAX_VALUE;
-        for (ScanList list : lists)
-            next_due_time = Math.min(list.getNextDueTime(), next_due_time);
+        due_lists.clear();
     }
 
     /** Average idle time in percent.
@@ -174,6 +185,8 @@ public class Scanner implements Scheduleable
     public void reset()
     {
         idle_percentage.reset();
+        for (ScanList list : lists)
+            list.reset();
     }
 
     /** Perform one scan: Wait for the next scan, perform it. */
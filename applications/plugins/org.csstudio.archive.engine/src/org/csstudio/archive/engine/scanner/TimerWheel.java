@@ -0,0 +1,248 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.archive.engine.scanner;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/** Hashed timer wheel for {@link Scheduleable} items.
+ *  <p>
+ *  Time is divided into ticks. Each item is placed in the
+ *  wheel slot for the tick at or after its due time,
+ *  modulo the number of slots.
+ *  Items due further out than one revolution of the wheel
+ *  share a slot with earlier items, but remain there until
+ *  their tick comes around.
+ *  <p>
+ *  Scheduling and cancelling an item is O(1),
+ *  expiring a tick only looks at the items in that tick's slot,
+ *  independent of the total number of scheduled items.
+ *  <p>
+ *  Not thread-safe. Like the {@link Scanner}, meant to be used
+ *  by one thread at a time.
+ *
+ *  @param <T> Type of scheduled items
+ *  @author Kay Kasemir
+ */
+public class TimerWheel<T extends Scheduleable> implements Scheduleable
+{
+    /** Scheduled item, linked into the list of its slot */
+    private static class Entry<T>
+    {
+        final T item;
+        long tick;
+        Entry<T> previous, next;
+
+        Entry(final T item)
+        {
+            this.item = item;
+        }
+    }
+
+    /** Duration of one tick in milliseconds */
+    final private long tick_millis;
+
+    /** Number of slots minus one, number of slots is a power of 2 */
+    final private int mask;
+
+    /** First entry of each slot, or <code>null</code> */
+    final private Entry<T>[] slots;
+
+    /** Entry for each scheduled item */
+    final private Map<T, Entry<T>> entries = new HashMap<T, Entry<T>>();
+
+    /** Last tick that has been expired */
+    private long current_tick;
+
+    /** Tick of the earliest due item, or a tick before it.
+     *  Only valid while <code>have_next_tick</code>.
+     */
+    private long next_tick;
+
+    /** Is <code>next_tick</code> known? */
+    private boolean have_next_tick = false;
+
+    /** Initialize
+     *  @param tick_millis Duration of one tick in milliseconds
+     *  @param slot_count Number of slots, will be rounded up to a power of 2
+     */
+    @SuppressWarnings("unchecked")
+    public TimerWheel(final long tick_millis, final int slot_count)
+    {
+        if (tick_millis <= 0  ||  slot_count <= 0)
+            throw new IllegalArgumentException("Invalid timer wheel " + tick_millis + " ms, " + slot_count + " slots"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        this.tick_millis = tick_millis;
+        int size = 1;
+        while (size < slot_count)
+            size <<= 1;
+        mask = size - 1;
+        slots = new Entry[size];
+        current_tick = System.currentTimeMillis() / tick_millis;
+    }
+
+    /** @return Duration of one tick in milliseconds */
+    public long getTickMillis()
+    {
+        return tick_millis;
+    }
+
+    /** @return Number of scheduled items */
+    public int size()
+    {
+        return entries.size();
+    }
+
+    /** Schedule an item for its next due time.
+     *  <p>
+     *  An item that's already scheduled is moved.
+     *  An item that's already due will expire on the next tick.
+     *  @param item Item to schedule
+     */
+    public void schedule(final T item)
+    {
+        Entry<T> entry = entries.get(item);
+        if (entry == null)
+        {
+            entry = new Entry<T>(item);
+            entries.put(item, entry);
+        }
+        else
+            unlink(entry);
+        // Round up to the tick at or after the due time
+        final long due = item.getNextDueTime();
+        entry.tick = Math.max(current_tick + 1, (due + tick_millis - 1) / tick_millis);
+        link(entry);
+        if (entries.size() == 1)
+        {
+            next_tick = entry.tick;
+            have_next_tick = true;
+        }
+        else if (have_next_tick  &&  entry.tick < next_tick)
+            next_tick = entry.tick;
+    }
+
+    /** @param item Item to remove from the wheel
+     *  @return <code>true</code> if item was scheduled
+     */
+    public boolean cancel(final T item)
+    {
+        final Entry<T> entry = entries.remove(item);
+        if (entry == null)
+            return false;
+        unlink(entry);
+        // next_tick may now be early, which is permitted
+        if (entries.isEmpty())
+            have_next_tick = false;
+        return true;
+    }
+
+    /** Remove all items */
+    public void clear()
+    {
+        for (int i=0; i<slots.length; ++i)
+            slots[i] = null;
+        entries.clear();
+        have_next_tick = false;
+    }
+
+    /** Remove all items that are due
+     *  @param now Current time in system milliseconds
+     *  @param due Collection to which due items are added,
+     *             roughly in the order of their due ticks.
+     *             Caller needs to re-schedule them as desired.
+     */
+    public void expire(final long now, final Collection<T> due)
+    {
+        final long now_tick = now / tick_millis;
+        if (now_tick <= current_tick)
+            return;
+        // When more than one revolution behind, visit each slot once
+        final long last = Math.min(now_tick, current_tick + slots.length);
+        for (long tick = current_tick + 1;  tick <= last;  ++tick)
+        {
+            Entry<T> entry = slots[(int) (tick & mask)];
+            while (entry != null)
+            {
+                final Entry<T> next = entry.next;
+                if (entry.tick <= now_tick)
+                {
+                    unlink(entry);
+                    entries.remove(entry.item);
+                    due.add(entry.item);
+                }
+                entry = next;
+            }
+        }
+        current_tick = now_tick;
+        have_next_tick = false;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean isDueAtAll()
+    {
+        return ! entries.isEmpty();
+    }
+
+    /** {@inheritDoc}
+     *  <p>
+     *  Returns the start of the tick in which the earliest item is due,
+     *  which may be earlier when items have been cancelled.
+     */
+    @Override
+    public long getNextDueTime() throws Error
+    {
+        if (entries.isEmpty())
+            throw new Error("Timer wheel never due"); //$NON-NLS-1$
+        if (! have_next_tick)
+        {
+            next_tick = findNextTick();
+            have_next_tick = true;
+        }
+        return next_tick * tick_millis;
+    }
+
+    /** @return Tick of the earliest due item */
+    private long findNextTick()
+    {
+        // Check the slots of the following revolution
+        for (long tick = current_tick + 1;  tick <= current_tick + slots.length;  ++tick)
+            for (Entry<T> entry = slots[(int) (tick & mask)];  entry != null;  entry = entry.next)
+                if (entry.tick == tick)
+                    return tick;
+        // All items are due in later revolutions
+        long earliest = Long.MAX_VALUE;
+        for (Entry<T> entry : entries.values())
+            earliest = Math.min(earliest, entry.tick);
+        return earliest;
+    }
+
+    /** @param entry Entry to add to the slot for its tick */
+    private void link(final Entry<T> entry)
+    {
+        final int slot = (int) (entry.tick & mask);
+        entry.previous = null;
+        entry.next = slots[slot];
+        if (entry.next != null)
+            entry.next.previous = entry;
+        slots[slot] = entry;
+    }
+
+    /** @param entry Entry to remove from its slot */
+    private void unlink(final Entry<T> entry)
+    {
+        if (entry.previous != null)
+            entry.previous.next = entry.next;
+        else
+            slots[(int) (entry.tick & mask)] = entry.next;
+        if (entry.next != null)
+            entry.next.previous = entry.previous;
+        entry.previous = entry.next = null;
+    }
+}
@@ -15,6 +15,7 @@ import org.csstudio.archive.engine.model.ArchiveChannel;
 import org.csstudio.archive.engine.model.ArchiveGroup;
 import org.csstudio.archive.engine.model.BufferStats;
 import org.csstudio.archive.engine.model.EngineModel;
+import org.csstudio.archive.engine.model.LatencyHistogram;
 import org.csstudio.archive.engine.model.SampleBuffer;
 
 /** Provide web page with detail for one channel.
@@ -112,6 +113,12 @@ class ChannelResponse extends AbstractResponse
         html.tableLine(new String[]
         { Messages.HTTP_QueueOverruns, overruns });
 
+        html.tableLine(new String[]
+        { Messages.HTTP_AddAge, formatAge(stats.getAddAge()) });
+
+        html.tableLine(new String[]
+        { Messages.HTTP_WriteAge, formatAge(stats.getWriteAge()) });
+
         html.closeTable();
 
         // Table of all the groups to which this channel belongs
@@ -135,4 +142,29 @@ class ChannelResponse extends AbstractResponse
         
         html.close();
     }
+
+    /** @param histogram Histogram of sample age
+     *  @return Summary of the histogram
+     */
+    static String formatAge(final LatencyHistogram histogram)
+    {
+        if (histogram.getCount() <= 0)
+            return Messages.HTTP_Never;
+        return String.format("50%%: %s, 90%%: %s, 99%%: %s, max: %s (%d samples)",
+                formatMillis(histogram.getPercentile(0.5)),
+                formatMillis(histogram.getPercentile(0.9)),
+                formatMillis(histogram.getPercentile(0.99)),
+                formatMillis(histogram.getMax()),
+                histogram.getCount());
+    }
+
+    /** @param millis Milliseconds
+     *  @return Text for milliseconds or seconds
+     */
+    static String formatMillis(final long millis)
+    {
+        if (millis < 1000)
+            return millis + " ms";
+        return String.format("%.1f s", millis / 1000.0);
+    }
 }
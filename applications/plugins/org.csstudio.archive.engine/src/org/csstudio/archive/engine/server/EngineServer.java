@@ -47,6 +47,9 @@ public class EngineServer
         http.registerServlet("/group", new GroupResponse(model), null, http_context);
         http.registerServlet("/channel", new ChannelResponse(model), null, http_context);
         http.registerServlet("/channels", new ChannelListResponse(model), null, http_context);
+        http.registerServlet("/writers", new WritersResponse(model), null, http_context);
+        http.registerServlet("/scanner", new ScannerResponse(model), null, http_context);
+        http.registerServlet("/metrics", new MetricsResponse(model), null, http_context);
         http.registerServlet("/environment", new EnvironmentResponse(model), null, http_context);
         http.registerServlet("/restart", new RestartResponse(model), null, http_context);
         http.registerServlet("/reset", new ResetResponse(model), null, http_context);
@@ -15,6 +15,7 @@ import org.csstudio.archive.engine.model.ArchiveChannel;
 import org.csstudio.archive.engine.model.ArchiveGroup;
 import org.csstudio.archive.engine.model.BufferStats;
 import org.csstudio.archive.engine.model.EngineModel;
+import org.csstudio.archive.engine.model.LatencyHistogram;
 import org.csstudio.archive.engine.model.SampleBuffer;
 
 /** Provide web page with detail for one group.
@@ -75,6 +76,24 @@ class GroupResponse extends AbstractResponse
                          ena_channel.getName())
             });
         }
+        final LatencyHistogram add_age = new LatencyHistogram();
+        final LatencyHistogram write_age = new LatencyHistogram();
+        for (int j=0; j<group.getChannelCount(); ++j)
+        {
+            final BufferStats stats = group.getChannel(j).getSampleBuffer().getBufferStats();
+            stats.getAddAge().addTo(add_age);
+            stats.getWriteAge().addTo(write_age);
+        }
+        html.tableLine(new String[]
+        {
+            Messages.HTTP_AddAge,
+            ChannelResponse.formatAge(add_age)
+        });
+        html.tableLine(new String[]
+        {
+            Messages.HTTP_WriteAge,
+            ChannelResponse.formatAge(write_age)
+        });
         html.closeTable();
         
         html.h2(Messages.HTTP_Channels);
@@ -93,6 +112,7 @@ class GroupResponse extends AbstractResponse
             Messages.HTTP_QueueMax,
             Messages.HTTP_QueueCapacity,
             Messages.HTTP_QueueOverruns,
+            Messages.HTTP_WriteAge + " (99%)",
         });
         final int channel_count = group.getChannelCount();
         for (int j=0; j<channel_count; ++j)
@@ -126,6 +146,9 @@ class GroupResponse extends AbstractResponse
                 Integer.toString(stats.getMaxSize()),
                 Integer.toString(buffer.getCapacity()),
                 overruns,
+                stats.getWriteAge().getCount() > 0
+                ? ChannelResponse.formatMillis(stats.getWriteAge().getPercentile(0.99))
+                : Messages.HTTP_Never,
             });
         }
         html.closeTable();
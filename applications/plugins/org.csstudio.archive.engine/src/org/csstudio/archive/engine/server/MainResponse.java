@@ -14,9 +14,11 @@ import javax.servlet.http.HttpServletResponse;
 
 import org.csstudio.apputil.time.PeriodFormat;
 import org.csstudio.archive.engine.Messages;
+import org.csstudio.archive.engine.model.AdaptiveWriteControl;
 import org.csstudio.archive.engine.model.ArchiveGroup;
 import org.csstudio.archive.engine.model.EngineModel;
 import org.csstudio.archive.engine.model.SampleBuffer;
+import org.csstudio.archive.engine.model.WriteThread;
 import org.csstudio.archive.vtype.TimestampHelper;
 import org.eclipse.core.runtime.Platform;
 import org.epics.util.time.Timestamp;
@@ -120,14 +122,57 @@ class MainResponse extends AbstractResponse
         }
         html.tableLine(new String[]
         {
-            Messages.HTTP_BatchSize,
-            model.getBatchSize() + " samples"
+            Messages.HTTP_WriteThreads,
+            HTMLWriter.makeLink("writers", Integer.toString(model.getWriteThreadCount()))
         });
         html.tableLine(new String[]
         {
-            Messages.HTTP_WritePeriod,
-            model.getWritePeriod() + " sec"
+            Messages.HTTP_Metrics,
+            HTMLWriter.makeLink("metrics", "Prometheus") + ", " +
+            HTMLWriter.makeLink("metrics?format=json", "JSON")
         });
+        final AdaptiveWriteControl adaptive = model.getWriteThread(0).getAdaptiveControl();
+        if (adaptive == null)
+        {
+            html.tableLine(new String[]
+            {
+                Messages.HTTP_BatchSize,
+                model.getBatchSize() + " samples"
+            });
+            html.tableLine(new String[]
+            {
+                Messages.HTTP_WritePeriod,
+                model.getWritePeriod() + " sec"
+            });
+        }
+        else
+        {   // Show current values of each write thread and the limits
+            final StringBuilder batch_sizes = new StringBuilder();
+            final StringBuilder write_periods = new StringBuilder();
+            for (int i=0; i<model.getWriteThreadCount(); ++i)
+            {
+                final WriteThread writer = model.getWriteThread(i);
+                if (i > 0)
+                {
+                    batch_sizes.append(", ");
+                    write_periods.append(", ");
+                }
+                batch_sizes.append(writer.getBatchSize());
+                write_periods.append(String.format("%.1f", writer.getWritePeriod()));
+            }
+            html.tableLine(new String[]
+            {
+                Messages.HTTP_BatchSize,
+                batch_sizes + " samples (" + Messages.HTTP_Adaptive + " " +
+                adaptive.getMinBatchSize() + " .. " + adaptive.getMaxBatchSize() + ")"
+            });
+            html.tableLine(new String[]
+            {
+                Messages.HTTP_WritePeriod,
+                write_periods + " sec (" + Messages.HTTP_Adaptive + " " +
+                String.format("%.1f .. %.1f", adaptive.getMinDelay() / 1000.0, adaptive.getMaxDelay() / 1000.0) + ")"
+            });
+        }
 
         // Currently in 'Write Error' state?
         html.tableLine(new String[]
@@ -161,6 +206,11 @@ class MainResponse extends AbstractResponse
             Messages.HTTP_Idletime,
             String.format("%.1f %%", model.getIdlePercentage())
         });
+        html.tableLine(new String[]
+        {
+            Messages.HTTP_ScanLists,
+            HTMLWriter.makeLink("scanner", Integer.toString(model.getScanListCount()))
+        });
 
         final Runtime runtime = Runtime.getRuntime();
         final double used_mem = runtime.totalMemory() / MB;
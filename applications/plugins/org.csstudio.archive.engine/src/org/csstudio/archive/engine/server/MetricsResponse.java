@@ -0,0 +1,249 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.archive.engine.server;
+
+import java.io.PrintWriter;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.csstudio.archive.engine.model.ArchiveChannel;
+import org.csstudio.archive.engine.model.ArchiveGroup;
+import org.csstudio.archive.engine.model.BufferStats;
+import org.csstudio.archive.engine.model.EngineModel;
+import org.csstudio.archive.engine.model.LatencyHistogram;
+import org.csstudio.archive.engine.model.SampleBuffer;
+
+/** Provide machine-readable buffer and sample age metrics.
+ *  <p>
+ *  By default, the metrics are in the Prometheus text format.
+ *  With <code>format=json</code>, they are returned as JSON.
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+class MetricsResponse extends AbstractResponse
+{
+    /** Avoid serialization errors */
+    private static final long serialVersionUID = 1L;
+
+    /** Upper limits of the Prometheus histogram buckets in milliseconds:
+     *  One less than the powers of 4, from 0 ms to about 4.6 hours.
+     *  Recorded ages are whole milliseconds, so for example
+     *  'less or equal 3 ms' includes all ages below 4 ms.
+     *  These limits match bucket bounds of the {@link LatencyHistogram},
+     *  which makes the cumulative counts exact.
+     */
+    private static final long[] BUCKET_LIMITS = new long[13];
+
+    static
+    {
+        long power = 1;
+        for (int i=0; i<BUCKET_LIMITS.length; ++i)
+        {
+            BUCKET_LIMITS[i] = power - 1;
+            power *= 4;
+        }
+    }
+
+    MetricsResponse(final EngineModel model)
+    {
+        super(model);
+    }
+
+    @Override
+    protected void fillResponse(final HttpServletRequest req,
+                    final HttpServletResponse resp) throws Exception
+    {
+        if ("json".equals(req.getParameter("format")))
+        {
+            resp.setContentType("application/json");
+            resp.setCharacterEncoding("UTF-8");
+            writeJSON(resp.getWriter());
+        }
+        else
+        {
+            resp.setContentType("text/plain; version=0.0.4");
+            resp.setCharacterEncoding("UTF-8");
+            writePrometheus(resp.getWriter());
+        }
+    }
+
+    /** @param out Where to write metrics in Prometheus text format */
+    private void writePrometheus(final PrintWriter out)
+    {
+        // Samples of each metric family must follow its own HELP and TYPE
+        final int channel_count = model.getChannelCount();
+        writeHeader(out, "archive_engine_queue_size", "gauge", "Number of samples in channel's sample buffer");
+        for (int i=0; i<channel_count; ++i)
+        {
+            final ArchiveChannel channel = model.getChannel(i);
+            out.println("archive_engine_queue_size{" + getLabel(channel) + "} " + channel.getSampleBuffer().getQueueSize());
+        }
+
+        writeHeader(out, "archive_engine_queue_capacity", "gauge", "Capacity of channel's sample buffer");
+        for (int i=0; i<channel_count; ++i)
+        {
+            final ArchiveChannel channel = model.getChannel(i);
+            out.println("archive_engine_queue_capacity{" + getLabel(channel) + "} " + channel.getSampleBuffer().getCapacity());
+        }
+
+        writeHeader(out, "archive_engine_queue_overruns_total", "counter", "Number of samples dropped because channel's sample buffer was full");
+        for (int i=0; i<channel_count; ++i)
+        {
+            final ArchiveChannel channel = model.getChannel(i);
+            out.println("archive_engine_queue_overruns_total{" + getLabel(channel) + "} " + channel.getSampleBuffer().getBufferStats().getOverruns());
+        }
+
+        writeHeader(out, "archive_engine_add_age_seconds", "histogram", "Time from PV callback until sample is added to the sample buffer");
+        for (int i=0; i<channel_count; ++i)
+        {
+            final ArchiveChannel channel = model.getChannel(i);
+            writePrometheusHistogram(out, "archive_engine_add_age_seconds", getLabel(channel),
+                                     channel.getSampleBuffer().getBufferStats().getAddAge());
+        }
+
+        writeHeader(out, "archive_engine_write_age_seconds", "histogram", "Time from PV callback until sample is written");
+        for (int i=0; i<channel_count; ++i)
+        {
+            final ArchiveChannel channel = model.getChannel(i);
+            writePrometheusHistogram(out, "archive_engine_write_age_seconds", getLabel(channel),
+                                     channel.getSampleBuffer().getBufferStats().getWriteAge());
+        }
+
+        writeHeader(out, "archive_engine_group_write_age_seconds", "histogram", "Time from PV callback until sample is written, combined for all channels in group");
+        final int group_count = model.getGroupCount();
+        for (int i=0; i<group_count; ++i)
+        {
+            final ArchiveGroup group = model.getGroup(i);
+            final String label = "group=\"" + escapeLabel(group.getName()) + "\"";
+            writePrometheusHistogram(out, "archive_engine_group_write_age_seconds", label, getGroupWriteAge(group));
+        }
+    }
+
+    /** @param out Where to write HELP and TYPE of a metric family
+     *  @param name Metric name
+     *  @param type Metric type
+     *  @param help Description
+     */
+    private static void writeHeader(final PrintWriter out, final String name,
+            final String type, final String help)
+    {
+        out.println("# HELP " + name + " " + help);
+        out.println("# TYPE " + name + " " + type);
+    }
+
+    /** @param channel Channel
+     *  @return Label for the channel
+     */
+    private static String getLabel(final ArchiveChannel channel)
+    {
+        return "channel=\"" + escapeLabel(channel.getName()) + "\"";
+    }
+
+    /** @param out Where to write histogram
+     *  @param name Metric name
+     *  @param label Label
+     *  @param histogram Histogram of milliseconds
+     */
+    private static void writePrometheusHistogram(final PrintWriter out, final String name,
+            final String label, final LatencyHistogram histogram)
+    {
+        // Bucket counts and total from one snapshot, so '+Inf' and 'count' match the buckets
+        final long[] counts = histogram.getCumulativeCounts(BUCKET_LIMITS);
+        final long total = counts[BUCKET_LIMITS.length];
+        for (int i=0; i<BUCKET_LIMITS.length; ++i)
+            out.println(name + "_bucket{" + label + ",le=\"" + (BUCKET_LIMITS[i] / 1000.0) + "\"} " + counts[i]);
+        out.println(name + "_bucket{" + label + ",le=\"+Inf\"} " + total);
+        out.println(name + "_sum{" + label + "} " + (histogram.getSum() / 1000.0));
+        out.println(name + "_count{" + label + "} " + total);
+    }
+
+    /** @param text Label value
+     *  @return Label value with backslash, double-quote and line feed escaped
+     */
+    private static String escapeLabel(final String text)
+    {
+        return text.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /** @param out Where to write metrics in JSON format */
+    private void writeJSON(final PrintWriter out)
+    {
+        out.println("{");
+        out.println(" \"channels\": [");
+        final int channel_count = model.getChannelCount();
+        for (int i=0; i<channel_count; ++i)
+        {
+            final ArchiveChannel channel = model.getChannel(i);
+            final SampleBuffer buffer = channel.getSampleBuffer();
+            final BufferStats stats = buffer.getBufferStats();
+            out.print("  { \"name\": " + quote(channel.getName()));
+            out.print(", \"queue_size\": " + buffer.getQueueSize());
+            out.print(", \"queue_capacity\": " + buffer.getCapacity());
+            out.print(", \"overruns\": " + stats.getOverruns());
+            out.print(", \"add_age\": " + toJSON(stats.getAddAge()));
+            out.print(", \"write_age\": " + toJSON(stats.getWriteAge()));
+            out.println(i < channel_count-1 ? " }," : " }");
+        }
+        out.println(" ],");
+        out.println(" \"groups\": [");
+        final int group_count = model.getGroupCount();
+        for (int i=0; i<group_count; ++i)
+        {
+            final ArchiveGroup group = model.getGroup(i);
+            out.print("  { \"name\": " + quote(group.getName()));
+            out.print(", \"write_age\": " + toJSON(getGroupWriteAge(group)));
+            out.println(i < group_count-1 ? " }," : " }");
+        }
+        out.println(" ]");
+        out.println("}");
+    }
+
+    /** @param histogram Histogram of milliseconds
+     *  @return JSON object for the histogram
+     */
+    private static String toJSON(final LatencyHistogram histogram)
+    {
+        return String.format("{ \"count\": %d, \"mean_ms\": %.1f, \"p50_ms\": %d, \"p90_ms\": %d, \"p99_ms\": %d, \"max_ms\": %d }",
+                histogram.getCount(), histogram.getMean(),
+                histogram.getPercentile(0.5), histogram.getPercentile(0.9),
+                histogram.getPercentile(0.99), histogram.getMax());
+    }
+
+    /** @param text Text
+     *  @return JSON string
+     */
+    private static String quote(final String text)
+    {
+        final StringBuilder buf = new StringBuilder(text.length() + 2);
+        buf.append('"');
+        for (int i=0; i<text.length(); ++i)
+        {
+            final char c = text.charAt(i);
+            if (c == '"'  ||  c == '\\')
+                buf.append('\\').append(c);
+            else if (c < 0x20)
+                buf.append(String.format("\\u%04x", (int) c));
+            else
+                buf.append(c);
+        }
+        buf.append('"');
+        return buf.toString();
+    }
+
+    /** @param group Group
+     *  @return Combined write age histogram of all channels in group
+     */
+    private static LatencyHistogram getGroupWriteAge(final ArchiveGroup group)
+    {
+        final LatencyHistogram write_age = new LatencyHistogram();
+        for (int j=0; j<group.getChannelCount(); ++j)
+            group.getChannel(j).getSampleBuffer().getBufferStats().getWriteAge().addTo(write_age);
+        return write_age;
+    }
+}
@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.archive.engine.server;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.csstudio.archive.engine.Messages;
+import org.csstudio.archive.engine.model.EngineModel;
+import org.csstudio.archive.engine.scanner.ScanList;
+
+/** Provide web page with info for all the scan lists,
+ *  including how late their scans start.
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+class ScannerResponse extends AbstractResponse
+{
+    /** Avoid serialization errors */
+    private static final long serialVersionUID = 1L;
+
+    ScannerResponse(final EngineModel model)
+    {
+        super(model);
+    }
+
+    @Override
+    protected void fillResponse(final HttpServletRequest req,
+                    final HttpServletResponse resp) throws Exception
+    {
+        final HTMLWriter html =
+            new HTMLWriter(resp, "Archive Engine " + Messages.HTTP_ScanLists);
+
+        html.openTable(1, new String[]
+        {
+            Messages.HTTP_ScanPeriod,
+            Messages.HTTP_ChannelCount,
+            Messages.HTTP_ScanCount,
+            Messages.HTTP_Jitter,
+            Messages.HTTP_MaxJitter,
+        });
+        final int count = model.getScanListCount();
+        int total_channels = 0;
+        double max_jitter = 0.0;
+        for (int i=0; i<count; ++i)
+        {
+            final ScanList list = model.getScanList(i);
+            final int channels = list.size();
+            total_channels += channels;
+            max_jitter = Math.max(max_jitter, list.getMaxJitter());
+            html.tableLine(new String[]
+            {
+                String.format("%.1f sec", list.getPeriod()),
+                Integer.toString(channels),
+                Long.toString(list.getScanCount()),
+                String.format("%.3f sec", list.getJitter()),
+                String.format("%.3f sec", list.getMaxJitter()),
+            });
+        }
+        // 'Total' line
+        html.tableLine(new String[]
+        {
+            Messages.HTTP_Total,
+            Integer.toString(total_channels),
+            "",
+            "",
+            String.format("%.3f sec", max_jitter),
+        });
+        html.closeTable();
+
+        html.close();
+    }
+}
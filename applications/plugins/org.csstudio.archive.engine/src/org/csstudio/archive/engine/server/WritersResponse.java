@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.archive.engine.server;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.csstudio.archive.engine.Messages;
+import org.csstudio.archive.engine.model.EngineModel;
+import org.csstudio.archive.engine.model.WriteThread;
+import org.csstudio.archive.vtype.TimestampHelper;
+import org.epics.util.time.Timestamp;
+
+/** Provide web page with info for all the write threads.
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+class WritersResponse extends AbstractResponse
+{
+    /** Avoid serialization errors */
+    private static final long serialVersionUID = 1L;
+
+    WritersResponse(final EngineModel model)
+    {
+        super(model);
+    }
+
+    @Override
+    protected void fillResponse(final HttpServletRequest req,
+                    final HttpServletResponse resp) throws Exception
+    {
+        final HTMLWriter html =
+            new HTMLWriter(resp, "Archive Engine " + Messages.HTTP_WriteThreads);
+
+        html.openTable(1, new String[]
+        {
+            Messages.HTTP_WriteThread,
+            Messages.HTTP_ChannelCount,
+            Messages.HTTP_WriteState,
+            Messages.HTTP_WriteBacklog,
+            Messages.HTTP_Spilled,
+            Messages.HTTP_WriteRate,
+            Messages.HTTP_WritePeriod,
+            Messages.HTTP_BatchSize,
+            Messages.HTTP_WriteCount,
+            Messages.HTTP_WriteDuration,
+            Messages.HTTP_LastWriteTime,
+        });
+        final int count = model.getWriteThreadCount();
+        int total_channels = 0;
+        int total_backlog = 0;
+        int total_spilled = 0;
+        double total_rate = 0.0;
+        for (int i=0; i<count; ++i)
+        {
+            final WriteThread writer = model.getWriteThread(i);
+            final int channels = writer.getBufferCount();
+            final int backlog = writer.getBacklog();
+            final double rate = writer.getWriteRate();
+            total_channels += channels;
+            total_backlog += backlog;
+            final int spilled = writer.getSpillSize();
+            total_spilled += spilled;
+            total_rate += rate;
+            final Timestamp last_write_time = writer.getLastWriteTime();
+            html.tableLine(new String[]
+            {
+                writer.getName(),
+                Integer.toString(channels),
+                writer.isInErrorState()
+                  ? HTMLWriter.makeRedText(Messages.HTTP_WriteError) : "OK",
+                Integer.toString(backlog),
+                Integer.toString(spilled),
+                String.format("%.1f samples/sec", rate),
+                String.format("%.1f sec", writer.getWritePeriod()),
+                writer.getBatchSize() + " samples",
+                (int)writer.getWriteCount() + " samples",
+                String.format("%.1f sec", writer.getWriteDuration()),
+                last_write_time == null
+                  ? Messages.HTTP_Never
+                  : TimestampHelper.format(last_write_time),
+            });
+        }
+        // 'Total' line
+        html.tableLine(new String[]
+        {
+            Messages.HTTP_Total,
+            Integer.toString(total_channels),
+            "",
+            Integer.toString(total_backlog),
+            Integer.toString(total_spilled),
+            String.format("%.1f samples/sec", total_rate),
+            "",
+            "",
+            "",
+            "",
+            "",
+        });
+        html.closeTable();
+
+        html.close();
+    }
+}
@@ -8,12 +8,18 @@ import java.net.URL;
 import java.net.URLEncoder;
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.csstudio.apputil.text.RegExHelper;
 import org.csstudio.archive.reader.ArchiveInfo;
-import org.csstudio.archive.reader.ArchiveReader;
+import org.csstudio.archive.reader.MultiChannelArchiveReader;
 import org.csstudio.archive.reader.UnknownChannelException;
 import org.csstudio.archive.reader.ValueIterator;
+import org.csstudio.archive.reader.ValueIteratorHelper;
 import org.csstudio.archive.vtype.TimestampHelper;
 import org.epics.archiverappliance.retrieval.client.DataRetrieval;
 import org.epics.archiverappliance.retrieval.client.EpicsMessage;
@@ -26,8 +32,11 @@ import org.epics.util.time.Timestamp;
  * 
  * @author Miha Novak <miha.novak@cosylab.com>
  */
-public class ApplianceArchiveReader implements ArchiveReader {
+public class ApplianceArchiveReader implements MultiChannelArchiveReader {
 	
+	/** Maximum number of concurrent requests to the appliance in a multi-channel read */
+	private static final int MAX_CONCURRENT_REQUESTS = 8;
+
 	private final String httpURL;
 	private final String pbrawURL;
 	private final boolean useStatistics;
@@ -124,6 +133,55 @@ public class ApplianceArchiveReader implements ArchiveReader {
 		} 
 	}
 
+	/**
+	 * Reads the raw data of several PVs. The retrieval client only supports one PV per
+	 * request, so the requests are issued concurrently to overlap their latency.
+	 * 
+	 * @see org.csstudio.archive.reader.MultiChannelArchiveReader#getRawValues(int, java.lang.String[], org.epics.util.time.Timestamp, org.epics.util.time.Timestamp)
+	 */
+	@Override
+	public ValueIterator[] getRawValues(int key, String[] names, final Timestamp start, final Timestamp end) throws UnknownChannelException, Exception {
+		final ValueIterator[] iterators = new ValueIterator[names.length];
+		if (names.length == 0) {
+			return iterators;
+		}
+		final ExecutorService executor = Executors.newFixedThreadPool(Math.min(names.length, MAX_CONCURRENT_REQUESTS));
+		try {
+			final ArrayList<Future<ValueIterator>> requests = new ArrayList<Future<ValueIterator>>(names.length);
+			for (final String name : names) {
+				requests.add(executor.submit(new Callable<ValueIterator>() {
+					@Override
+					public ValueIterator call() throws Exception {
+						return new ApplianceRawValueIterator(ApplianceArchiveReader.this, name, start, end);
+					}
+				}));
+			}
+			Exception error = null;
+			for (int i = 0; i < names.length; i++) {
+				try {
+					iterators[i] = requests.get(i).get();
+				} catch (ExecutionException ex) {
+					if (error == null) {
+						if (ex.getCause() instanceof ArchiverApplianceException) {
+							error = new UnknownChannelException(names[i]);
+						} else if (ex.getCause() instanceof Exception) {
+							error = (Exception) ex.getCause();
+						} else {
+							error = ex;
+						}
+					}
+				}
+			}
+			if (error != null) {
+				ValueIteratorHelper.close(iterators);
+				throw error;
+			}
+			return iterators;
+		} finally {
+			executor.shutdown();
+		}
+	}
+
 	/* (non-Javadoc)
 	 * @see org.csstudio.archive.reader.ArchiveReader#getOptimizedValues(int, java.lang.String, org.epics.util.time.Timestamp, org.epics.util.time.Timestamp, int)
 	 */
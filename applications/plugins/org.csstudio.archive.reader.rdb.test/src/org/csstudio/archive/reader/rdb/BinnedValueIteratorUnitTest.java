@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.archive.reader.rdb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+/** JUnit test of the {@link BinnedValueIterator} slots that doesn't need an RDB
+ *  @author Kay Kasemir
+ */
+public class BinnedValueIteratorUnitTest
+{
+    @Test
+    public void testUniformBins()
+    {
+        // First bin starts at initial sample, others are 10 seconds
+        final long[] bounds = { 95, 100, 110, 120, 130 };
+        assertEquals(10, BinnedValueIterator.getSlotSeconds(bounds));
+        assertArrayEquals(new int[] { 1, 2, 3 }, BinnedValueIterator.getSlotBins(bounds, 10));
+    }
+
+    @Test
+    public void testSingleBin()
+    {
+        final long[] bounds = { 95, 100 };
+        final long slot = BinnedValueIterator.getSlotSeconds(bounds);
+        assertEquals(1, slot);
+        assertArrayEquals(new int[] { 0 }, BinnedValueIterator.getSlotBins(bounds, slot));
+    }
+
+    @Test
+    public void testVaryingBins()
+    {
+        // 5 hour bins aligned to midnight: 0, 5, 10, 15, 20, 24 hours
+        final long[] bounds = { -1, 0, 5, 10, 15, 20, 24, 29 };
+        assertEquals(1, BinnedValueIterator.getSlotSeconds(bounds));
+        assertArrayEquals(new int[] { 1, 1, 1, 1, 1,
+                                      2, 2, 2, 2, 2,
+                                      3, 3, 3, 3, 3,
+                                      4, 4, 4, 4, 4,
+                                      5, 5, 5, 5,
+                                      6, 6, 6, 6, 6 },
+                          BinnedValueIterator.getSlotBins(bounds, 1));
+
+        // Daylight saving time adds an hour to one 10 minute bin
+        final long[] dst = { 0, 600, 1200, 1200 + 4200, 1200 + 4800 };
+        assertEquals(600, BinnedValueIterator.getSlotSeconds(dst));
+        assertArrayEquals(new int[] { 1, 2, 2, 2, 2, 2, 2, 2, 3 },
+                          BinnedValueIterator.getSlotBins(dst, 600));
+    }
+
+    @Test
+    public void testInvalidBins()
+    {
+        // End of daylight saving time moves local time backwards
+        final long[] bounds = { 0, 600, 1200, 1800 - 3600, 2400 - 3600 };
+        assertEquals(0, BinnedValueIterator.getSlotSeconds(bounds));
+
+        // Too many slots
+        final long[] many = { 0, 1, 100001, 200002 };
+        assertEquals(1, BinnedValueIterator.getSlotSeconds(many));
+        assertNull(BinnedValueIterator.getSlotBins(many, 1));
+    }
+}
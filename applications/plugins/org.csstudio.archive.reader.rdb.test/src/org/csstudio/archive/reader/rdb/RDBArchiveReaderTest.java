@@ -8,6 +8,7 @@
 package org.csstudio.archive.reader.rdb;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
@@ -21,9 +22,11 @@ import org.csstudio.archive.reader.ArchiveInfo;
 import org.csstudio.archive.reader.ArchiveReader;
 import org.csstudio.archive.reader.ValueIterator;
 import org.csstudio.archive.vtype.TimestampHelper;
+import org.csstudio.archive.vtype.VTypeHelper;
 import org.epics.util.time.TimeDuration;
 import org.epics.util.time.Timestamp;
 import org.epics.vtype.Display;
+import org.epics.vtype.VStatistics;
 import org.epics.vtype.VType;
 import org.epics.vtype.ValueUtil;
 import org.junit.After;
@@ -265,6 +268,56 @@ public class RDBArchiveReaderTest
         values.close();
     }
 
+    /** Compare server-side {@link BinnedValueIterator} with client-side {@link AveragedValueIterator} */
+    @Test
+    public void testServerBinnedData() throws Exception
+    {
+    	if (reader == null)
+    		return;
+    	if (reader.isOracle())
+    	{
+    		System.out.println("Binned SQL only available for MySQL, PostgreSQL");
+    		return;
+    	}
+    	final int channel_id = reader.getChannelID(name);
+        System.out.println("Optimized samples for " + name + " (" + channel_id + "):");
+        System.out.println("-- Server-side bins --");
+
+        final Timestamp end = Timestamp.now();
+        final Timestamp start = end.minus(TIMERANGE);
+        final double seconds = end.durationFrom(start).toSeconds() / BUCKETS;
+
+        final ValueIterator client = new AveragedValueIterator(reader.getRawValues(channel_id, start, end), seconds);
+        final ValueIterator server = new BinnedValueIterator(reader, channel_id, start, end, seconds);
+        int count = 0;
+        while (client.hasNext())
+        {
+        	assertTrue(server.hasNext());
+        	final VType expected = client.next();
+        	final VType value = server.next();
+        	System.out.println(value);
+        	assertEquals(VTypeHelper.getTimestamp(expected), VTypeHelper.getTimestamp(value));
+        	assertEquals(VTypeHelper.getSeverity(expected), VTypeHelper.getSeverity(value));
+        	assertEquals(VTypeHelper.getMessage(expected), VTypeHelper.getMessage(value));
+        	assertEquals(VTypeHelper.toDouble(expected), VTypeHelper.toDouble(value), 1e-6);
+        	assertEquals(expected instanceof VStatistics, value instanceof VStatistics);
+        	if (expected instanceof VStatistics)
+        	{
+        		final VStatistics exp_stats = (VStatistics) expected;
+        		final VStatistics stats = (VStatistics) value;
+        		assertEquals(exp_stats.getNSamples(), stats.getNSamples());
+        		assertEquals(exp_stats.getMin(), stats.getMin(), 1e-6);
+        		assertEquals(exp_stats.getMax(), stats.getMax(), 1e-6);
+        		assertEquals(exp_stats.getStdDev(), stats.getStdDev(), 1e-6);
+        	}
+        	++count;
+        }
+        assertFalse(server.hasNext());
+        System.out.println(count + " values match the client-side averaging");
+        client.close();
+        server.close();
+    }
+
     /** Get optimized data for scalar, using the server-side {@link StoredProcedureValueIterator} */
     @Test
     public void testStoredProcedure() throws Exception
@@ -22,6 +22,7 @@ import org.csstudio.archive.vtype.ArchiveVNumber;
 import org.csstudio.archive.vtype.ArchiveVNumberArray;
 import org.csstudio.archive.vtype.ArchiveVString;
 import org.csstudio.archive.vtype.TimestampHelper;
+import org.csstudio.platform.utility.rdb.RDBUtil.Dialect;
 import org.epics.util.text.NumberFormats;
 import org.epics.util.time.Timestamp;
 import org.epics.vtype.AlarmSeverity;
@@ -163,6 +164,43 @@ abstract public class AbstractRDBValueIterator  implements ValueIterator
         return labels;
     }
 
+    /** Locate the start of the samples.
+     *  <p>
+     *  To show the value at the start time, samples begin with
+     *  the last sample at or before the start time.
+     *  @param start Start time
+     *  @return Time of last sample at or before start, or start time when there is none
+     *  @throws Exception on error, including cancellation
+     */
+    protected java.sql.Timestamp determineInitialTime(final Timestamp start) throws Exception
+    {
+        java.sql.Timestamp start_stamp = TimestampHelper.toSQLTimestamp(start);
+        final PreparedStatement statement =
+            reader.getRDB().getConnection().prepareStatement(reader.getSQL().sample_sel_initial_time);
+        reader.addForCancellation(statement);
+        try
+        {
+            statement.setInt(1, channel_id);
+            statement.setTimestamp(2, start_stamp);
+            final ResultSet result = statement.executeQuery();
+            if (result.next())
+            {
+                // System.out.print("Start time corrected from " + start_stamp);
+                start_stamp = result.getTimestamp(1);
+                // Oracle has nanoseconds in TIMESTAMP, MySQL in separate column
+                if (reader.getRDB().getDialect() == Dialect.MySQL || reader.getRDB().getDialect() == Dialect.PostgreSQL)
+                    start_stamp.setNanos(result.getInt(2));
+                // System.out.println(" to " + start_stamp);
+            }
+        }
+        finally
+        {
+            reader.removeFromCancellation(statement);
+            statement.close();
+        }
+        return start_stamp;
+    }
+
     /** Extract value from SQL result
      *  @param result ResultSet that must contain contain time, severity, ..., value
      *  @param handle_array Try to read array elements, or only a scalar value?
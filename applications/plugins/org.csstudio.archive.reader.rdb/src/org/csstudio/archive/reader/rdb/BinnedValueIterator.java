@@ -0,0 +1,420 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.archive.reader.rdb;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.logging.Level;
+
+import org.csstudio.archive.reader.ValueIterator;
+import org.csstudio.archive.vtype.ArchiveVNumber;
+import org.csstudio.archive.vtype.ArchiveVStatistics;
+import org.csstudio.archive.vtype.TimestampHelper;
+import org.csstudio.archive.vtype.VTypeHelper;
+import org.epics.util.time.TimeDuration;
+import org.epics.util.time.Timestamp;
+import org.epics.vtype.AlarmSeverity;
+import org.epics.vtype.VType;
+
+/** Value Iterator that provides 'optimized' data by binning
+ *  the samples in the RDB server, without stored procedure.
+ *  <p>
+ *  Portable SQL for MySQL and PostgreSQL returns the count, min, max, sum
+ *  and sum of squares for each bin, so only about one row per bin
+ *  is transferred instead of all raw samples.
+ *  The query computes a slot index from each sample time and groups by it.
+ *  Slots have the same duration, bins can span several slots
+ *  when they differ in duration.
+ *  <p>
+ *  The bins follow the averaging windows of the {@link AveragedValueIterator}:
+ *  Starting at the initial sample, each bin ends at the next
+ *  multiple of the bin duration.
+ *  Bins with a single sample return that sample,
+ *  bins with several samples return their statistics.
+ *  Bins that contain samples without numeric value
+ *  (strings, 'Disconnected', ...) are read raw and
+ *  averaged in the client.
+ *  If there are many such bins, or the channel has enumerated values,
+ *  all samples are read raw and averaged in the client.
+ *
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class BinnedValueIterator extends AbstractRDBValueIterator
+{
+    /** More bins are handled by the {@link AveragedValueIterator} */
+    final private static int MAX_BINS = 5000;
+
+    /** Bins with non-numeric samples beyond which the {@link AveragedValueIterator} is used */
+    final private static int MAX_RAW_BINS = 10;
+
+    /** More slots, for bins of varying duration, are handled by the {@link AveragedValueIterator} */
+    final private static int MAX_SLOTS = 50000;
+
+    /** Statistics of one bin, accumulated from its rows in the query result */
+    private static class Bin
+    {
+        /** Bin contains samples without numeric value? */
+        boolean mixed = false;
+        int count = 0, float_count = 0;
+        double min = Double.MAX_VALUE, max = -Double.MAX_VALUE, sum = 0.0, square = 0.0;
+        AlarmSeverity severity = null;
+        String status = null;
+        /** Time of first sample with 'severity' */
+        java.sql.Timestamp time = null;
+    }
+
+    /** Bin duration in seconds */
+    final private long seconds;
+
+    /** Client-side averaging when bins are not used, else <code>null</code> */
+    private ValueIterator averaged = null;
+
+    /** Values for the bins */
+    private List<VType> values = null;
+
+    /** Iteration index into <code>values</code> */
+    private int index = 0;
+
+    /** Initialize
+     *  @param reader RDBArchiveReader, not Oracle
+     *  @param channel_id ID of channel
+     *  @param start Start time
+     *  @param end End time
+     *  @param seconds Bin duration in seconds
+     *  @throws Exception on error
+     */
+    public BinnedValueIterator(final RDBArchiveReader reader,
+            final int channel_id, final Timestamp start, final Timestamp end,
+            final double seconds) throws Exception
+    {
+        super(reader, channel_id);
+        // Same as AveragedValueIterator
+        this.seconds = seconds < 1.0 ? 1 : (long) seconds;
+        // Enumerated values are passed through as is
+        if (labels != null)
+            averaged = new AveragedValueIterator(reader.getRawValues(channel_id, start, end), seconds);
+        else
+        {
+            try
+            {
+                values = readBins(start, end);
+            }
+            catch (Exception ex)
+            {
+                if (! RDBArchiveReader.isCancellation(ex))
+                    throw ex;
+                // Else: Not a real error; return empty iterator
+                Activator.getLogger().log(Level.FINE, "Binned query cancelled", ex);
+                values = new ArrayList<VType>();
+            }
+            if (values == null)
+                averaged = new AveragedValueIterator(reader.getRawValues(channel_id, start, end), seconds);
+        }
+    }
+
+    /** @param start Start time
+     *  @param end End time
+     *  @return Value for each bin that has samples, or <code>null</code> to use client-side averaging
+     *  @throws Exception on error, including cancellation
+     */
+    private List<VType> readBins(final Timestamp start, final Timestamp end) throws Exception
+    {
+        // Determine bin boundaries, starting at initial sample
+        final List<Timestamp> bounds = new ArrayList<Timestamp>();
+        Timestamp bound = TimestampHelper.fromSQLTimestamp(determineInitialTime(start));
+        bounds.add(bound);
+        while (bound.compareTo(end) <= 0)
+        {
+            bound = TimestampHelper.roundUp(bound, seconds);
+            bounds.add(bound);
+            if (bounds.size() > MAX_BINS + 1)
+                return null;
+        }
+        final int N = bounds.size() - 1;
+
+        // The RDB compares time stamps in local time, so the slots
+        // are computed in local time, where bins may differ in duration
+        // because of daylight saving time or bins aligned to midnight
+        final long[] local = new long[N+1];
+        for (int i=0; i<=N; ++i)
+            local[i] = getLocalSeconds(bounds.get(i));
+        final long slot = getSlotSeconds(local);
+        if (slot <= 0)
+            return null;
+        final int[] slot_bins = getSlotBins(local, slot);
+        if (slot_bins == null)
+            return null;
+
+        // Query statistics for all slots
+        final Bin[] stats = new Bin[N];
+        final PreparedStatement statement = reader.getRDB().getConnection().prepareStatement(
+                String.format(reader.getSQL().sample_sel_bins_by_id_start_end, slot));
+        reader.addForCancellation(statement);
+        try
+        {
+            // Slots start at the end of the first bin
+            final java.sql.Timestamp slot_start = TimestampHelper.toSQLTimestamp(bounds.get(1));
+            // Whole seconds for the time of the first sample
+            final java.sql.Timestamp reference = TimestampHelper.toSQLTimestamp(Timestamp.of(bounds.get(0).getSec(), 0));
+            statement.setTimestamp(1, slot_start);
+            statement.setTimestamp(2, slot_start);
+            statement.setTimestamp(3, reference);
+            statement.setInt(4, channel_id);
+            statement.setTimestamp(5, TimestampHelper.toSQLTimestamp(bounds.get(0)));
+            statement.setTimestamp(6, TimestampHelper.toSQLTimestamp(end));
+            final ResultSet result = statement.executeQuery();
+            while (result.next())
+            {
+                final long s = result.getLong(1);
+                final int i = s < 0 ? 0 : slot_bins[(int) Math.min(s, slot_bins.length - 1)];
+                if (stats[i] == null)
+                    stats[i] = new Bin();
+                addRow(stats[i], result);
+            }
+        }
+        finally
+        {
+            reader.removeFromCancellation(statement);
+            statement.close();
+        }
+
+        // Too many bins with non-numeric samples?
+        int raw_bins = 0;
+        for (Bin bin : stats)
+            if (bin != null  &&  bin.mixed  &&  ++raw_bins > MAX_RAW_BINS)
+                return null;
+
+        // Create one value per bin
+        final List<VType> values = new ArrayList<VType>(N);
+        for (int i=0; i<N; ++i)
+        {
+            final Bin bin = stats[i];
+            if (bin == null)
+                continue;
+            if (bin.mixed)
+                averageRawSamples(bounds.get(i), bounds.get(i+1), values);
+            else if (bin.count == 1)
+            {   // Single sample: Return as is
+                final Timestamp time = TimestampHelper.fromSQLTimestamp(bin.time);
+                if (bin.float_count > 0)
+                    values.add(new ArchiveVNumber(time, bin.severity, bin.status, display, bin.sum));
+                else
+                    values.add(new ArchiveVNumber(time, bin.severity, bin.status, display, (int) bin.sum));
+            }
+            else
+            {   // Time stamp in center of bin, computed as in AveragedValueIterator
+                final Timestamp time = bounds.get(i+1).minus(TimeDuration.ofSeconds(seconds/2));
+                final double stddev = Math.sqrt(bin.count * bin.square - bin.sum * bin.sum) / bin.count;
+                values.add(new ArchiveVStatistics(time, bin.severity, bin.status, display,
+                        bin.sum / bin.count, bin.min, bin.max, stddev, bin.count));
+            }
+        }
+        return values;
+    }
+
+    /** @param time Time stamp
+     *  @return Seconds since epoch in local time, i.e. as seen by the RDB
+     */
+    private static long getLocalSeconds(final Timestamp time)
+    {
+        final long millis = time.getSec() * 1000L;
+        return time.getSec() + TimeZone.getDefault().getOffset(millis) / 1000;
+    }
+
+    /** Determine slot duration
+     *  <p>
+     *  The first bin starts at the initial sample,
+     *  but all other bins start and end at multiples of the slot duration
+     *  after the end of the first bin.
+     *
+     *  @param bounds Start and end of bins in seconds, local time
+     *  @return Duration of slot in seconds, the greatest common divisor of all but the first bin,
+     *          or 0 if bins are not increasing
+     */
+    // Allow access from 'package' for tests
+    static long getSlotSeconds(final long[] bounds)
+    {
+        long slot = 0;
+        for (int i=2; i<bounds.length; ++i)
+        {
+            long duration = bounds[i] - bounds[i-1];
+            if (duration <= 0)
+                return 0;
+            // Greatest common divisor
+            long other = slot;
+            while (other != 0)
+            {
+                final long rest = duration % other;
+                duration = other;
+                other = rest;
+            }
+            slot = duration;
+        }
+        // Single bin: Any slot will do, all samples are before its end
+        return slot > 0 ? slot : 1;
+    }
+
+    /** @param bounds Start and end of bins in seconds, local time
+     *  @param slot Slot duration in seconds, see {@link #getSlotSeconds(long[])}
+     *  @return Bin index for each slot after the first bin,
+     *          or <code>null</code> if there are too many slots
+     */
+    // Allow access from 'package' for tests
+    static int[] getSlotBins(final long[] bounds, final long slot)
+    {
+        final int N = bounds.length - 1;
+        final long slots = N > 1 ? (bounds[N] - bounds[1]) / slot : 1;
+        if (slots > MAX_SLOTS)
+            return null;
+        final int[] bins = new int[(int) slots];
+        int bin = N > 1 ? 1 : 0;
+        for (int i=0; i<bins.length; ++i)
+        {
+            while (bin < N-1  &&  bounds[1] + i*slot >= bounds[bin+1])
+                ++bin;
+            bins[i] = bin;
+        }
+        return bins;
+    }
+
+    /** Add query result row for one severity/status to bin
+     *  @param bin Bin
+     *  @param result Result positioned on row for the bin
+     *  @throws Exception on error
+     */
+    private void addRow(final Bin bin, final ResultSet result) throws Exception
+    {
+        final String status = reader.getStatus(result.getInt(3));
+        final AlarmSeverity severity = filterSeverity(reader.getSeverity(result.getInt(2)), status);
+        final int count = result.getInt(4);
+        final int numeric = result.getInt(5);
+        if (numeric < count  ||  severity == AlarmSeverity.UNDEFINED)
+        {
+            bin.mixed = true;
+            return;
+        }
+        bin.count += count;
+        bin.float_count += result.getInt(6);
+        bin.min = Math.min(bin.min, result.getDouble(7));
+        bin.max = Math.max(bin.max, result.getDouble(8));
+        bin.sum += result.getDouble(9);
+        bin.square += result.getDouble(10);
+        // Nanoseconds of the first sample
+        final java.sql.Timestamp time = result.getTimestamp(11);
+        time.setNanos((int) (result.getLong(12) % 1000000000L));
+        // Like AveragedValueIterator, use the highest severity,
+        // and the status of the first sample with that severity
+        if (bin.severity == null  ||
+            severity.ordinal() > bin.severity.ordinal()  ||
+            (severity == bin.severity  &&  time.before(bin.time)))
+        {
+            bin.severity = severity;
+            bin.status = status;
+            bin.time = time;
+        }
+    }
+
+    /** Read raw samples of a bin and average them in the client
+     *  @param start Start of bin
+     *  @param end End of bin (exclusive)
+     *  @param values List where averaged values are added
+     *  @throws Exception on error, including cancellation
+     */
+    private void averageRawSamples(final Timestamp start, final Timestamp end,
+                                   final List<VType> values) throws Exception
+    {
+        final List<VType> raw = new ArrayList<VType>();
+        final PreparedStatement statement = reader.getRDB().getConnection().prepareStatement(
+            reader.useArrayBlob() ? reader.getSQL().sample_sel_by_id_start_end_with_blob
+                                  : reader.getSQL().sample_sel_by_id_start_end);
+        reader.addForCancellation(statement);
+        try
+        {
+            statement.setInt(1, channel_id);
+            statement.setTimestamp(2, TimestampHelper.toSQLTimestamp(start));
+            statement.setTimestamp(3, TimestampHelper.toSQLTimestamp(end));
+            final ResultSet result = statement.executeQuery();
+            while (result.next())
+            {
+                final VType value = decodeSampleTableValue(result, true);
+                if (VTypeHelper.getTimestamp(value).compareTo(end) < 0)
+                    raw.add(value);
+            }
+        }
+        finally
+        {
+            reader.removeFromCancellation(statement);
+            statement.close();
+        }
+        final ValueIterator bin_values = new AveragedValueIterator(new ListValueIterator(raw), seconds);
+        while (bin_values.hasNext())
+            values.add(bin_values.next());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean hasNext()
+    {
+        if (averaged != null)
+            return averaged.hasNext();
+        return values != null  &&  index < values.size();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public VType next() throws Exception
+    {
+        if (averaged != null)
+            return averaged.next();
+        return values.get(index++);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void close()
+    {
+        super.close();
+        if (averaged != null)
+            averaged.close();
+        values = null;
+    }
+
+    /** Iterator for list of samples */
+    private static class ListValueIterator implements ValueIterator
+    {
+        final private List<VType> values;
+        private int index = 0;
+
+        ListValueIterator(final List<VType> values)
+        {
+            this.values = values;
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return index < values.size();
+        }
+
+        @Override
+        public VType next() throws Exception
+        {
+            return values.get(index++);
+        }
+
+        @Override
+        public void close()
+        {
+            // NOP
+        }
+    }
+}
@@ -0,0 +1,171 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.archive.reader.rdb;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.LinkedList;
+
+import org.csstudio.archive.vtype.TimestampHelper;
+import org.csstudio.archive.vtype.VTypeHelper;
+import org.epics.util.time.Timestamp;
+import org.epics.vtype.VType;
+
+/** Value Iterator for one channel of a {@link SampleCursor}
+ *  <p>
+ *  The initial sample before the start time is read
+ *  when the iterator is created,
+ *  the following samples come from the shared cursor.
+ *
+ *  @author Kay Kasemir
+ */
+class CursorSampleIterator extends AbstractRDBValueIterator
+{
+    final private SampleCursor cursor;
+
+    /** Samples read from the cursor, not yet returned. Guarded by cursor */
+    final private LinkedList<VType> buffer = new LinkedList<VType>();
+
+    /** Time of the initial sample. Cursor samples up to this time are skipped */
+    private Timestamp initial = null;
+
+    /** Error of the cursor. Guarded by cursor */
+    private Exception error = null;
+
+    /** Has the error been reported by <code>next()</code>? Guarded by cursor */
+    private boolean error_reported = false;
+
+    /** Has iterator been closed? Guarded by cursor */
+    private boolean closed = false;
+
+    /** Initialize
+     *  @param reader RDBArchiveReader
+     *  @param cursor Cursor that reads the samples
+     *  @param channel_id ID of channel
+     *  @param start Start time
+     *  @throws Exception on error
+     */
+    CursorSampleIterator(final RDBArchiveReader reader, final SampleCursor cursor,
+            final int channel_id, final Timestamp start) throws Exception
+    {
+        super(reader, channel_id);
+        this.cursor = cursor;
+        try
+        {
+            determineInitialSamples(start);
+        }
+        catch (Exception ex)
+        {
+            if (! RDBArchiveReader.isCancellation(ex))
+                throw ex;
+            // Else: Not a real error; return empty iterator
+            closed = true;
+        }
+    }
+
+    /** Read the samples at the time of the last sample before the start time
+     *  @param start Start time
+     *  @throws Exception on error, including cancellation
+     */
+    private void determineInitialSamples(final Timestamp start) throws Exception
+    {
+        final java.sql.Timestamp start_stamp = determineInitialTime(start);
+        if (! start_stamp.before(TimestampHelper.toSQLTimestamp(start)))
+            return;
+        final PreparedStatement statement = reader.getRDB().getConnection().prepareStatement(
+            reader.useArrayBlob() ? reader.getSQL().sample_sel_by_id_start_end_with_blob
+                                  : reader.getSQL().sample_sel_by_id_start_end);
+        reader.addForCancellation(statement);
+        try
+        {
+            statement.setInt(1, channel_id);
+            statement.setTimestamp(2, start_stamp);
+            statement.setTimestamp(3, start_stamp);
+            final ResultSet result = statement.executeQuery();
+            while (result.next())
+            {
+                final VType value = decodeSampleTableValue(result, true);
+                buffer.add(value);
+                initial = VTypeHelper.getTimestamp(value);
+            }
+        }
+        finally
+        {
+            reader.removeFromCancellation(statement);
+            statement.close();
+        }
+    }
+
+    /** Add sample from cursor. Caller must synchronize on cursor
+     *  @param result Result positioned on a sample of this channel
+     *  @throws Exception on error
+     */
+    void add(final ResultSet result) throws Exception
+    {
+        final VType value = decodeSampleTableValue(result, true);
+        if (initial == null  ||  VTypeHelper.getTimestamp(value).compareTo(initial) > 0)
+            buffer.add(value);
+    }
+
+    /** @return <code>true</code> if a sample has been read from the cursor.
+     *          Caller must synchronize on cursor
+     */
+    boolean hasBufferedSample()
+    {
+        return ! buffer.isEmpty();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean hasNext()
+    {
+        synchronized (cursor)
+        {
+            if (closed)
+                return false;
+            if (buffer.isEmpty()  &&  error == null)
+                error = cursor.fill(this);
+            return ! buffer.isEmpty()  ||  (error != null  &&  !error_reported);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @SuppressWarnings("nls")
+    public VType next() throws Exception
+    {
+        synchronized (cursor)
+        {
+            if (! hasNext())
+                throw new Exception("CursorSampleIterator.next(" + channel_id + ") called after end");
+            if (buffer.isEmpty())
+            {
+                error_reported = true;
+                throw error;
+            }
+            return buffer.removeFirst();
+        }
+    }
+
+    /** Release all database resources.
+     *  OK to call more than once.
+     */
+    @Override
+    public void close()
+    {
+        // Called by base class constructor on error, before cursor is set
+        if (cursor != null)
+            synchronized (cursor)
+            {
+                closed = true;
+                buffer.clear();
+                cursor.close(this);
+            }
+        super.close();
+    }
+}
@@ -17,9 +17,10 @@ import java.util.logging.Logger;
 
 import org.csstudio.archive.rdb.RDBArchivePreferences;
 import org.csstudio.archive.reader.ArchiveInfo;
-import org.csstudio.archive.reader.ArchiveReader;
+import org.csstudio.archive.reader.MultiChannelArchiveReader;
 import org.csstudio.archive.reader.UnknownChannelException;
 import org.csstudio.archive.reader.ValueIterator;
+import org.csstudio.archive.reader.ValueIteratorHelper;
 import org.csstudio.archive.vtype.TimestampHelper;
 import org.csstudio.platform.utility.rdb.RDBUtil;
 import org.csstudio.platform.utility.rdb.RDBUtil.Dialect;
@@ -32,8 +33,13 @@ import org.epics.vtype.AlarmSeverity;
  *  @author Laurent Philippe - MySQL support
  */
 @SuppressWarnings("nls")
-public class RDBArchiveReader implements ArchiveReader
+public class RDBArchiveReader implements MultiChannelArchiveReader
 {
+    /** Maximum number of channels in one 'channel_id IN (...)' query.
+     *  Oracle allows at most 1000 list elements.
+     */
+    final private static int MAX_CHANNELS_PER_QUERY = 500;
+
     /** Oracle error code for canceled statements */
     final private static String ORACLE_CANCELLATION = "ORA-01013"; //$NON-NLS-1$
 
@@ -45,6 +51,8 @@ public class RDBArchiveReader implements ArchiveReader
     final private String url;
     final private String user;
     final private int password;
+    /** Password, used to open the additional connections of a {@link SampleCursor} */
+    final private String connect_password;
     /** Timeout [secs] used for some operations that should be 'fast' */
     final private int timeout;
 
@@ -65,6 +73,9 @@ public class RDBArchiveReader implements ArchiveReader
     private ArrayList<Statement> cancellable_statements =
         new ArrayList<Statement>();
 
+    /** Cursors that have an open connection, closed in close() */
+    final private ArrayList<SampleCursor> cursors = new ArrayList<SampleCursor>();
+
     /** Initialize
      *  @param url Database URL
      *  @param user .. user
@@ -99,6 +110,7 @@ public class RDBArchiveReader implements ArchiveReader
         this.url = url;
         this.user = user;
         this.password = (password == null) ? 0 : password.length();
+        this.connect_password = password;
         this.use_array_blob = use_array_blob;
         timeout = RDBArchivePreferences.getSQLTimeoutSecs();
         rdb = RDBUtil.connect(url, user, password, false);
@@ -361,6 +373,50 @@ public class RDBArchiveReader implements ArchiveReader
     {
         return new RawSampleIterator(this, channel_id, start, end);
     }
+
+    /** Read samples of several channels, one query for up to
+     *  {@link #MAX_CHANNELS_PER_QUERY} channels.
+     *  <p>
+     *  Samples are ordered by time, see {@link SampleCursor}.
+     *  Reading the iterators in time order, for example
+     *  via a {@link org.csstudio.archive.reader.SpreadsheetIterator},
+     *  only buffers the samples between the current times of the channels.
+     *  <p>
+     *  {@inheritDoc}
+     */
+    @Override
+    public ValueIterator[] getRawValues(final int key, final String[] names,
+            final Timestamp start, final Timestamp end) throws UnknownChannelException, Exception
+    {
+        final int[] channel_ids = new int[names.length];
+        for (int i=0; i<names.length; ++i)
+            channel_ids[i] = getChannelID(names[i]);
+
+        final ValueIterator[] iters = new ValueIterator[names.length];
+        try
+        {
+            int i = 0;
+            while (i < names.length)
+            {
+                final SampleCursor cursor = new SampleCursor(this, start, end);
+                for (/**/; i<names.length  &&  cursor.size() < MAX_CHANNELS_PER_QUERY; ++i)
+                {
+                    // Same channel requested more than once: Use separate query
+                    if (cursor.contains(channel_ids[i]))
+                        iters[i] = getRawValues(channel_ids[i], start, end);
+                    else
+                        iters[i] = cursor.add(channel_ids[i]);
+                }
+                cursor.execute();
+            }
+        }
+        catch (Exception ex)
+        {
+            ValueIteratorHelper.close(iters);
+            throw ex;
+        }
+        return iters;
+    }
     
     /** {@inheritDoc} */
     @Override
@@ -392,16 +448,16 @@ public class RDBArchiveReader implements ArchiveReader
 	        	throw new Exception("Cannot count samples");
 	        counted = result.getInt(1);
         }
-        // Fetch raw data and perform averaging
-        final ValueIterator raw_data = getRawValues(channel_id, start, end);
-        
-        // If there weren't that many, that's it
+        // If there weren't that many, fetch raw data
         if (counted < count)
-        	return raw_data;
-        
+        	return getRawValues(channel_id, start, end);
+
         // Else: Perform averaging to reduce sample count
         final double seconds = end.durationFrom(start).toSeconds() / count;
-        return new AveragedValueIterator(raw_data, seconds);
+        // .. in the RDB server where portable SQL is available
+        if (sql.sample_sel_bins_by_id_start_end != null)
+            return new BinnedValueIterator(this, channel_id, start, end, seconds);
+        return new AveragedValueIterator(getRawValues(channel_id, start, end), seconds);
     }
 
     /** @param name Channel name
@@ -500,11 +556,47 @@ public class RDBArchiveReader implements ArchiveReader
         }
     }
 
+    /** Open a connection that is not shared with the other queries of this reader
+     *  @return {@link RDBUtil}, caller must close
+     *  @throws Exception on error
+     */
+    RDBUtil connect() throws Exception
+    {
+        final RDBUtil connection = RDBUtil.connect(url, user, connect_password, false);
+        connection.getConnection().setReadOnly(true);
+        return connection;
+    }
+
+    /** @param cursor Cursor that opened a connection */
+    void addCursor(final SampleCursor cursor)
+    {
+        synchronized (cursors)
+        {
+            cursors.add(cursor);
+        }
+    }
+
+    /** @param cursor Cursor that closed its connection */
+    void removeCursor(final SampleCursor cursor)
+    {
+        synchronized (cursors)
+        {
+            cursors.remove(cursor);
+        }
+    }
+
     /** {@inheritDoc} */
     @Override
     public void close()
     {
         cancel();
+        final SampleCursor[] open;
+        synchronized (cursors)
+        {
+            open = cursors.toArray(new SampleCursor[cursors.size()]);
+        }
+        for (SampleCursor cursor : open)
+            cursor.abort();
         rdb.close();
     }
 }
@@ -65,34 +65,9 @@ public class RawSampleIterator extends AbstractRDBValueIterator
      */
     private void determineInitialSample(final Timestamp start, final Timestamp end) throws Exception
     {
-        java.sql.Timestamp start_stamp = TimestampHelper.toSQLTimestamp(start);
+        final java.sql.Timestamp start_stamp = determineInitialTime(start);
         final java.sql.Timestamp end_stamp = TimestampHelper.toSQLTimestamp(end);
 
-        // Get time of initial sample
-        final PreparedStatement statement =
-            reader.getRDB().getConnection().prepareStatement(reader.getSQL().sample_sel_initial_time);
-        reader.addForCancellation(statement);
-        try
-        {
-            statement.setInt(1, channel_id);
-            statement.setTimestamp(2, start_stamp);
-            final ResultSet result = statement.executeQuery();
-            if (result.next())
-            {
-                // System.out.print("Start time corrected from " + start_stamp);
-                start_stamp = result.getTimestamp(1);
-                // Oracle has nanoseconds in TIMESTAMP, MySQL in separate column
-                if (reader.getRDB().getDialect() == Dialect.MySQL || reader.getRDB().getDialect() == Dialect.PostgreSQL)
-                    start_stamp.setNanos(result.getInt(2));
-                // System.out.println(" to " + start_stamp);
-            }
-        }
-        finally
-        {
-            reader.removeFromCancellation(statement);
-            statement.close();
-        }
-
         boolean autoCommit = reader.getRDB().getConnection().getAutoCommit();
 		// Disable auto-commit to determine sample with PostgreSQL when fetch direction is FETCH_FORWARD
 		if (reader.getRDB().getDialect() == Dialect.PostgreSQL && autoCommit) {
@@ -36,8 +36,13 @@ public class SQL
     final public String sample_sel_initial_time;
     final public String sample_sel_by_id_start_end;
     final public String sample_sel_by_id_start_end_with_blob;
+    // Several channels: '%s' for the list of channel IDs, channel_id is the last column
+    final public String sample_sel_by_ids_start_end;
+    final public String sample_sel_by_ids_start_end_with_blob;
     final public String sample_sel_array_vals;
 	final public String sample_count_by_id_start_end;
+    // Binned statistics: '%d' for the slot duration. null for Oracle
+    final public String sample_sel_bins_by_id_start_end;
     
     /** Initialize SQL statements
      *  @param dialect RDB dialect
@@ -102,8 +107,21 @@ public class SQL
     	            "   WHERE channel_id=?" +
     	            "     AND smpl_time>=? AND smpl_time<=?" +
     	            "   ORDER BY smpl_time";
+            sample_sel_by_ids_start_end =
+                "SELECT smpl_time, severity_id, status_id, num_val, float_val, str_val, channel_id FROM " + prefix + "sample"+
+                "   WHERE channel_id IN (%s)" +
+                "     AND smpl_time>=? AND smpl_time<=?" +
+                "   ORDER BY smpl_time, channel_id";
+            sample_sel_by_ids_start_end_with_blob =
+                "SELECT smpl_time, severity_id, status_id, num_val, float_val, str_val, datatype, array_val, channel_id" +
+                "   FROM " + prefix + "sample" +
+                "   WHERE channel_id IN (%s)" +
+                "     AND smpl_time>=? AND smpl_time<=?" +
+                "   ORDER BY smpl_time, channel_id";
             sample_sel_array_vals = "SELECT float_val FROM " + prefix + "array_val" +
                 " WHERE channel_id=? AND smpl_time=? ORDER BY seq_nbr";
+            // Oracle uses stored procedure for optimized data
+            sample_sel_bins_by_id_start_end = null;
         }
         else
         {	// MySQL, Postgres
@@ -122,8 +140,44 @@ public class SQL
 	            "   WHERE channel_id=?" +
 	            "     AND smpl_time>=? AND smpl_time<=?" +
 	            "   ORDER BY smpl_time, nanosecs";
+            sample_sel_by_ids_start_end =
+                "SELECT smpl_time, severity_id, status_id, num_val, float_val, str_val, nanosecs, channel_id FROM " + prefix + "sample" +
+                "   WHERE channel_id IN (%s)" +
+                "     AND smpl_time>=? AND smpl_time<=?" +
+                "   ORDER BY smpl_time, nanosecs, channel_id";
+            sample_sel_by_ids_start_end_with_blob =
+                "SELECT smpl_time, severity_id, status_id, num_val, float_val, str_val, nanosecs, datatype, array_val, channel_id" +
+                "   FROM " + prefix + "sample" +
+                "   WHERE channel_id IN (%s)" +
+                "     AND smpl_time>=? AND smpl_time<=?" +
+                "   ORDER BY smpl_time, nanosecs, channel_id";
             sample_sel_array_vals = "SELECT float_val FROM " + prefix + "array_val" +
                 " WHERE channel_id=? AND smpl_time=? AND nanosecs=? ORDER BY seq_nbr";
+            // Seconds from a time stamp parameter to the sample time, rounded down
+            final String seconds_since = dialect == RDBUtil.Dialect.MySQL
+                ? "TIMESTAMPDIFF(SECOND, ?, s.smpl_time)"
+                : "CAST(FLOOR(EXTRACT(EPOCH FROM (s.smpl_time - CAST(? AS TIMESTAMP)))) AS BIGINT)";
+            // Per slot and severity/status: Count of all, numeric and float samples,
+            // min, max, sum and sum of squares of numeric value, time of first sample.
+            // Slots are computed from the sample time, -1 before the start of the first slot,
+            // instead of joining with a table of bins, so the query is a single scan
+            // of the channel's samples.
+            // Time of the first sample is MIN(smpl_time) with the nanosecs
+            // of the sample that has the smallest combined seconds and nanosecs.
+            // '%d' is the slot duration in seconds.
+            sample_sel_bins_by_id_start_end =
+                "SELECT CASE WHEN s.smpl_time < ? THEN -1 ELSE FLOOR(" + seconds_since + " / %d) END AS slot," +
+                "       s.severity_id, s.status_id," +
+                "       COUNT(*), COUNT(COALESCE(s.float_val, s.num_val)), COUNT(s.float_val)," +
+                "       MIN(COALESCE(s.float_val, s.num_val)), MAX(COALESCE(s.float_val, s.num_val))," +
+                "       SUM(COALESCE(s.float_val, s.num_val))," +
+                "       SUM(COALESCE(s.float_val, s.num_val) * COALESCE(s.float_val, s.num_val))," +
+                "       MIN(s.smpl_time), MIN(" + seconds_since + " * 1000000000 + s.nanosecs)" +
+                "   FROM " + prefix + "sample s" +
+                "   WHERE s.channel_id=?" +
+                "     AND s.smpl_time>=? AND s.smpl_time<=?" +
+                "   GROUP BY slot, s.severity_id, s.status_id" +
+                "   ORDER BY slot";
         }
         // Rough count, ignoring nanosecs for the non-Oracle dialects
         sample_count_by_id_start_end = "SELECT COUNT(*) FROM " + prefix + "sample" +
@@ -0,0 +1,228 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.archive.reader.rdb;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.csstudio.archive.vtype.TimestampHelper;
+import org.csstudio.platform.utility.rdb.RDBUtil;
+import org.csstudio.platform.utility.rdb.RDBUtil.Dialect;
+import org.epics.util.time.Timestamp;
+
+/** Query for the samples of several channels, shared by their iterators
+ *  <p>
+ *  Reads the SAMPLE table with one <code>channel_id IN (...)</code> query
+ *  ordered by time.
+ *  Each sample is decoded by the {@link CursorSampleIterator} of its channel.
+ *  Samples of channels other than the one being read are
+ *  buffered in their iterator.
+ *  Consumers that merge the channels by time, like the
+ *  <code>SpreadsheetIterator</code>, thus only buffer the samples
+ *  between the current times of the channels.
+ *  Reading one channel to its end before reading the next one
+ *  would buffer all the samples of the other channels.
+ *  <p>
+ *  The query uses its own connection, so it does not interfere
+ *  with other queries of the reader, including other cursors,
+ *  while the iterators read the samples.
+ *  The query and connection are closed when all samples have been read
+ *  or all iterators have been closed.
+ *  Iterators synchronize on the cursor.
+ *
+ *  @author Kay Kasemir
+ */
+class SampleCursor
+{
+    final private RDBArchiveReader reader;
+    final private Timestamp start, end;
+
+    /** Iterators that still want samples, by channel ID */
+    final private Map<Integer, CursorSampleIterator> iterators = new HashMap<Integer, CursorSampleIterator>();
+
+    /** Connection used for <code>sel_samples</code> */
+    private RDBUtil rdb = null;
+
+    /** SELECT ... for the samples of all channels */
+    private PreparedStatement sel_samples = null;
+
+    /** Result of <code>sel_samples</code>, <code>null</code> when done */
+    private ResultSet result_set = null;
+
+    /** Column of the channel ID in <code>result_set</code> */
+    private int channel_column;
+
+    /** Error while reading <code>result_set</code> */
+    private Exception error = null;
+
+    /** @param reader RDBArchiveReader
+     *  @param start Start time
+     *  @param end End time
+     */
+    SampleCursor(final RDBArchiveReader reader, final Timestamp start, final Timestamp end)
+    {
+        this.reader = reader;
+        this.start = start;
+        this.end = end;
+    }
+
+    /** @param channel_id Channel ID
+     *  @return <code>true</code> if cursor already has an iterator for that channel
+     */
+    synchronized boolean contains(final int channel_id)
+    {
+        return iterators.containsKey(channel_id);
+    }
+
+    /** @return Number of channels */
+    synchronized int size()
+    {
+        return iterators.size();
+    }
+
+    /** Add a channel. Must be called before <code>execute</code>
+     *  @param channel_id Channel ID
+     *  @return Iterator for the samples of that channel
+     *  @throws Exception on error
+     */
+    synchronized CursorSampleIterator add(final int channel_id) throws Exception
+    {
+        final CursorSampleIterator iter = new CursorSampleIterator(reader, this, channel_id, start);
+        iterators.put(channel_id, iter);
+        return iter;
+    }
+
+    /** Start the query for the samples of all added channels
+     *  @throws Exception on error
+     */
+    @SuppressWarnings("nls")
+    synchronized void execute() throws Exception
+    {
+        if (iterators.isEmpty())
+            return;
+        final StringBuilder ids = new StringBuilder();
+        for (int i=0; i<iterators.size(); ++i)
+            ids.append(i > 0 ? ",?" : "?");
+
+        final String sql = reader.useArrayBlob()
+            ? reader.getSQL().sample_sel_by_ids_start_end_with_blob
+            : reader.getSQL().sample_sel_by_ids_start_end;
+        rdb = reader.connect();
+        reader.addCursor(this);
+        try
+        {
+            final Connection connection = rdb.getConnection();
+            // Disable auto-commit to fetch samples with PostgreSQL when fetch direction is FETCH_FORWARD.
+            // The connection is only used by this query, closing it ends the transaction.
+            if (rdb.getDialect() == Dialect.PostgreSQL)
+                connection.setAutoCommit(false);
+            sel_samples = connection.prepareStatement(String.format(sql, ids.toString()));
+            sel_samples.setFetchDirection(ResultSet.FETCH_FORWARD);
+            sel_samples.setFetchSize(Preferences.getFetchSize());
+            reader.addForCancellation(sel_samples);
+            int param = 0;
+            for (Integer channel_id : iterators.keySet())
+                sel_samples.setInt(++param, channel_id);
+            sel_samples.setTimestamp(++param, TimestampHelper.toSQLTimestamp(start));
+            sel_samples.setTimestamp(++param, TimestampHelper.toSQLTimestamp(end));
+            result_set = sel_samples.executeQuery();
+            channel_column = result_set.getMetaData().getColumnCount();
+        }
+        catch (Exception ex)
+        {
+            closeQuery();
+            if (! RDBArchiveReader.isCancellation(ex))
+                throw ex;
+            // Else: Not a real error; return empty iterators
+        }
+    }
+
+    /** Read samples until there is one for the iterator
+     *  or the query has ended
+     *  @param iter Iterator that needs samples
+     *  @return Error that ended the query, or <code>null</code>
+     */
+    synchronized Exception fill(final CursorSampleIterator iter)
+    {
+        try
+        {
+            while (! iter.hasBufferedSample()  &&  result_set != null)
+            {
+                if (! result_set.next())
+                {
+                    closeQuery();
+                    break;
+                }
+                final CursorSampleIterator target = iterators.get(result_set.getInt(channel_column));
+                if (target != null)
+                    target.add(result_set);
+            }
+        }
+        catch (Exception ex)
+        {
+            closeQuery();
+            if (! RDBArchiveReader.isCancellation(ex))
+                error = ex;
+            // Else: Not a real error; end all iterators
+        }
+        return error;
+    }
+
+    /** @param iter Iterator that has been closed and no longer needs samples */
+    synchronized void close(final CursorSampleIterator iter)
+    {
+        iterators.values().remove(iter);
+        if (iterators.isEmpty())
+            closeQuery();
+    }
+
+    /** Close the query, ending all iterators. Called when the reader is closed */
+    synchronized void abort()
+    {
+        closeQuery();
+    }
+
+    /** Release the query's database resources */
+    private void closeQuery()
+    {
+        if (result_set != null)
+        {
+            try
+            {
+                result_set.close();
+            }
+            catch (Exception ex)
+            {
+                // Ignore
+            }
+            result_set = null;
+        }
+        if (sel_samples != null)
+        {
+            reader.removeFromCancellation(sel_samples);
+            try
+            {
+                sel_samples.close();
+            }
+            catch (Exception ex)
+            {
+                // Ignore
+            }
+            sel_samples = null;
+        }
+        if (rdb != null)
+        {
+            rdb.close();
+            rdb = null;
+            reader.removeCursor(this);
+        }
+    }
+}
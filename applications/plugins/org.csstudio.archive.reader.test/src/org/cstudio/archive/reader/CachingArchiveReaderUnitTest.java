@@ -0,0 +1,377 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.cstudio.archive.reader;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.csstudio.archive.reader.ArchiveCache;
+import org.csstudio.archive.reader.ArchiveInfo;
+import org.csstudio.archive.reader.ArchiveReader;
+import org.csstudio.archive.reader.CachingArchiveReader;
+import org.csstudio.archive.reader.ValueIterator;
+import org.csstudio.archive.vtype.ArchiveVEnum;
+import org.csstudio.archive.vtype.ArchiveVNumber;
+import org.csstudio.archive.vtype.ArchiveVNumberArray;
+import org.csstudio.archive.vtype.ArchiveVStatistics;
+import org.csstudio.archive.vtype.ArchiveVString;
+import org.csstudio.archive.vtype.VTypeHelper;
+import org.epics.util.array.ArrayByte;
+import org.epics.util.array.ArrayFloat;
+import org.epics.util.array.ArrayShort;
+import org.epics.util.array.ListNumber;
+import org.epics.util.text.NumberFormats;
+import org.epics.util.time.Timestamp;
+import org.epics.vtype.AlarmSeverity;
+import org.epics.vtype.Display;
+import org.epics.vtype.VEnum;
+import org.epics.vtype.VNumber;
+import org.epics.vtype.VNumberArray;
+import org.epics.vtype.VStatistics;
+import org.epics.vtype.VString;
+import org.epics.vtype.VType;
+import org.epics.vtype.ValueFactory;
+import org.junit.Test;
+
+/** JUnit test of the {@link CachingArchiveReader}
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class CachingArchiveReaderUnitTest
+{
+    /** Start of 2000 */
+    final private static long Y2K = 946684800L;
+
+    /** Reader with a sample every 10 seconds that counts requests */
+    private static class DemoReader implements ArchiveReader
+    {
+        int requests = 0;
+
+        @Override
+        public String getServerName()
+        {
+            return "Demo";
+        }
+
+        @Override
+        public String getURL()
+        {
+            return "demo://";
+        }
+
+        @Override
+        public String getDescription()
+        {
+            return "Demo";
+        }
+
+        @Override
+        public int getVersion()
+        {
+            return 1;
+        }
+
+        @Override
+        public ArchiveInfo[] getArchiveInfos()
+        {
+            return new ArchiveInfo[0];
+        }
+
+        @Override
+        public String[] getNamesByPattern(final int key, final String glob_pattern) throws Exception
+        {
+            return new String[0];
+        }
+
+        @Override
+        public String[] getNamesByRegExp(final int key, final String reg_exp) throws Exception
+        {
+            return new String[0];
+        }
+
+        @Override
+        public ValueIterator getRawValues(final int key, final String name,
+                final Timestamp start, final Timestamp end) throws Exception
+        {
+            ++requests;
+            // Start with the sample at or before 'start'
+            long sec = start.getSec() - (start.getSec() - Y2K) % 10;
+            final List<VType> values = new ArrayList<VType>();
+            while (sec <= end.getSec())
+            {
+                values.add(new ArchiveVNumber(Timestamp.of(sec, 0), AlarmSeverity.NONE, "OK",
+                                              ValueFactory.displayNone(), Double.valueOf(sec - Y2K)));
+                sec += 10;
+            }
+            return new DemoDataIterator(values.toArray(new VType[values.size()]));
+        }
+
+        @Override
+        public ValueIterator getOptimizedValues(final int key, final String name,
+                final Timestamp start, final Timestamp end, final int count) throws Exception
+        {
+            return getRawValues(key, name, start, end);
+        }
+
+        @Override
+        public void cancel()
+        {
+            // NOP
+        }
+
+        @Override
+        public void close()
+        {
+            // NOP
+        }
+    }
+
+    private static List<VType> read(final ArchiveReader reader, final long start, final long end) throws Exception
+    {
+        final ValueIterator values = reader.getRawValues(1, "demo", Timestamp.of(start, 0), Timestamp.of(end, 0));
+        final List<VType> result = new ArrayList<VType>();
+        while (values.hasNext())
+            result.add(values.next());
+        values.close();
+        return result;
+    }
+
+    private static void assertSame(final List<VType> expected, final List<VType> actual)
+    {
+        assertThat(actual.size(), equalTo(expected.size()));
+        for (int i=0; i<expected.size(); ++i)
+        {
+            assertThat(VTypeHelper.getTimestamp(actual.get(i)), equalTo(VTypeHelper.getTimestamp(expected.get(i))));
+            assertThat(VTypeHelper.toDouble(actual.get(i)), equalTo(VTypeHelper.toDouble(expected.get(i))));
+        }
+    }
+
+    /** Only missing buckets are requested */
+    @Test
+    public void testBuckets() throws Exception
+    {
+        final DemoReader demo = new DemoReader();
+        final ArchiveCache cache = new ArchiveCache(100000);
+        final ArchiveReader reader = new CachingArchiveReader(demo, cache, 3600);
+
+        // Initial request for 3 hours, starting in the middle of a bucket
+        final long start = Y2K + 1800 + 5, end = start + 3*3600;
+        List<VType> values = read(reader, start, end);
+        assertThat(demo.requests, equalTo(1));
+        assertSame(read(demo, start, end), values);
+        demo.requests = 0;
+        System.out.println(cache);
+
+        // Same request is served from cache
+        values = read(reader, start, end);
+        assertThat(demo.requests, equalTo(0));
+        assertSame(read(demo, start, end), values);
+        demo.requests = 0;
+
+        // Pan by one hour: Only the new bucket is fetched
+        values = read(reader, start + 3600, end + 3600);
+        assertThat(demo.requests, equalTo(1));
+        assertSame(read(demo, start + 3600, end + 3600), values);
+        System.out.println(cache);
+        assertThat(cache.getMisses(), equalTo(4L + 1L));
+    }
+
+    /** Buckets evicted from memory are read from disk */
+    @Test
+    public void testDisk() throws Exception
+    {
+        final File directory = new File(System.getProperty("java.io.tmpdir"), "archive_cache_test");
+        final DemoReader demo = new DemoReader();
+        // Memory holds only about one bucket of 360 samples
+        final ArchiveCache cache = new ArchiveCache(500, directory, 10*1024*1024);
+        final ArchiveReader reader = new CachingArchiveReader(demo, cache, 3600);
+
+        final long start = Y2K, end = start + 4*3600 - 1;
+        read(reader, start, end);
+        assertThat(demo.requests, equalTo(1));
+        assertTrue(cache.getMemorySamples() <= 500);
+        assertTrue(cache.getDiskBytes() > 0);
+        System.out.println(cache);
+
+        demo.requests = 0;
+        final List<VType> values = read(reader, start, end);
+        assertThat(demo.requests, equalTo(0));
+        assertTrue(cache.getDiskHits() > 0);
+        assertSame(read(demo, start, end), values);
+        System.out.println(cache);
+
+        cache.clear();
+        assertThat(cache.getDiskBytes(), equalTo(0L));
+        cache.close();
+    }
+
+    /** Cache only deletes its own files */
+    @Test
+    public void testDiskDirectory() throws Exception
+    {
+        final File directory = new File(System.getProperty("java.io.tmpdir"), "archive_cache_test");
+        directory.mkdirs();
+        final File other = new File(directory, "other.samples");
+        new FileOutputStream(other).close();
+        try
+        {
+            final ArchiveCache cache = new ArchiveCache(1, directory, 10*1024*1024);
+            final ArchiveCache second = new ArchiveCache(1, directory, 10*1024*1024);
+            final File cache_directory = cache.getDirectory();
+            assertThat(cache_directory.getParentFile(), equalTo(directory));
+            assertFalse(cache_directory.equals(second.getDirectory()));
+            assertTrue(other.exists());
+
+            // Move buckets to disk
+            cache.put("a", new ArchiveCache.Bucket(null, read(new DemoReader(), Y2K, Y2K)));
+            cache.put("b", new ArchiveCache.Bucket(null, read(new DemoReader(), Y2K, Y2K)));
+            second.put("a", new ArchiveCache.Bucket(null, read(new DemoReader(), Y2K, Y2K)));
+            second.put("b", new ArchiveCache.Bucket(null, read(new DemoReader(), Y2K, Y2K)));
+            assertTrue(cache.getDiskBytes() > 0);
+            assertThat(cache_directory.list().length, equalTo(1));
+
+            // Closing one cache leaves the files of others
+            cache.close();
+            assertFalse(cache_directory.exists());
+            assertTrue(other.exists());
+            assertThat(second.getDirectory().list().length, equalTo(1));
+            assertThat(second.get("a").getSamples().size(), equalTo(1));
+
+            // Closed cache still works in memory
+            cache.put("c", new ArchiveCache.Bucket(null, read(new DemoReader(), Y2K, Y2K)));
+            cache.put("d", new ArchiveCache.Bucket(null, read(new DemoReader(), Y2K, Y2K)));
+            assertThat(cache.getDiskBytes(), equalTo(0L));
+            assertFalse(cache_directory.exists());
+            second.close();
+        }
+        finally
+        {
+            other.delete();
+        }
+    }
+
+    /** Buckets on disk keep the value types */
+    @Test
+    public void testDiskTypes() throws Exception
+    {
+        final File directory = new File(System.getProperty("java.io.tmpdir"), "archive_cache_test");
+        // Memory holds only one bucket
+        final ArchiveCache cache = new ArchiveCache(1, directory, 10*1024*1024);
+        final Timestamp time = Timestamp.of(Y2K, 42);
+        final Display display = ValueFactory.newDisplay(0.0, 1.0, 2.0, "mm", NumberFormats.format(3),
+                                                        8.0, 9.0, 10.0, 0.0, 10.0);
+        // Text longer than 64k
+        final StringBuilder buf = new StringBuilder();
+        while (buf.length() < 100000)
+            buf.append("Text \u00b5m ");
+        final List<VType> samples = Arrays.<VType>asList(
+            new ArchiveVNumber(time, AlarmSeverity.MINOR, "LOW", display, 3.14),
+            new ArchiveVNumber(time, AlarmSeverity.NONE, "OK", display, Float.valueOf(2.5f)),
+            new ArchiveVNumber(time, AlarmSeverity.NONE, "OK", display, Long.valueOf(1L << 40)),
+            new ArchiveVNumber(time, AlarmSeverity.NONE, "OK", display, Integer.valueOf(42)),
+            new ArchiveVNumber(time, AlarmSeverity.NONE, "OK", display, Short.valueOf((short) 7)),
+            new ArchiveVNumber(time, AlarmSeverity.NONE, "OK", display, Byte.valueOf((byte) -1)),
+            new ArchiveVNumberArray(time, AlarmSeverity.NONE, "OK", display, 1.5, 2.5),
+            new ArchiveVNumberArray(time, AlarmSeverity.NONE, "OK", display, new ArrayFloat(1.5f, 2.5f)),
+            new ArchiveVNumberArray(time, AlarmSeverity.NONE, "OK", display, 1L, 2L),
+            new ArchiveVNumberArray(time, AlarmSeverity.NONE, "OK", display, 1, 2, 3),
+            new ArchiveVNumberArray(time, AlarmSeverity.NONE, "OK", display, new ArrayShort((short) 1, (short) 2)),
+            new ArchiveVNumberArray(time, AlarmSeverity.NONE, "OK", display, new ArrayByte((byte) 1, (byte) 2)),
+            new ArchiveVEnum(time, AlarmSeverity.MAJOR, "STATE", Arrays.asList("Off", "On"), 1),
+            new ArchiveVString(time, AlarmSeverity.NONE, "OK", buf.toString()),
+            new ArchiveVStatistics(time, AlarmSeverity.NONE, "OK", display, 1.0, 0.0, 2.0, 0.5, 10));
+        cache.put("types", new ArchiveCache.Bucket(null, samples));
+        // Move bucket to disk
+        cache.put("other", new ArchiveCache.Bucket(null, read(new DemoReader(), Y2K, Y2K)));
+        assertTrue(cache.getDiskBytes() > 0);
+
+        final ArchiveCache.Bucket bucket = cache.get("types");
+        assertThat(cache.getDiskHits(), equalTo(1L));
+        assertNull(bucket.getInitial());
+        assertThat(bucket.getSamples().size(), equalTo(samples.size()));
+        for (int i=0; i<samples.size(); ++i)
+        {
+            final VType expected = samples.get(i), actual = bucket.getSamples().get(i);
+            assertThat(VTypeHelper.getTimestamp(actual), equalTo(time));
+            assertThat(VTypeHelper.getSeverity(actual), equalTo(VTypeHelper.getSeverity(expected)));
+            assertThat(VTypeHelper.getMessage(actual), equalTo(VTypeHelper.getMessage(expected)));
+            if (expected instanceof VNumber)
+                assertThat(((VNumber) actual).getValue(), equalTo(((VNumber) expected).getValue()));
+            else if (expected instanceof VNumberArray)
+            {
+                final ListNumber expected_data = ((VNumberArray) expected).getData();
+                final ListNumber actual_data = ((VNumberArray) actual).getData();
+                assertThat(actual_data.getClass().getName(), equalTo(expected_data.getClass().getName()));
+                assertThat(actual_data.size(), equalTo(expected_data.size()));
+                for (int j=0; j<expected_data.size(); ++j)
+                    assertThat(actual_data.getDouble(j), equalTo(expected_data.getDouble(j)));
+            }
+            else if (expected instanceof VEnum)
+            {
+                assertThat(((VEnum) actual).getIndex(), equalTo(1));
+                assertThat(((VEnum) actual).getLabels(), equalTo(((VEnum) expected).getLabels()));
+            }
+            else if (expected instanceof VString)
+                assertThat(((VString) actual).getValue(), equalTo(buf.toString()));
+            else
+            {
+                assertThat(((VStatistics) actual).getStdDev(), equalTo(0.5));
+                assertThat(((VStatistics) actual).getNSamples(), equalTo(10));
+            }
+            if (actual instanceof Display)
+            {
+                assertThat(((Display) actual).getUnits(), equalTo("mm"));
+                assertThat(((Display) actual).getUpperAlarmLimit(), equalTo(9.0));
+                assertThat(((Display) actual).getLowerCtrlLimit(), equalTo(0.0));
+            }
+        }
+        cache.close();
+    }
+
+    /** Buckets with unsupported value types are not kept on disk */
+    @Test
+    public void testDiskUnsupported() throws Exception
+    {
+        final File directory = new File(System.getProperty("java.io.tmpdir"), "archive_cache_test");
+        final ArchiveCache cache = new ArchiveCache(1, directory, 10*1024*1024);
+        final VType text = ValueFactory.newVStringArray(Arrays.asList("a", "b"),
+                ValueFactory.alarmNone(), ValueFactory.newTime(Timestamp.of(Y2K, 0)));
+        cache.put("unsupported", new ArchiveCache.Bucket(null, Arrays.asList(text)));
+        cache.put("other", new ArchiveCache.Bucket(null, read(new DemoReader(), Y2K, Y2K)));
+        assertThat(cache.getDiskBytes(), equalTo(0L));
+        assertNull(cache.get("unsupported"));
+        cache.close();
+    }
+
+    /** Keys with the same hash code are kept apart on disk */
+    @Test
+    public void testDiskKeys() throws Exception
+    {
+        final File directory = new File(System.getProperty("java.io.tmpdir"), "archive_cache_test");
+        final ArchiveCache cache = new ArchiveCache(1, directory, 10*1024*1024);
+        assertThat("Aa".hashCode(), equalTo("BB".hashCode()));
+        cache.put("Aa", new ArchiveCache.Bucket(null, read(new DemoReader(), Y2K + 10, Y2K + 10)));
+        cache.put("BB", new ArchiveCache.Bucket(null, read(new DemoReader(), Y2K + 20, Y2K + 20)));
+        cache.put("other", new ArchiveCache.Bucket(null, read(new DemoReader(), Y2K, Y2K)));
+        assertThat(cache.getMemorySamples(), equalTo(1));
+
+        assertThat(VTypeHelper.toDouble(cache.get("Aa").getSamples().get(0)), equalTo(10.0));
+        assertThat(VTypeHelper.toDouble(cache.get("BB").getSamples().get(0)), equalTo(20.0));
+        assertThat(cache.getDiskHits(), equalTo(2L));
+        cache.close();
+    }
+}
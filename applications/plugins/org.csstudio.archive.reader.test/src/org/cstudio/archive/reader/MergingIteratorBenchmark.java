@@ -0,0 +1,105 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.cstudio.archive.reader;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import org.csstudio.archive.reader.MergingValueIterator;
+import org.csstudio.archive.reader.SpreadsheetIterator;
+import org.csstudio.archive.reader.ValueIterator;
+import org.csstudio.archive.vtype.ArchiveVNumber;
+import org.csstudio.archive.vtype.VTypeHelper;
+import org.epics.util.time.Timestamp;
+import org.epics.vtype.AlarmSeverity;
+import org.epics.vtype.VType;
+import org.epics.vtype.ValueFactory;
+import org.junit.Test;
+
+/** Benchmark of {@link MergingValueIterator} and {@link SpreadsheetIterator}
+ *  for 10, 100 and 1000 base iterators
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class MergingIteratorBenchmark
+{
+    /** Total number of samples across all base iterators */
+    final private static int SAMPLES = 500000;
+
+    /** Runs of each test, the first one to warm up */
+    final private static int RUNS = 3;
+
+    /** @param channels Number of base iterators
+     *  @return Base iterators with interleaved, partially aligned time stamps
+     */
+    private static ValueIterator[] createIterators(final int channels)
+    {
+        final int per_channel = SAMPLES / channels;
+        final ValueIterator[] iters = new ValueIterator[channels];
+        for (int c=0; c<channels; ++c)
+        {
+            final VType[] values = new VType[per_channel];
+            for (int i=0; i<per_channel; ++i)
+                values[i] = new ArchiveVNumber(Timestamp.of(1000 + i, (c % 10) * 1000), AlarmSeverity.NONE, "OK",
+                                               ValueFactory.displayNone(), c + i);
+            iters[c] = new DemoDataIterator(values);
+        }
+        return iters;
+    }
+
+    @Test
+    public void benchmarkMergingValueIterator() throws Exception
+    {
+        for (int channels : new int[] { 10, 100, 1000 })
+            for (int run=0; run<RUNS; ++run)
+            {
+                final ValueIterator[] iters = createIterators(channels);
+                final long start = System.nanoTime();
+                final MergingValueIterator merge = new MergingValueIterator(iters);
+                Timestamp last = null;
+                int count = 0;
+                while (merge.hasNext())
+                {
+                    final Timestamp time = VTypeHelper.getTimestamp(merge.next());
+                    if (last != null)
+                        assertTrue(time.compareTo(last) >= 0);
+                    last = time;
+                    ++count;
+                }
+                final double secs = (System.nanoTime() - start) / 1e9;
+                merge.close();
+                assertThat(count, equalTo(SAMPLES / channels * channels));
+                System.out.format("MergingValueIterator, %4d channels: %8.0f samples/s\n", channels, count / secs);
+            }
+    }
+
+    @Test
+    public void benchmarkSpreadsheetIterator() throws Exception
+    {
+        for (int channels : new int[] { 10, 100, 1000 })
+            for (int run=0; run<RUNS; ++run)
+            {
+                final ValueIterator[] iters = createIterators(channels);
+                final long start = System.nanoTime();
+                final SpreadsheetIterator sheet = new SpreadsheetIterator(iters);
+                int lines = 0;
+                while (sheet.hasNext())
+                {
+                    sheet.getTime();
+                    sheet.next();
+                    ++lines;
+                }
+                final double secs = (System.nanoTime() - start) / 1e9;
+                sheet.close();
+                // Time stamps use 10 different nanosecs per second
+                assertThat(lines, equalTo(SAMPLES / channels * Math.min(channels, 10)));
+                System.out.format("SpreadsheetIterator,  %4d channels: %8.0f samples/s\n", channels, (double)SAMPLES / channels * channels / secs);
+            }
+    }
+}
@@ -0,0 +1,158 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.cstudio.archive.reader;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.csstudio.archive.reader.ArchiveInfo;
+import org.csstudio.archive.reader.ArchiveReader;
+import org.csstudio.archive.reader.MultiChannelArchiveReader;
+import org.csstudio.archive.reader.MultiChannelReaderAdapter;
+import org.csstudio.archive.reader.UnknownChannelException;
+import org.csstudio.archive.reader.ValueIterator;
+import org.csstudio.archive.vtype.ArchiveVString;
+import org.epics.util.time.Timestamp;
+import org.epics.vtype.AlarmSeverity;
+import org.epics.vtype.VString;
+import org.epics.vtype.VType;
+import org.junit.Test;
+
+/** JUnit test of the {@link MultiChannelReaderAdapter}
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class MultiChannelReaderAdapterUnitTest
+{
+    /** Reader for channels "a", "b", "c" with samples "a0", "a1", ... */
+    private static class DemoReader implements ArchiveReader
+    {
+        final List<DemoDataIterator> iterators = new ArrayList<DemoDataIterator>();
+
+        @Override
+        public String getServerName()
+        {
+            return "Demo";
+        }
+
+        @Override
+        public String getURL()
+        {
+            return "demo://";
+        }
+
+        @Override
+        public String getDescription()
+        {
+            return "Demo";
+        }
+
+        @Override
+        public int getVersion()
+        {
+            return 1;
+        }
+
+        @Override
+        public ArchiveInfo[] getArchiveInfos()
+        {
+            return new ArchiveInfo[0];
+        }
+
+        @Override
+        public String[] getNamesByPattern(final int key, final String glob_pattern) throws Exception
+        {
+            return new String[] { "a", "b", "c" };
+        }
+
+        @Override
+        public String[] getNamesByRegExp(final int key, final String reg_exp) throws Exception
+        {
+            return getNamesByPattern(key, reg_exp);
+        }
+
+        @Override
+        public ValueIterator getRawValues(final int key, final String name,
+                final Timestamp start, final Timestamp end) throws UnknownChannelException, Exception
+        {
+            if (! "abc".contains(name))
+                throw new UnknownChannelException(name);
+            final VType[] values = new VType[3];
+            for (int i=0; i<values.length; ++i)
+                values[i] = new ArchiveVString(Timestamp.of(i + 1, 0), AlarmSeverity.NONE, "OK", name + i);
+            final DemoDataIterator iter = new DemoDataIterator(values);
+            iterators.add(iter);
+            return iter;
+        }
+
+        @Override
+        public ValueIterator getOptimizedValues(final int key, final String name,
+                final Timestamp start, final Timestamp end, final int count) throws Exception
+        {
+            return getRawValues(key, name, start, end);
+        }
+
+        @Override
+        public void cancel()
+        {
+            // NOP
+        }
+
+        @Override
+        public void close()
+        {
+            // NOP
+        }
+    }
+
+    @Test
+    public void testAdapter() throws Exception
+    {
+        final MultiChannelArchiveReader reader = MultiChannelReaderAdapter.adapt(new DemoReader());
+        // Adapting again returns the same reader
+        assertThat(MultiChannelReaderAdapter.adapt(reader), sameInstance(reader));
+        assertThat(reader.getServerName(), equalTo("Demo"));
+
+        final String[] names = { "c", "a", "b", "a" };
+        final ValueIterator[] iters = reader.getRawValues(1, names, Timestamp.of(1, 0), Timestamp.of(10, 0));
+        assertThat(iters.length, equalTo(names.length));
+        for (int c=0; c<names.length; ++c)
+        {
+            int i = 0;
+            while (iters[c].hasNext())
+                assertThat(((VString) iters[c].next()).getValue(), equalTo(names[c] + i++));
+            assertThat(i, equalTo(3));
+            iters[c].close();
+        }
+    }
+
+    @Test
+    public void testUnknownChannel() throws Exception
+    {
+        final DemoReader demo = new DemoReader();
+        final MultiChannelArchiveReader reader = MultiChannelReaderAdapter.adapt(demo);
+        try
+        {
+            reader.getRawValues(1, new String[] { "a", "b", "x" }, Timestamp.of(1, 0), Timestamp.of(10, 0));
+            fail("Unknown channel not reported");
+        }
+        catch (UnknownChannelException ex)
+        {
+            assertThat(ex.getMessage().contains("x"), equalTo(true));
+        }
+        // Iterators for the known channels have been closed
+        assertThat(demo.iterators.size(), equalTo(2));
+        for (DemoDataIterator iter : demo.iterators)
+            assertThat(iter.isOpen(), equalTo(false));
+    }
+}
@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.cstudio.archive.reader;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.csstudio.archive.reader.ReadAheadValueIterator;
+import org.csstudio.archive.reader.ValueIterator;
+import org.csstudio.archive.vtype.ArchiveVString;
+import org.epics.util.time.Timestamp;
+import org.epics.vtype.AlarmSeverity;
+import org.epics.vtype.VString;
+import org.epics.vtype.VType;
+import org.junit.After;
+import org.junit.Test;
+
+/** JUnit test of the {@link ReadAheadValueIterator}
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class ReadAheadValueIteratorUnitTest
+{
+    final private ExecutorService executor = Executors.newCachedThreadPool();
+
+    @After
+    public void shutdown()
+    {
+        executor.shutdown();
+    }
+
+    /** @param count Number of samples
+     *  @return Samples "0", "1", ...
+     */
+    private static VType[] createValues(final int count)
+    {
+        final VType[] values = new VType[count];
+        for (int i=0; i<count; ++i)
+            values[i] = new ArchiveVString(Timestamp.of(i + 1, 0), AlarmSeverity.NONE, "OK", Integer.toString(i));
+        return values;
+    }
+
+    @Test
+    public void testReadAhead() throws Exception
+    {
+        final DemoDataIterator base = new DemoDataIterator(createValues(1005));
+        final ReadAheadValueIterator iter = new ReadAheadValueIterator(base, 100, 3, executor);
+        int count = 0;
+        // Mix single samples and batches
+        while (count < 10)
+        {
+            assertThat(iter.hasNext(), equalTo(true));
+            assertThat(((VString) iter.next()).getValue(), equalTo(Integer.toString(count++)));
+        }
+        List<VType> batch;
+        while (! (batch = iter.nextBatch(42)).isEmpty())
+        {
+            assertThat(batch.size() <= 42, equalTo(true));
+            for (VType value : batch)
+                assertThat(((VString) value).getValue(), equalTo(Integer.toString(count++)));
+            Thread.sleep(1);
+        }
+        assertThat(count, equalTo(1005));
+        assertThat(iter.hasNext(), equalTo(false));
+        assertThat(base.isOpen(), equalTo(true));
+        iter.close();
+        assertThat(base.isOpen(), equalTo(false));
+        // Closing again must not close the base iterator twice
+        iter.close();
+    }
+
+    /** Error is reported after the samples that were read before */
+    @Test
+    public void testError() throws Exception
+    {
+        final ValueIterator failing = new DemoDataIterator(createValues(15))
+        {
+            private int read = 0;
+
+            @Override
+            public VType next() throws Exception
+            {
+                if (++read > 12)
+                    throw new Exception("Broken");
+                return super.next();
+            }
+        };
+        final ReadAheadValueIterator iter = new ReadAheadValueIterator(failing, 5, 2, executor);
+        int count = 0;
+        try
+        {
+            while (iter.hasNext())
+            {
+                iter.next();
+                ++count;
+            }
+            fail("Error not reported");
+        }
+        catch (Exception ex)
+        {
+            assertThat(ex.getMessage(), equalTo("Broken"));
+        }
+        assertThat(count, equalTo(12));
+        assertThat(iter.hasNext(), equalTo(false));
+        iter.close();
+    }
+
+    /** Close while base iterator is still being read */
+    @Test
+    public void testClose() throws Exception
+    {
+        final DemoDataIterator slow = new DemoDataIterator(createValues(1000))
+        {
+            @Override
+            public VType next() throws Exception
+            {
+                Thread.sleep(1);
+                return super.next();
+            }
+        };
+        final ReadAheadValueIterator iter = new ReadAheadValueIterator(slow, 100, 2, executor);
+        assertThat(iter.hasNext(), equalTo(true));
+        iter.next();
+        iter.close();
+        assertThat(slow.isOpen(), equalTo(false));
+        assertThat(iter.hasNext(), equalTo(false));
+    }
+}
@@ -0,0 +1,467 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.archive.reader;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.epics.vtype.VType;
+
+/** Cache for archived samples, used by the {@link CachingArchiveReader}
+ *  <p>
+ *  Holds 'buckets' of samples for a time range of one channel.
+ *  Buckets are kept in memory up to a total number of samples.
+ *  When that limit is exceeded, the least recently used buckets
+ *  are moved to an optional disk directory, which in turn
+ *  is limited by its total size.
+ *  Each cache creates its own sub-directory in there,
+ *  so several caches or programs can share the same directory,
+ *  and only deletes its own files.
+ *  <p>
+ *  One cache can be shared by many readers, since archive readers
+ *  are typically created for each request.
+ *  All methods are thread-safe.
+ *  Files are read and written outside of the lock,
+ *  so parallel requests are not serialized by the disk access.
+ *
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class ArchiveCache
+{
+    /** Samples for one time range of one channel */
+    public static class Bucket
+    {
+        final private VType initial;
+        final private List<VType> samples;
+
+        /** @param initial Last sample before the bucket, or <code>null</code>
+         *  @param samples Samples within the bucket
+         */
+        public Bucket(final VType initial, final List<VType> samples)
+        {
+            this.initial = initial;
+            this.samples = Collections.unmodifiableList(samples);
+        }
+
+        /** @return Last sample before the bucket, or <code>null</code> */
+        public VType getInitial()
+        {
+            return initial;
+        }
+
+        /** @return Samples within the bucket */
+        public List<VType> getSamples()
+        {
+            return samples;
+        }
+
+        /** @return Number of samples held by the bucket */
+        int size()
+        {
+            return samples.size() + (initial == null ? 0 : 1);
+        }
+    }
+
+    /** File of a bucket on disk */
+    private static class DiskFile
+    {
+        final File file;
+        final long size;
+
+        DiskFile(final File file, final long size)
+        {
+            this.file = file;
+            this.size = size;
+        }
+    }
+
+    /** File name prefix and suffix for buckets on disk */
+    final private static String FILE_PREFIX = "bucket", FILE_SUFFIX = ".samples";
+
+    /** Name prefix of the sub-directory for the files of one cache */
+    final private static String DIRECTORY_PREFIX = "cache";
+
+    /** Buckets in memory, least recently used first */
+    final private LinkedHashMap<String, Bucket> memory = new LinkedHashMap<String, Bucket>(16, 0.75f, true);
+
+    /** Maximum number of samples in memory */
+    final private int max_samples;
+
+    /** Number of samples in memory */
+    private int samples = 0;
+
+    /** Sub-directory of this cache for disk tier, or <code>null</code> */
+    final private File directory;
+
+    /** Maximum size of disk tier in bytes */
+    final private long max_disk_bytes;
+
+    /** Buckets that were evicted from memory and are being written to disk */
+    final private Map<String, Bucket> writing = new HashMap<String, Bucket>();
+
+    /** Files on disk by key, least recently used first */
+    final private LinkedHashMap<String, DiskFile> disk = new LinkedHashMap<String, DiskFile>(16, 0.75f, true);
+
+    /** Size of files on disk in bytes */
+    private long disk_bytes = 0;
+
+    /** Buckets must have ended this long ago before they are cached */
+    final private long settle_secs;
+
+    /** Statistics */
+    private long hits = 0, disk_hits = 0, misses = 0;
+
+    /** Has the cache been closed, so no more buckets are written to disk? */
+    private boolean closed = false;
+
+    /** Create memory-only cache
+     *  @param max_samples Maximum number of samples to keep in memory
+     */
+    public ArchiveCache(final int max_samples)
+    {
+        this(max_samples, null, 0);
+    }
+
+    /** Create cache
+     *  @param max_samples Maximum number of samples to keep in memory
+     *  @param directory Directory for buckets that are evicted from memory, or <code>null</code>.
+     *                   The cache uses a new sub-directory, which is removed by {@link #close()}.
+     *  @param max_disk_bytes Maximum size of files in directory
+     */
+    public ArchiveCache(final int max_samples, final File directory, final long max_disk_bytes)
+    {
+        this(max_samples, directory, max_disk_bytes, 10*60);
+    }
+
+    /** Create cache
+     *  @param max_samples Maximum number of samples to keep in memory
+     *  @param directory Directory for buckets that are evicted from memory, or <code>null</code>.
+     *                   The cache uses a new sub-directory, which is removed by {@link #close()}.
+     *  @param max_disk_bytes Maximum size of files in directory
+     *  @param settle_secs Time in seconds that needs to pass after the end of a bucket
+     *                     before it is cached, because the archive might not yet
+     *                     have all the samples
+     */
+    public ArchiveCache(final int max_samples, final File directory, final long max_disk_bytes,
+                        final long settle_secs)
+    {
+        this.max_samples = max_samples;
+        this.max_disk_bytes = max_disk_bytes;
+        this.settle_secs = settle_secs;
+        File cache_directory = null;
+        if (directory != null)
+        {
+            try
+            {
+                cache_directory = createDirectory(directory);
+            }
+            catch (IOException ex)
+            {
+                Logger.getLogger(getClass().getName()).log(Level.WARNING,
+                        "Cannot create cache directory in " + directory + ", caching only in memory", ex);
+            }
+        }
+        this.directory = cache_directory;
+    }
+
+    /** Create a new, unique sub-directory.
+     *  Files of other caches that use the same parent directory are left alone.
+     *  @param parent Parent directory
+     *  @return Sub-directory
+     *  @throws IOException on error
+     */
+    private static File createDirectory(final File parent) throws IOException
+    {
+        parent.mkdirs();
+        // Use unique temp file name for the directory
+        final File dir = File.createTempFile(DIRECTORY_PREFIX, "", parent);
+        if (! (dir.delete()  &&  dir.mkdir()))
+            throw new IOException("Cannot create " + dir);
+        return dir;
+    }
+
+    /** @return Sub-directory of this cache for buckets on disk, or <code>null</code> */
+    public File getDirectory()
+    {
+        return directory;
+    }
+
+    /** @return Time in seconds that needs to pass after the end of a bucket before it is cached */
+    public long getSettleSeconds()
+    {
+        return settle_secs;
+    }
+
+    /** @param key Bucket key
+     *  @return Bucket or <code>null</code>
+     */
+    public Bucket get(final String key)
+    {
+        Bucket bucket;
+        final DiskFile file;
+        List<Map.Entry<String, Bucket>> evicted = null;
+        synchronized (this)
+        {
+            bucket = memory.get(key);
+            if (bucket != null)
+            {
+                ++hits;
+                return bucket;
+            }
+            // Bucket may still be in the process of being written
+            bucket = writing.remove(key);
+            if (bucket != null)
+            {
+                ++hits;
+                evicted = putInMemory(key, bucket);
+                file = null;
+            }
+            else
+            {
+                file = disk.remove(key);
+                if (file == null)
+                {
+                    ++misses;
+                    return null;
+                }
+                disk_bytes -= file.size;
+            }
+        }
+        if (file != null)
+        {   // Move from disk back into memory
+            try
+            {
+                bucket = SampleFile.read(file.file, key);
+            }
+            catch (Exception ex)
+            {
+                Logger.getLogger(getClass().getName()).log(Level.WARNING, "Cannot read " + file.file, ex);
+            }
+            file.file.delete();
+            synchronized (this)
+            {
+                if (bucket == null)
+                {
+                    ++misses;
+                    return null;
+                }
+                ++disk_hits;
+                evicted = putInMemory(key, bucket);
+            }
+        }
+        writeToDisk(evicted);
+        return bucket;
+    }
+
+    /** @param key Bucket key
+     *  @param bucket Bucket to cache
+     */
+    public void put(final String key, final Bucket bucket)
+    {
+        final DiskFile file;
+        final List<Map.Entry<String, Bucket>> evicted;
+        synchronized (this)
+        {
+            writing.remove(key);
+            file = disk.remove(key);
+            if (file != null)
+                disk_bytes -= file.size;
+            evicted = putInMemory(key, bucket);
+        }
+        if (file != null)
+            file.file.delete();
+        writeToDisk(evicted);
+    }
+
+    /** Remove all cached samples */
+    public void clear()
+    {
+        final List<DiskFile> files;
+        synchronized (this)
+        {
+            memory.clear();
+            samples = 0;
+            writing.clear();
+            files = new ArrayList<DiskFile>(disk.values());
+            disk.clear();
+            disk_bytes = 0;
+        }
+        for (DiskFile file : files)
+            file.file.delete();
+    }
+
+    /** Remove all cached samples and delete the sub-directory of this cache.
+     *  <p>
+     *  The cache may still be used, but only holds samples in memory.
+     */
+    public void close()
+    {
+        synchronized (this)
+        {
+            closed = true;
+        }
+        clear();
+        if (directory == null)
+            return;
+        // Remove files that were still being written
+        final File[] files = directory.listFiles();
+        if (files != null)
+            for (File file : files)
+                if (file.getName().startsWith(FILE_PREFIX)  &&  file.getName().endsWith(FILE_SUFFIX))
+                    file.delete();
+        if (! directory.delete())
+            Logger.getLogger(getClass().getName()).log(Level.WARNING, "Cannot delete " + directory);
+    }
+
+    /** @return Number of samples in memory */
+    public synchronized int getMemorySamples()
+    {
+        return samples;
+    }
+
+    /** @return Size of buckets on disk in bytes */
+    public synchronized long getDiskBytes()
+    {
+        return disk_bytes;
+    }
+
+    /** @return Number of buckets found in memory */
+    public synchronized long getHits()
+    {
+        return hits;
+    }
+
+    /** @return Number of buckets found on disk */
+    public synchronized long getDiskHits()
+    {
+        return disk_hits;
+    }
+
+    /** @return Number of buckets that were not cached */
+    public synchronized long getMisses()
+    {
+        return misses;
+    }
+
+    /** Add bucket to memory, evicting least recently used buckets.
+     *  Caller must SYNC on this.
+     *  @param key Bucket key
+     *  @param bucket Bucket
+     *  @return Evicted buckets to write to disk, or <code>null</code>
+     */
+    private List<Map.Entry<String, Bucket>> putInMemory(final String key, final Bucket bucket)
+    {
+        final Bucket previous = memory.put(key, bucket);
+        if (previous != null)
+            samples -= previous.size();
+        samples += bucket.size();
+        // Evict least recently used buckets, but keep the one just added
+        List<Map.Entry<String, Bucket>> evicted = null;
+        final Iterator<Map.Entry<String, Bucket>> entries = memory.entrySet().iterator();
+        while (samples > max_samples  &&  memory.size() > 1)
+        {
+            final Map.Entry<String, Bucket> eldest = entries.next();
+            entries.remove();
+            samples -= eldest.getValue().size();
+            if (directory == null  ||  closed)
+                continue;
+            writing.put(eldest.getKey(), eldest.getValue());
+            if (evicted == null)
+                evicted = new ArrayList<Map.Entry<String, Bucket>>();
+            evicted.add(eldest);
+        }
+        return evicted;
+    }
+
+    /** Write evicted buckets to disk.
+     *  Caller must NOT sync on this.
+     *  @param evicted Evicted buckets or <code>null</code>
+     */
+    private void writeToDisk(final List<Map.Entry<String, Bucket>> evicted)
+    {
+        if (evicted == null)
+            return;
+        for (Map.Entry<String, Bucket> entry : evicted)
+            writeToDisk(entry.getKey(), entry.getValue());
+    }
+
+    /** Write evicted bucket to disk.
+     *  Caller must NOT sync on this.
+     *  @param key Bucket key
+     *  @param bucket Bucket
+     */
+    private void writeToDisk(final String key, final Bucket bucket)
+    {
+        // Each bucket is written to a new, unique file
+        File file = null;
+        try
+        {
+            file = File.createTempFile(FILE_PREFIX, FILE_SUFFIX, directory);
+            SampleFile.write(file, key, bucket);
+        }
+        catch (Exception ex)
+        {
+            Logger.getLogger(getClass().getName()).log(Level.WARNING, "Cannot write " + key + " to " + file, ex);
+            if (file != null)
+                file.delete();
+            synchronized (this)
+            {
+                if (writing.get(key) == bucket)
+                    writing.remove(key);
+            }
+            return;
+        }
+        final long size = file.length();
+        final List<File> obsolete = new ArrayList<File>();
+        synchronized (this)
+        {
+            // Bucket was meanwhile fetched, replaced or cleared?
+            if (writing.get(key) != bucket)
+                obsolete.add(file);
+            else
+            {
+                writing.remove(key);
+                final DiskFile previous = disk.put(key, new DiskFile(file, size));
+                if (previous != null)
+                {
+                    disk_bytes -= previous.size;
+                    obsolete.add(previous.file);
+                }
+                disk_bytes += size;
+                // Remove least recently used files
+                final Iterator<DiskFile> files = disk.values().iterator();
+                while (disk_bytes > max_disk_bytes  &&  files.hasNext())
+                {
+                    final DiskFile eldest = files.next();
+                    files.remove();
+                    disk_bytes -= eldest.size;
+                    obsolete.add(eldest.file);
+                }
+            }
+        }
+        for (File old : obsolete)
+            old.delete();
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return String.format("Archive cache: %d buckets with %d samples in memory, %d buckets with %d bytes on disk, %d hits, %d disk hits, %d misses",
+                             memory.size(), samples, disk.size(), disk_bytes, hits, disk_hits, misses);
+    }
+}
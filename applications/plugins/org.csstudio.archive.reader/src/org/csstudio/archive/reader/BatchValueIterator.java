@@ -0,0 +1,35 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.archive.reader;
+
+import java.util.List;
+
+import org.epics.vtype.VType;
+
+/** {@link ValueIterator} that can return several samples at once
+ *  <p>
+ *  Optional interface for iterators that obtain samples in batches
+ *  and can hand them out more efficiently than one by one.
+ *  Callers should use {@link ValueIteratorHelper#nextBatch(ValueIterator, int)},
+ *  which handles both this and the plain {@link ValueIterator}.
+ *
+ *  @author Kay Kasemir
+ */
+public interface BatchValueIterator extends ValueIterator
+{
+    /** Returns the next elements in the iteration.
+     *  <p>
+     *  May be mixed with calls to <code>next()</code>.
+     *
+     *  @param max Maximum number of samples to return
+     *  @return Up to <code>max</code> samples,
+     *          empty list when there are no more samples
+     *  @exception on Error in archive access
+     */
+    public List<VType> nextBatch(int max) throws Exception;
+}
@@ -0,0 +1,332 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.archive.reader;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.csstudio.archive.vtype.VTypeHelper;
+import org.epics.util.time.Timestamp;
+import org.epics.vtype.VType;
+
+/** {@link ArchiveReader} that caches the samples of another reader
+ *  <p>
+ *  Requests are split into time buckets that are aligned
+ *  to multiples of the bucket duration.
+ *  Buckets found in the {@link ArchiveCache} are used as is,
+ *  only the missing buckets are requested from the underlying reader,
+ *  one request for each range of adjacent missing buckets.
+ *  When panning, only the newly exposed buckets thus
+ *  need to be fetched.
+ *  <p>
+ *  Raw samples use buckets of a fixed duration.
+ *  For optimized requests, the time per bin is rounded down to
+ *  a power of two seconds, and each bucket holds {@link #BINS_PER_BUCKET} bins.
+ *  Requests with similar zoom levels thus share the same buckets.
+ *  <p>
+ *  Buckets that end close to the current time are not cached,
+ *  since the archive might not have all their samples, yet.
+ *
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class CachingArchiveReader implements ArchiveReader
+{
+    /** Number of optimized samples per bucket */
+    final public static int BINS_PER_BUCKET = 64;
+
+    /** Requests that span more buckets are passed to the underlying reader */
+    final private static int MAX_BUCKETS = 10000;
+
+    /** Reader that provides the samples */
+    final private ArchiveReader reader;
+
+    /** Cache for the samples */
+    final private ArchiveCache cache;
+
+    /** Duration of buckets for raw samples in seconds */
+    final private long raw_bucket_secs;
+
+    /** Initialize
+     *  @param reader Reader that provides the samples
+     *  @param cache Cache to use, typically shared by many readers
+     *  @param raw_bucket_secs Duration of buckets for raw samples in seconds
+     */
+    public CachingArchiveReader(final ArchiveReader reader, final ArchiveCache cache,
+                                final long raw_bucket_secs)
+    {
+        this.reader = reader;
+        this.cache = cache;
+        this.raw_bucket_secs = Math.max(1, raw_bucket_secs);
+    }
+
+    /** Initialize with 1 hour raw buckets
+     *  @param reader Reader that provides the samples
+     *  @param cache Cache to use, typically shared by many readers
+     */
+    public CachingArchiveReader(final ArchiveReader reader, final ArchiveCache cache)
+    {
+        this(reader, cache, 60*60);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String getServerName()
+    {
+        return reader.getServerName();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String getURL()
+    {
+        return reader.getURL();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String getDescription()
+    {
+        return reader.getDescription();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getVersion()
+    {
+        return reader.getVersion();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public ArchiveInfo[] getArchiveInfos()
+    {
+        return reader.getArchiveInfos();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String[] getNamesByPattern(final int key, final String glob_pattern) throws Exception
+    {
+        return reader.getNamesByPattern(key, glob_pattern);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String[] getNamesByRegExp(final int key, final String reg_exp) throws Exception
+    {
+        return reader.getNamesByRegExp(key, reg_exp);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public ValueIterator getRawValues(final int key, final String name,
+            final Timestamp start, final Timestamp end) throws UnknownChannelException, Exception
+    {
+        final List<VType> values = getValues(key, name, start, end, raw_bucket_secs, 0);
+        if (values == null)
+            return reader.getRawValues(key, name, start, end);
+        return new ListValueIterator(values);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public ValueIterator getOptimizedValues(final int key, final String name,
+            final Timestamp start, final Timestamp end, final int count) throws UnknownChannelException, Exception
+    {
+        final long span = end.getSec() - start.getSec();
+        if (count <= 0  ||  span <= 0)
+            return reader.getOptimizedValues(key, name, start, end, count);
+        // Round seconds per bin down to power of 2
+        final long bin_secs = Long.highestOneBit(Math.max(1, span / count));
+        final List<VType> values = getValues(key, name, start, end, bin_secs * BINS_PER_BUCKET, BINS_PER_BUCKET);
+        if (values == null)
+            return reader.getOptimizedValues(key, name, start, end, count);
+        return new ListValueIterator(values);
+    }
+
+    /** @param time Time stamp
+     *  @param bucket_secs Bucket duration
+     *  @return Index of bucket for that time stamp
+     */
+    private static long getBucket(final Timestamp time, final long bucket_secs)
+    {
+        final long sec = time.getSec();
+        // Round towards negative infinity, Java 6 has no Math.floorDiv
+        final long index = sec / bucket_secs;
+        return (sec < 0  &&  index * bucket_secs != sec) ? index - 1 : index;
+    }
+
+    /** Get samples, using cached buckets where possible
+     *  @param key Archive key
+     *  @param name Channel name
+     *  @param start Start time
+     *  @param end End time
+     *  @param bucket_secs Bucket duration in seconds
+     *  @param bins Number of optimized samples per bucket, 0 for raw samples
+     *  @return Samples or <code>null</code> when request is too large for the cache
+     *  @throws Exception on error
+     */
+    private List<VType> getValues(final int key, final String name,
+            final Timestamp start, final Timestamp end,
+            final long bucket_secs, final int bins) throws Exception
+    {
+        final long first = getBucket(start, bucket_secs);
+        final long last = getBucket(end, bucket_secs);
+        final int N = (int) Math.min(MAX_BUCKETS+1, last - first + 1);
+        if (N > MAX_BUCKETS)
+            return null;
+
+        // Locate cached buckets
+        final String prefix = reader.getURL() + "|" + key + "|" + name + "|" + (bins > 0 ? "opt" + bins : "raw") + "|" + bucket_secs + "|";
+        final long settled = (Timestamp.now().getSec() - cache.getSettleSeconds()) / bucket_secs;
+        final ArchiveCache.Bucket[] buckets = new ArchiveCache.Bucket[N];
+        for (int i=0; i<N; ++i)
+            if (first + i < settled)
+                buckets[i] = cache.get(prefix + (first + i));
+
+        // Fetch each range of missing buckets
+        int i = 0;
+        while (i < N)
+        {
+            if (buckets[i] != null)
+            {
+                ++i;
+                continue;
+            }
+            int j = i;
+            while (j+1 < N  &&  buckets[j+1] == null)
+                ++j;
+            fetch(key, name, first + i, first + j, bucket_secs, bins, buckets, i);
+            for (int b=i; b<=j; ++b)
+                if (first + b < settled)
+                    cache.put(prefix + (first + b), buckets[b]);
+            i = j+1;
+        }
+
+        // Assemble samples from start to end
+        final List<VType> result = new ArrayList<VType>();
+        VType initial = buckets[0].getInitial();
+        for (ArchiveCache.Bucket bucket : buckets)
+            for (VType value : bucket.getSamples())
+            {
+                final Timestamp time = VTypeHelper.getTimestamp(value);
+                if (time.compareTo(start) < 0)
+                    initial = value;
+                else if (time.compareTo(end) <= 0)
+                    result.add(value);
+            }
+        // Like the underlying reader, raw data starts with the sample before 'start'
+        if (bins == 0  &&  initial != null)
+            result.add(0, initial);
+        return result;
+    }
+
+    /** Fetch samples for a range of buckets from the underlying reader
+     *  @param key Archive key
+     *  @param name Channel name
+     *  @param from First bucket index
+     *  @param to Last bucket index
+     *  @param bucket_secs Bucket duration in seconds
+     *  @param bins Number of optimized samples per bucket, 0 for raw samples
+     *  @param buckets Array where fetched buckets are placed
+     *  @param offset Position in <code>buckets</code> for the first fetched bucket
+     *  @throws Exception on error
+     */
+    private void fetch(final int key, final String name, final long from, final long to,
+            final long bucket_secs, final int bins,
+            final ArchiveCache.Bucket[] buckets, final int offset) throws Exception
+    {
+        final int N = (int) (to - from + 1);
+        final Timestamp start = Timestamp.of(from * bucket_secs, 0);
+        // End of last bucket, excluding the start of the following bucket
+        final Timestamp end = Timestamp.of((to + 1) * bucket_secs - 1, 999999999);
+        final ValueIterator values = bins > 0
+            ? reader.getOptimizedValues(key, name, start, end, N * bins)
+            : reader.getRawValues(key, name, start, end);
+        // Sort samples into buckets
+        final List<List<VType>> samples = new ArrayList<List<VType>>(N);
+        for (int i=0; i<N; ++i)
+            samples.add(new ArrayList<VType>());
+        VType initial = null;
+        try
+        {
+            while (values.hasNext())
+            {
+                final VType value = values.next();
+                final long bucket = getBucket(VTypeHelper.getTimestamp(value), bucket_secs);
+                if (bucket < from)
+                    initial = value;
+                else if (bucket <= to)
+                    samples.get((int) (bucket - from)).add(value);
+            }
+        }
+        finally
+        {
+            values.close();
+        }
+        // Each bucket's initial sample is the last sample of the previous bucket
+        for (int i=0; i<N; ++i)
+        {
+            final List<VType> bucket_samples = samples.get(i);
+            buckets[offset + i] = new ArchiveCache.Bucket(initial, bucket_samples);
+            if (! bucket_samples.isEmpty())
+                initial = bucket_samples.get(bucket_samples.size() - 1);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void cancel()
+    {
+        reader.cancel();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void close()
+    {
+        reader.close();
+    }
+
+    /** Iterator over a list of samples */
+    private static class ListValueIterator implements ValueIterator
+    {
+        final private List<VType> values;
+        private int index = 0;
+
+        ListValueIterator(final List<VType> values)
+        {
+            this.values = values;
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return index < values.size();
+        }
+
+        @Override
+        public VType next() throws Exception
+        {
+            return values.get(index++);
+        }
+
+        @Override
+        public void close()
+        {
+            // NOP
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return "Caching " + reader;
+    }
+}
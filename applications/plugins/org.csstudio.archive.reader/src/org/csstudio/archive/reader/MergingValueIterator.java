@@ -9,9 +9,11 @@ package org.csstudio.archive.reader;
 
 import org.csstudio.archive.vtype.VTypeHelper;
 import org.epics.vtype.VType;
-import org.epics.util.time.Timestamp;
 
 /** Merge values from several <code>ValueIterator</code> based on time stamps
+ *  <p>
+ *  The base iterators are kept in a heap ordered by the time stamp
+ *  of their current sample, so each value is O(log N) for N iterators.
  *  @author Kay Kasemir
  */
 public class MergingValueIterator implements ValueIterator
@@ -22,6 +24,9 @@ public class MergingValueIterator implements ValueIterator
     /** The 'current' values of each <code>iter</code>. */
     private VType raw_data[];
 
+    /** Iterators that have data, ordered by time stamp of <code>raw_data</code> */
+    final private TimestampHeap heap;
+
     private VType value;
 
     /** Constructor.
@@ -34,8 +39,13 @@ public class MergingValueIterator implements ValueIterator
 
         // Get first sample from each base iterator
         raw_data = new VType[iters.length];
+        heap = new TimestampHeap(iters.length);
         for (int i=0; i<iters.length; ++i)
-            raw_data[i] = iters[i].hasNext() ? iters[i].next() :  null;
+            if (iters[i].hasNext())
+            {
+                raw_data[i] = iters[i].next();
+                heap.add(i, VTypeHelper.getTimestamp(raw_data[i]));
+            }
         fetchNext();
     }
 
@@ -44,28 +54,25 @@ public class MergingValueIterator implements ValueIterator
      */
     private void fetchNext() throws Exception
     {
-        // Find oldest time stamp
-        Timestamp time = null;
-        int index = -1;
-        for (int i=0; i<raw_data.length; ++i)
-        {
-            if (raw_data[i] == null)
-                continue;
-            final Timestamp sample_time = VTypeHelper.getTimestamp(raw_data[i]);
-            if (time == null  ||  sample_time.compareTo(time) < 0)
-            {
-                time = sample_time;
-                index = i;
-            }
-        }
-        if (time == null)
+        if (heap.isEmpty())
         {   // No channel left with any data.
             raw_data = null;
             value = null;
             return;
         }
+        // Use oldest sample, and advance that iterator
+        final int index = heap.peek();
         value = raw_data[index];
-        raw_data[index] = iters[index].hasNext() ? iters[index].next() :  null;
+        if (iters[index].hasNext())
+        {
+            raw_data[index] = iters[index].next();
+            heap.replaceTop(VTypeHelper.getTimestamp(raw_data[index]));
+        }
+        else
+        {
+            raw_data[index] = null;
+            heap.poll();
+        }
     }
 
     /** {@inheritDoc} */
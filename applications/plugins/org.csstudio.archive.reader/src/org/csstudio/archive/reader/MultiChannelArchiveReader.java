@@ -0,0 +1,42 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.archive.reader;
+
+import org.epics.util.time.Timestamp;
+
+/** {@link ArchiveReader} that can read samples of several channels at once
+ *  <p>
+ *  Optional interface for readers where one request for many channels
+ *  is cheaper than one request per channel, for example because a
+ *  single database query can fetch the samples of all channels.
+ *  Callers should use {@link MultiChannelReaderAdapter#adapt(ArchiveReader)},
+ *  which handles both this and the plain {@link ArchiveReader}.
+ *
+ *  @author Kay Kasemir
+ */
+public interface MultiChannelArchiveReader extends ArchiveReader
+{
+    /** Read original, raw samples of several channels from the archive
+     *  <p>
+     *  The iterators may share resources of the reader.
+     *  Each iterator must be closed, and
+     *  implementations may require that all of them are closed
+     *  before the samples of other channels are requested.
+     *
+     *  @param key Key of the archive to use for retrieval.
+     *  @param names Channel names
+     *  @param start Start time
+     *  @param end End time
+     *  @return ValueIterator for the 'raw' samples of each channel,
+     *          in the order of the <code>names</code>
+     *  @throws UnknownChannelException when a channel is not known
+     *  @throws Exception on error
+     */
+    public ValueIterator[] getRawValues(int key, String[] names,
+            Timestamp start, Timestamp end) throws UnknownChannelException, Exception;
+}
@@ -0,0 +1,142 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.archive.reader;
+
+import org.epics.util.time.Timestamp;
+
+/** {@link MultiChannelArchiveReader} for any {@link ArchiveReader}
+ *  <p>
+ *  Reads the samples of several channels
+ *  by calling the underlying reader for each channel.
+ *
+ *  @author Kay Kasemir
+ */
+public class MultiChannelReaderAdapter implements MultiChannelArchiveReader
+{
+    /** Reader that provides the samples */
+    final private ArchiveReader reader;
+
+    /** @param reader Any {@link ArchiveReader}
+     *  @return {@link MultiChannelArchiveReader}, either the reader itself
+     *          or an adapter
+     */
+    public static MultiChannelArchiveReader adapt(final ArchiveReader reader)
+    {
+        if (reader instanceof MultiChannelArchiveReader)
+            return (MultiChannelArchiveReader) reader;
+        return new MultiChannelReaderAdapter(reader);
+    }
+
+    /** Initialize
+     *  @param reader Reader that provides the samples
+     */
+    public MultiChannelReaderAdapter(final ArchiveReader reader)
+    {
+        this.reader = reader;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String getServerName()
+    {
+        return reader.getServerName();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String getURL()
+    {
+        return reader.getURL();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String getDescription()
+    {
+        return reader.getDescription();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getVersion()
+    {
+        return reader.getVersion();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public ArchiveInfo[] getArchiveInfos()
+    {
+        return reader.getArchiveInfos();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String[] getNamesByPattern(final int key, final String glob_pattern) throws Exception
+    {
+        return reader.getNamesByPattern(key, glob_pattern);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String[] getNamesByRegExp(final int key, final String reg_exp) throws Exception
+    {
+        return reader.getNamesByRegExp(key, reg_exp);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public ValueIterator getRawValues(final int key, final String name,
+            final Timestamp start, final Timestamp end) throws UnknownChannelException, Exception
+    {
+        return reader.getRawValues(key, name, start, end);
+    }
+
+    /** Read samples of each channel from the underlying reader
+     *  {@inheritDoc}
+     */
+    @Override
+    public ValueIterator[] getRawValues(final int key, final String[] names,
+            final Timestamp start, final Timestamp end) throws UnknownChannelException, Exception
+    {
+        final ValueIterator[] iters = new ValueIterator[names.length];
+        try
+        {
+            for (int i=0; i<names.length; ++i)
+                iters[i] = reader.getRawValues(key, names[i], start, end);
+        }
+        catch (Exception ex)
+        {
+            ValueIteratorHelper.close(iters);
+            throw ex;
+        }
+        return iters;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public ValueIterator getOptimizedValues(final int key, final String name,
+            final Timestamp start, final Timestamp end, final int count) throws UnknownChannelException, Exception
+    {
+        return reader.getOptimizedValues(key, name, start, end, count);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void cancel()
+    {
+        reader.cancel();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void close()
+    {
+        reader.close();
+    }
+}
@@ -0,0 +1,257 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.archive.reader;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.epics.vtype.VType;
+
+/** {@link ValueIterator} that reads ahead in the background
+ *  <p>
+ *  Reads batches of samples from a base iterator on a thread of
+ *  the executor while the caller processes the previously read samples,
+ *  so the latency and decoding of the base iterator overlap with
+ *  the caller's work.
+ *  <p>
+ *  At most <code>batches</code> batches are read ahead.
+ *  No thread is used while that limit is reached, a read
+ *  is only scheduled once the caller consumed a batch.
+ *  The base iterator is only accessed by one thread at a time.
+ *  <p>
+ *  Errors of the base iterator are reported by <code>next()</code>
+ *  after all samples read before the error have been returned.
+ *  <p>
+ *  To stop a base iterator that is blocked in a read,
+ *  cancel the {@link ArchiveReader}.
+ *  <code>close()</code> waits for an ongoing read to end,
+ *  then closes the base iterator.
+ *
+ *  @author Kay Kasemir
+ */
+public class ReadAheadValueIterator implements BatchValueIterator
+{
+    final private ValueIterator iter;
+    final private int batch_size;
+    final private int batches;
+    final private Executor executor;
+
+    /** Batches that have been read ahead. Guarded by 'this' */
+    final private LinkedList<List<VType>> queue = new LinkedList<List<VType>>();
+
+    /** Is a read scheduled or running? Guarded by 'this' */
+    private boolean reading = false;
+
+    /** Has base iterator reached its end? Guarded by 'this' */
+    private boolean end = false;
+
+    /** Has iterator been closed? Guarded by 'this' */
+    private boolean closed = false;
+
+    /** Error of base iterator. Guarded by 'this' */
+    private Exception error = null;
+
+    /** Batch that's being consumed, only accessed by the caller */
+    private List<VType> batch = Collections.emptyList();
+
+    /** Index of next sample in <code>batch</code> */
+    private int index = 0;
+
+    final private Runnable read_task = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            readBatch();
+        }
+    };
+
+    /** Initialize, start to read
+     *  @param iter Base iterator
+     *  @param batch_size Number of samples to read at once
+     *  @param batches Number of batches to read ahead
+     *  @param executor Executor for reading the base iterator
+     */
+    public ReadAheadValueIterator(final ValueIterator iter, final int batch_size,
+                                  final int batches, final Executor executor)
+    {
+        if (batch_size <= 0  ||  batches <= 0)
+            throw new IllegalArgumentException("Batch size and count must be positive"); //$NON-NLS-1$
+        this.iter = iter;
+        this.batch_size = batch_size;
+        this.batches = batches;
+        this.executor = executor;
+        synchronized (this)
+        {
+            scheduleRead();
+        }
+    }
+
+    /** Schedule reading another batch unless already reading or enough has been read.
+     *  Caller must synchronize on 'this'.
+     */
+    private void scheduleRead()
+    {
+        if (reading  ||  end  ||  closed  ||  queue.size() >= batches)
+            return;
+        reading = true;
+        try
+        {
+            executor.execute(read_task);
+        }
+        catch (RejectedExecutionException ex)
+        {
+            reading = false;
+            error = ex;
+            end = true;
+            notifyAll();
+        }
+    }
+
+    /** Read one batch from the base iterator */
+    private void readBatch()
+    {
+        List<VType> samples = Collections.emptyList();
+        Exception failure = null;
+        try
+        {
+            if (iter instanceof BatchValueIterator)
+                samples = ((BatchValueIterator) iter).nextBatch(batch_size);
+            else
+            {   // Keep samples read before an error
+                samples = new ArrayList<VType>(batch_size);
+                while (samples.size() < batch_size  &&  iter.hasNext())
+                    samples.add(iter.next());
+            }
+        }
+        catch (Exception ex)
+        {
+            failure = ex;
+        }
+        synchronized (this)
+        {
+            reading = false;
+            if (! samples.isEmpty()  &&  !closed)
+                queue.add(samples);
+            if (failure != null)
+            {
+                error = failure;
+                end = true;
+            }
+            else if (samples.isEmpty())
+                end = true;
+            notifyAll();
+            scheduleRead();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean hasNext()
+    {
+        if (index < batch.size())
+            return true;
+        synchronized (this)
+        {
+            while (queue.isEmpty()  &&  !end  &&  !closed)
+            {
+                try
+                {
+                    wait();
+                }
+                catch (InterruptedException ex)
+                {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            if (! queue.isEmpty())
+            {
+                batch = queue.removeFirst();
+                index = 0;
+                scheduleRead();
+                return true;
+            }
+            // At end. Pending error is reported by next()
+            return error != null  &&  !closed;
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public VType next() throws Exception
+    {
+        if (hasNext()  &&  index < batch.size())
+            return batch.get(index++);
+        throw getError();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public List<VType> nextBatch(final int max) throws Exception
+    {
+        if (! hasNext())
+            return Collections.emptyList();
+        if (index >= batch.size())
+            throw getError();
+        final List<VType> result;
+        if (index == 0  &&  batch.size() <= max)
+            result = batch;
+        else
+            result = new ArrayList<VType>(batch.subList(index, Math.min(batch.size(), index + max)));
+        index += result.size();
+        return result;
+    }
+
+    /** @return Error of base iterator, clearing it, or exception for reading past the end */
+    private synchronized Exception getError()
+    {
+        final Exception result = error;
+        error = null;
+        if (result != null)
+            return result;
+        return new IllegalStateException("No more samples"); //$NON-NLS-1$
+    }
+
+    /** Wait for an ongoing read to end, then close the base iterator
+     *  {@inheritDoc}
+     */
+    @Override
+    public void close()
+    {
+        boolean interrupted = false;
+        synchronized (this)
+        {
+            if (closed)
+                return;
+            closed = true;
+            queue.clear();
+            error = null;
+            notifyAll();
+            while (reading)
+            {
+                try
+                {
+                    wait();
+                }
+                catch (InterruptedException ex)
+                {
+                    interrupted = true;
+                }
+            }
+        }
+        batch = Collections.emptyList();
+        iter.close();
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+}
@@ -0,0 +1,477 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.archive.reader;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.csstudio.archive.vtype.ArchiveVEnum;
+import org.csstudio.archive.vtype.ArchiveVNumber;
+import org.csstudio.archive.vtype.ArchiveVNumberArray;
+import org.csstudio.archive.vtype.ArchiveVStatistics;
+import org.csstudio.archive.vtype.ArchiveVString;
+import org.csstudio.archive.vtype.VTypeHelper;
+import org.epics.util.array.ArrayByte;
+import org.epics.util.array.ArrayDouble;
+import org.epics.util.array.ArrayFloat;
+import org.epics.util.array.ArrayInt;
+import org.epics.util.array.ArrayLong;
+import org.epics.util.array.ArrayShort;
+import org.epics.util.array.ListByte;
+import org.epics.util.array.ListDouble;
+import org.epics.util.array.ListFloat;
+import org.epics.util.array.ListInt;
+import org.epics.util.array.ListLong;
+import org.epics.util.array.ListNumber;
+import org.epics.util.array.ListShort;
+import org.epics.util.text.NumberFormats;
+import org.epics.util.time.Timestamp;
+import org.epics.vtype.AlarmSeverity;
+import org.epics.vtype.Display;
+import org.epics.vtype.VEnum;
+import org.epics.vtype.VNumber;
+import org.epics.vtype.VNumberArray;
+import org.epics.vtype.VStatistics;
+import org.epics.vtype.VString;
+import org.epics.vtype.VType;
+import org.epics.vtype.ValueFactory;
+
+/** File with the samples of one {@link ArchiveCache} bucket
+ *  <p>
+ *  Holds the value types returned by the archive readers,
+ *  i.e. the {@link ArchiveVNumber}, {@link ArchiveVNumberArray},
+ *  {@link ArchiveVStatistics}, {@link ArchiveVEnum} and {@link ArchiveVString}
+ *  or other implementations of their interfaces,
+ *  keeping the data type of numbers and arrays.
+ *  Other value types cannot be written,
+ *  so such a bucket is not kept on disk.
+ *
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+class SampleFile
+{
+    /** Marker at start of file, includes format version */
+    final private static int MAGIC = 0x41435332; // "ACS2"
+
+    final private static byte TYPE_NONE = 0;
+    final private static byte TYPE_STRING = 1;
+    final private static byte TYPE_NUMBER = 2;
+    final private static byte TYPE_ENUM = 4;
+    final private static byte TYPE_ARRAY = 5;
+    final private static byte TYPE_STATISTICS = 6;
+
+    // Data type of numbers and array elements
+    final private static byte DATA_DOUBLE = 1;
+    final private static byte DATA_FLOAT = 2;
+    final private static byte DATA_LONG = 3;
+    final private static byte DATA_INT = 4;
+    final private static byte DATA_SHORT = 5;
+    final private static byte DATA_BYTE = 6;
+
+    final private static AlarmSeverity[] severities = AlarmSeverity.values();
+
+    /** Write bucket to file
+     *  @param file File
+     *  @param key Cache key of the bucket
+     *  @param bucket Bucket
+     *  @throws IOException on error, including samples of a type that cannot be written
+     */
+    static void write(final File file, final String key, final ArchiveCache.Bucket bucket) throws IOException
+    {
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try
+        {
+            out.writeInt(MAGIC);
+            writeString(out, key);
+            writeSample(out, bucket.getInitial());
+            final List<VType> samples = bucket.getSamples();
+            out.writeInt(samples.size());
+            for (VType sample : samples)
+                writeSample(out, sample);
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    /** Read bucket from file
+     *  @param file File
+     *  @param key Expected cache key
+     *  @return Bucket or <code>null</code> when file holds a different key
+     *  @throws IOException on error
+     */
+    static ArchiveCache.Bucket read(final File file, final String key) throws IOException
+    {
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try
+        {
+            if (in.readInt() != MAGIC  ||  !key.equals(readString(in)))
+                return null;
+            final VType initial = readSample(in);
+            final int count = in.readInt();
+            final List<VType> samples = new ArrayList<VType>(count);
+            for (int i=0; i<count; ++i)
+                samples.add(readSample(in));
+            return new ArchiveCache.Bucket(initial, samples);
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    private static void writeSample(final DataOutputStream out, final VType value) throws IOException
+    {
+        if (value == null)
+        {
+            out.writeByte(TYPE_NONE);
+            return;
+        }
+        if (value instanceof VStatistics)
+        {
+            final VStatistics stats = (VStatistics) value;
+            writeHeader(out, TYPE_STATISTICS, value);
+            out.writeDouble(stats.getAverage());
+            out.writeDouble(stats.getMin());
+            out.writeDouble(stats.getMax());
+            out.writeDouble(stats.getStdDev());
+            out.writeInt(stats.getNSamples());
+            writeDisplay(out, (Display) value);
+        }
+        else if (value instanceof VNumber)
+        {
+            final Number number = ((VNumber) value).getValue();
+            writeHeader(out, TYPE_NUMBER, value);
+            if (number instanceof Double)
+            {
+                out.writeByte(DATA_DOUBLE);
+                out.writeDouble(number.doubleValue());
+            }
+            else if (number instanceof Float)
+            {
+                out.writeByte(DATA_FLOAT);
+                out.writeFloat(number.floatValue());
+            }
+            else if (number instanceof Long)
+            {
+                out.writeByte(DATA_LONG);
+                out.writeLong(number.longValue());
+            }
+            else if (number instanceof Integer)
+            {
+                out.writeByte(DATA_INT);
+                out.writeInt(number.intValue());
+            }
+            else if (number instanceof Short)
+            {
+                out.writeByte(DATA_SHORT);
+                out.writeShort(number.shortValue());
+            }
+            else if (number instanceof Byte)
+            {
+                out.writeByte(DATA_BYTE);
+                out.writeByte(number.byteValue());
+            }
+            else
+                throw new IOException("Cannot write " + number.getClass().getName() + " value");
+            writeDisplay(out, (Display) value);
+        }
+        else if (value instanceof VNumberArray)
+        {
+            writeHeader(out, TYPE_ARRAY, value);
+            writeArray(out, ((VNumberArray) value).getData());
+            writeDisplay(out, (Display) value);
+        }
+        else if (value instanceof VEnum)
+        {
+            writeHeader(out, TYPE_ENUM, value);
+            final VEnum enumerated = (VEnum) value;
+            out.writeInt(enumerated.getIndex());
+            final List<String> labels = enumerated.getLabels();
+            out.writeInt(labels.size());
+            for (String label : labels)
+                writeString(out, label);
+        }
+        else if (value instanceof VString)
+        {
+            writeHeader(out, TYPE_STRING, value);
+            writeString(out, ((VString) value).getValue());
+        }
+        else
+            throw new IOException("Cannot write " + value.getClass().getName());
+    }
+
+    private static void writeArray(final DataOutputStream out, final ListNumber data) throws IOException
+    {
+        final int N = data.size();
+        if (data instanceof ListDouble)
+        {
+            out.writeByte(DATA_DOUBLE);
+            out.writeInt(N);
+            for (int i=0; i<N; ++i)
+                out.writeDouble(data.getDouble(i));
+        }
+        else if (data instanceof ListFloat)
+        {
+            out.writeByte(DATA_FLOAT);
+            out.writeInt(N);
+            for (int i=0; i<N; ++i)
+                out.writeFloat(data.getFloat(i));
+        }
+        else if (data instanceof ListLong)
+        {
+            out.writeByte(DATA_LONG);
+            out.writeInt(N);
+            for (int i=0; i<N; ++i)
+                out.writeLong(data.getLong(i));
+        }
+        else if (data instanceof ListInt)
+        {
+            out.writeByte(DATA_INT);
+            out.writeInt(N);
+            for (int i=0; i<N; ++i)
+                out.writeInt(data.getInt(i));
+        }
+        else if (data instanceof ListShort)
+        {
+            out.writeByte(DATA_SHORT);
+            out.writeInt(N);
+            for (int i=0; i<N; ++i)
+                out.writeShort(data.getShort(i));
+        }
+        else if (data instanceof ListByte)
+        {
+            out.writeByte(DATA_BYTE);
+            out.writeInt(N);
+            for (int i=0; i<N; ++i)
+                out.writeByte(data.getByte(i));
+        }
+        else
+            throw new IOException("Cannot write " + data.getClass().getName() + " array");
+    }
+
+    private static void writeHeader(final DataOutputStream out, final byte type, final VType value) throws IOException
+    {
+        final Timestamp time = VTypeHelper.getTimestamp(value);
+        out.writeByte(type);
+        out.writeLong(time.getSec());
+        out.writeInt(time.getNanoSec());
+        out.writeByte(VTypeHelper.getSeverity(value).ordinal());
+        writeString(out, VTypeHelper.getMessage(value));
+    }
+
+    private static void writeDisplay(final DataOutputStream out, final Display display) throws IOException
+    {
+        writeDouble(out, display.getLowerDisplayLimit());
+        writeDouble(out, display.getLowerAlarmLimit());
+        writeDouble(out, display.getLowerWarningLimit());
+        writeString(out, display.getUnits());
+        final NumberFormat format = display.getFormat();
+        out.writeInt(format == null ? -1 : format.getMaximumFractionDigits());
+        writeDouble(out, display.getUpperWarningLimit());
+        writeDouble(out, display.getUpperAlarmLimit());
+        writeDouble(out, display.getUpperDisplayLimit());
+        writeDouble(out, display.getLowerCtrlLimit());
+        writeDouble(out, display.getUpperCtrlLimit());
+    }
+
+    /** @param out Where to write
+     *  @param value Value or <code>null</code>
+     */
+    private static void writeDouble(final DataOutputStream out, final Double value) throws IOException
+    {
+        out.writeBoolean(value != null);
+        if (value != null)
+            out.writeDouble(value.doubleValue());
+    }
+
+    /** Write string
+     *  <p>
+     *  Unlike {@link DataOutputStream#writeUTF(String)},
+     *  this handles strings of any length, and <code>null</code>.
+     *  @param out Where to write
+     *  @param text Text or <code>null</code>
+     */
+    private static void writeString(final DataOutputStream out, final String text) throws IOException
+    {
+        if (text == null)
+        {
+            out.writeInt(-1);
+            return;
+        }
+        final byte[] bytes = text.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static VType readSample(final DataInputStream in) throws IOException
+    {
+        final byte type = in.readByte();
+        if (type == TYPE_NONE)
+            return null;
+        final Timestamp time = Timestamp.of(in.readLong(), in.readInt());
+        final AlarmSeverity severity = severities[in.readByte()];
+        final String status = readString(in);
+        switch (type)
+        {
+        case TYPE_STATISTICS:
+        {
+            final double average = in.readDouble();
+            final double min = in.readDouble();
+            final double max = in.readDouble();
+            final double stddev = in.readDouble();
+            final int count = in.readInt();
+            return new ArchiveVStatistics(time, severity, status, readDisplay(in), average, min, max, stddev, count);
+        }
+        case TYPE_NUMBER:
+        {
+            final Number number = readNumber(in);
+            return new ArchiveVNumber(time, severity, status, readDisplay(in), number);
+        }
+        case TYPE_ARRAY:
+        {
+            final ListNumber data = readArray(in);
+            return new ArchiveVNumberArray(time, severity, status, readDisplay(in), data);
+        }
+        case TYPE_ENUM:
+        {
+            final int index = in.readInt();
+            final int N = in.readInt();
+            final List<String> labels = new ArrayList<String>(N);
+            for (int i=0; i<N; ++i)
+                labels.add(readString(in));
+            return new ArchiveVEnum(time, severity, status, labels, index);
+        }
+        case TYPE_STRING:
+            return new ArchiveVString(time, severity, status, readString(in));
+        default:
+            throw new IOException("Unknown sample type " + type);
+        }
+    }
+
+    private static Number readNumber(final DataInputStream in) throws IOException
+    {
+        final byte data_type = in.readByte();
+        switch (data_type)
+        {
+        case DATA_DOUBLE:
+            return Double.valueOf(in.readDouble());
+        case DATA_FLOAT:
+            return Float.valueOf(in.readFloat());
+        case DATA_LONG:
+            return Long.valueOf(in.readLong());
+        case DATA_INT:
+            return Integer.valueOf(in.readInt());
+        case DATA_SHORT:
+            return Short.valueOf(in.readShort());
+        case DATA_BYTE:
+            return Byte.valueOf(in.readByte());
+        default:
+            throw new IOException("Unknown data type " + data_type);
+        }
+    }
+
+    private static ListNumber readArray(final DataInputStream in) throws IOException
+    {
+        final byte data_type = in.readByte();
+        final int N = in.readInt();
+        switch (data_type)
+        {
+        case DATA_DOUBLE:
+        {
+            final double[] data = new double[N];
+            for (int i=0; i<N; ++i)
+                data[i] = in.readDouble();
+            return new ArrayDouble(data);
+        }
+        case DATA_FLOAT:
+        {
+            final float[] data = new float[N];
+            for (int i=0; i<N; ++i)
+                data[i] = in.readFloat();
+            return new ArrayFloat(data);
+        }
+        case DATA_LONG:
+        {
+            final long[] data = new long[N];
+            for (int i=0; i<N; ++i)
+                data[i] = in.readLong();
+            return new ArrayLong(data);
+        }
+        case DATA_INT:
+        {
+            final int[] data = new int[N];
+            for (int i=0; i<N; ++i)
+                data[i] = in.readInt();
+            return new ArrayInt(data);
+        }
+        case DATA_SHORT:
+        {
+            final short[] data = new short[N];
+            for (int i=0; i<N; ++i)
+                data[i] = in.readShort();
+            return new ArrayShort(data);
+        }
+        case DATA_BYTE:
+        {
+            final byte[] data = new byte[N];
+            in.readFully(data);
+            return new ArrayByte(data);
+        }
+        default:
+            throw new IOException("Unknown data type " + data_type);
+        }
+    }
+
+    private static Display readDisplay(final DataInputStream in) throws IOException
+    {
+        final Double lower_display = readDouble(in);
+        final Double lower_alarm = readDouble(in);
+        final Double lower_warning = readDouble(in);
+        final String units = readString(in);
+        final int precision = in.readInt();
+        final NumberFormat format = precision < 0
+            ? null
+            : NumberFormats.format(precision);
+        final Double upper_warning = readDouble(in);
+        final Double upper_alarm = readDouble(in);
+        final Double upper_display = readDouble(in);
+        final Double lower_ctrl = readDouble(in);
+        final Double upper_ctrl = readDouble(in);
+        return ValueFactory.newDisplay(lower_display, lower_alarm, lower_warning, units, format,
+                upper_warning, upper_alarm, upper_display, lower_ctrl, upper_ctrl);
+    }
+
+    private static Double readDouble(final DataInputStream in) throws IOException
+    {
+        if (in.readBoolean())
+            return Double.valueOf(in.readDouble());
+        return null;
+    }
+
+    private static String readString(final DataInputStream in) throws IOException
+    {
+        final int length = in.readInt();
+        if (length < 0)
+            return null;
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+}
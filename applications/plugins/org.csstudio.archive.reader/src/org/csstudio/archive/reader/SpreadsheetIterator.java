@@ -20,6 +20,10 @@ import org.epics.util.time.Timestamp;
  *  While it uses the common Java <code>Iterator</code> idea with
  *  <code>hasNext()/next()</code> for the values, pay attention to
  *  the comments for <code>getTime()</code>!
+ *  <p>
+ *  The base iterators are kept in a heap ordered by the time stamp
+ *  of their next sample, so only the channels that change
+ *  are inspected for each spreadsheet line.
  *
  *  @author Kay Kasemir
  */
@@ -36,6 +40,16 @@ public class SpreadsheetIterator
      */
     private VType raw_data[];
 
+    /** Channels that have more data, ordered by time stamp of <code>raw_data</code> */
+    final private TimestampHeap heap;
+
+    /** Channels that reach <code>time</code> */
+    final private int[] due;
+
+    /** Channels that ran out of data on the current line */
+    final private int[] ended;
+    private int ended_count = 0;
+
     /** The timestamp for the current spreadsheet 'line'. */
     private Timestamp time;
 
@@ -54,9 +68,14 @@ public class SpreadsheetIterator
         // Get first sample from each base iterator
         raw_data = new VType[iters.length];
         values = new VType[iters.length];
+        heap = new TimestampHeap(iters.length);
+        due = new int[iters.length];
+        ended = new int[iters.length];
         for (int i=0; i<iters.length; ++i)
         {
             raw_data[i] = iters[i].hasNext()  ?  iters[i].next()  :  null;
+            if (raw_data[i] != null)
+                heap.add(i, VTypeHelper.getTimestamp(raw_data[i]));
             if (debug)
                 System.out.println("Initial " + i + ": " + VTypeHelper.toString(raw_data[i]));
         }
@@ -126,44 +145,48 @@ public class SpreadsheetIterator
      */
     private void getNextSpreadsheetLine() throws Exception
     {
+        // Channels that ran out of data have no value from now on
+        for (int e=0; e<ended_count; ++e)
+            values[ended[e]] = null;
+        ended_count = 0;
+
         // Find oldest timestamp
-        time = null;
-        for (int i=0; i<raw_data.length; ++i)
-        {
-            if (raw_data[i] == null)
-                continue;
-            final Timestamp sample_time = VTypeHelper.getTimestamp(raw_data[i]);
-            if (time == null  ||  sample_time.compareTo(time) < 0)
-                time = sample_time;
-        }
-        if (time == null)
+        if (heap.isEmpty())
         {   // No channel left with any data.
+            time = null;
             values = null;
             return;
         }
+        time = heap.peekTime();
 
         if (debug)
             System.out.println("Next time stamp: " + time.toString()); //$NON-NLS-1$
 
         // 'time' now defines the current spreadsheet line.
-        for (int i=0; i<raw_data.length; ++i)
+        // Locate channels whose 'raw_data' is at 'time'.
+        // Other channels have raw_data.time > time,
+        // so leave values[i] as is until 'time' catches up
+        // with raw_data.time.
+        // This also covers the initial values[i] == null case.
+        int due_count = 0;
+        while (! heap.isEmpty()  &&  heap.peekTime().compareTo(time) <= 0)
+            due[due_count++] = heap.poll();
+        for (int d=0; d<due_count; ++d)
         {
-            if (raw_data[i] == null)
-            {   // This channel has no more data
-                values[i] = null;
-                continue;
+            final int i = due[d];
+            // 'raw_data' is still valid, so use it ....
+            values[i] = raw_data[i];
+            // and get next sample in preparation for next()
+            if (iters[i].hasNext())
+            {
+                raw_data[i] = iters[i].next();
+                heap.add(i, VTypeHelper.getTimestamp(raw_data[i]));
             }
-            // Channel has data.
-            if (VTypeHelper.getTimestamp(raw_data[i]).compareTo(time) <= 0)
-            {   // 'raw_data' is still valid, so use it ....
-                values[i] = raw_data[i];
-                // and get next sample in preparation for next()
-                raw_data[i] = iters[i].hasNext()  ?  iters[i].next()  :  null;
+            else
+            {   // This channel has no more data
+                raw_data[i] = null;
+                ended[ended_count++] = i;
             }
-            // else: raw_data.time is already > time,
-            // so leave values[i] as is until 'time' catches up
-            // with raw_data.time.
-            // This also covers the initial values[i] == null case.
         }
     }
 
@@ -0,0 +1,135 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.archive.reader;
+
+import org.epics.util.time.Timestamp;
+
+/** Min-heap of iterator indices, ordered by time stamp
+ *  <p>
+ *  Used to merge samples from several iterators:
+ *  Each iterator is represented by its index and the time stamp of
+ *  its current sample. Locating the oldest sample is O(1),
+ *  adding, removing or updating an iterator is O(log N).
+ *  Iterators with the same time stamp are ordered by index.
+ *
+ *  @author Kay Kasemir
+ */
+class TimestampHeap
+{
+    /** Iterator indices, heap[0] is the oldest */
+    final private int[] heap;
+
+    /** Time stamp for each iterator index */
+    final private Timestamp[] times;
+
+    /** Number of iterators in heap */
+    private int size = 0;
+
+    /** @param capacity Number of iterators, indices 0 .. capacity-1 */
+    public TimestampHeap(final int capacity)
+    {
+        heap = new int[capacity];
+        times = new Timestamp[capacity];
+    }
+
+    /** @return <code>true</code> if heap is empty */
+    public boolean isEmpty()
+    {
+        return size <= 0;
+    }
+
+    /** @param index Iterator index, must not already be in heap
+     *  @param time Time stamp of that iterator's current sample
+     */
+    public void add(final int index, final Timestamp time)
+    {
+        times[index] = time;
+        heap[size] = index;
+        siftUp(size++);
+    }
+
+    /** @return Index of iterator with oldest time stamp */
+    public int peek()
+    {
+        return heap[0];
+    }
+
+    /** @return Oldest time stamp */
+    public Timestamp peekTime()
+    {
+        return times[heap[0]];
+    }
+
+    /** Remove iterator with oldest time stamp
+     *  @return Index of that iterator
+     */
+    public int poll()
+    {
+        final int index = heap[0];
+        times[index] = null;
+        heap[0] = heap[--size];
+        if (size > 0)
+            siftDown(0);
+        return index;
+    }
+
+    /** Update time stamp of the oldest iterator,
+     *  which is faster than <code>poll</code> followed by <code>add</code>
+     *  @param time New time stamp for the iterator returned by <code>peek</code>
+     */
+    public void replaceTop(final Timestamp time)
+    {
+        times[heap[0]] = time;
+        siftDown(0);
+    }
+
+    /** @return <code>true</code> if iterator at heap position a is older than the one at b */
+    private boolean isLess(final int a, final int b)
+    {
+        final int cmp = times[heap[a]].compareTo(times[heap[b]]);
+        if (cmp != 0)
+            return cmp < 0;
+        return heap[a] < heap[b];
+    }
+
+    private void siftUp(int pos)
+    {
+        while (pos > 0)
+        {
+            final int parent = (pos - 1) / 2;
+            if (! isLess(pos, parent))
+                break;
+            swap(pos, parent);
+            pos = parent;
+        }
+    }
+
+    private void siftDown(int pos)
+    {
+        while (true)
+        {
+            final int left = 2*pos + 1;
+            if (left >= size)
+                break;
+            int child = left;
+            if (left + 1 < size  &&  isLess(left + 1, left))
+                child = left + 1;
+            if (! isLess(child, pos))
+                break;
+            swap(pos, child);
+            pos = child;
+        }
+    }
+
+    private void swap(final int a, final int b)
+    {
+        final int tmp = heap[a];
+        heap[a] = heap[b];
+        heap[b] = tmp;
+    }
+}
@@ -0,0 +1,46 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.archive.reader;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.epics.vtype.VType;
+
+/** Helper for {@link ValueIterator}
+ *  @author Kay Kasemir
+ */
+public class ValueIteratorHelper
+{
+    /** Get the next batch of samples from any {@link ValueIterator}
+     *  @param iter {@link ValueIterator}, may implement {@link BatchValueIterator}
+     *  @param max Maximum number of samples to return
+     *  @return Up to <code>max</code> samples,
+     *          empty list when there are no more samples
+     *  @throws Exception on error in archive access
+     */
+    public static List<VType> nextBatch(final ValueIterator iter, final int max) throws Exception
+    {
+        if (iter instanceof BatchValueIterator)
+            return ((BatchValueIterator) iter).nextBatch(max);
+        final List<VType> batch = new ArrayList<VType>(max);
+        while (batch.size() < max  &&  iter.hasNext())
+            batch.add(iter.next());
+        return batch;
+    }
+
+    /** Close iterators
+     *  @param iters {@link ValueIterator}s, may contain <code>null</code> entries
+     */
+    public static void close(final ValueIterator[] iters)
+    {
+        for (ValueIterator iter : iters)
+            if (iter != null)
+                iter.close();
+    }
+}
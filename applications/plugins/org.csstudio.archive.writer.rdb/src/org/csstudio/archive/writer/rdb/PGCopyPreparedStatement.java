@@ -1,5 +1,8 @@
 package org.csstudio.archive.writer.rdb;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PushbackReader;
@@ -7,6 +10,7 @@ import java.io.Reader;
 import java.io.StringReader;
 import java.math.BigDecimal;
 import java.net.URL;
+import java.nio.charset.Charset;
 import java.sql.Array;
 import java.sql.Blob;
 import java.sql.Clob;
@@ -24,18 +28,54 @@ import java.sql.SQLWarning;
 import java.sql.SQLXML;
 import java.sql.Time;
 import java.sql.Timestamp;
+import java.sql.Types;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.TimeZone;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.postgresql.PGConnection;
 import org.postgresql.copy.CopyManager;
 
+/**
+ * <p>
+ * {@link PreparedStatement} that batches rows for a PostgreSQL
+ * <code>COPY ... FROM STDIN</code> instead of performing individual
+ * <code>INSERT</code>s.
+ * </p>
+ * <p>
+ * In text mode, each row is formatted as a CSV line. In binary mode, the
+ * parameters are kept as primitives and encoded in the PostgreSQL binary
+ * COPY format when the row is added to the batch, avoiding the text
+ * formatting of numbers, time stamps and byte arrays.
+ * </p>
+ * <p>
+ * See <a href="http://www.postgresql.org/docs/9.2/static/sql-copy.html"
+ * >http://www.postgresql.org/docs/9.2/static/sql-copy.html</a>
+ * </p>
+ */
 public class PGCopyPreparedStatement implements PreparedStatement {
 
+	/** Signature at start of binary COPY data */
+	private static final byte[] BINARY_SIGNATURE = { 'P', 'G', 'C', 'O', 'P',
+			'Y', '\n', (byte) 0xFF, '\r', '\n', 0 };
+
+	/** Seconds from 1970-01-01 to 2000-01-01, the PostgreSQL time stamp epoch */
+	private static final long POSTGRES_EPOCH_SECS = 946684800L;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/** Column types supported in binary mode */
+	private enum ColumnType {
+		INT2, INT4, INT8, FLOAT4, FLOAT8, TIMESTAMP, TIMESTAMPTZ, TEXT, BYTEA
+	}
+
+	/** Kind of value set for a column in binary mode */
+	private static final byte UNSET = 0, NUMBER = 1, DOUBLE = 2, OBJECT = 3;
+
 	private Connection connection;
 
 	private String[] rowValues;
@@ -44,9 +84,75 @@ public class PGCopyPreparedStatement implements PreparedStatement {
 
 	private int[] columnOrderMapping;
 
+	/** Use binary COPY format? */
+	private final boolean binary;
+
+	/** Binary mode: Type of each column in database order */
+	private ColumnType[] columnTypes;
+
+	/** Binary mode: Kind of value set for each column */
+	private byte[] rowKinds;
+
+	/** Binary mode: Integer and time stamp values (microseconds) */
+	private long[] rowNumbers;
+
+	/** Binary mode: Floating point values */
+	private double[] rowDoubles;
+
+	/** Binary mode: String and byte[] values */
+	private Object[] rowObjects;
+
+	/** Binary mode: Encoded rows */
+	private BinaryBatch binaryBatch;
+
+	/** Binary mode: Encoder for the batch */
+	private DataOutputStream binaryOut;
+
+	/** Binary mode: Number of rows in batch */
+	private int binaryRows = 0;
+
+	/** Byte buffer that can be read without copying its content */
+	private static class BinaryBatch extends ByteArrayOutputStream {
+		BinaryBatch() {
+			super(64 * 1024);
+		}
+
+		InputStream toInputStream() {
+			return new ByteArrayInputStream(buf, 0, count);
+		}
+	}
+
+	/**
+	 * Create statement that uses text COPY format
+	 * 
+	 * @param connection
+	 *            PostgreSQL connection
+	 * @param insertSqlQuery
+	 *            "INSERT INTO table (columns...) VALUES (?, ...)"
+	 * @throws SQLException
+	 */
 	public PGCopyPreparedStatement(Connection connection, String insertSqlQuery)
 			throws SQLException {
+		this(connection, insertSqlQuery, false);
+	}
+
+	/**
+	 * Create statement
+	 * 
+	 * @param connection
+	 *            PostgreSQL connection
+	 * @param insertSqlQuery
+	 *            "INSERT INTO table (columns...) VALUES (?, ...)"
+	 * @param binary
+	 *            Use binary instead of text COPY format?
+	 * @throws SQLException
+	 *             on error, for example a column type that is not supported
+	 *             in binary mode
+	 */
+	public PGCopyPreparedStatement(Connection connection,
+			String insertSqlQuery, boolean binary) throws SQLException {
 		this.connection = connection;
+		this.binary = binary;
 		batchBuilder = new StringBuffer();
 
 		// Analyze query string to get table name and list of column
@@ -63,13 +169,30 @@ public class PGCopyPreparedStatement implements PreparedStatement {
 
 		// Get the column order as it's stored in database
 		Map<String, Integer> postgresColumnOrderMap = new HashMap<String, Integer>();
+		Map<Integer, String> postgresColumnTypeMap = new HashMap<Integer, String>();
 		ResultSet columnsRs = connection.getMetaData().getColumns(
 				connection.getCatalog(), null, "sample", null);
 		while (columnsRs.next()) {
+			final int position = columnsRs.getInt("ORDINAL_POSITION");
 			postgresColumnOrderMap.put(columnsRs.getString("COLUMN_NAME"),
-					columnsRs.getInt("ORDINAL_POSITION"));
+					position);
+			postgresColumnTypeMap.put(position,
+					columnsRs.getString("TYPE_NAME"));
 		}
+		columnsRs.close();
 		rowValues = new String[postgresColumnOrderMap.size()];
+		if (binary) {
+			final int columns = rowValues.length;
+			columnTypes = new ColumnType[columns];
+			for (int i = 0; i < columns; i++)
+				columnTypes[i] = getColumnType(postgresColumnTypeMap.get(i + 1));
+			rowKinds = new byte[columns];
+			rowNumbers = new long[columns];
+			rowDoubles = new double[columns];
+			rowObjects = new Object[columns];
+			binaryBatch = new BinaryBatch();
+			binaryOut = new DataOutputStream(binaryBatch);
+		}
 
 		// Generate a tab containing mapping between order in insert query and
 		// database order
@@ -87,8 +210,44 @@ public class PGCopyPreparedStatement implements PreparedStatement {
 		}
 	}
 
+	/**
+	 * @param typeName
+	 *            PostgreSQL type name of a column
+	 * @return {@link ColumnType}
+	 * @throws SQLException
+	 *             if type is not supported in binary mode
+	 */
+	private static ColumnType getColumnType(final String typeName)
+			throws SQLException {
+		if ("int2".equals(typeName))
+			return ColumnType.INT2;
+		if ("int4".equals(typeName) || "serial".equals(typeName))
+			return ColumnType.INT4;
+		if ("int8".equals(typeName) || "bigserial".equals(typeName))
+			return ColumnType.INT8;
+		if ("float4".equals(typeName))
+			return ColumnType.FLOAT4;
+		if ("float8".equals(typeName))
+			return ColumnType.FLOAT8;
+		if ("timestamp".equals(typeName))
+			return ColumnType.TIMESTAMP;
+		if ("timestamptz".equals(typeName))
+			return ColumnType.TIMESTAMPTZ;
+		if ("varchar".equals(typeName) || "text".equals(typeName)
+				|| "bpchar".equals(typeName))
+			return ColumnType.TEXT;
+		if ("bytea".equals(typeName))
+			return ColumnType.BYTEA;
+		throw new SQLException("Binary COPY does not support column type "
+				+ typeName);
+	}
+
 	@Override
 	public void addBatch() throws SQLException {
+		if (binary) {
+			addBinaryRow();
+			return;
+		}
 		for (int i = 0; i < rowValues.length; i++) {
 			if (rowValues[i] != null) {
 				batchBuilder.append(rowValues[i]);
@@ -99,6 +258,226 @@ public class PGCopyPreparedStatement implements PreparedStatement {
 		Arrays.fill(rowValues, null);
 	}
 
+	/**
+	 * Binary mode: Encode current row into the batch
+	 * 
+	 * @throws SQLException
+	 *             on error
+	 */
+	private void addBinaryRow() throws SQLException {
+		// Check values before writing anything, so a failed row
+		// does not leave a partial row in the batch
+		for (int i = 0; i < columnTypes.length; i++) {
+			if (rowKinds[i] == UNSET)
+				continue;
+			if (columnTypes[i] == ColumnType.INT2)
+				getInteger(i, Short.MIN_VALUE, Short.MAX_VALUE);
+			else if (columnTypes[i] == ColumnType.INT4)
+				getInteger(i, Integer.MIN_VALUE, Integer.MAX_VALUE);
+		}
+		try {
+			if (binaryRows == 0) { // Header: Signature, flags, header extension length
+				binaryOut.write(BINARY_SIGNATURE);
+				binaryOut.writeInt(0);
+				binaryOut.writeInt(0);
+			}
+			binaryOut.writeShort(columnTypes.length);
+			for (int i = 0; i < columnTypes.length; i++) {
+				if (rowKinds[i] == UNSET) {
+					binaryOut.writeInt(-1);
+					continue;
+				}
+				switch (columnTypes[i]) {
+				case INT2:
+					binaryOut.writeInt(2);
+					binaryOut.writeShort((int) getInteger(i, Short.MIN_VALUE, Short.MAX_VALUE));
+					break;
+				case INT4:
+					binaryOut.writeInt(4);
+					binaryOut.writeInt((int) getInteger(i, Integer.MIN_VALUE, Integer.MAX_VALUE));
+					break;
+				case INT8:
+				case TIMESTAMP:
+				case TIMESTAMPTZ:
+					binaryOut.writeInt(8);
+					binaryOut.writeLong(getLong(i));
+					break;
+				case FLOAT4:
+					binaryOut.writeInt(4);
+					binaryOut.writeFloat((float) getDouble(i));
+					break;
+				case FLOAT8:
+					binaryOut.writeInt(8);
+					binaryOut.writeDouble(getDouble(i));
+					break;
+				case TEXT:
+				case BYTEA:
+					final Object value = rowObjects[i];
+					final byte[] bytes = value instanceof byte[] ? (byte[]) value
+							: value.toString().getBytes(UTF8);
+					binaryOut.writeInt(bytes.length);
+					binaryOut.write(bytes);
+					break;
+				}
+			}
+		} catch (IOException e) {
+			throw new SQLException(e);
+		}
+		++binaryRows;
+		clearBinaryRow();
+	}
+
+	/**
+	 * @param column
+	 *            Column index in database order
+	 * @return Integer value of column
+	 * @throws SQLException
+	 *             if column was set to a non-numeric value
+	 */
+	private long getLong(final int column) throws SQLException {
+		if (rowKinds[column] == NUMBER)
+			return rowNumbers[column];
+		if (rowKinds[column] == DOUBLE)
+			return (long) rowDoubles[column];
+		throw new SQLException("Column " + (column + 1) + " requires a number");
+	}
+
+	/**
+	 * @param column
+	 *            Column index in database order
+	 * @param min
+	 *            Minimum value supported by the column type
+	 * @param max
+	 *            Maximum value supported by the column type
+	 * @return Integer value of column
+	 * @throws SQLException
+	 *             if column was set to a non-numeric value or the value is
+	 *             out of range
+	 */
+	private long getInteger(final int column, final long min, final long max)
+			throws SQLException {
+		final long value = getLong(column);
+		if (value < min || value > max)
+			throw new SQLException("Column " + (column + 1) + " value "
+					+ value + " is outside of " + min + " .. " + max);
+		return value;
+	}
+
+	/**
+	 * @param column
+	 *            Column index in database order
+	 * @return Floating point value of column
+	 * @throws SQLException
+	 *             if column was set to a non-numeric value
+	 */
+	private double getDouble(final int column) throws SQLException {
+		if (rowKinds[column] == DOUBLE)
+			return rowDoubles[column];
+		if (rowKinds[column] == NUMBER)
+			return rowNumbers[column];
+		throw new SQLException("Column " + (column + 1) + " requires a number");
+	}
+
+	/** Binary mode: Clear parameters of current row */
+	private void clearBinaryRow() {
+		Arrays.fill(rowKinds, UNSET);
+		Arrays.fill(rowObjects, null);
+	}
+
+	/**
+	 * Binary mode: Set numeric parameter
+	 * 
+	 * @param parameterIndex
+	 *            1, 2, ...
+	 * @param x
+	 *            Value
+	 * @throws SQLException
+	 *             if parameter is not numeric in the database
+	 */
+	private void setBinaryNumber(final int parameterIndex, final long x)
+			throws SQLException {
+		final int column = columnOrderMapping[parameterIndex];
+		final ColumnType type = columnTypes[column];
+		if (type == ColumnType.TEXT || type == ColumnType.BYTEA
+				|| type == ColumnType.TIMESTAMP
+				|| type == ColumnType.TIMESTAMPTZ)
+			throw new SQLException("Cannot set number for parameter "
+					+ parameterIndex + " of type " + type);
+		rowNumbers[column] = x;
+		rowKinds[column] = NUMBER;
+	}
+
+	/**
+	 * Binary mode: Set floating point parameter
+	 * 
+	 * @param parameterIndex
+	 *            1, 2, ...
+	 * @param x
+	 *            Value
+	 * @throws SQLException
+	 *             if parameter is not numeric in the database
+	 */
+	private void setBinaryDouble(final int parameterIndex, final double x)
+			throws SQLException {
+		final int column = columnOrderMapping[parameterIndex];
+		final ColumnType type = columnTypes[column];
+		if (type != ColumnType.FLOAT4 && type != ColumnType.FLOAT8)
+			throw new SQLException("Cannot set floating point number for parameter "
+					+ parameterIndex + " of type " + type);
+		rowDoubles[column] = x;
+		rowKinds[column] = DOUBLE;
+	}
+
+	/**
+	 * Binary mode: Set string or byte[] parameter
+	 * 
+	 * @param parameterIndex
+	 *            1, 2, ...
+	 * @param x
+	 *            Value, may be <code>null</code>
+	 * @throws SQLException
+	 *             if parameter is not a text or byte array in the database
+	 */
+	private void setBinaryObject(final int parameterIndex, final Object x)
+			throws SQLException {
+		final int column = columnOrderMapping[parameterIndex];
+		final ColumnType type = columnTypes[column];
+		if (type != ColumnType.TEXT && type != ColumnType.BYTEA)
+			throw new SQLException("Cannot set text or bytes for parameter "
+					+ parameterIndex + " of type " + type);
+		rowObjects[column] = x;
+		rowKinds[column] = x == null ? UNSET : OBJECT;
+	}
+
+	/**
+	 * Binary mode: Set time stamp parameter
+	 * 
+	 * @param parameterIndex
+	 *            1, 2, ...
+	 * @param x
+	 *            Value
+	 * @throws SQLException
+	 *             if parameter is not a time stamp in the database
+	 */
+	private void setBinaryTimestamp(final int parameterIndex, final Timestamp x)
+			throws SQLException {
+		final int column = columnOrderMapping[parameterIndex];
+		final ColumnType type = columnTypes[column];
+		long millis = x.getTime();
+		if (type == ColumnType.TIMESTAMP) // Local wall clock time, like Timestamp.toString()
+			millis += TimeZone.getDefault().getOffset(millis);
+		else if (type != ColumnType.TIMESTAMPTZ)
+			throw new SQLException("Cannot set time stamp for parameter "
+					+ parameterIndex + " of type " + type);
+		// Full seconds, rounding down also for time stamps before 1970
+		long secs = millis / 1000;
+		if (millis % 1000 < 0)
+			--secs;
+		rowNumbers[column] = (secs - POSTGRES_EPOCH_SECS) * 1000000L
+				+ x.getNanos() / 1000;
+		rowKinds[column] = NUMBER;
+	}
+
 	@Override
 	public void addBatch(String arg0) throws SQLException {
 		throw new SQLException("Not implemented");
@@ -113,6 +492,10 @@ public class PGCopyPreparedStatement implements PreparedStatement {
 	@Override
 	public void clearBatch() throws SQLException {
 		batchBuilder.setLength(0);
+		if (binary) {
+			binaryBatch.reset();
+			binaryRows = 0;
+		}
 	}
 
 	@Override
@@ -126,6 +509,13 @@ public class PGCopyPreparedStatement implements PreparedStatement {
 		rowValues = null;
 		columnOrderMapping = null;
 		batchBuilder = null;
+		columnTypes = null;
+		rowKinds = null;
+		rowNumbers = null;
+		rowDoubles = null;
+		rowObjects = null;
+		binaryBatch = null;
+		binaryOut = null;
 		connection = null;
 	}
 
@@ -161,6 +551,8 @@ public class PGCopyPreparedStatement implements PreparedStatement {
 
 	@Override
 	public int[] executeBatch() throws SQLException {
+		if (binary)
+			return executeBinaryBatch();
 		long res = 0;
 		try {
 			CopyManager cpManager = ((PGConnection) connection).getCopyAPI();
@@ -176,6 +568,44 @@ public class PGCopyPreparedStatement implements PreparedStatement {
 		return new int[] { (int) res };
 	}
 
+	/**
+	 * Binary mode: Copy the encoded rows
+	 * 
+	 * @return Number of rows
+	 * @throws SQLException
+	 *             on error
+	 */
+	private int[] executeBinaryBatch() throws SQLException {
+		if (binaryRows == 0)
+			return new int[] { 0 };
+		long res = 0;
+		try {
+			CopyManager cpManager = ((PGConnection) connection).getCopyAPI();
+			res = cpManager.copyIn("COPY sample FROM STDIN WITH BINARY",
+					getBinaryBatch());
+		} catch (IOException e) {
+			throw new SQLException(e);
+		} finally {
+			binaryBatch.reset();
+			binaryRows = 0;
+		}
+		return new int[] { (int) res };
+	}
+
+	/**
+	 * Binary mode: Complete the encoded rows with the trailer
+	 * 
+	 * @return Binary COPY data
+	 * @throws IOException
+	 *             on error
+	 */
+	// Allow access from 'package' for tests
+	InputStream getBinaryBatch() throws IOException {
+		binaryOut.writeShort(-1);
+		binaryOut.flush();
+		return binaryBatch.toInputStream();
+	}
+
 	@Override
 	public ResultSet executeQuery(String arg0) throws SQLException {
 		throw new SQLException("Not implemented");
@@ -375,6 +805,8 @@ public class PGCopyPreparedStatement implements PreparedStatement {
 	@Override
 	public void clearParameters() throws SQLException {
 		Arrays.fill(rowValues, null);
+		if (binary)
+			clearBinaryRow();
 	}
 
 	@Override
@@ -437,6 +869,13 @@ public class PGCopyPreparedStatement implements PreparedStatement {
 	@Override
 	public void setBigDecimal(int parameterIndex, BigDecimal x)
 			throws SQLException {
+		if (binary) {
+			if (x == null)
+				setNull(parameterIndex, Types.DECIMAL);
+			else
+				setBinaryDouble(parameterIndex, x.doubleValue());
+			return;
+		}
 		if (x == null) {
 			rowValues[columnOrderMapping[parameterIndex]] = null;
 		} else {
@@ -487,6 +926,10 @@ public class PGCopyPreparedStatement implements PreparedStatement {
 
 	@Override
 	public void setBoolean(int parameterIndex, boolean x) throws SQLException {
+		if (binary) {
+			setBinaryNumber(parameterIndex, x ? 1 : 0);
+			return;
+		}
 		rowValues[columnOrderMapping[parameterIndex]] = Boolean.toString(x);
 	}
 
@@ -498,6 +941,10 @@ public class PGCopyPreparedStatement implements PreparedStatement {
 
 	@Override
 	public void setBytes(int parameterIndex, byte[] x) throws SQLException {
+		if (binary) {
+			setBinaryObject(parameterIndex, x);
+			return;
+		}
 		if (x == null) {
 			rowValues[columnOrderMapping[parameterIndex]] = null;
 		} else {
@@ -590,21 +1037,37 @@ public class PGCopyPreparedStatement implements PreparedStatement {
 
 	@Override
 	public void setDouble(int parameterIndex, double x) throws SQLException {
+		if (binary) {
+			setBinaryDouble(parameterIndex, x);
+			return;
+		}
 		rowValues[columnOrderMapping[parameterIndex]] = Double.toString(x);
 	}
 
 	@Override
 	public void setFloat(int parameterIndex, float x) throws SQLException {
+		if (binary) {
+			setBinaryDouble(parameterIndex, x);
+			return;
+		}
 		rowValues[columnOrderMapping[parameterIndex]] = Float.toString(x);
 	}
 
 	@Override
 	public void setInt(int parameterIndex, int x) throws SQLException {
+		if (binary) {
+			setBinaryNumber(parameterIndex, x);
+			return;
+		}
 		rowValues[columnOrderMapping[parameterIndex]] = Integer.toString(x);
 	}
 
 	@Override
 	public void setLong(int parameterIndex, long x) throws SQLException {
+		if (binary) {
+			setBinaryNumber(parameterIndex, x);
+			return;
+		}
 		rowValues[columnOrderMapping[parameterIndex]] = Long.toString(x);
 	}
 
@@ -644,6 +1107,10 @@ public class PGCopyPreparedStatement implements PreparedStatement {
 	@Override
 	public void setNString(int parameterIndex, String value)
 			throws SQLException {
+		if (binary) {
+			setBinaryObject(parameterIndex, value);
+			return;
+		}
 		if (value == null) {
 			rowValues[columnOrderMapping[parameterIndex]] = null;
 		} else {
@@ -654,12 +1121,16 @@ public class PGCopyPreparedStatement implements PreparedStatement {
 	@Override
 	public void setNull(int parameterIndex, int sqlType) throws SQLException {
 		rowValues[columnOrderMapping[parameterIndex]] = null;
+		if (binary) {
+			rowKinds[columnOrderMapping[parameterIndex]] = UNSET;
+			rowObjects[columnOrderMapping[parameterIndex]] = null;
+		}
 	}
 
 	@Override
 	public void setNull(int parameterIndex, int sqlType, String typeName)
 			throws SQLException {
-		rowValues[columnOrderMapping[parameterIndex]] = null;
+		setNull(parameterIndex, sqlType);
 	}
 
 	@Override
@@ -703,11 +1174,19 @@ public class PGCopyPreparedStatement implements PreparedStatement {
 
 	@Override
 	public void setShort(int parameterIndex, short x) throws SQLException {
+		if (binary) {
+			setBinaryNumber(parameterIndex, x);
+			return;
+		}
 		rowValues[columnOrderMapping[parameterIndex]] = Short.toString(x);
 	}
 
 	@Override
 	public void setString(int parameterIndex, String x) throws SQLException {
+		if (binary) {
+			setBinaryObject(parameterIndex, x);
+			return;
+		}
 		rowValues[columnOrderMapping[parameterIndex]] = x;
 	}
 
@@ -727,6 +1206,13 @@ public class PGCopyPreparedStatement implements PreparedStatement {
 	@Override
 	public void setTimestamp(int parameterIndex, Timestamp x)
 			throws SQLException {
+		if (binary) {
+			if (x == null)
+				setNull(parameterIndex, Types.TIMESTAMP);
+			else
+				setBinaryTimestamp(parameterIndex, x);
+			return;
+		}
 		if (x == null) {
 			rowValues[columnOrderMapping[parameterIndex]] = null;
 		} else {
@@ -22,6 +22,10 @@ public class Preferences
     
     public static final String USE_POSTGRES_COPY = "use_postgres_copy";
     
+    public static final String USE_POSTGRES_BINARY_COPY = "use_postgres_binary_copy";
+    
+    public static final String PIPELINED_FLUSH = "pipelined_flush";
+    
     /** @return # Name of sample table for writing */
     public static String getWriteSampleTable()
     {
@@ -49,4 +53,22 @@ public class Preferences
             return false;
         return prefs.getBoolean(Activator.ID, USE_POSTGRES_COPY, false, null);
     }
+    
+    /** @return true to use the binary instead of the text format for postgres copy */
+    public static boolean isUsePostgresBinaryCopy()
+    {
+        final IPreferencesService prefs = Platform.getPreferencesService();
+        if (prefs == null)
+            return false;
+        return prefs.getBoolean(Activator.ID, USE_POSTGRES_BINARY_COPY, false, null);
+    }
+    
+    /** @return true to execute batches in the background while the next batch fills */
+    public static boolean isPipelinedFlush()
+    {
+        final IPreferencesService prefs = Platform.getPreferencesService();
+        if (prefs == null)
+            return false;
+        return prefs.getBoolean(Activator.ID, PIPELINED_FLUSH, false, null);
+    }
 }
@@ -7,19 +7,19 @@
  ******************************************************************************/
 package org.csstudio.archive.writer.rdb;
 
-import java.io.ByteArrayOutputStream;
-import java.io.DataOutputStream;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
-import java.sql.SQLException;
 import java.sql.Timestamp;
-import java.sql.Types;
-import java.util.ArrayList;
-import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.logging.Level;
 
 import org.csstudio.archive.rdb.RDBArchivePreferences;
@@ -27,17 +27,12 @@ import org.csstudio.archive.vtype.MetaDataHelper;
 import org.csstudio.archive.vtype.TimestampHelper;
 import org.csstudio.archive.vtype.VTypeHelper;
 import org.csstudio.archive.writer.ArchiveWriter;
+import org.csstudio.archive.writer.BatchArchiveWriter;
 import org.csstudio.archive.writer.WriteChannel;
 import org.csstudio.platform.utility.rdb.RDBUtil;
-import org.csstudio.platform.utility.rdb.RDBUtil.Dialect;
-import org.epics.util.array.ListNumber;
 import org.epics.vtype.AlarmSeverity;
 import org.epics.vtype.Display;
-import org.epics.vtype.VDouble;
 import org.epics.vtype.VEnum;
-import org.epics.vtype.VNumber;
-import org.epics.vtype.VNumberArray;
-import org.epics.vtype.VString;
 import org.epics.vtype.VType;
 
 /** ArchiveWriter implementation for RDB
@@ -46,17 +41,8 @@ import org.epics.vtype.VType;
  *  @author Laurent Philippe (Use read-only connection when possible for MySQL load balancing)
  */
 @SuppressWarnings("nls")
-public class RDBArchiveWriter implements ArchiveWriter
+public class RDBArchiveWriter implements BatchArchiveWriter
 {
-    /** Status string for <code>Double.NaN</code> samples */
-    final private static String NOT_A_NUMBER_STATUS = "NaN";
-
-    final private int SQL_TIMEOUT_SECS = RDBArchivePreferences.getSQLTimeoutSecs();
-
-    final private int MAX_TEXT_SAMPLE_LENGTH = Preferences.getMaxStringSampleLength();
-
-    final private boolean use_array_blob;
-
     /** RDB connection */
     final private RDBUtil rdb;
 
@@ -72,33 +58,22 @@ public class RDBArchiveWriter implements ArchiveWriter
     /** Status (ID, name) cache */
     private StatusCache stati;
 
-    /** Prepared statement for inserting 'double' samples */
-    private PreparedStatement insert_double_sample = null;
-
-    /** Prepared statement for inserting array samples */
-    private PreparedStatement insert_array_sample = null;
+    /** Batch that receives added samples */
+    private SampleBatch batch;
 
-    /** Prepared statement for inserting 'long' samples */
-    private PreparedStatement insert_long_sample = null;
+    /** Connections used for the inserts when flush is pipelined, else <code>null</code> */
+    final private RDBUtil[] pipeline_rdb;
 
-    /** Prepared statement for inserting 'String' samples */
-    private PreparedStatement insert_txt_sample = null;
-
-    /** Counter for accumulated samples in 'double' batch */
-    private int batched_double_inserts = 0;
-
-    /** Counter for accumulated samples in 'double array' batch */
-    private int batched_double_array_inserts = 0;
-
-    /** Counter for accumulated samples in 'long' batch */
-    private int batched_long_inserts = 0;
+    /** Batch that is executed in the background while the other batch fills,
+     *  <code>null</code> when flush is not pipelined
+     */
+    private SampleBatch spare_batch = null;
 
-    /** Counter for accumulated samples in 'String' batch */
-    private int batched_txt_inserts = 0;
+    /** Executor for background flush, <code>null</code> when flush is not pipelined */
+    final private ExecutorService executor;
 
-    /** Copy of batched samples, used to display batch errors */
-    private final List<RDBWriteChannel> batched_channel = new ArrayList<RDBWriteChannel>();
-    private final List<VType> batched_samples = new ArrayList<VType>();
+    /** Result of the background flush, <code>null</code> when none is pending */
+    private Future<Object> pending_flush = null;
 
     /** Initialize from preferences.
      *  This constructor will be invoked when an {@link ArchiveWriter}
@@ -109,7 +84,7 @@ public class RDBArchiveWriter implements ArchiveWriter
     {
         this(RDBArchivePreferences.getURL(), RDBArchivePreferences.getUser(),
                 RDBArchivePreferences.getPassword(), RDBArchivePreferences.getSchema(),
-                RDBArchivePreferences.useArrayBlob());
+                RDBArchivePreferences.useArrayBlob(), Preferences.isPipelinedFlush());
     }
 
     /** Initialize
@@ -123,7 +98,23 @@ public class RDBArchiveWriter implements ArchiveWriter
     public RDBArchiveWriter(final String url, final String user, final String password,
             final String schema, boolean use_array_blob) throws Exception
     {
-        this.use_array_blob = use_array_blob;
+        this(url, user, password, schema, use_array_blob, false);
+    }
+
+    /** Initialize
+     *  @param url RDB URL
+     *  @param user .. user name
+     *  @param password .. password
+     *  @param schema Schema/table prefix, not including ".". May be empty
+     *  @param use_array_blob Use BLOB for array elements?
+     *  @param pipelined_flush Execute batches on two additional connections,
+     *                         one in the background while the other one fills?
+     *  @throws Exception on error, for example RDB connection error
+     */
+    public RDBArchiveWriter(final String url, final String user, final String password,
+            final String schema, boolean use_array_blob,
+            final boolean pipelined_flush) throws Exception
+    {
         rdb = RDBUtil.connect(url, user, password, false);
         sql = new SQL(rdb.getDialect(), schema);
         severities = new SeverityCache(rdb, sql);
@@ -136,6 +127,34 @@ public class RDBArchiveWriter implements ArchiveWriter
         // auto-commit is off, then enables it briefly as needed,
         // and otherwise commits/rolls back.
         rdb.getConnection().setAutoCommit(false);
+
+        if (pipelined_flush)
+        {
+            pipeline_rdb = new RDBUtil[2];
+            for (int i=0; i<pipeline_rdb.length; ++i)
+            {
+                pipeline_rdb[i] = RDBUtil.connect(url, user, password, false);
+                pipeline_rdb[i].getConnection().setAutoCommit(false);
+            }
+            batch = new SampleBatch(pipeline_rdb[0], sql, severities, stati, use_array_blob);
+            spare_batch = new SampleBatch(pipeline_rdb[1], sql, severities, stati, use_array_blob);
+            executor = Executors.newSingleThreadExecutor(new ThreadFactory()
+            {
+                @Override
+                public Thread newThread(final Runnable runnable)
+                {
+                    final Thread thread = new Thread(runnable, "RDBArchiveWriter Flush");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        else
+        {
+            pipeline_rdb = null;
+            batch = new SampleBatch(rdb, sql, severities, stati, use_array_blob);
+            executor = null;
+        }
     }
 
     @Override
@@ -175,8 +194,40 @@ public class RDBArchiveWriter implements ArchiveWriter
         final RDBWriteChannel rdb_channel = (RDBWriteChannel) channel;
         writeMetaData(rdb_channel, sample);
         batchSample(rdb_channel, sample);
-        batched_channel.add(rdb_channel);
-        batched_samples.add(sample);
+    }
+
+    /** {@inheritDoc}
+     *  <p>Consecutive samples of a channel tend to share severity and status,
+     *  so their IDs are only looked up when they change,
+     *  and the samples are then bound to the insert statements
+     *  in one pass.
+     */
+    @Override
+    public void addSamples(final WriteChannel channel, final List<VType> samples) throws Exception
+    {
+        final RDBWriteChannel rdb_channel = (RDBWriteChannel) channel;
+        AlarmSeverity last_severity = null;
+        String last_message = null;
+        int severity = 0;
+        Status status = null;
+        for (VType sample : samples)
+        {
+            writeMetaData(rdb_channel, sample);
+            final AlarmSeverity sample_severity = VTypeHelper.getSeverity(sample);
+            final String message = VTypeHelper.getMessage(sample);
+            if (sample_severity != last_severity  ||  !message.equals(last_message))
+            {
+                severity = severities.findOrCreate(sample_severity);
+                status = stati.findOrCreate(message);
+                last_severity = sample_severity;
+                last_message = message;
+                // Severity/status cache may enable auto-commit
+                if (rdb.getConnection().getAutoCommit() == true)
+                    rdb.getConnection().setAutoCommit(false);
+            }
+            final Timestamp stamp = TimestampHelper.toSQLTimestamp(VTypeHelper.getTimestamp(sample));
+            batch.add(rdb_channel, sample, stamp, severity, status);
+        }
     }
 
     /** Write meta data if it was never written or has changed
@@ -219,32 +270,6 @@ public class RDBArchiveWriter implements ArchiveWriter
         }
     }
     
-	/**
-	 * Create a new prepared statement. For PostgreSQL connections, this method
-	 * create a PGCopyPreparedStatement to improve insert speed using COPY
-	 * insetad of INSERT.
-	 * 
-	 * @param sqlQuery
-	 * @return
-	 * @throws SQLException
-	 * @throws Exception
-	 */
-	@SuppressWarnings("resource")
-	private PreparedStatement createInsertPrepareStatement(String sqlQuery)
-			throws SQLException, Exception {
-		PreparedStatement statement = null;
-		if (rdb.getDialect() == Dialect.PostgreSQL
-				&& Preferences.isUsePostgresCopy()) {
-			statement = new PGCopyPreparedStatement(rdb.getConnection(),
-					sqlQuery);
-		} else {
-			statement = rdb.getConnection().prepareStatement(sqlQuery);
-		}
-		if (SQL_TIMEOUT_SECS > 0)
-			statement.setQueryTimeout(SQL_TIMEOUT_SECS);
-		return statement;
-	}
-
     /** Perform 'batched' insert for sample.
      *  <p>Needs eventual flush()
      *  @param channel Channel
@@ -261,422 +286,114 @@ public class RDBArchiveWriter implements ArchiveWriter
         if (rdb.getConnection().getAutoCommit() == true)
         	rdb.getConnection().setAutoCommit(false);
 
-        // Start with most likely cases and highest precision: Double, ...
-        // Then going down in precision to integers, finally strings...
-        if (sample instanceof VDouble)
-            batchDoubleSamples(channel, stamp, severity, status, ((VDouble)sample).getValue(), null);
-        else if (sample instanceof VNumber)
-        {	// Write as double or integer?
-        	final Number number = ((VNumber)sample).getValue();
-        	if (number instanceof Double)
-        		batchDoubleSamples(channel, stamp, severity, status, number.doubleValue(), null);
-        	else
-        		batchLongSample(channel, stamp, severity, status, number.longValue());
-        }
-        else if (sample instanceof VNumberArray)
-        {
-        	final ListNumber data = ((VNumberArray)sample).getData();
-            batchDoubleSamples(channel, stamp, severity, status, data.getDouble(0), data);
-        }
-        else if (sample instanceof VEnum)
-            batchLongSample(channel, stamp, severity, status, ((VEnum)sample).getIndex());
-        else if (sample instanceof VString)
-            batchTextSamples(channel, stamp, severity, status, ((VString)sample).getValue());
-        else // Handle possible other types as strings
-            batchTextSamples(channel, stamp, severity, status, sample.toString());
-    }
-
-    /** Helper for batchSample: Add double sample(s) to batch. */
-    private void batchDoubleSamples(final RDBWriteChannel channel,
-            final Timestamp stamp, final int severity,
-            final Status status, final double dbl, final ListNumber additional) throws Exception
-    {
-        if (use_array_blob)
-            batchBlobbedDoubleSample(channel, stamp, severity, status, dbl, additional);
-        else
-            oldBatchDoubleSamples(channel, stamp, severity, status, dbl, additional);
+        batch.add(channel, sample, stamp, severity, status);
     }
 
-    /** Helper for batchSample: Add double sample(s) to batch, using
-     *  blob to store array elements.
+    /** {@inheritDoc}
+     *  <p>When the flush is pipelined, the batch is submitted and committed
+     *  on a background connection while the next batch fills.
+     *  An error of that background flush is reported by the next
+     *  call to <code>startFlush()</code> or <code>flush()</code>.
      */
-    private void batchBlobbedDoubleSample(final RDBWriteChannel channel,
-            final Timestamp stamp, int severity,
-            Status status, final double dbl, final ListNumber additional) throws Exception
+    @Override
+    public void startFlush() throws Exception
     {
-        if (insert_double_sample == null)
+        if (executor == null)
         {
-        	insert_double_sample = createInsertPrepareStatement(sql.sample_insert_double_blob);
+            flush();
+            return;
         }
-        // Set scalar or 1st element of a waveform.
-        // Catch not-a-number, which JDBC (at least Oracle) can't handle.
-        if (Double.isNaN(dbl))
+        // Wait for previous batch, which may report an error
+        awaitPendingFlush();
+        if (batch.isEmpty())
+            return;
+        final SampleBatch submitted = batch;
+        batch = spare_batch;
+        spare_batch = submitted;
+        pending_flush = executor.submit(new Callable<Object>()
         {
-            insert_double_sample.setDouble(5, 0.0);
-            severity = severities.findOrCreate(AlarmSeverity.UNDEFINED);
-            status = stati.findOrCreate(NOT_A_NUMBER_STATUS);
-        }
-        else
-            insert_double_sample.setDouble(5, dbl);
-
-        if (additional == null)
-        {    // No more array elements, only scalar
-            switch (rdb.getDialect())
+            @Override
+            public Object call() throws Exception
             {
-            case Oracle:
-                insert_double_sample.setString(6, " ");
-                insert_double_sample.setNull(7, Types.BLOB);
-                break;
-            case PostgreSQL:
-                insert_double_sample.setString(7, " ");
-                insert_double_sample.setBytes(8, null);
-                break;
-            default:
-                // Types.BINARY?
-                insert_double_sample.setString(7, " ");
-                insert_double_sample.setNull(8, Types.BLOB);
+                submitted.execute();
+                return null;
             }
-        }
-        else
-        {   // More array elements
-            final ByteArrayOutputStream bout = new ByteArrayOutputStream();
-            final DataOutputStream dout = new DataOutputStream(bout);
-            // Indicate 'Double' as data type
-            final int N = additional.size();
-            dout.writeInt(N);
-            // Write binary data for array elements
-            for (int i=0; i<N; ++i)
-                dout.writeDouble(additional.getDouble(i));
-            dout.close();
-            final byte[] asBytes = bout.toByteArray();
-            if (rdb.getDialect() == Dialect.Oracle)
-            {
-                insert_double_sample.setString(6, "d");
-                insert_double_sample.setBytes(7, asBytes);
-            }
-            else
-            {
-                insert_double_sample.setString(7, "d");
-                insert_double_sample.setBytes(8, asBytes);
-            }
-        }
-        // Batch
-        completeAndBatchInsert(insert_double_sample, channel, stamp, severity, status);
-        ++batched_double_inserts;
+        });
     }
 
-    /** Add 'insert' for double samples to batch, handling arrays
-     *  via the original array_val table
+    /** {@inheritDoc}
+     *  RDB implementation completes pending batches
+     *  <p>
+     *  When both the pending and the current batch fail,
+     *  the error of the pending batch is thrown
+     *  and the error of the current batch is logged.
      */
-    private void oldBatchDoubleSamples(final RDBWriteChannel channel,
-            final Timestamp stamp, final int severity,
-            final Status status, final double dbl, final ListNumber additional) throws Exception
+    @Override
+    public void flush() throws Exception
     {
-        if (insert_double_sample == null)
-        {
-        	insert_double_sample = createInsertPrepareStatement(sql.sample_insert_double);
-        }
-        // Catch not-a-number, which JDBC (at least Oracle) can't handle.
-        if (Double.isNaN(dbl))
-        {
-            insert_double_sample.setDouble(5, 0.0);
-            completeAndBatchInsert(insert_double_sample,
-                    channel, stamp,
-                    severities.findOrCreate(AlarmSeverity.UNDEFINED),
-                    stati.findOrCreate(NOT_A_NUMBER_STATUS));
-        }
-        else
+        try
         {
-            insert_double_sample.setDouble(5, dbl);
-            completeAndBatchInsert(insert_double_sample, channel, stamp, severity, status);
+            awaitPendingFlush();
         }
-        ++batched_double_inserts;
-        // More array elements?
-        if (additional != null)
-        {
-            if (insert_array_sample == null)
-                insert_array_sample =
-                    rdb.getConnection().prepareStatement(
-                        sql.sample_insert_double_array_element);
-            final int N = additional.size();
-            for (int i = 1; i < N; i++)
+        catch (Exception ex)
+        {   // Submit current batch even if the pending one failed,
+            // but report the first error
+            try
             {
-                insert_array_sample.setInt(1, channel.getId());
-                insert_array_sample.setTimestamp(2, stamp);
-                insert_array_sample.setInt(3, i);
-                // Patch NaN.
-                // Conundrum: Should we set the status/severity to indicate NaN?
-                // Would be easy if we wrote the main sample with overall
-                // stat/sevr at the end.
-                // But we have to write it first to avoid index (key) errors
-                // with the array sample time stamp....
-                // Go back and update the main sample after the fact??
-                if (Double.isNaN(additional.getDouble(i)))
-                    insert_array_sample.setDouble(4, 0.0);
-                else
-                    insert_array_sample.setDouble(4, additional.getDouble(i));
-                // MySQL nanosecs
-                if (rdb.getDialect() == Dialect.MySQL || rdb.getDialect() == Dialect.PostgreSQL)
-                    insert_array_sample.setInt(5, stamp.getNanos());
-                // Batch
-                insert_array_sample.addBatch();
-                ++batched_double_array_inserts;
+                batch.execute();
             }
+            catch (Exception second)
+            {
+                Activator.getLogger().log(Level.WARNING, "flush() error after failed pending flush", second);
+            }
+            throw ex;
         }
+        batch.execute();
     }
 
-    /** Helper for batchSample: Add long sample to batch.  */
-    private void batchLongSample(final RDBWriteChannel channel,
-            final Timestamp stamp, final int severity,
-            final Status status, final long num) throws Exception
-    {
-        if (insert_long_sample == null)
-        {
-        	insert_long_sample = createInsertPrepareStatement(sql.sample_insert_int);
-        }
-        insert_long_sample.setLong(5, num);
-        completeAndBatchInsert(insert_long_sample, channel, stamp, severity, status);
-        ++batched_long_inserts;
-    }
-
-    /** Helper for batchSample: Add text sample to batch. */
-    private void batchTextSamples(final RDBWriteChannel channel,
-            final Timestamp stamp, final int severity,
-            final Status status, String txt) throws Exception
-    {
-        if (insert_txt_sample == null)
-        {
-        	insert_txt_sample = createInsertPrepareStatement(sql.sample_insert_string);
-        }
-        if (txt.length() > MAX_TEXT_SAMPLE_LENGTH)
-        {
-            Activator.getLogger().log(Level.INFO,
-                "Value of {0} exceeds {1} chars: {2}",
-                new Object[] { channel.getName(), MAX_TEXT_SAMPLE_LENGTH, txt });
-            txt = txt.substring(0, MAX_TEXT_SAMPLE_LENGTH);
-        }
-        insert_txt_sample.setString(5, txt);
-        completeAndBatchInsert(insert_txt_sample, channel, stamp, severity, status);
-        ++batched_txt_inserts;
-    }
-
-    /** Helper for batchSample:
-     *  Set the parameters common to all insert statements, add to batch.
+    /** Wait for a batch that was submitted in the background to complete
+     *  @throws Exception Error of the background flush
      */
-    private void completeAndBatchInsert(
-            final PreparedStatement insert_xx, final RDBWriteChannel channel,
-            final Timestamp stamp, final int severity,
-            final Status status) throws Exception
-    {
-        // Set the stuff that's common to each type
-        insert_xx.setInt(1, channel.getId());
-        insert_xx.setTimestamp(2, stamp);
-        insert_xx.setInt(3, severity);
-        insert_xx.setInt(4, status.getId());
-        // MySQL nanosecs
-        if (rdb.getDialect() == Dialect.MySQL  ||  rdb.getDialect() == Dialect.PostgreSQL)
-            insert_xx.setInt(6, stamp.getNanos());
-        // Batch
-        insert_xx.addBatch();
-    }
-
-    /** {@inheritDoc}
-     *  RDB implementation completes pending batches
-     */
-    @Override
-    public void flush() throws Exception
+    private void awaitPendingFlush() throws Exception
     {
+        if (pending_flush == null)
+            return;
         try
         {
-            if (batched_double_inserts > 0)
-            {
-                try
-                {
-                    checkBatchExecution(insert_double_sample);
-                }
-                finally
-                {
-                    batched_double_inserts = 0;
-                }
-            }
-            if (batched_long_inserts > 0)
-            {
-                try
-                {
-                    checkBatchExecution(insert_long_sample);
-                }
-                finally
-                {
-                    batched_long_inserts = 0;
-                }
-            }
-            if (batched_txt_inserts > 0)
-            {
-                try
-                {
-                    checkBatchExecution(insert_txt_sample);
-                }
-                finally
-                {
-                    batched_txt_inserts = 0;
-                }
-            }
-            if (batched_double_array_inserts > 0)
-            {
-                try
-                {
-                    checkBatchExecution(insert_array_sample);
-                }
-                finally
-                {
-                    batched_double_array_inserts = 0;
-                }
-            }
+            pending_flush.get();
         }
-        catch (final Exception ex)
+        catch (ExecutionException ex)
         {
-            if (ex.getMessage().contains("unique"))
-            {
-                System.out.println(new Date().toString() + " Unique constraint error in these samples: " + ex.getMessage()); //$NON-NLS-1$
-                if (batched_samples.size() != batched_channel.size())
-                    System.out.println("Inconsistent batch history");
-                final int N = Math.min(batched_samples.size(), batched_channel.size());
-                for (int i=0; i<N; ++i)
-                    attemptSingleInsert(batched_channel.get(i), batched_samples.get(i));
-            }
+            final Throwable cause = ex.getCause();
+            if (cause instanceof Exception)
+                throw (Exception) cause;
             throw ex;
         }
         finally
         {
-            batched_channel.clear();
-            batched_samples.clear();
+            pending_flush = null;
         }
     }
 
-    /** Submit and clear the batch, or roll back on error */
-    private void checkBatchExecution(final PreparedStatement insert) throws Exception
+    /** {@inheritDoc} */
+    @Override
+    public void close()
     {
-        try
-        {   // Try to perform the inserts
-            // In principle this could return update counts for
-            // each batched insert, but Oracle 10g and 11g just throw
-            // an exception
-            insert.executeBatch();
-            rdb.getConnection().commit();
-        }
-        catch (final Exception ex)
+        channels.clear();
+        if (executor != null)
         {
             try
             {
-                // On failure, roll back.
-                // With Oracle 10g, the BatchUpdateException doesn't
-                // indicate which of the batched commands faulted...
-                insert.clearBatch();
-                // Still: Commit what's committable.
-                // Unfortunately no way to know what failed,
-                // and no way to re-submit the 'remaining' inserts.
-                rdb.getConnection().commit();
+                awaitPendingFlush();
             }
-            catch (Exception nested)
+            catch (Exception ex)
             {
-                Activator.getLogger().log(Level.WARNING,
-                        "clearBatch(), commit() error after batch issue", nested);
+                Activator.getLogger().log(Level.WARNING, "close() error of pending flush", ex);
             }
-            throw ex;
+            executor.shutdown();
+            spare_batch.close();
         }
-    }
-
-    /** The batched insert failed, so try to insert this channel's sample
-     *  individually, mostly to debug errors
-     *  @param channel
-     *  @param sample
-     */
-    private void attemptSingleInsert(final RDBWriteChannel channel, final VType sample)
-    {
-        System.out.println("Individual insert of " + channel.getName() + " = " + sample.toString());
-//        try
-//        {
-//            final Timestamp stamp = TimestampHelper.toSQLTimestamp(VTypeHelper.getTimestamp(sample));
-//            final int severity = severities.findOrCreate(VTypeHelper.getSeverity(sample));
-//            final Status status = stati.findOrCreate(VTypeHelper.getMessage(sample));
-//            if (sample instanceof VNumber)
-//            {
-//                final IDoubleValue dbl = (IDoubleValue) sample;
-//                if (dbl.getValues().length > 1)
-//                    throw new Exception("Not checking array samples");
-//                if (Double.isNaN(dbl.getValue()))
-//                    throw new Exception("Not checking NaN values");
-//                insert_double_sample.setInt(1, channel.getId());
-//                insert_double_sample.setTimestamp(2, stamp);
-//                insert_double_sample.setInt(3, severity.getId());
-//                insert_double_sample.setInt(4, status.getId());
-//                insert_double_sample.setDouble(5, dbl.getValue());
-//                //always false as we don't insert arrays in this function
-//                insert_double_sample.setBoolean(6, false);
-//                // MySQL nanosecs
-//                if (rdb.getDialect() == Dialect.MySQL || rdb.getDialect() == Dialect.PostgreSQL)
-//                    insert_double_sample.setInt(7, stamp.getNanos());
-//                insert_double_sample.executeUpdate();
-//            }
-//            else if (sample instanceof ILongValue)
-//            {
-//                final ILongValue num = (ILongValue) sample;
-//                if (num.getValues().length > 1)
-//                    throw new Exception("Not checking array samples");
-//                insert_long_sample.setInt(1, channel.getId());
-//                insert_long_sample.setTimestamp(2, stamp);
-//                insert_long_sample.setInt(3, severity.getId());
-//                insert_long_sample.setInt(4, status.getId());
-//                insert_long_sample.setLong(5, num.getValue());
-//                insert_long_sample.setBoolean(6, false);
-//                // MySQL nanosecs
-//                if (rdb.getDialect() == Dialect.MySQL || rdb.getDialect() == Dialect.PostgreSQL)
-//                    insert_long_sample.setInt(7, stamp.getNanos());
-//                insert_long_sample.executeUpdate();
-//            }
-//            else if (sample instanceof IEnumeratedValue)
-//            {   // Enum handled just like (long) integer
-//                final IEnumeratedValue num = (IEnumeratedValue) sample;
-//                if (num.getValues().length > 1)
-//                    throw new Exception("Not checking array samples");
-//                insert_long_sample.setInt(1, channel.getId());
-//                insert_long_sample.setTimestamp(2, stamp);
-//                insert_long_sample.setInt(3, severity.getId());
-//                insert_long_sample.setInt(4, status.getId());
-//                insert_long_sample.setLong(5, num.getValue());
-//                insert_long_sample.setBoolean(6, false);
-//                // MySQL nanosecs
-//                if (rdb.getDialect() == Dialect.MySQL || rdb.getDialect() == Dialect.PostgreSQL)
-//                    insert_long_sample.setInt(7, stamp.getNanos());
-//                insert_long_sample.executeUpdate();
-//            }
-//            else
-//            {   // Handle string and possible other types as strings
-//                final String txt = sample.format();
-//                insert_txt_sample.setInt(1, channel.getId());
-//                insert_txt_sample.setTimestamp(2, stamp);
-//                insert_txt_sample.setInt(3, severity.getId());
-//                insert_txt_sample.setInt(4, status.getId());
-//                insert_txt_sample.setString(5, txt);
-//                insert_txt_sample.setBoolean(6, false);
-//                // MySQL nanosecs
-//                if (rdb.getDialect() == Dialect.MySQL || rdb.getDialect() == Dialect.PostgreSQL)
-//                    insert_txt_sample.setInt(7, stamp.getNanos());
-//                insert_txt_sample.executeUpdate();
-//            }
-//            rdb.getConnection().commit();
-//        }
-//        catch (Exception ex)
-//        {
-//            System.out.println("Individual insert failed: " + ex.getMessage());
-//        }
-    }
-
-    /** {@inheritDoc} */
-    @Override
-    public void close()
-    {
-        channels.clear();
+        batch.close();
         if (severities != null)
         {
             severities.dispose();
@@ -687,39 +404,9 @@ public class RDBArchiveWriter implements ArchiveWriter
             stati.dispose();
             stati = null;
         }
-
-		if (insert_double_sample != null) {
-			try {
-				insert_double_sample.close();
-			} catch (SQLException e) {
-				Activator.getLogger().log(Level.WARNING, "close() error", e);
-			}
-			insert_double_sample = null;
-		}
-		if (insert_array_sample != null) {
-			try {
-				insert_array_sample.close();
-			} catch (SQLException e) {
-				Activator.getLogger().log(Level.WARNING, "close() error", e);
-			}
-			insert_array_sample = null;
-		}
-		if (insert_long_sample != null) {
-			try {
-				insert_long_sample.close();
-			} catch (SQLException e) {
-				Activator.getLogger().log(Level.WARNING, "close() error", e);
-			}
-			insert_long_sample = null;
-		}
-		if (insert_txt_sample != null) {
-			try {
-				insert_txt_sample.close();
-			} catch (SQLException e) {
-				Activator.getLogger().log(Level.WARNING, "close() error", e);
-			}
-			insert_txt_sample = null;
-		}
+        if (pipeline_rdb != null)
+            for (RDBUtil connection : pipeline_rdb)
+                connection.close();
 		rdb.close();
     }
 }
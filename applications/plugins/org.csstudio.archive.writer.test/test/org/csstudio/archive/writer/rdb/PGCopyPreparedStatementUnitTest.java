@@ -0,0 +1,344 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.archive.writer.rdb;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.TimeZone;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** JUnit test of the binary COPY encoding of the {@link PGCopyPreparedStatement}
+ *
+ *  <p>Compares the encoded bytes with the PostgreSQL binary COPY format,
+ *  without connecting to a database.
+ *
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class PGCopyPreparedStatementUnitTest
+{
+    /** Columns of the 'sample' table, name and type, in database order */
+    private static final String[][] COLUMNS =
+    {
+        { "channel_id", "int8" },
+        { "smpl_time", "timestamp" },
+        { "nanosecs", "int8" },
+        { "severity_id", "int8" },
+        { "status_id", "int8" },
+        { "num_val", "int4" },
+        { "float_val", "float8" },
+        { "str_val", "varchar" },
+        { "datatype", "bpchar" },
+        { "array_val", "bytea" },
+    };
+
+    /** Parameters in different order than the database columns */
+    private static final String INSERT =
+        "INSERT INTO sample (channel_id, smpl_time, severity_id, status_id, float_val, datatype, array_val, nanosecs) VALUES (?,?,?,?,?,?,?,?)";
+
+    private TimeZone original_zone;
+
+    @Before
+    public void setTimeZone()
+    {
+        original_zone = TimeZone.getDefault();
+        // Zone with daylight saving time, UTC-4 in summer, UTC-5 in winter
+        TimeZone.setDefault(TimeZone.getTimeZone("America/New_York"));
+    }
+
+    @After
+    public void restoreTimeZone()
+    {
+        TimeZone.setDefault(original_zone);
+    }
+
+    /** @param columns Column names and types
+     *  @return {@link Connection} that only provides the column meta data
+     */
+    private static Connection createConnection(final String[][] columns)
+    {
+        final InvocationHandler result_handler = new InvocationHandler()
+        {
+            private int row = -1;
+
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable
+            {
+                final String name = method.getName();
+                if ("next".equals(name))
+                    return ++row < columns.length;
+                if ("getInt".equals(name)  &&  "ORDINAL_POSITION".equals(args[0]))
+                    return row + 1;
+                if ("getString".equals(name)  &&  "COLUMN_NAME".equals(args[0]))
+                    return columns[row][0];
+                if ("getString".equals(name)  &&  "TYPE_NAME".equals(args[0]))
+                    return columns[row][1];
+                if ("close".equals(name))
+                    return null;
+                throw new UnsupportedOperationException(name);
+            }
+        };
+        final InvocationHandler meta_handler = new InvocationHandler()
+        {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable
+            {
+                if ("getColumns".equals(method.getName()))
+                    return Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+                            new Class<?>[] { ResultSet.class }, result_handler);
+                throw new UnsupportedOperationException(method.getName());
+            }
+        };
+        final InvocationHandler connection_handler = new InvocationHandler()
+        {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable
+            {
+                if ("getMetaData".equals(method.getName()))
+                    return Proxy.newProxyInstance(DatabaseMetaData.class.getClassLoader(),
+                            new Class<?>[] { DatabaseMetaData.class }, meta_handler);
+                if ("getCatalog".equals(method.getName()))
+                    return "test";
+                throw new UnsupportedOperationException(method.getName());
+            }
+        };
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[] { Connection.class }, connection_handler);
+    }
+
+    /** @param hex Hex digits, may contain spaces
+     *  @return Bytes
+     */
+    private static byte[] hex(final String hex)
+    {
+        final String digits = hex.replace(" ", "");
+        final byte[] bytes = new byte[digits.length() / 2];
+        for (int i=0; i<bytes.length; ++i)
+            bytes[i] = (byte) Integer.parseInt(digits.substring(2*i, 2*i + 2), 16);
+        return bytes;
+    }
+
+    /** @param statement Statement with binary batch
+     *  @return Encoded bytes of the batch
+     *  @throws Exception on error
+     */
+    private static byte[] getBytes(final PGCopyPreparedStatement statement) throws Exception
+    {
+        final InputStream input = statement.getBinaryBatch();
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final byte[] buf = new byte[1024];
+        int len;
+        while ((len = input.read(buf)) > 0)
+            bytes.write(buf, 0, len);
+        return bytes.toByteArray();
+    }
+
+    /** @param bytes Bytes
+     *  @return Hex digits
+     */
+    private static String toHex(final byte[] bytes)
+    {
+        final StringBuilder buf = new StringBuilder();
+        for (byte b : bytes)
+            buf.append(String.format("%02x", b & 0xFF));
+        return buf.toString();
+    }
+
+    @Test
+    public void testBinaryEncoding() throws Exception
+    {
+        final PGCopyPreparedStatement statement =
+            new PGCopyPreparedStatement(createConnection(COLUMNS), INSERT, true);
+
+        // Summer time stamp, local time
+        statement.setLong(1, 42);
+        statement.setTimestamp(2, Timestamp.valueOf("2015-07-01 12:00:00.123456789"));
+        statement.setInt(3, 1);
+        statement.setInt(4, 2);
+        statement.setDouble(5, 3.14);
+        statement.setString(6, "d");
+        statement.setBytes(7, new byte[] { 1, 2, 3, (byte) 0xFF });
+        statement.setLong(8, 123456789);
+        statement.addBatch();
+
+        // Winter time stamp just before the PostgreSQL epoch, local time,
+        // with NULL for the floating point value and array
+        statement.setLong(1, 42);
+        statement.setTimestamp(2, Timestamp.valueOf("1999-12-31 23:59:59.5"));
+        statement.setInt(3, 1);
+        statement.setInt(4, 2);
+        statement.setNull(5, Types.DOUBLE);
+        statement.setString(6, " ");
+        statement.setBytes(7, null);
+        statement.setLong(8, 500000000);
+        statement.addBatch();
+
+        final byte[] expected = hex(
+            // Signature, flags, header extension length
+            "50 47 43 4f 50 59 0a ff 0d 0a 00" +
+            "00000000" +
+            "00000000" +
+            // Row 1 has 10 fields
+            "000a" +
+            // channel_id
+            "00000008 000000000000002a" +
+            // smpl_time: Microseconds from 2000-01-01 00:00:00 to the local wall clock time
+            "00000008 0001bccdd4bc1240" +
+            // nanosecs
+            "00000008 00000000075bcd15" +
+            // severity_id, status_id
+            "00000008 0000000000000001" +
+            "00000008 0000000000000002" +
+            // num_val: NULL
+            "ffffffff" +
+            // float_val
+            "00000008 40091eb851eb851f" +
+            // str_val: NULL
+            "ffffffff" +
+            // datatype
+            "00000001 64" +
+            // array_val
+            "00000004 010203ff" +
+            // Row 2
+            "000a" +
+            "00000008 000000000000002a" +
+            // smpl_time: -0.5 seconds
+            "00000008 fffffffffff85ee0" +
+            "00000008 000000001dcd6500" +
+            "00000008 0000000000000001" +
+            "00000008 0000000000000002" +
+            // num_val, float_val, str_val: NULL
+            "ffffffff" +
+            "ffffffff" +
+            "ffffffff" +
+            "00000001 20" +
+            // array_val: NULL
+            "ffffffff" +
+            // Trailer
+            "ffff");
+        assertThat(toHex(getBytes(statement)), equalTo(toHex(expected)));
+        statement.close();
+    }
+
+    @Test
+    public void testTimestampWithTimeZone() throws Exception
+    {
+        final String[][] columns =
+        {
+            { "channel_id", "int4" },
+            { "smpl_time", "timestamptz" },
+        };
+        final PGCopyPreparedStatement statement = new PGCopyPreparedStatement(createConnection(columns),
+                "INSERT INTO sample (smpl_time, channel_id) VALUES (?,?)", true);
+
+        // 2000-01-01 00:00:01.000001 UTC, independent of the local time zone
+        final Timestamp stamp = new Timestamp(946684801000L);
+        stamp.setNanos(1000);
+        statement.setTimestamp(1, stamp);
+        statement.setInt(2, 7);
+        statement.addBatch();
+
+        final byte[] expected = hex(
+            "50 47 43 4f 50 59 0a ff 0d 0a 00" +
+            "00000000" +
+            "00000000" +
+            "0002" +
+            "00000004 00000007" +
+            "00000008 00000000000f4241" +
+            "ffff");
+        assertThat(toHex(getBytes(statement)), equalTo(toHex(expected)));
+        statement.close();
+    }
+
+    /** @param statement Statement for 'int2' and 'int4' columns
+     *  @param int2 Value for the 'int2' column
+     *  @param int4 Value for the 'int4' column
+     *  @throws Exception on error
+     */
+    private static void addIntegers(final PGCopyPreparedStatement statement,
+            final long int2, final long int4) throws Exception
+    {
+        statement.setLong(1, int2);
+        statement.setLong(2, int4);
+        statement.addBatch();
+    }
+
+    @Test
+    public void testIntegerRange() throws Exception
+    {
+        final String[][] columns =
+        {
+            { "severity_id", "int2" },
+            { "num_val", "int4" },
+        };
+        final PGCopyPreparedStatement statement = new PGCopyPreparedStatement(createConnection(columns),
+                "INSERT INTO sample (severity_id, num_val) VALUES (?,?)", true);
+
+        // Limits of the column types are written as is
+        addIntegers(statement, Short.MIN_VALUE, Integer.MAX_VALUE);
+        addIntegers(statement, Short.MAX_VALUE, Integer.MIN_VALUE);
+
+        // Values that don't fit the column type must not be truncated
+        final long[][] overflows =
+        {
+            { Short.MAX_VALUE + 1, 0 },
+            { Short.MIN_VALUE - 1, 0 },
+            { 0, Integer.MAX_VALUE + 1L },
+            { 0, Integer.MIN_VALUE - 1L },
+            { 0x10001, 0x100000001L },
+        };
+        for (long[] values : overflows)
+        {
+            try
+            {
+                addIntegers(statement, values[0], values[1]);
+                fail("Accepted " + values[0] + ", " + values[1]);
+            }
+            catch (SQLException ex)
+            {
+                // Expected
+            }
+        }
+
+        // Rejected rows leave no trace in the batch
+        addIntegers(statement, -1, 1);
+
+        final byte[] expected = hex(
+            "50 47 43 4f 50 59 0a ff 0d 0a 00" +
+            "00000000" +
+            "00000000" +
+            "0002" +
+            "00000002 8000" +
+            "00000004 7fffffff" +
+            "0002" +
+            "00000002 7fff" +
+            "00000004 80000000" +
+            "0002" +
+            "00000002 ffff" +
+            "00000004 00000001" +
+            "ffff");
+        assertThat(toHex(getBytes(statement)), equalTo(toHex(expected)));
+        statement.close();
+    }
+}
@@ -43,16 +43,17 @@ public class RDBArchiveWriterTest
 {
 	final Display display = ValueFactory.newDisplay(0.0, 1.0, 2.0, "a.u.", NumberFormats.format(2), 8.0, 9.0, 10.0, 0.0, 10.0);
 	private RDBArchiveWriter writer = null;
-	private String name, array_name;
+	private String url, user, password, schema, name, array_name;
+	private boolean use_blob;
 
     @Before
 	public void connect() throws Exception
 	{
 		final TestProperties settings = new TestProperties();
-		final String url = settings.getString("archive_rdb_url");
-		final String user = settings.getString("archive_rdb_user");
-		final String password = settings.getString("archive_rdb_password");
-		final String schema = settings.getString("archive_rdb_schema");
+		url = settings.getString("archive_rdb_url");
+		user = settings.getString("archive_rdb_user");
+		password = settings.getString("archive_rdb_password");
+		schema = settings.getString("archive_rdb_schema");
 		name = settings.getString("archive_channel");
 		array_name = settings.getString("archive_array_channel");
 		if (url == null  ||  user == null  ||  password == null  ||  name == null)
@@ -60,7 +61,7 @@ public class RDBArchiveWriterTest
 			System.out.println("Skipping test, no archive_rdb_url, user, password");
 			return;
 		}
-		final boolean use_blob = Boolean.parseBoolean(settings.getString("archive_use_blob"));
+		use_blob = Boolean.parseBoolean(settings.getString("archive_use_blob"));
 		if (use_blob)
 			System.out.println("Running write test with BLOB");
 		else
@@ -191,4 +192,33 @@ public class RDBArchiveWriterTest
 		System.out.println("Wrote " + count + " samples, i.e. "
 				         + ((double)count / TEST_DURATION_SECS) + " samples/sec.");
 	}
+
+	/** Same as testWriteSpeedDouble, but with pipelined flush */
+	@Test
+	public void testWriteSpeedPipelined() throws Exception
+	{
+		if (writer == null)
+			return;
+		writer.close();
+		writer = new RDBArchiveWriter(url, user, password, schema, use_blob, true);
+
+		System.out.println("Pipelined write test: Adding samples to " + name + " for " + TEST_DURATION_SECS + " secs");
+		final WriteChannel channel = writer.getChannel(name);
+
+		long count = 0;
+		final long start = System.currentTimeMillis();
+		final long end = start + TEST_DURATION_SECS*1000L;
+		do
+		{
+			++count;
+			writer.addSample(channel, new ArchiveVNumber(Timestamp.now(), AlarmSeverity.NONE, "OK", display, 3.14));
+			if (count % FLUSH_COUNT == 0)
+				writer.startFlush();
+		}
+		while (System.currentTimeMillis() < end);
+		writer.flush();
+
+		System.out.println("Wrote " + count + " samples, i.e. "
+				         + ((double)count / TEST_DURATION_SECS) + " samples/sec.");
+	}
 }
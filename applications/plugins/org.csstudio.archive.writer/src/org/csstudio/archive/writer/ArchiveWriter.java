@@ -11,6 +11,7 @@ import org.epics.vtype.VType;
 
 /** Interface for writing samples to an archive
  * 
+ *  @see BatchArchiveWriter
  *  @author Kay Kasemir
  */
 public interface ArchiveWriter
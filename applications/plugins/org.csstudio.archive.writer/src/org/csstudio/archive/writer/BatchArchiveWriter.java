@@ -0,0 +1,51 @@
+/*******************************************************************************
+ * Copyright (c) 2011 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.archive.writer;
+
+import java.util.List;
+
+import org.epics.vtype.VType;
+
+/** Optional interface for an {@link ArchiveWriter}
+ *  that can handle samples in bulk
+ *  and write them in the background.
+ *
+ *  <p>Callers check if an {@link ArchiveWriter} implements this
+ *  interface, and otherwise fall back to the methods of
+ *  the basic {@link ArchiveWriter}.
+ *
+ *  @author Kay Kasemir
+ */
+public interface BatchArchiveWriter extends ArchiveWriter
+{
+	/** Add several samples of one channel to the archive.
+	 * 
+	 *  <p>Same as calling <code>addSample()</code> for each sample,
+	 *  but allows the implementation to handle the samples in bulk.
+	 *  @param channel Channel to which to add the samples
+	 *  @param samples Values to add, in time stamp order
+	 *  @throws Exception on error, for example failure to access
+	 *          the data store, or a sample could not be added
+	 *          to the archive
+	 *  @see #addSample(WriteChannel, VType)
+	 */
+	public void addSamples(WriteChannel channel, List<VType> samples) throws Exception;
+
+	/** Start to write all recently added samples to the archive.
+	 *
+	 *  <p>Like <code>flush()</code>, but the implementation may
+	 *  write the samples in the background while more samples are added.
+	 *  An error of that background write is reported by the next
+	 *  call to <code>startFlush()</code> or <code>flush()</code>,
+	 *  and <code>flush()</code> waits for the background write to complete.
+	 *  @throws Exception on error, for example failure to access
+	 *          the data store while writing the previous samples
+	 *  @see #flush()
+	 */
+	public void startFlush() throws Exception;
+}
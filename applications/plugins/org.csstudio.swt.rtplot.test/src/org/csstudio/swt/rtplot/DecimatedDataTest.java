@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.swt.rtplot;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+
+import org.csstudio.swt.rtplot.data.ArrayPlotDataProvider;
+import org.csstudio.swt.rtplot.data.PlotDataItem;
+import org.csstudio.swt.rtplot.data.PlotDataProvider;
+import org.csstudio.swt.rtplot.data.SimpleDataItem;
+import org.csstudio.swt.rtplot.internal.DecimatedData;
+import org.csstudio.swt.rtplot.internal.util.LinearScreenTransform;
+import org.junit.Test;
+
+/** JUnit test of {@link DecimatedData}
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class DecimatedDataTest
+{
+    @Test
+    public void testDecimation()
+    {
+        final int N = 1000000, width = 100;
+        final List<PlotDataItem<Double>> items = new ArrayList<>(N);
+        for (int i=0; i<N; ++i)
+            items.add(new SimpleDataItem<Double>(Double.valueOf(i), i == N/2 ? Double.NaN : Math.sin(i * 0.01) * i));
+        final ArrayPlotDataProvider<Double> data = new ArrayPlotDataProvider<>(items);
+
+        final LinearScreenTransform x_transform = new LinearScreenTransform();
+        x_transform.config(0.0, Double.valueOf(N), 0, width);
+
+        final long start = System.nanoTime();
+        final DecimatedData<Double> decimated = new DecimatedData<>(data, x_transform, 0, width);
+        final long nanos = System.nanoTime() - start;
+        System.out.println("Decimated " + N + " samples to " + decimated.size() + " in " + nanos/1e6 + " ms");
+
+        // Few samples per pixel column, but same first, last, min, max and the gap
+        assertTrue(decimated.size() <= 7 * (width + 1));
+        assertTrue(decimated.get(0) == items.get(0));
+        assertTrue(decimated.get(decimated.size()-1) == items.get(N-1));
+        double min = Double.MAX_VALUE, max = -Double.MAX_VALUE, dec_min = min, dec_max = max;
+        for (PlotDataItem<Double> item : items)
+            if (! Double.isNaN(item.getValue()))
+            {
+                min = Math.min(min, item.getValue());
+                max = Math.max(max, item.getValue());
+            }
+        boolean have_gap = false;
+        double last_position = -1;
+        for (int i=0; i<decimated.size(); ++i)
+        {
+            final PlotDataItem<Double> item = decimated.get(i);
+            // Original order is preserved
+            assertTrue(item.getPosition() > last_position);
+            last_position = item.getPosition();
+            if (Double.isNaN(item.getValue()))
+                have_gap = true;
+            else
+            {
+                dec_min = Math.min(dec_min, item.getValue());
+                dec_max = Math.max(dec_max, item.getValue());
+            }
+        }
+        assertThat(dec_min, equalTo(min));
+        assertThat(dec_max, equalTo(max));
+        assertTrue(have_gap);
+
+        // Cached result remains valid until data or transformation change
+        assertTrue(decimated.isValid(data, x_transform, 0, width));
+        assertTrue(! decimated.isValid(data, x_transform, 0, width+1));
+        final LinearScreenTransform zoomed = new LinearScreenTransform();
+        zoomed.config(0.0, Double.valueOf(N/2), 0, width);
+        assertTrue(! decimated.isValid(data, zoomed, 0, width));
+        data.add(new SimpleDataItem<Double>(Double.valueOf(N), 0.0));
+        assertTrue(! decimated.isValid(data, x_transform, 0, width));
+
+        // Data that does not track modifications is decimated for each use
+        final PlotDataProvider<Double> untracked = new PlotDataProvider<Double>()
+        {
+            @Override
+            public Lock getLock()
+            {
+                return data.getLock();
+            }
+
+            @Override
+            public int size()
+            {
+                return data.size();
+            }
+
+            @Override
+            public PlotDataItem<Double> get(final int index)
+            {
+                return data.get(index);
+            }
+        };
+        final DecimatedData<Double> untracked_decimated = new DecimatedData<>(untracked, x_transform, 0, width);
+        assertTrue(! untracked_decimated.isValid(untracked, x_transform, 0, width));
+    }
+}
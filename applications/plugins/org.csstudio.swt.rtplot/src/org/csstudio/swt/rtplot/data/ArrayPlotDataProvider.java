@@ -23,8 +23,11 @@ public class ArrayPlotDataProvider<XTYPE extends Comparable<XTYPE>> implements P
 {
     final private ReadWriteLock lock = new ReentrantReadWriteLock();
     final private List<PlotDataItem<XTYPE>> data;
+    private long modifications = 0;
 
     /** Construct with existing data
+     *  <p>
+     *  After construction, the data must only be changed via {@link #add}
      *  @param data
      */
     public ArrayPlotDataProvider(final List<PlotDataItem<XTYPE>> data)
@@ -45,6 +48,7 @@ public class ArrayPlotDataProvider<XTYPE extends Comparable<XTYPE>> implements P
         try
         {
             data.add(item);
+            ++modifications;
         }
         finally
         {
@@ -69,4 +73,10 @@ public class ArrayPlotDataProvider<XTYPE extends Comparable<XTYPE>> implements P
     {
         return data.get(index);
     }
+
+    @Override
+    public long getModificationCount()
+    {
+        return modifications;
+    }
 }
@@ -55,4 +55,19 @@ public interface PlotDataProvider<XTYPE extends Comparable<XTYPE>>
      *  @return The Sample of given index.
      */
     public PlotDataItem<XTYPE> get(int index);
+
+    /** Modification count of the samples.
+     *  <p>
+     *  Providers that track changes return a count that
+     *  changes whenever samples are added, removed or replaced.
+     *  The plot may then reuse information computed from the samples
+     *  while the count remains the same.
+     *  Caller must hold the lock.
+     *
+     *  @return Modification count, or -1 if changes are not tracked
+     */
+    public default long getModificationCount()
+    {
+        return -1;
+    }
 }
@@ -0,0 +1,27 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.swt.rtplot.data;
+
+/** Optional interface for a {@link PlotDataProvider}
+ *  that can provide the range of its values
+ *  without iterating over all samples.
+ *
+ *  <p>Used for auto-scaling.
+ *  Data providers that don't implement this interface
+ *  are scanned sample by sample.
+ *
+ *  @author Kay Kasemir
+ */
+public interface ValueRangeProvider
+{
+    /** Caller must hold the read lock of the {@link PlotDataProvider}.
+     *  @return Range of the finite values.
+     *          Low will be larger than high if there are no finite values.
+     */
+    public ValueRange getValueRange();
+}
@@ -0,0 +1,209 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.swt.rtplot.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.csstudio.swt.rtplot.data.PlotDataItem;
+import org.csstudio.swt.rtplot.data.PlotDataProvider;
+import org.csstudio.swt.rtplot.internal.util.ScreenTransform;
+
+/** Samples of a {@link PlotDataProvider} reduced to what's visible on screen
+ *
+ *  <p>All samples that fall into the same pixel column are
+ *  reduced to the first and last sample of the column,
+ *  the samples with minimum and maximum value,
+ *  the samples with the lowest 'min' and highest 'max',
+ *  and the first sample without a value to preserve gaps.
+ *  Drawing those in their original order results in the same pixels,
+ *  but the number of samples depends on the width of the plot,
+ *  not the number of samples in the original data.
+ *
+ *  <p>Point markers would be drawn for each sample,
+ *  so the decimated samples only result in the same pixels
+ *  for lines, not for point markers.
+ *
+ *  <p>The decimated samples remain valid while the
+ *  {@link PlotDataProvider#getModificationCount()} of the data and
+ *  the horizontal transformation stay the same.
+ *  For data that does not track modifications, the samples
+ *  need to be decimated again for each use.
+ *
+ *  @param <XTYPE> Data type of horizontal axis
+ *  @author Kay Kasemir
+ */
+public class DecimatedData<XTYPE extends Comparable<XTYPE>> implements PlotDataProvider<XTYPE>
+{
+    /** Maximum number of samples kept per pixel column */
+    final private static int PER_COLUMN = 7;
+
+    final private Lock lock = new ReentrantLock();
+
+    /** Original data, its modification count and size */
+    final private PlotDataProvider<XTYPE> data;
+    final private long modifications;
+    final private int size;
+
+    /** Pixel range */
+    final private int x_min, x_max;
+
+    /** Positions at the start and end of the pixel range */
+    final private XTYPE start, end;
+
+    /** Decimated samples */
+    final private List<PlotDataItem<XTYPE>> samples;
+
+    /** Decimate data.
+     *  <p>Caller must hold the lock of the data.
+     *  @param data Data to decimate
+     *  @param x_transform Horizontal transformation
+     *  @param x_min Leftmost pixel. Samples further left are placed in this column
+     *  @param x_max Rightmost pixel. Samples further right are placed in this column
+     */
+    public DecimatedData(final PlotDataProvider<XTYPE> data, final ScreenTransform<XTYPE> x_transform,
+                         final int x_min, final int x_max)
+    {
+        this.data = data;
+        modifications = data.getModificationCount();
+        size = data.size();
+        this.x_min = x_min;
+        this.x_max = x_max;
+        start = x_transform.inverse(x_min);
+        end = x_transform.inverse(x_max);
+        samples = decimate(x_transform);
+    }
+
+    /** Check if decimated samples still apply.
+     *  <p>Caller must hold the lock of the data.
+     *  @param data Data
+     *  @param x_transform Horizontal transformation
+     *  @param x_min Leftmost pixel
+     *  @param x_max Rightmost pixel
+     *  @return <code>true</code> if this decimation is valid for the data and transformation
+     */
+    public boolean isValid(final PlotDataProvider<XTYPE> data, final ScreenTransform<XTYPE> x_transform,
+                           final int x_min, final int x_max)
+    {
+        return data == this.data       &&
+               modifications >= 0      &&
+               data.getModificationCount() == modifications  &&
+               data.size() == size     &&
+               x_min == this.x_min     &&
+               x_max == this.x_max     &&
+               start.equals(x_transform.inverse(x_min))  &&
+               end.equals(x_transform.inverse(x_max));
+    }
+
+    /** @param x_transform Horizontal transformation
+     *  @return Decimated samples
+     */
+    private List<PlotDataItem<XTYPE>> decimate(final ScreenTransform<XTYPE> x_transform)
+    {
+        final List<PlotDataItem<XTYPE>> result = new ArrayList<>(Math.min(size, PER_COLUMN * (x_max - x_min + 1)));
+        // Indices of samples to keep for the current column
+        final int[] keep = new int[PER_COLUMN];
+        int column = Integer.MIN_VALUE;
+        int first_i = -1, last_i = -1, min_i = -1, max_i = -1, low_i = -1, high_i = -1, gap_i = -1;
+        double min = 0, max = 0, low = 0, high = 0;
+        for (int i=0; i<size; ++i)
+        {
+            final PlotDataItem<XTYPE> item = data.get(i);
+            final int x = clipX(Math.round(x_transform.transform(item.getPosition())));
+            if (x != column)
+            {
+                addColumn(result, keep, first_i, last_i, min_i, max_i, low_i, high_i, gap_i);
+                column = x;
+                first_i = i;
+                min_i = max_i = low_i = high_i = gap_i = -1;
+            }
+            last_i = i;
+            final double value = item.getValue();
+            if (Double.isNaN(value))
+            {
+                if (gap_i < 0)
+                    gap_i = i;
+                continue;
+            }
+            if (min_i < 0  ||  value < min)
+            {
+                min = value;
+                min_i = i;
+            }
+            if (max_i < 0  ||  value > max)
+            {
+                max = value;
+                max_i = i;
+            }
+            final double item_min = item.getMin();
+            if (! Double.isNaN(item_min)  &&  (low_i < 0  ||  item_min < low))
+            {
+                low = item_min;
+                low_i = i;
+            }
+            final double item_max = item.getMax();
+            if (! Double.isNaN(item_max)  &&  (high_i < 0  ||  item_max > high))
+            {
+                high = item_max;
+                high_i = i;
+            }
+        }
+        addColumn(result, keep, first_i, last_i, min_i, max_i, low_i, high_i, gap_i);
+        return result;
+    }
+
+    /** Add samples of one column in their original order
+     *  @param result List to which samples are added
+     *  @param keep Buffer for sorting the indices
+     *  @param indices Indices of samples to keep, -1 if not used
+     */
+    private void addColumn(final List<PlotDataItem<XTYPE>> result, final int[] keep, final int... indices)
+    {
+        int n = 0;
+        for (int index : indices)
+            if (index >= 0)
+                keep[n++] = index;
+        Arrays.sort(keep, 0, n);
+        for (int i=0; i<n; ++i)
+            if (i == 0  ||  keep[i] != keep[i-1])
+                result.add(data.get(keep[i]));
+    }
+
+    private int clipX(final long x)
+    {
+        if (x < x_min)
+            return x_min;
+        if (x > x_max)
+            return x_max;
+        return (int) x;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Lock getLock()
+    {
+        return lock;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int size()
+    {
+        return samples.size();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public PlotDataItem<XTYPE> get(final int index)
+    {
+        return samples.get(index);
+    }
+}
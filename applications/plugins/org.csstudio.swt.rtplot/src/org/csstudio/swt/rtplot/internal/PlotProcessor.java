@@ -26,6 +26,7 @@ import org.csstudio.swt.rtplot.data.PlotDataItem;
 import org.csstudio.swt.rtplot.data.PlotDataProvider;
 import org.csstudio.swt.rtplot.data.PlotDataSearch;
 import org.csstudio.swt.rtplot.data.ValueRange;
+import org.csstudio.swt.rtplot.data.ValueRangeProvider;
 import org.csstudio.swt.rtplot.internal.util.Log10;
 import org.csstudio.swt.rtplot.undo.AddAnnotationAction;
 import org.csstudio.swt.rtplot.undo.ChangeAxisRanges;
@@ -65,6 +66,8 @@ public class PlotProcessor<XTYPE extends Comparable<XTYPE>>
                 data.getLock().lock();
                 try
                 {
+                    if (data instanceof ValueRangeProvider)
+                        return ((ValueRangeProvider) data).getValueRange();
                     final int N = data.size();
                     for (int i=0; i<N; ++i)
                     {
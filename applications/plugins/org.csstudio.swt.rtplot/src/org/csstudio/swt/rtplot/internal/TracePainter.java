@@ -7,6 +7,9 @@
  ******************************************************************************/
 package org.csstudio.swt.rtplot.internal;
 
+import java.util.Map;
+import java.util.WeakHashMap;
+
 import org.csstudio.swt.rtplot.Axis;
 import org.csstudio.swt.rtplot.PointType;
 import org.csstudio.swt.rtplot.SWTMediaPool;
@@ -32,10 +35,27 @@ public class TracePainter<XTYPE extends Comparable<XTYPE>>
     // plus it works better when using dashed or wide lines,
     // but it requires an int[] array of varying size.
     // IntList turned out to be about 3x faster than ArrayList<Integer>.
+    //
+    // Traces with many more samples than pixels are first reduced
+    // to a few samples per pixel column, see DecimatedData.
+    // The decimated samples are cached until the modification count
+    // of the data or the x axis change,
+    // so for example changes to the value axis or other traces
+    // don't require walking all samples again.
+    // Point markers are drawn for all samples, since the decimated
+    // samples would skip the markers of samples within a pixel column.
 
     /** Initial {@link IntList} size */
     private static final int INITIAL_ARRAY_SIZE = 2048;
 
+    /** Decimate traces with more than this many samples per pixel */
+    private static final int DECIMATION_THRESHOLD = 4;
+
+    /** Decimated samples by trace.
+     *  Only accessed by the thread that paints the plot.
+     */
+    final private Map<Trace<XTYPE>, DecimatedData<XTYPE>> decimated = new WeakHashMap<>();
+
     /** Fudge to avoid clip errors
      *
      *  <p>When coordinates are way outside the clip region,
@@ -100,11 +120,14 @@ public class TracePainter<XTYPE extends Comparable<XTYPE>>
         //
         // For now, main point is that this happens in non-UI thread,
         // so the slower the better to test UI responsiveness.
-        final PlotDataProvider<XTYPE> data = trace.getData();
-        data.getLock().lock();
+        final PlotDataProvider<XTYPE> trace_data = trace.getData();
+        trace_data.getLock().lock();
         try
         {
             final TraceType type = trace.getType();
+            final PlotDataProvider<XTYPE> data = type == TraceType.NONE
+                ? trace_data
+                : decimate(trace, trace_data, x_transform, bounds);
             switch (type)
             {
             case NONE:
@@ -155,19 +178,43 @@ public class TracePainter<XTYPE extends Comparable<XTYPE>>
             case DIAMONDS:
             case XMARKS:
             case TRIANGLES:
-                drawPoints(gc, x_transform, y_axis, data, point_type, trace.getPointSize());
+                drawPoints(gc, x_transform, y_axis, trace_data, point_type, trace.getPointSize());
                 break;
             }
         }
         finally
         {
-            data.getLock().unlock();
+            trace_data.getLock().unlock();
         }
         gc.setLineWidth(old_width);
         gc.setBackground(old_bg);
         gc.setForeground(old_color);
     }
 
+    /** Get data to draw, decimated if there are many samples per pixel
+     *  @param trace Trace
+     *  @param data Data of the trace, caller holds its lock
+     *  @param x_transform Coordinate transform used by the x axis
+     *  @param bounds Bounds of the plot
+     *  @return Data to draw
+     */
+    final private PlotDataProvider<XTYPE> decimate(final Trace<XTYPE> trace, final PlotDataProvider<XTYPE> data,
+                                                   final ScreenTransform<XTYPE> x_transform, final Rectangle bounds)
+    {
+        if (data.size() <= DECIMATION_THRESHOLD * Math.max(1, bounds.width))
+        {
+            decimated.remove(trace);
+            return data;
+        }
+        DecimatedData<XTYPE> result = decimated.get(trace);
+        if (result == null  ||  ! result.isValid(data, x_transform, x_min, x_max))
+        {
+            result = new DecimatedData<>(data, x_transform, x_min, x_max);
+            decimated.put(trace, result);
+        }
+        return result;
+    }
+
     /** Draw values of data as staircase line
      *  @param gc GC
      *  @param x_transform Horizontal axis
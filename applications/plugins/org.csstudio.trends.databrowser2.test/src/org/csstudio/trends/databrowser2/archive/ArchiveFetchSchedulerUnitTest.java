@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.trends.databrowser2.archive;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/** JUnit test of the {@link ArchiveFetchScheduler}
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class ArchiveFetchSchedulerUnitTest
+{
+    /** Request that tracks how many requests run concurrently */
+    static class TestRequest extends ArchiveFetchScheduler.Request
+    {
+        final String server;
+        final AtomicInteger active;
+        final AtomicInteger max_active;
+        final CountDownLatch done;
+        volatile boolean ran = false;
+
+        TestRequest(final String server, final AtomicInteger active,
+                    final AtomicInteger max_active, final CountDownLatch done)
+        {
+            this.server = server;
+            this.active = active;
+            this.max_active = max_active;
+            this.done = done;
+        }
+
+        @Override
+        public String getServer()
+        {
+            return server;
+        }
+
+        @Override
+        public void run()
+        {
+            ran = true;
+            final int now = active.incrementAndGet();
+            int max = max_active.get();
+            while (now > max  &&  !max_active.compareAndSet(max, now))
+                max = max_active.get();
+            try
+            {
+                Thread.sleep(50);
+            }
+            catch (InterruptedException ex)
+            {
+                // Ignore
+            }
+            active.decrementAndGet();
+        }
+
+        @Override
+        protected void done()
+        {
+            done.countDown();
+        }
+    }
+
+    @Test(timeout=10000)
+    public void testLimitPerServer() throws Exception
+    {
+        final ExecutorService executor = Executors.newCachedThreadPool();
+        final ArchiveFetchScheduler scheduler = new ArchiveFetchScheduler(2, executor);
+
+        final AtomicInteger active_a = new AtomicInteger(), max_a = new AtomicInteger();
+        final AtomicInteger active_b = new AtomicInteger(), max_b = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(20);
+        for (int i=0; i<10; ++i)
+        {
+            scheduler.submit(new TestRequest("a", active_a, max_a, done));
+            scheduler.submit(new TestRequest("b", active_b, max_b, done));
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        // At most 2 per server, but both servers in parallel
+        assertEquals(2, max_a.get());
+        assertEquals(2, max_b.get());
+        assertEquals(0, scheduler.getPendingRequests("a"));
+        executor.shutdown();
+    }
+
+    @Test(timeout=10000)
+    public void testCancelQueued() throws Exception
+    {
+        final ExecutorService executor = Executors.newCachedThreadPool();
+        final ArchiveFetchScheduler scheduler = new ArchiveFetchScheduler(1, executor);
+
+        final AtomicInteger active = new AtomicInteger(), max = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(3);
+        final TestRequest first = new TestRequest("a", active, max, done);
+        final TestRequest stale = new TestRequest("a", active, max, done);
+        final TestRequest last = new TestRequest("a", active, max, done);
+        scheduler.submit(first);
+        scheduler.submit(stale);
+        scheduler.submit(last);
+        assertEquals(3, scheduler.getPendingRequests("a"));
+
+        // Cancelled request is removed from the queue and never runs
+        stale.cancel();
+        assertTrue(scheduler.unqueue(stale));
+        assertFalse(scheduler.unqueue(stale));
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertTrue(first.ran);
+        assertFalse(stale.ran);
+        assertTrue(last.ran);
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.trends.databrowser2.export;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+
+import org.epics.vtype.AlarmSeverity;
+import org.junit.Test;
+
+import com.jmatio.io.MatFileReader;
+import com.jmatio.types.MLCell;
+import com.jmatio.types.MLChar;
+import com.jmatio.types.MLDouble;
+import com.jmatio.types.MLStructure;
+
+/** JUnit test of the MatFileStreamWriter, reading the result via jmatio
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class MatFileStreamWriterUnitTest
+{
+    @Test
+    public void testStreamedChannels() throws Exception
+    {
+        final File file = File.createTempFile("stream_test", ".mat");
+        file.deleteOnExit();
+        final int N = 10000;
+        final MatFileStreamWriter writer = new MatFileStreamWriter(file.getPath());
+        // Channel with samples, then empty channel
+        writer.startChannel("channel0", "pv:ramp");
+        for (int i=0; i<N; ++i)
+            writer.addSample("2015-01-01 00:00:" + i, i * 0.5, i % 3 == 0 ? AlarmSeverity.MINOR : AlarmSeverity.NONE);
+        writer.endChannel();
+        writer.startChannel("channel1", "pv:empty");
+        writer.endChannel();
+        writer.close();
+
+        final MatFileReader reader = new MatFileReader(file);
+        final MLStructure channel0 = (MLStructure) reader.getMLArray("channel0");
+        assertThat(((MLChar) channel0.getField("name")).getString(0), equalTo("pv:ramp"));
+        final MLCell time = (MLCell) channel0.getField("time");
+        final MLDouble value = (MLDouble) channel0.getField("value");
+        final MLCell severity = (MLCell) channel0.getField("severity");
+        assertThat(time.getM(), equalTo(N));
+        assertThat(value.getM(), equalTo(N));
+        assertThat(severity.getM(), equalTo(N));
+        for (int i=0; i<N; ++i)
+        {
+            assertThat(((MLChar) time.get(i)).getString(0), equalTo("2015-01-01 00:00:" + i));
+            assertThat(value.get(i), equalTo(i * 0.5));
+            assertThat(((MLChar) severity.get(i)).getString(0), equalTo(i % 3 == 0 ? "MINOR" : "NONE"));
+        }
+
+        final MLStructure channel1 = (MLStructure) reader.getMLArray("channel1");
+        assertThat(((MLChar) channel1.getField("name")).getString(0), equalTo("pv:empty"));
+        assertThat(channel1.getField("value").getM(), equalTo(0));
+    }
+}
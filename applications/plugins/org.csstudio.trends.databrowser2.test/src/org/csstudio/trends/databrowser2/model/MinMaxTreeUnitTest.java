@@ -0,0 +1,68 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.trends.databrowser2.model;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/** JUnit test for MinMaxTree
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class MinMaxTreeUnitTest
+{
+    @Test
+    public void testEmpty()
+    {
+        final MinMaxTree tree = new MinMaxTree(10);
+        assertThat(tree.getMin(), equalTo(Double.POSITIVE_INFINITY));
+        assertThat(tree.getMax(), equalTo(Double.NEGATIVE_INFINITY));
+        tree.set(3, Double.NaN);
+        assertThat(tree.getMin(), equalTo(Double.POSITIVE_INFINITY));
+        tree.set(3, 42.0);
+        assertThat(tree.getMin(), equalTo(42.0));
+        assertThat(tree.getMax(), equalTo(42.0));
+        tree.clear();
+        assertThat(tree.getMax(), equalTo(Double.NEGATIVE_INFINITY));
+    }
+
+    /** Use like a ring buffer, compare with brute force */
+    @Test
+    public void testRingBuffer()
+    {
+        final int capacity = 1000;
+        final double[] ring = new double[capacity];
+        final MinMaxTree tree = new MinMaxTree(capacity);
+        final Random random = new Random(42);
+        int next = 0, size = 0;
+        for (int i=0; i<10*capacity; ++i)
+        {
+            // Some gaps, trend that moves old extremes out of the buffer
+            final double value = random.nextInt(20) == 0 ? Double.NaN : Math.sin(i * 0.001) * i + random.nextGaussian();
+            ring[next] = value;
+            tree.set(next, value);
+            next = (next + 1) % capacity;
+            if (size < capacity)
+                ++size;
+
+            double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+            for (int s=0; s<size; ++s)
+                if (! Double.isNaN(ring[s]))
+                {
+                    min = Math.min(min, ring[s]);
+                    max = Math.max(max, ring[s]);
+                }
+            assertThat(tree.getMin(), equalTo(min));
+            assertThat(tree.getMax(), equalTo(max));
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.trends.databrowser2.model;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.junit.Assert.assertThat;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.csstudio.archive.vtype.ArchiveVNumber;
+import org.csstudio.archive.vtype.ArchiveVStatistics;
+import org.csstudio.archive.vtype.ArchiveVString;
+import org.epics.util.time.Timestamp;
+import org.epics.vtype.AlarmSeverity;
+import org.epics.vtype.Display;
+import org.epics.vtype.VNumber;
+import org.epics.vtype.VStatistics;
+import org.epics.vtype.VString;
+import org.epics.vtype.VType;
+import org.epics.vtype.ValueFactory;
+import org.junit.Test;
+
+/** JUnit test for SampleColumns
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class SampleColumnsUnitTest
+{
+    final private static Display display = ValueFactory.displayNone();
+
+    /** @param start First time stamp and value
+     *  @param end Last time stamp and value
+     *  @param offset Offset added to the values
+     *  @return Samples start..end
+     */
+    private static List<VType> makeValues(final int start, final int end, final double offset)
+    {
+        final List<VType> values = new ArrayList<>();
+        for (int i=start; i<=end; ++i)
+            values.add(new ArchiveVNumber(Timestamp.of(i, 0), AlarmSeverity.NONE, "OK", display, i + offset));
+        return values;
+    }
+
+    /** @param samples Samples
+     *  @return "time=value, ..."
+     */
+    private static String toString(final SampleColumns samples)
+    {
+        final StringBuilder buf = new StringBuilder();
+        for (int i=0; i<samples.size(); ++i)
+        {
+            if (i > 0)
+                buf.append(", ");
+            final PlotSample sample = samples.get(i);
+            buf.append(sample.getPosition().getEpochSecond()).append('=').append((int) sample.getValue());
+        }
+        return buf.toString();
+    }
+
+    @Test
+    public void testMerge()
+    {
+        final SampleColumns samples = new SampleColumns(new AtomicInteger(0));
+        samples.merge("A", makeValues(10, 14, 0));
+        assertThat(toString(samples), equalTo("10=10, 11=11, 12=12, 13=13, 14=14"));
+
+        // Before existing samples
+        samples.merge("A", makeValues(5, 6, 0));
+        assertThat(toString(samples), equalTo("5=5, 6=6, 10=10, 11=11, 12=12, 13=13, 14=14"));
+
+        // Replace overlapping range inside existing samples
+        samples.merge("B", makeValues(11, 12, 100));
+        assertThat(toString(samples), equalTo("5=5, 6=6, 10=10, 11=111, 12=112, 13=13, 14=14"));
+
+        // Replace fewer samples than existing ones
+        final List<VType> one = makeValues(8, 8, 0);
+        one.addAll(makeValues(13, 13, 200));
+        samples.merge("C", one);
+        assertThat(toString(samples), equalTo("5=5, 6=6, 8=8, 13=213, 14=14"));
+
+        // Overlap the start
+        samples.merge("D", makeValues(0, 5, 300));
+        assertThat(toString(samples), equalTo("0=300, 1=301, 2=302, 3=303, 4=304, 5=305, 6=6, 8=8, 13=213, 14=14"));
+
+        // Extend the end
+        samples.merge("E", makeValues(14, 16, 400));
+        assertThat(toString(samples), equalTo("0=300, 1=301, 2=302, 3=303, 4=304, 5=305, 6=6, 8=8, 13=213, 14=414, 15=415, 16=416"));
+
+        assertThat(samples.findSampleLessThan(Instant.ofEpochSecond(13)), equalTo(7));
+        assertThat(samples.get(0).getSource(), equalTo("D"));
+        assertThat(samples.get(8).getSource(), equalTo("C"));
+
+        samples.clear();
+        assertThat(samples.size(), equalTo(0));
+    }
+
+    @Test
+    public void testVTypes()
+    {
+        final AtomicInteger waveform_index = new AtomicInteger(0);
+        final SampleColumns samples = new SampleColumns(waveform_index);
+        final List<VType> values = new ArrayList<>();
+        values.add(new ArchiveVNumber(Timestamp.of(1, 500), AlarmSeverity.MINOR, "Low", display, 3.14));
+        values.add(new ArchiveVNumber(Timestamp.of(2, 0), AlarmSeverity.NONE, "OK", display, 42L));
+        values.add(new ArchiveVStatistics(Timestamp.of(3, 0), AlarmSeverity.NONE, "OK", display, 2.0, 1.0, 3.0, 0.5, 10));
+        values.add(new ArchiveVString(Timestamp.of(4, 0), AlarmSeverity.INVALID, "Disconnected", "Text"));
+        samples.merge("Test", values);
+        assertThat(samples.size(), equalTo(4));
+
+        VType value = samples.get(0).getVType();
+        assertThat(value, instanceOf(VNumber.class));
+        assertThat(((VNumber)value).getValue().doubleValue(), equalTo(3.14));
+        assertThat(((VNumber)value).getAlarmSeverity(), equalTo(AlarmSeverity.MINOR));
+        assertThat(((VNumber)value).getAlarmName(), equalTo("Low"));
+        assertThat(((VNumber)value).getTimestamp(), equalTo(Timestamp.of(1, 500)));
+
+        value = samples.get(1).getVType();
+        assertThat(((VNumber)value).getValue(), instanceOf(Long.class));
+
+        final PlotSample stats = samples.get(2);
+        assertThat(stats.getMin(), equalTo(1.0));
+        assertThat(stats.getMax(), equalTo(3.0));
+        assertThat(stats.getStdDev(), equalTo(0.5));
+        assertThat(((VStatistics)stats.getVType()).getNSamples(), equalTo(10));
+
+        assertThat(samples.get(3).getVType(), instanceOf(VString.class));
+        assertThat(Double.isNaN(samples.get(3).getValue()), equalTo(true));
+
+        // Scalars have no value for other waveform elements
+        waveform_index.set(1);
+        assertThat(Double.isNaN(samples.get(0).getValue()), equalTo(true));
+        assertThat(Double.isNaN(samples.getValue(0)), equalTo(true));
+    }
+}
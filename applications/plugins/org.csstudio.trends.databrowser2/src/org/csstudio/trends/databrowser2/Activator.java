@@ -13,6 +13,7 @@ import java.util.concurrent.Executors;
 import java.util.logging.Logger;
 
 import org.csstudio.swt.rtplot.util.NamedThreadFactory;
+import org.csstudio.trends.databrowser2.archive.ArchiveFetchJob;
 import org.csstudio.utility.singlesource.SingleSourcePlugin;
 import org.csstudio.utility.singlesource.UIHelper.UI;
 import org.eclipse.core.runtime.Platform;
@@ -72,6 +73,7 @@ public class Activator extends AbstractUIPlugin
     @Override
     public void stop(BundleContext context) throws Exception
     {
+        ArchiveFetchJob.closeCache();
         plugin = null;
         super.stop(context);
     }
@@ -7,15 +7,19 @@
  ******************************************************************************/
 package org.csstudio.trends.databrowser2.archive;
 
+import java.io.File;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Future;
 import java.util.logging.Level;
 
 import org.csstudio.apputil.time.BenchmarkTimer;
+import org.csstudio.archive.reader.ArchiveCache;
 import org.csstudio.archive.reader.ArchiveReader;
 import org.csstudio.archive.reader.ArchiveRepository;
+import org.csstudio.archive.reader.CachingArchiveReader;
 import org.csstudio.archive.reader.ValueIterator;
 import org.csstudio.trends.databrowser2.Activator;
 import org.csstudio.trends.databrowser2.Messages;
@@ -36,6 +40,13 @@ import org.epics.vtype.VType;
  *  Actually spawns another thread so that the 'main' job can
  *  poll the progress monitor for cancellation and ask the secondary
  *  thread to cancel.
+ *  <p>
+ *  The archive data sources are queried in parallel via the
+ *  {@link ArchiveFetchScheduler}, which limits the number of
+ *  concurrent requests to each archive server across all jobs.
+ *  <p>
+ *  Samples are cached in an {@link ArchiveCache} shared by all jobs,
+ *  so zooming and panning only fetches time ranges that are not cached.
  *  @author Kay Kasemir
  */
 public class ArchiveFetchJob extends Job
@@ -43,6 +54,12 @@ public class ArchiveFetchJob extends Job
     /** Poll period in millisecs */
     private static final int POLL_PERIOD_MS = 1000;
 
+    /** Cache shared by all jobs, <code>null</code> when disabled */
+    private static ArchiveCache cache = null;
+
+    /** Has the cache been initialized? */
+    private static boolean cache_initialized = false;
+
     /** Item for which to fetch samples */
     final private PVItem item;
 
@@ -52,6 +69,137 @@ public class ArchiveFetchJob extends Job
     /** Listener that's notified when (if) we completed OK */
     final private ArchiveFetchJobListener listener;
 
+    /** Request for the samples from one archive data source */
+    class SourceRequest extends ArchiveFetchScheduler.Request
+    {
+        final private ArchiveDataSource archive;
+
+        /** Index of the archive data source, used for progress message */
+        final private int index;
+
+        /** Worker that's waiting for this request */
+        final private WorkerThread worker;
+
+        /** Archive reader that's currently queried.
+         *  Synchronize 'this' on access.
+         */
+        private ArchiveReader reader = null;
+
+        SourceRequest(final WorkerThread worker, final ArchiveDataSource archive, final int index)
+        {
+            this.worker = worker;
+            this.archive = archive;
+            this.index = index;
+        }
+
+        @Override
+        public String getServer()
+        {
+            return archive.getUrl();
+        }
+
+        @Override
+        public void cancel()
+        {
+            super.cancel();
+            synchronized (this)
+            {
+                if (reader != null)
+                    reader.cancel();
+            }
+        }
+
+        @Override
+        public void run()
+        {
+            worker.setMessage(archive, index);
+            try
+            {
+                final ArchiveReader the_reader;
+                synchronized (this)
+                {
+                    final ArchiveReader archive_reader = ArchiveRepository.getInstance().getArchiveReader(archive.getUrl());
+                    final ArchiveCache shared_cache = getCache();
+                    the_reader = reader = (shared_cache == null)
+                        ? archive_reader
+                        : new CachingArchiveReader(archive_reader, shared_cache);
+                }
+                final ValueIterator value_iter;
+                if (item.getRequestType() == RequestType.RAW)
+                    value_iter = the_reader.getRawValues(archive.getKey(), item.getResolvedName(),
+                                                         TimeHelper.toTimestamp(start), TimeHelper.toTimestamp(end));
+                else
+                    value_iter = the_reader.getOptimizedValues(archive.getKey(), item.getResolvedName(),
+                                                               TimeHelper.toTimestamp(start), TimeHelper.toTimestamp(end),
+                                                               Preferences.getPlotBins());
+                // Get samples into array
+                final List<VType> result = new ArrayList<VType>();
+                while (value_iter.hasNext()  &&  !isCancelled())
+                    result.add(value_iter.next());
+                value_iter.close();
+                // Merge as soon as this data source is done,
+                // not waiting for the other data sources
+                if (! isCancelled())
+                    item.mergeArchivedSamples(the_reader.getServerName(), result);
+            }
+            catch (Exception ex)
+            {   // Tell listener unless it's the result of a 'cancel'?
+                if (! isCancelled())
+                    listener.archiveFetchFailed(ArchiveFetchJob.this, archive, ex);
+            }
+            finally
+            {
+                synchronized (this)
+                {
+                    if (reader != null)
+                        reader.close();
+                    reader = null;
+                }
+            }
+        }
+
+        @Override
+        protected void done()
+        {
+            worker.requestDone();
+        }
+
+        @SuppressWarnings("nls")
+        @Override
+        public String toString()
+        {
+            return archive.getName() + " request for " + ArchiveFetchJob.this.toString();
+        }
+    }
+
+    /** @return Cache shared by all jobs, <code>null</code> when disabled */
+    private static synchronized ArchiveCache getCache()
+    {
+        if (! cache_initialized)
+        {
+            cache_initialized = true;
+            final int samples = Preferences.getArchiveCacheSamples();
+            if (samples > 0)
+            {
+                final String directory = Preferences.getArchiveCacheDirectory();
+                cache = directory.isEmpty()
+                    ? new ArchiveCache(samples)
+                    : new ArchiveCache(samples, new File(directory), Preferences.getArchiveCacheDiskMB() * 1024 * 1024);
+            }
+        }
+        return cache;
+    }
+
+    /** Close the cache shared by all jobs, deleting its files on disk */
+    public static synchronized void closeCache()
+    {
+        if (cache != null)
+        {
+            cache.close();
+            cache = null;
+        }
+    }
+
     /** Thread that performs the actual background work.
      *
      *  Instead of directly accessing the archive, ArchiveFetchJob launches
@@ -59,16 +207,29 @@ public class ArchiveFetchJob extends Job
      *  can then poll the progress monitor for cancellation and if
      *  necessary interrupt the WorkerThread which might be 'stuck'
      *  in a long running operation.
+     *  <p>
+     *  The WorkerThread submits one request per archive data source
+     *  to the {@link ArchiveFetchScheduler}, so the data sources are
+     *  queried in parallel, and waits for all of them.
      */
     class WorkerThread implements Runnable
     {
         private String message = ""; //$NON-NLS-1$
         private volatile boolean cancelled = false;
 
-        /** Archive reader that's currently queried.
-         *  Synchronize 'this' on access.
-         */
-        private ArchiveReader reader = null;
+        /** Requests, one per archive data source */
+        final private List<SourceRequest> requests = new ArrayList<>();
+
+        /** Counts down as requests are done */
+        final private CountDownLatch pending;
+
+        WorkerThread()
+        {
+            final ArchiveDataSource archives[] = item.getArchiveDataSources();
+            for (int i=0; i<archives.length; ++i)
+                requests.add(new SourceRequest(this, archives[i], i));
+            pending = new CountDownLatch(requests.size());
+        }
 
         /** @return Message that somehow indicates progress */
         public synchronized String getMessage()
@@ -76,14 +237,37 @@ public class ArchiveFetchJob extends Job
             return message;
         }
 
+        /** @param archive Data source that's being queried
+         *  @param index Index of that data source
+         */
+        synchronized void setMessage(final ArchiveDataSource archive, final int index)
+        {
+            // Display "N/total", using '1' for the first sub-archive.
+            message = NLS.bind(Messages.ArchiveFetchDetailFmt,
+                    new Object[]
+                    {
+                        archive.getName(),
+                        (index+1),
+                        requests.size()
+                    });
+        }
+
+        /** Called by each request when done */
+        void requestDone()
+        {
+            pending.countDown();
+        }
+
         /** Request thread to cancel its operation */
-        public synchronized void cancel()
+        public void cancel()
         {
             cancelled = true;
-            synchronized (this)
+            final ArchiveFetchScheduler scheduler = ArchiveFetchScheduler.getInstance();
+            for (SourceRequest request : requests)
             {
-                if (reader != null)
-                    reader.cancel();
+                request.cancel();
+                // Drop request that's still queued
+                scheduler.unqueue(request);
             }
         }
 
@@ -92,61 +276,20 @@ public class ArchiveFetchJob extends Job
         public void run()
         {
             Activator.getLogger().log(Level.FINE, "Starting {0}", ArchiveFetchJob.this); //$NON-NLS-1$
-            final int bins = Preferences.getPlotBins();
-            final ArchiveDataSource archives[] = item.getArchiveDataSources();
-            for (int i=0; i<archives.length && !cancelled; ++i)
+            final ArchiveFetchScheduler scheduler = ArchiveFetchScheduler.getInstance();
+            for (SourceRequest request : requests)
             {
-                final ArchiveDataSource archive = archives[i];
-                final String url = archive.getUrl();
-                // Display "N/total", using '1' for the first sub-archive.
-                synchronized  (this)
-                {
-                    message = NLS.bind(Messages.ArchiveFetchDetailFmt,
-                            new Object[]
-                            {
-                                archive.getName(),
-                                (i+1),
-                                archives.length
-                            });
-                }
-                try
-                {
-                    final ArchiveReader the_reader;
-                    synchronized (this)
-                    {
-                        the_reader = reader = ArchiveRepository.getInstance().getArchiveReader(url);
-                    }
-                    final ValueIterator value_iter;
-                    if (item.getRequestType() == RequestType.RAW)
-                        value_iter = the_reader.getRawValues(archive.getKey(), item.getResolvedName(),
-                                                             TimeHelper.toTimestamp(start), TimeHelper.toTimestamp(end));
-                    else
-                        value_iter = the_reader.getOptimizedValues(archive.getKey(), item.getResolvedName(),
-                                                                   TimeHelper.toTimestamp(start), TimeHelper.toTimestamp(end), bins);
-                    // Get samples into array
-                    final List<VType> result = new ArrayList<VType>();
-                    while (value_iter.hasNext())
-                        result.add(value_iter.next());
-                    item.mergeArchivedSamples(the_reader.getServerName(), result);
-                    if (cancelled)
-                        break;
-                    value_iter.close();
-                }
-                catch (Exception ex)
-                {   // Tell listener unless it's the result of a 'cancel'?
-                    if (! cancelled)
-                        listener.archiveFetchFailed(ArchiveFetchJob.this, archive, ex);
-                    // Continue with the next data source
-                }
-                finally
-                {
-                    synchronized (this)
-                    {
-                        if (reader != null)
-                            reader.close();
-                        reader = null;
-                    }
-                }
+                if (cancelled)
+                    request.cancel();
+                scheduler.submit(request);
+            }
+            try
+            {
+                pending.await();
+            }
+            catch (InterruptedException ex)
+            {
+                cancel();
             }
             if (!cancelled)
                 listener.fetchCompleted(ArchiveFetchJob.this);
@@ -161,6 +304,9 @@ public class ArchiveFetchJob extends Job
         }
     }
 
+    /** Worker of the running job, or <code>null</code> */
+    private volatile WorkerThread worker = null;
+
     /** Initialize
      *  @param item
      *  @param start
@@ -196,6 +342,7 @@ public class ArchiveFetchJob extends Job
 
         monitor.beginTask(Messages.ArchiveFetchStart, IProgressMonitor.UNKNOWN);
         final WorkerThread worker = new WorkerThread();
+        this.worker = worker;
         Future<?> done = Activator.getThreadPool().submit(worker);
         // Poll worker and progress monitor
         long seconds = 0;
@@ -218,6 +365,7 @@ public class ArchiveFetchJob extends Job
                 worker.cancel();
         }
         monitor.done();
+        this.worker = null;
 
         timer.stop();
         // System.out.println(this + ": " + timer.toString());
@@ -225,6 +373,18 @@ public class ArchiveFetchJob extends Job
         return monitor.isCanceled() ? Status.CANCEL_STATUS : Status.OK_STATUS;
     }
 
+    /** Cancel the worker right away when a running job is cancelled,
+     *  for example because zooming made its time range stale,
+     *  instead of waiting for the next poll of the progress monitor.
+     */
+    @Override
+    protected void canceling()
+    {
+        final WorkerThread safe_worker = worker;
+        if (safe_worker != null)
+            safe_worker.cancel();
+    }
+
     /** @return Debug string */
     @Override
     public String toString()
@@ -0,0 +1,223 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.trends.databrowser2.archive;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+import org.csstudio.trends.databrowser2.Activator;
+import org.csstudio.trends.databrowser2.preferences.Preferences;
+
+/** Scheduler for archive requests, shared by all {@link ArchiveFetchJob}s
+ *  <p>
+ *  Requests to different archive servers run in parallel,
+ *  but the number of concurrent requests to the same server is limited.
+ *  Additional requests for that server are queued.
+ *  Requests that are cancelled while queued are dropped from the queue
+ *  without ever contacting the server.
+ *
+ *  @author Kay Kasemir
+ */
+public class ArchiveFetchScheduler
+{
+    /** Request that can be scheduled */
+    public static abstract class Request implements Runnable
+    {
+        private volatile boolean cancelled = false;
+
+        /** @return Archive server URL, used to limit concurrent requests per server */
+        abstract public String getServer();
+
+        /** @return <code>true</code> if request has been cancelled */
+        public boolean isCancelled()
+        {
+            return cancelled;
+        }
+
+        /** Cancel the request.
+         *  <p>
+         *  A queued request will not be executed.
+         *  Derived class may override to abort a running request,
+         *  but must call the base implementation.
+         */
+        public void cancel()
+        {
+            cancelled = true;
+        }
+
+        /** Invoked when a request is done, was cancelled while queued
+         *  or failed to start
+         */
+        abstract protected void done();
+    }
+
+    /** Requests for one server */
+    private class ServerQueue
+    {
+        /** Number of running requests */
+        int active = 0;
+
+        /** Queued requests */
+        final LinkedList<Request> queue = new LinkedList<>();
+    }
+
+    /** Shared instance */
+    private static ArchiveFetchScheduler instance = null;
+
+    /** Maximum number of concurrent requests per server */
+    final private int max_per_server;
+
+    /** Executor for the requests */
+    final private ExecutorService executor;
+
+    /** Request queues by server.
+     *  Synchronize on access.
+     */
+    final private Map<String, ServerQueue> servers = new HashMap<>();
+
+    /** @return Shared instance of the scheduler */
+    public static synchronized ArchiveFetchScheduler getInstance()
+    {
+        if (instance == null)
+            instance = new ArchiveFetchScheduler(Preferences.getConcurrentRequests(), Activator.getThreadPool());
+        return instance;
+    }
+
+    /** Initialize
+     *  @param max_per_server Maximum number of concurrent requests per server
+     *  @param executor Executor for the requests
+     */
+    public ArchiveFetchScheduler(final int max_per_server, final ExecutorService executor)
+    {
+        this.max_per_server = Math.max(1, max_per_server);
+        this.executor = executor;
+    }
+
+    /** Submit a request.
+     *  <p>
+     *  Request will be executed right away, or
+     *  queued until fewer requests are active for its server.
+     *  @param request Request to submit
+     */
+    public void submit(final Request request)
+    {
+        final String server = request.getServer();
+        synchronized (servers)
+        {
+            ServerQueue queue = servers.get(server);
+            if (queue == null)
+            {
+                queue = new ServerQueue();
+                servers.put(server, queue);
+            }
+            if (queue.active >= max_per_server)
+            {
+                queue.queue.add(request);
+                return;
+            }
+            ++queue.active;
+        }
+        execute(server, request);
+    }
+
+    /** Remove a cancelled request from the queue
+     *  @param request Request to remove
+     *  @return <code>true</code> if the request was still queued
+     */
+    public boolean unqueue(final Request request)
+    {
+        final boolean removed;
+        synchronized (servers)
+        {
+            final ServerQueue queue = servers.get(request.getServer());
+            removed = queue != null  &&  queue.queue.remove(request);
+        }
+        if (removed)
+            request.done();
+        return removed;
+    }
+
+    /** @param server Server
+     *  @return Number of running and queued requests for that server
+     */
+    public int getPendingRequests(final String server)
+    {
+        synchronized (servers)
+        {
+            final ServerQueue queue = servers.get(server);
+            return queue == null ? 0 : queue.active + queue.queue.size();
+        }
+    }
+
+    /** Execute request, then start the next queued request for the server
+     *  @param server Server
+     *  @param request Request to execute
+     */
+    private void execute(final String server, final Request request)
+    {
+        try
+        {
+            executor.execute(() ->
+            {
+                try
+                {
+                    if (! request.isCancelled())
+                        request.run();
+                }
+                finally
+                {
+                    request.done();
+                    executeNext(server);
+                }
+            });
+        }
+        catch (RuntimeException ex)
+        {   // Executor was shut down
+            request.done();
+            executeNext(server);
+            throw ex;
+        }
+    }
+
+    /** Start the next queued request for a server
+     *  @param server Server
+     */
+    private void executeNext(final String server)
+    {
+        final LinkedList<Request> skipped = new LinkedList<>();
+        Request next = null;
+        synchronized (servers)
+        {
+            final ServerQueue queue = servers.get(server);
+            while (! queue.queue.isEmpty())
+            {
+                final Request request = queue.queue.removeFirst();
+                if (request.isCancelled())
+                    skipped.add(request);
+                else
+                {
+                    next = request;
+                    break;
+                }
+            }
+            if (next == null)
+            {
+                --queue.active;
+                if (queue.active <= 0)
+                    servers.remove(server);
+            }
+        }
+        // Notify outside of lock
+        for (Request request : skipped)
+            request.done();
+        if (next != null)
+            execute(server, next);
+    }
+}
@@ -7,10 +7,14 @@
  ******************************************************************************/
 package org.csstudio.trends.databrowser2.export;
 
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
 import java.io.PrintStream;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Future;
 import java.util.logging.Level;
@@ -21,6 +25,8 @@ import org.csstudio.archive.reader.ArchiveReader;
 import org.csstudio.archive.reader.ArchiveRepository;
 import org.csstudio.archive.reader.LinearValueIterator;
 import org.csstudio.archive.reader.MergingValueIterator;
+import org.csstudio.archive.reader.MultiChannelReaderAdapter;
+import org.csstudio.archive.reader.ReadAheadValueIterator;
 import org.csstudio.archive.reader.ValueIterator;
 import org.csstudio.trends.databrowser2.Activator;
 import org.csstudio.trends.databrowser2.model.ArchiveDataSource;
@@ -33,6 +39,7 @@ import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.jobs.Job;
 import org.epics.util.time.TimeDuration;
+import org.epics.vtype.VType;
 
 /** Base for Eclipse Job for exporting data from Model to file
  *  @author Kay Kasemir
@@ -41,6 +48,12 @@ import org.epics.util.time.TimeDuration;
 abstract public class ExportJob extends Job
 {
     final protected static int PROGRESS_UPDATE_LINES = 1000;
+    /** Number of samples read from a {@link ValueIterator} at once */
+    final protected static int CHUNK_SIZE = 1000;
+    /** Number of chunks read ahead while the previous chunk is written */
+    final private static int READ_AHEAD_CHUNKS = 2;
+    /** Size of buffer for file output */
+    final private static int BUFFER_SIZE = 64*1024;
     final protected String comment;
     final protected Model model;
     final protected Instant start, end;
@@ -126,7 +139,7 @@ abstract public class ExportJob extends Job
             final PrintStream out;
             if (filename != null)
             {
-                out = new PrintStream(filename);
+                out = new PrintStream(new BufferedOutputStream(new FileOutputStream(filename), BUFFER_SIZE));
                 printExportInfo(out);
             }
             else
@@ -141,7 +154,12 @@ abstract public class ExportJob extends Job
             for (ArchiveReader reader : archive_readers)
                 reader.close();
             if (out != null)
+            {   // PrintStream doesn't throw, check for write errors
+                final boolean error = out.checkError();
                 out.close();
+                if (error)
+                    throw new Exception("Error writing " + filename);
+            }
             // Wait for poller to quit
             done.get();
         }
@@ -198,6 +216,20 @@ abstract public class ExportJob extends Job
         out.println(comment);
     }
 
+    /** Read the next chunk of samples
+     *  @param iter {@link ValueIterator}
+     *  @param chunk Buffer for samples
+     *  @return Number of samples placed in the buffer, 0 at end of the iterator
+     *  @throws Exception on error
+     */
+    protected static int readChunk(final ValueIterator iter, final VType[] chunk) throws Exception
+    {
+        int count = 0;
+        while (count < chunk.length  &&  iter.hasNext())
+            chunk[count++] = iter.next();
+        return count;
+    }
+
     /** @param item ModelItem
      *  @return ValueIterator for samples in the item
      *  @throws Exception on error
@@ -242,7 +274,127 @@ abstract public class ExportJob extends Job
         // If none of the iterators work out, report the first error that we found
         if (iters.isEmpty()  &&  error != null)
             throw error;
-        // Return a merging iterator
-        return new MergingValueIterator(iters.toArray(new ValueIterator[iters.size()]));
+        // Return a merging iterator that reads ahead while caller writes the samples
+        return new ReadAheadValueIterator(new MergingValueIterator(iters.toArray(new ValueIterator[iters.size()])),
+                                          CHUNK_SIZE, READ_AHEAD_CHUNKS, Activator.getThreadPool());
+    }
+
+    /** Create iterators for several items that are read in time order
+     *
+     *  <p>Raw samples are requested for all items of an archive data source
+     *  at once, which allows for example the RDB reader to use one query
+     *  for many channels.
+     *  Since the iterators of those items may share a cursor
+     *  that is ordered by time, they are not wrapped in a
+     *  {@link ReadAheadValueIterator}, which would read
+     *  one item ahead of the others.
+     *
+     *  @param items ModelItems
+     *  @return ValueIterator for samples of each item
+     *  @throws Exception on error
+     */
+    protected ValueIterator[] createValueIterators(final List<ModelItem> items) throws Exception
+    {
+        final ValueIterator[] result = new ValueIterator[items.size()];
+        if (source == Source.PLOT  ||
+            (source == Source.OPTIMIZED_ARCHIVE  &&  optimize_parameter > 1))
+        {
+            for (int i=0; i<result.length; ++i)
+                result[i] = createValueIterator(items.get(i));
+            return result;
+        }
+
+        // Indices of the items for each archive data source
+        final Map<ArchiveDataSource, List<Integer>> archive_items = new LinkedHashMap<>();
+        for (int i=0; i<result.length; ++i)
+        {
+            final ModelItem item = items.get(i);
+            if (! (item instanceof PVItem))
+            {
+                result[i] = new ModelSampleIterator(item, start, end);
+                continue;
+            }
+            for (ArchiveDataSource archive : ((PVItem)item).getArchiveDataSources())
+            {
+                List<Integer> indices = archive_items.get(archive);
+                if (indices == null)
+                {
+                    indices = new ArrayList<>();
+                    archive_items.put(archive, indices);
+                }
+                indices.add(i);
+            }
+        }
+
+        // Read each archive data source for all its items
+        final List<List<ValueIterator>> item_iters = new ArrayList<>();
+        final Exception[] errors = new Exception[result.length];
+        for (int i=0; i<result.length; ++i)
+            item_iters.add(new ArrayList<ValueIterator>());
+        for (Map.Entry<ArchiveDataSource, List<Integer>> entry : archive_items.entrySet())
+        {
+            final ArchiveDataSource archive = entry.getKey();
+            final List<Integer> indices = entry.getValue();
+            final ArchiveReader reader = ArchiveRepository.getInstance().getArchiveReader(archive.getUrl());
+            archive_readers.add(reader);
+            final String[] names = new String[indices.size()];
+            for (int n=0; n<names.length; ++n)
+                names[n] = items.get(indices.get(n)).getName();
+            ValueIterator[] iters;
+            try
+            {
+                iters = MultiChannelReaderAdapter.adapt(reader).getRawValues(archive.getKey(),
+                        names, TimeHelper.toTimestamp(start), TimeHelper.toTimestamp(end));
+            }
+            catch (Exception ex)
+            {   // Fall back to reading each channel, which reports errors per item
+                Logger.getLogger(getClass().getName()).log(Level.FINE, "Export error for " + archive.getName(), ex);
+                iters = new ValueIterator[names.length];
+                for (int n=0; n<names.length; ++n)
+                {
+                    try
+                    {
+                        iters[n] = reader.getRawValues(archive.getKey(), names[n],
+                                TimeHelper.toTimestamp(start), TimeHelper.toTimestamp(end));
+                    }
+                    catch (Exception item_ex)
+                    {
+                        Logger.getLogger(getClass().getName()).log(Level.FINE, "Export error for " + names[n], item_ex);
+                        if (errors[indices.get(n)] == null)
+                            errors[indices.get(n)] = item_ex;
+                    }
+                }
+            }
+            for (int n=0; n<names.length; ++n)
+            {
+                if (iters[n] == null)
+                    continue;
+                ValueIterator iter = iters[n];
+                if (source == Source.LINEAR_INTERPOLATION && optimize_parameter >= 1)
+                    iter = new LinearValueIterator(iter, TimeDuration.ofSeconds(optimize_parameter));
+                item_iters.get(indices.get(n)).add(iter);
+            }
+        }
+
+        // If none of the iterators for an item work out, report the first error that we found
+        for (int i=0; i<result.length; ++i)
+            if (item_iters.get(i).isEmpty()  &&  errors[i] != null)
+            {
+                for (ValueIterator iter : result)
+                    if (iter != null)
+                        iter.close();
+                for (List<ValueIterator> iters : item_iters)
+                    for (ValueIterator iter : iters)
+                        iter.close();
+                throw errors[i];
+            }
+
+        for (int i=0; i<result.length; ++i)
+            if (result[i] == null)
+            {
+                final List<ValueIterator> iters = item_iters.get(i);
+                result[i] = new MergingValueIterator(iters.toArray(new ValueIterator[iters.size()]));
+            }
+        return result;
     }
 }
@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.trends.databrowser2.export;
+
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.osgi.util.NLS;
+
+/** Progress of an export, reporting the throughput
+ *
+ *  <p>Counts exported samples and periodically
+ *  shows the count and samples per second in the progress monitor.
+ *
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+class ExportProgress
+{
+    /** Minimum period between progress monitor updates */
+    final private static long UPDATE_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+
+    final private IProgressMonitor monitor;
+    final private String label;
+    final private long start = System.nanoTime();
+    private long next_update = start + UPDATE_NANOS;
+    private long samples = 0;
+
+    /** @param monitor Progress monitor
+     *  @param label Label for progress, for example the channel name
+     */
+    public ExportProgress(final IProgressMonitor monitor, final String label)
+    {
+        this.monitor = monitor;
+        this.label = label;
+    }
+
+    /** @param count Number of samples that have been exported */
+    public void add(final int count)
+    {
+        samples += count;
+        final long now = System.nanoTime();
+        if (now >= next_update)
+        {
+            monitor.subTask(format(now));
+            next_update = now + UPDATE_NANOS;
+        }
+    }
+
+    /** @return Total number of exported samples */
+    public long getSamples()
+    {
+        return samples;
+    }
+
+    /** @return Samples per second since start */
+    public double getThroughput()
+    {
+        return getThroughput(System.nanoTime());
+    }
+
+    private double getThroughput(final long now)
+    {
+        final long nanos = now - start;
+        if (nanos <= 0)
+            return 0.0;
+        return samples * 1e9 / nanos;
+    }
+
+    private String format(final long now)
+    {
+        return NLS.bind("{0}: Wrote {1} samples ({2} samples/s)",
+                        new Object[] { label, samples, Math.round(getThroughput(now)) });
+    }
+
+    /** @return Summary of the exported samples and throughput */
+    @Override
+    public String toString()
+    {
+        return format(System.nanoTime());
+    }
+}
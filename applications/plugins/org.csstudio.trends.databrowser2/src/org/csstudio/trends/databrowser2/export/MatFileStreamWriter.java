@@ -0,0 +1,356 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.trends.databrowser2.export;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.epics.vtype.AlarmSeverity;
+
+import com.jmatio.common.MatDataTypes;
+import com.jmatio.io.MatFileHeader;
+import com.jmatio.types.MLArray;
+
+/** Writer for Matlab MAT (version 5) file that streams channel data.
+ *
+ *  <p>Each channel is written as a structure with fields
+ *  'name', 'time' (cell array of text), 'value' (double array)
+ *  and 'severity' (cell array of text),
+ *  same as the structures previously created via jmatio,
+ *  but samples are written as they are added instead of
+ *  collecting all samples of a channel in memory.
+ *
+ *  <p>Time stamps are written to the file right away.
+ *  Since the fields of a structure follow each other in the file,
+ *  values and severities are kept in a temporary file
+ *  and copied into the MAT file when the channel ends.
+ *  Sizes that are only known at the end of a channel
+ *  are then updated in the file.
+ *  Data is not compressed because compressed elements
+ *  cannot be updated that way.
+ *
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+class MatFileStreamWriter implements Closeable
+{
+    /** Field names of channel structure, in the order they are written */
+    final private static String[] FIELDS = { "name", "time", "value", "severity" };
+
+    /** Length of each field name, including terminating zero */
+    final private static int FIELD_NAME_LENGTH = 32;
+
+    /** Maximum size of a data element */
+    final private static long MAX_ELEMENT_SIZE = 0xFFFFFFFFL;
+
+    /** Output stream that counts the bytes written */
+    private static class CountingOutputStream extends FilterOutputStream
+    {
+        long count = 0;
+
+        CountingOutputStream(final OutputStream out)
+        {
+            super(out);
+        }
+
+        @Override
+        public void write(final int b) throws IOException
+        {
+            out.write(b);
+            ++count;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException
+        {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    final private FileOutputStream file;
+    final private CountingOutputStream counter;
+    final private DataOutputStream out;
+
+    /** Temporary file for value and severity of current channel */
+    private File spool_file = null;
+    private DataOutputStream spool = null;
+
+    /** File position of current channel's structure and its 'time' cell array */
+    private long struct_start, time_start;
+
+    /** Number of samples in current channel */
+    private int samples;
+
+    /** Size of all 'severity' cell elements of current channel */
+    private long severity_size;
+
+    /** Create file and write MAT file header
+     *  @param filename Name of file to create
+     *  @throws IOException on error
+     */
+    public MatFileStreamWriter(final String filename) throws IOException
+    {
+        file = new FileOutputStream(filename);
+        counter = new CountingOutputStream(new BufferedOutputStream(file, 64*1024));
+        out = new DataOutputStream(counter);
+        writeHeader();
+    }
+
+    private void writeHeader() throws IOException
+    {
+        final MatFileHeader header = MatFileHeader.createHeader();
+        final byte[] text = new byte[116];
+        final byte[] description = header.getDescription().getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(description, 0, text, 0, Math.min(description.length, text.length));
+        out.write(text);
+        // Subsystem data offset
+        out.writeLong(0);
+        out.writeShort(header.getVersion());
+        out.write(header.getEndianIndicator());
+    }
+
+    /** Start a channel
+     *  @param variable Name of the Matlab variable for the channel
+     *  @param name Channel name
+     *  @throws IOException on error
+     */
+    public void startChannel(final String variable, final String name) throws IOException
+    {
+        if (spool != null)
+            throw new IllegalStateException("Channel not ended");
+        spool_file = File.createTempFile("matlab_export", ".dat");
+        spool_file.deleteOnExit();
+        spool = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(spool_file)));
+        samples = 0;
+        severity_size = 0;
+
+        // 1x1 structure, size is updated in endChannel
+        struct_start = counter.count;
+        writeMatrixHeader(0, MLArray.mxSTRUCT_CLASS, 1, 1, variable);
+        // Field name length uses the 'small' data element format
+        out.writeInt(4 << 16 | MatDataTypes.miINT32);
+        out.writeInt(FIELD_NAME_LENGTH);
+        final byte[] names = new byte[FIELDS.length * FIELD_NAME_LENGTH];
+        for (int i=0; i<FIELDS.length; ++i)
+        {
+            final byte[] field = FIELDS[i].getBytes(StandardCharsets.US_ASCII);
+            System.arraycopy(field, 0, names, i*FIELD_NAME_LENGTH, field.length);
+        }
+        writeData(MatDataTypes.miINT8, names);
+
+        writeText(name);
+
+        // Nx1 cell array of time stamps, size and N are updated in endChannel
+        time_start = counter.count;
+        writeMatrixHeader(0, MLArray.mxCELL_CLASS, 0, 1, "");
+    }
+
+    /** Add sample to current channel
+     *  @param time Time stamp text
+     *  @param value Numeric value
+     *  @param severity Severity
+     *  @throws IOException on error
+     */
+    public void addSample(final String time, final double value, final AlarmSeverity severity) throws IOException
+    {
+        if (samples == Integer.MAX_VALUE)
+            throw new IOException("Too many samples for MAT file");
+        writeText(time);
+        spool.writeDouble(value);
+        spool.writeByte(severity.ordinal());
+        severity_size += getTextSize(severity.toString());
+        ++samples;
+    }
+
+    /** End current channel
+     *  @throws IOException on error
+     */
+    public void endChannel() throws IOException
+    {
+        spool.close();
+        spool = null;
+        try
+        {
+            // Update 'time' cell array
+            final long time_size = counter.count - time_start - 8;
+            checkSize(time_size);
+
+            // Nx1 array of values
+            final long value_size = 40 + 8 + 8L*samples;
+            checkSize(value_size);
+            writeMatrixHeader(value_size, MLArray.mxDOUBLE_CLASS, samples, 1, "");
+            out.writeInt(MatDataTypes.miDOUBLE);
+            out.writeInt((int) (8L*samples));
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(spool_file)));
+            try
+            {
+                for (int i=0; i<samples; ++i)
+                {
+                    out.writeDouble(in.readDouble());
+                    in.readByte();
+                }
+            }
+            finally
+            {
+                in.close();
+            }
+
+            // Nx1 cell array of severities
+            final long cell_size = 40 + severity_size;
+            checkSize(cell_size);
+            writeMatrixHeader(cell_size, MLArray.mxCELL_CLASS, samples, 1, "");
+            final AlarmSeverity[] severities = AlarmSeverity.values();
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(spool_file)));
+            try
+            {
+                for (int i=0; i<samples; ++i)
+                {
+                    in.readDouble();
+                    writeText(severities[in.readByte()].toString());
+                }
+            }
+            finally
+            {
+                in.close();
+            }
+
+            final long struct_size = counter.count - struct_start - 8;
+            checkSize(struct_size);
+
+            out.flush();
+            patchInt(struct_start + 4, (int) struct_size);
+            patchInt(time_start + 4, (int) time_size);
+            // Rows of the 'time' array dimensions
+            patchInt(time_start + 32, samples);
+        }
+        finally
+        {
+            spool_file.delete();
+            spool_file = null;
+        }
+    }
+
+    /** @param size Size of a data element
+     *  @throws IOException if size exceeds what MAT file can hold
+     */
+    private void checkSize(final long size) throws IOException
+    {
+        if (size > MAX_ELEMENT_SIZE)
+            throw new IOException("Channel data exceeds size limit of MAT file");
+    }
+
+    /** Write start of a matrix data element: Tag, flags, dimensions, name
+     *  @param size Size of the matrix data element
+     *  @param mx_class Matlab array class
+     *  @param rows Rows of the 2-dim. array
+     *  @param columns Columns of the 2-dim. array
+     *  @param name Array name
+     *  @throws IOException on error
+     */
+    private void writeMatrixHeader(final long size, final int mx_class, final int rows, final int columns,
+                                   final String name) throws IOException
+    {
+        out.writeInt(MatDataTypes.miMATRIX);
+        out.writeInt((int) size);
+        // Flags
+        out.writeInt(MatDataTypes.miUINT32);
+        out.writeInt(8);
+        out.writeInt(mx_class);
+        out.writeInt(0);
+        // Dimensions
+        out.writeInt(MatDataTypes.miINT32);
+        out.writeInt(8);
+        out.writeInt(rows);
+        out.writeInt(columns);
+        writeData(MatDataTypes.miINT8, name.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /** @param type Data type
+     *  @param data Data to write, padded to 8 byte boundary
+     *  @throws IOException on error
+     */
+    private void writeData(final int type, final byte[] data) throws IOException
+    {
+        out.writeInt(type);
+        out.writeInt(data.length);
+        out.write(data);
+        for (int i=data.length; i<pad(data.length); ++i)
+            out.write(0);
+    }
+
+    /** @param text Text to write as un-named 1xN char array
+     *  @throws IOException on error
+     */
+    private void writeText(final String text) throws IOException
+    {
+        final int N = text.length();
+        writeMatrixHeader(getTextSize(text) - 8, MLArray.mxCHAR_CLASS, 1, N, "");
+        out.writeInt(MatDataTypes.miUINT16);
+        out.writeInt(2*N);
+        out.writeChars(text);
+        for (int i=2*N; i<pad(2*N); ++i)
+            out.write(0);
+    }
+
+    /** @param text Text
+     *  @return Size of the complete data element written by <code>writeText</code>
+     */
+    private static int getTextSize(final String text)
+    {
+        // Tag, flags, dimensions, empty name, data tag, padded data
+        return 8 + 16 + 16 + 8 + 8 + pad(2*text.length());
+    }
+
+    /** @param size Size in bytes
+     *  @return Size padded to 8 byte boundary
+     */
+    private static int pad(final int size)
+    {
+        return (size + 7) & ~7;
+    }
+
+    /** @param position Position in file
+     *  @param value Value to write at that position
+     *  @throws IOException on error
+     */
+    private void patchInt(final long position, final int value) throws IOException
+    {
+        final ByteBuffer buf = ByteBuffer.allocate(4);
+        buf.putInt(value);
+        buf.flip();
+        while (buf.hasRemaining())
+            file.getChannel().write(buf, position + buf.position());
+    }
+
+    /** Close the file
+     *  @throws IOException on error
+     */
+    @Override
+    public void close() throws IOException
+    {
+        if (spool != null)
+        {   // Channel was not ended, for example because of an error
+            spool.close();
+            spool = null;
+            spool_file.delete();
+        }
+        out.close();
+    }
+}
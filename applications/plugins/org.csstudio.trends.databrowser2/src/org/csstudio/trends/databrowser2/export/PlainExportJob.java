@@ -54,6 +54,7 @@ public class PlainExportJob extends ExportJob
     protected void performExport(final IProgressMonitor monitor,
                                  final PrintStream out) throws Exception
     {
+        final VType[] chunk = new VType[CHUNK_SIZE];
         int count = 0;
         for (ModelItem item : model.getItems())
         {   // Item header
@@ -63,19 +64,27 @@ public class PlainExportJob extends ExportJob
             // Get data
             monitor.subTask(NLS.bind("Fetching data for {0}", item.getName()));
             final ValueIterator values = createValueIterator(item);
-            // Dump all values
+            // Dump all values, chunk by chunk
             out.println(comment + Messages.TimeColumn + Messages.Export_Delimiter + formatter.getHeader());
-            long line_count = 0;
-            while (values.hasNext()  &&  !monitor.isCanceled())
+            final ExportProgress progress = new ExportProgress(monitor, item.getName());
+            try
             {
-                final VType value = values.next();
-
-                final String time = TimestampHelper.format(VTypeHelper.getTimestamp(value));
-                out.println(time + Messages.Export_Delimiter + formatter.format(value));
-                ++line_count;
-                if (++line_count % PROGRESS_UPDATE_LINES == 0)
-                    monitor.subTask(NLS.bind("{0}: Wrote {1} samples", item.getName(), line_count));
+                int samples;
+                while (!monitor.isCanceled()  &&  (samples = readChunk(values, chunk)) > 0)
+                {
+                    for (int i=0; i<samples; ++i)
+                    {
+                        final String time = TimestampHelper.format(VTypeHelper.getTimestamp(chunk[i]));
+                        out.println(time + Messages.Export_Delimiter + formatter.format(chunk[i]));
+                    }
+                    progress.add(samples);
+                }
+            }
+            finally
+            {
+                values.close();
             }
+            monitor.subTask(progress.toString());
             ++count;
         }
     }
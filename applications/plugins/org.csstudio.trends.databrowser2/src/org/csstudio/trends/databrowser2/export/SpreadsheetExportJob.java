@@ -13,7 +13,6 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.csstudio.archive.reader.SpreadsheetIterator;
-import org.csstudio.archive.reader.ValueIterator;
 import org.csstudio.archive.vtype.TimestampHelper;
 import org.csstudio.trends.databrowser2.Messages;
 import org.csstudio.trends.databrowser2.model.Model;
@@ -54,30 +53,57 @@ public class SpreadsheetExportJob extends PlainExportJob
         out.println();
 
         // Create speadsheet interpolation
-        final List<ValueIterator> iters = new ArrayList<>();
+        final List<ModelItem> items = new ArrayList<>();
         for (ModelItem item : model.getItems())
+            items.add(item);
+        monitor.subTask(NLS.bind("Fetching data for {0} channels", items.size()));
+        final SpreadsheetIterator sheet = new SpreadsheetIterator(createValueIterators(items));
+        // Dump the spreadsheet lines, chunk by chunk.
+        // The base iterators may share a cursor, so lines are read
+        // from the spreadsheet iterator instead of reading ahead
+        // on each base iterator.
+        final Timestamp[] times = new Timestamp[CHUNK_SIZE];
+        final VType[][] lines = new VType[CHUNK_SIZE][];
+        final ExportProgress progress = new ExportProgress(monitor, "Spreadsheet");
+        try
         {
-            monitor.subTask(NLS.bind("Fetching data for {0}", item.getName()));
-            iters.add(createValueIterator(item));
+            int count;
+            while (!monitor.isCanceled()  &&  (count = readChunk(sheet, times, lines)) > 0)
+            {
+                for (int l=0; l<count; ++l)
+                {
+                    out.print(TimestampHelper.format(times[l]));
+                    final VType[] line = lines[l];
+                    for (int i=0; i<line.length; ++i)
+                        out.print(Messages.Export_Delimiter + formatter.format(line[i]));
+                    out.println();
+                    progress.add(line.length);
+                }
+            }
         }
-        final SpreadsheetIterator sheet = new SpreadsheetIterator(iters.toArray(new ValueIterator[iters.size()]));
-        // Dump the spreadsheet lines
-        long line_count = 0;
-
-        while (sheet.hasNext()  &&  !monitor.isCanceled())
+        finally
         {
-            final Timestamp time = sheet.getTime();
-            final VType line[] = sheet.next();
-            out.print(TimestampHelper.format(time));
+            sheet.close();
+        }
+        monitor.subTask(progress.toString());
+    }
 
-            for (int i=0; i<line.length; ++i)
-                out.print(Messages.Export_Delimiter + formatter.format(line[i]));
-            out.println();
-            ++line_count;
-            if ((line_count % PROGRESS_UPDATE_LINES) == 0)
-                monitor.subTask(NLS.bind("Wrote {0} samples", line_count));
-            if (monitor.isCanceled())
-                break;
+    /** Read the next chunk of spreadsheet lines
+     *  @param sheet {@link SpreadsheetIterator}
+     *  @param times Buffer for time stamps of the lines
+     *  @param lines Buffer for the lines
+     *  @return Number of lines placed in the buffers, 0 at end of the spreadsheet
+     *  @throws Exception on error
+     */
+    private static int readChunk(final SpreadsheetIterator sheet, final Timestamp[] times,
+                                 final VType[][] lines) throws Exception
+    {
+        int count = 0;
+        while (count < lines.length  &&  sheet.hasNext())
+        {
+            times[count] = sheet.getTime();
+            lines[count++] = sheet.next();
         }
+        return count;
     }
 }
@@ -12,6 +12,7 @@ import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import org.csstudio.swt.rtplot.data.ValueRange;
 import org.epics.vtype.VType;
 
 /** Holder for 'historic' samples.
@@ -27,6 +28,9 @@ import org.epics.vtype.VType;
  *  the live data ring buffer rolls around, the 'border' time adjustments
  *  might then uncover historic samples that were previously
  *  hidden below the 'live' time range.
+ *  <p>
+ *  Samples are stored in {@link SampleColumns} to reduce the
+ *  number of objects for large amounts of archived data.
  *
  *  @author Kay Kasemir
  *  @author Takashi Nakamoto changed HistoricSamples to handle waveform index.
@@ -36,22 +40,25 @@ public class HistoricSamples extends PlotSamples
     // No locking in here, all access is via PVSamples
 
     /** "All" historic samples */
-    private PlotSample samples[] = new PlotSample[0];
+    final private SampleColumns samples;
 
     /** If set, samples beyond this time are hidden from access */
     private Optional<Instant> border_time = Optional.empty();
 
-    /** Subset of samples.length that's below border_time
+    /** Subset of samples.size() that's below border_time
      *  @see #computeVisibleSize()
      */
     private int visible_size = 0;
 
-    /** Waveform index */
-    final private AtomicInteger waveform_index;
+    /** Minimum and maximum of the values of samples 0..i.
+     *  Updated by the writers, so readers that only hold the
+     *  read lock never modify them.
+     */
+    private double prefix_min[] = new double[0], prefix_max[] = new double[0];
 
     HistoricSamples(final AtomicInteger waveform_index)
     {
-        this.waveform_index = waveform_index;
+        samples = new SampleColumns(waveform_index);
     }
 
     /** Define a new 'border' time beyond which no samples
@@ -72,12 +79,11 @@ public class HistoricSamples extends PlotSamples
     {
         if (border_time.isPresent())
         {
-            final int last_index = PlotSampleSearch.findSampleLessThan(
-                    samples, border_time.get());
+            final int last_index = samples.findSampleLessThan(border_time.get());
             visible_size = (last_index < 0)   ?   0   :   last_index + 1;
         }
         else
-            visible_size = samples.length;
+            visible_size = samples.size();
     }
 
     /** {@inheritDoc} */
@@ -87,7 +93,7 @@ public class HistoricSamples extends PlotSamples
     {
         if (i >= visible_size)
             throw new IndexOutOfBoundsException("Index " + i + " exceeds visible size " + visible_size);
-        return samples[i];
+        return samples.get(i);
     }
 
     /** {@inheritDoc} */
@@ -101,7 +107,7 @@ public class HistoricSamples extends PlotSamples
      * @return the number of samples, ignoring the border time
      */
     public int getRawSize() {
-    	return samples.length;
+    	return samples.size();
     }
 
     /**
@@ -111,7 +117,7 @@ public class HistoricSamples extends PlotSamples
      * @return the plot sample
      */
     public PlotSample getRawSample(int i) {
-    	return samples[i];
+    	return samples.get(i);
     }
 
     /** Merge newly received archive data into historic samples
@@ -120,25 +126,52 @@ public class HistoricSamples extends PlotSamples
      */
     public void mergeArchivedData(final String source, final List<VType> result)
     {
-        // Anything new at all?
-        if (result.size() <= 0)
-            return;
-        // Turn IValues into PlotSamples
-        final PlotSample new_samples[] = new PlotSample[result.size()];
-        for (int i=0; i<new_samples.length; ++i)
-            new_samples[i] = new PlotSample(waveform_index, source, result.get(i));
-        // Merge with existing samples
-        final PlotSample merged[] = PlotSampleMerger.merge(samples, new_samples);
-        if (merged == samples)
+        // Merge with existing samples, anything new at all?
+        if (! samples.merge(source, result))
             return;
-        samples = merged;
+        updateValueRange();
         computeVisibleSize();
     }
 
+    /** @return Range of the visible sample values */
+    public ValueRange getValueRange()
+    {
+        if (visible_size <= 0)
+            return new ValueRange(Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY);
+        return new ValueRange(prefix_min[visible_size-1], prefix_max[visible_size-1]);
+    }
+
+    /** Compute range of values for each prefix of the samples,
+     *  so that the range of the visible samples is known
+     *  wherever the border time moves.
+     *  <p>
+     *  Must be called with the write lock held
+     *  whenever the samples or the waveform index change.
+     */
+    void updateValueRange()
+    {
+        final int N = samples.size();
+        prefix_min = new double[N];
+        prefix_max = new double[N];
+        double low = Double.POSITIVE_INFINITY, high = Double.NEGATIVE_INFINITY;
+        for (int i=0; i<N; ++i)
+        {
+            final double value = samples.getValue(i);
+            if (Double.isFinite(value))
+            {
+                low = Math.min(low, value);
+                high = Math.max(high, value);
+            }
+            prefix_min[i] = low;
+            prefix_max[i] = high;
+        }
+    }
+
     /** Delete all samples */
     public void clear()
     {
         visible_size = 0;
-        samples = new PlotSample[0];
+        samples.clear();
+        updateValueRange();
     }
 }
@@ -10,11 +10,16 @@ package org.csstudio.trends.databrowser2.model;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.csstudio.apputil.ringbuffer.RingBuffer;
+import org.csstudio.swt.rtplot.data.ValueRange;
 import org.csstudio.trends.databrowser2.preferences.Preferences;
 
 /** Ring buffer for 'live' samples.
  *  <p>
  *  New samples are always added to the end of a ring buffer.
+ *  <p>
+ *  The range of values is tracked in a {@link MinMaxTree}
+ *  as samples are added and the oldest samples are overwritten,
+ *  so it's available without iterating over all samples.
  *
  *  @author Kay Kasemir
  *  @author Takashi Nakamoto changed LiveSamples to handle waveform index.
@@ -29,6 +34,14 @@ public class LiveSamples extends PlotSamples
     /** Waveform index */
     final private AtomicInteger waveform_index;
 
+    /** Value range of the samples, indexed by ring buffer slot */
+    private MinMaxTree range = new MinMaxTree(samples.getCapacity());
+
+    /** Slot in <code>range</code> for the next sample.
+     *  Sample i is in slot (next_slot - size() + i) modulo capacity.
+     */
+    private int next_slot = 0;
+
     LiveSamples(final AtomicInteger waveform_index)
     {
         this.waveform_index = waveform_index;
@@ -51,6 +64,8 @@ public class LiveSamples extends PlotSamples
         if (new_capacity < 10)
             new_capacity = 10;
         samples.setCapacity(new_capacity);
+        range = new MinMaxTree(new_capacity);
+        updateValueRange();
     }
 
     /** @param sample Sample to add to ring buffer */
@@ -58,6 +73,9 @@ public class LiveSamples extends PlotSamples
     {
     	sample.setWaveformIndex(waveform_index);
         samples.add(sample);
+        range.set(next_slot, sample.getValue());
+        next_slot = (next_slot + 1) % samples.getCapacity();
+        modifications.incrementAndGet();
         have_new_samples.set(true);
     }
 
@@ -73,10 +91,33 @@ public class LiveSamples extends PlotSamples
         return samples.get(i);
     }
 
+    /** @return Range of sample values */
+    public ValueRange getValueRange()
+    {
+        return new ValueRange(range.getMin(), range.getMax());
+    }
+
+    /** Re-compute value range for all samples.
+     *  <p>
+     *  Must be called with the write lock held
+     *  when the waveform index changes.
+     */
+    void updateValueRange()
+    {
+        range.clear();
+        final int N = samples.size();
+        for (int i=0; i<N; ++i)
+            range.set(i, samples.get(i).getValue());
+        next_slot = N % samples.getCapacity();
+    }
+
     /** Delete all samples */
     public void clear()
     {
         samples.clear();
+        range.clear();
+        next_slot = 0;
+        modifications.incrementAndGet();
         have_new_samples.set(true);
     }
 }
@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.trends.databrowser2.model;
+
+import java.util.Arrays;
+
+/** Segment tree of minimum and maximum values for a fixed number of slots.
+ *  <p>
+ *  Setting or clearing a slot is O(log N),
+ *  the range of all slots is O(1).
+ *  <p>
+ *  Meant to track the value range of a ring buffer,
+ *  where the oldest slot is overwritten by each new value.
+ *
+ *  @author Kay Kasemir
+ */
+class MinMaxTree
+{
+    /** Number of leaves, a power of 2 */
+    final private int leaves;
+
+    /** Minimum and maximum of each node.
+     *  Node 1 is the root, children of node n are 2n and 2n+1,
+     *  leaf for slot i is node leaves+i.
+     *  Empty nodes have min = +inf, max = -inf.
+     */
+    final private double[] min, max;
+
+    /** @param slots Number of slots */
+    public MinMaxTree(final int slots)
+    {
+        int size = 1;
+        while (size < slots)
+            size <<= 1;
+        leaves = size;
+        min = new double[2*leaves];
+        max = new double[2*leaves];
+        clear();
+    }
+
+    /** Clear all slots */
+    public void clear()
+    {
+        Arrays.fill(min, Double.POSITIVE_INFINITY);
+        Arrays.fill(max, Double.NEGATIVE_INFINITY);
+    }
+
+    /** @param slot Slot to update
+     *  @param value Value of the slot. NaN or infinite values clear the slot.
+     */
+    public void set(final int slot, final double value)
+    {
+        int node = leaves + slot;
+        if (Double.isFinite(value))
+        {
+            min[node] = value;
+            max[node] = value;
+        }
+        else
+        {
+            min[node] = Double.POSITIVE_INFINITY;
+            max[node] = Double.NEGATIVE_INFINITY;
+        }
+        node >>= 1;
+        while (node > 0)
+        {
+            final double new_min = Math.min(min[2*node], min[2*node+1]);
+            final double new_max = Math.max(max[2*node], max[2*node+1]);
+            // Stop when the rest of the path to the root is unchanged
+            if (new_min == min[node]  &&  new_max == max[node])
+                break;
+            min[node] = new_min;
+            max[node] = new_max;
+            node >>= 1;
+        }
+    }
+
+    /** @return Minimum of all slots, +inf if all are empty */
+    public double getMin()
+    {
+        return min[1];
+    }
+
+    /** @return Maximum of all slots, -inf if all are empty */
+    public double getMax()
+    {
+        return max[1];
+    }
+}
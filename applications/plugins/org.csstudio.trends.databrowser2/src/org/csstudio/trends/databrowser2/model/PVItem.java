@@ -109,7 +109,7 @@ public class PVItem extends ModelItem implements PVReaderListener<List<VType>>
     {
         if (index < 0)
             index = 0;
-        if (waveform_index.getAndSet(index) != index)
+        if (samples.setWaveformIndex(index))
             fireItemDataConfigChanged();
     }
 
@@ -13,6 +13,8 @@ import java.util.Optional;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.csstudio.archive.vtype.VTypeHelper;
+import org.csstudio.swt.rtplot.data.ValueRange;
+import org.csstudio.swt.rtplot.data.ValueRangeProvider;
 import org.csstudio.trends.databrowser2.Messages;
 import org.epics.vtype.AlarmSeverity;
 import org.epics.vtype.VType;
@@ -27,11 +29,14 @@ import org.epics.vtype.ValueUtil;
  *  In addition, if the last sample is valid, it's
  *  extended to 'now' assuming no new data means
  *  that the last value is still valid.
+ *  <p>
+ *  The value range is maintained by the historic and live
+ *  sections, so it's known without iterating over all samples.
  *
  *  @author Kay Kasemir
  *  @author Takashi Nakamoto changed PVSamples to handle waveform index.
  */
-public class PVSamples extends PlotSamples
+public class PVSamples extends PlotSamples implements ValueRangeProvider
 {
     /* history and live are each PlotSamples, i.e. they
      * have a read/write lock, but those are never used.
@@ -50,11 +55,15 @@ public class PVSamples extends PlotSamples
     /** Live samples. Should start after end of historic samples */
     final private LiveSamples live;
 
+    /** Waveform index, shared with the samples */
+    final private AtomicInteger waveform_index;
+
     private boolean emptyHistoryOnAdd = false;
     private int samplesAddedSinceLastRefresh = 0;
 
     PVSamples(final AtomicInteger waveform_index)
     {
+        this.waveform_index = waveform_index;
         history = new HistoricSamples(waveform_index);
         live = new LiveSamples(waveform_index);
     }
@@ -72,7 +81,40 @@ public class PVSamples extends PlotSamples
      */
     public void setLiveCapacity(final int new_capacity) throws Exception
     {
-        live.setCapacity(new_capacity);
+        lockForWriting();
+        try
+        {
+            live.setCapacity(new_capacity);
+        }
+        finally
+        {
+            unlockForWriting();
+        }
+    }
+
+    /** Select the element of waveform samples to use
+     *  <p>
+     *  Updates the value range while holding the write lock,
+     *  so {@link #getValueRange()} only needs to read.
+     *
+     *  @param index New waveform index
+     *  @return <code>true</code> if the index changed
+     */
+    boolean setWaveformIndex(final int index)
+    {
+        lockForWriting();
+        try
+        {
+            if (waveform_index.getAndSet(index) == index)
+                return false;
+            history.updateValueRange();
+            live.updateValueRange();
+            return true;
+        }
+        finally
+        {
+            unlockForWriting();
+        }
     }
 
     /** @return Combined count of historic and live samples */
@@ -126,6 +168,19 @@ public class PVSamples extends PlotSamples
         return live.get(index - num_old);
     }
 
+    /** {@inheritDoc}
+     *  <p>Continuation until 'now' has the value of the last sample,
+     *  so the range of historic and live samples applies.
+     */
+    @Override
+    public ValueRange getValueRange()
+    {
+        final ValueRange history_range = history.getValueRange();
+        final ValueRange live_range = live.getValueRange();
+        return new ValueRange(Math.min(history_range.getLow(), live_range.getLow()),
+                              Math.max(history_range.getHigh(), live_range.getHigh()));
+    }
+
     /** Test if samples changed since the last time
      *  <code>testAndClearNewSamplesFlag</code> was called.
      *  @return <code>true</code> if there were new samples
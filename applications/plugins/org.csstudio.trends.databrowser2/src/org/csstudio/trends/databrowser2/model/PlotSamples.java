@@ -9,6 +9,7 @@ package org.csstudio.trends.databrowser2.model;
 
 import java.time.Instant;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -29,6 +30,11 @@ abstract public class PlotSamples implements PlotDataProvider<Instant>
      */
     final protected AtomicBoolean have_new_samples = new AtomicBoolean();
 
+    /** To be incremented when samples change
+     *  @see #getModificationCount()
+     */
+    final protected AtomicLong modifications = new AtomicLong();
+
     /** Lock for writing */
     public void lockForWriting()
     {
@@ -38,6 +44,7 @@ abstract public class PlotSamples implements PlotDataProvider<Instant>
     /** Un-lock after writing */
     public void unlockForWriting()
     {
+        modifications.incrementAndGet();
         lock.writeLock().unlock();
         have_new_samples.set(true);
     }
@@ -57,6 +64,13 @@ abstract public class PlotSamples implements PlotDataProvider<Instant>
     @Override
     abstract public PlotSample get(int index);
 
+    /** {@inheritDoc} */
+    @Override
+    public long getModificationCount()
+    {
+        return modifications.get();
+    }
+
     /** Test if samples changed since the last time
      *  <code>testAndClearNewSamplesFlag</code> was called.
      *  @return <code>true</code> if there were new samples
@@ -0,0 +1,470 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.trends.databrowser2.model;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.csstudio.archive.vtype.ArchiveVNumber;
+import org.csstudio.archive.vtype.ArchiveVStatistics;
+import org.csstudio.archive.vtype.VTypeHelper;
+import org.epics.util.time.Timestamp;
+import org.epics.vtype.AlarmSeverity;
+import org.epics.vtype.Display;
+import org.epics.vtype.Time;
+import org.epics.vtype.VNumber;
+import org.epics.vtype.VStatistics;
+import org.epics.vtype.VType;
+
+/** Column-oriented storage of samples.
+ *  <p>
+ *  Numeric samples, which are the bulk of archived data,
+ *  are kept in arrays of primitives for time, value, min, max, ... and severity.
+ *  Status, display info and source are shared by many samples,
+ *  so each distinct combination is only kept once.
+ *  {@link PlotSample}s for these are created on access,
+ *  and their {@link VType} is only re-created when actually needed,
+ *  for example to show the sample in a table or export it.
+ *  <p>
+ *  Other samples, like arrays or text, are kept as {@link PlotSample}.
+ *  <p>
+ *  Not thread-safe.
+ *
+ *  @author Kay Kasemir
+ */
+class SampleColumns
+{
+    /** Kind of columnar sample */
+    private static enum Kind
+    {
+        DOUBLE,
+        LONG,
+        STATISTICS
+    }
+
+    /** Meta data shared by many samples */
+    private static class Meta
+    {
+        final Kind kind;
+        final String source;
+        final String status;
+        final Display display;
+        final int hash;
+
+        Meta(final Kind kind, final String source, final String status, final Display display)
+        {
+            this.kind = kind;
+            this.source = source;
+            this.status = status;
+            this.display = display;
+            hash = Objects.hash(kind, source, status, display.getUnits(),
+                                display.getLowerDisplayLimit(), display.getUpperDisplayLimit());
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+
+        /** @return <code>true</code> if this meta data matches the arguments */
+        boolean matches(final Kind kind, final String source, final String status, final Display display)
+        {
+            return this.kind == kind  &&
+                   Objects.equals(this.source, source)  &&
+                   Objects.equals(this.status, status)  &&
+                   sameDisplay(this.display, display);
+        }
+
+        @Override
+        public boolean equals(final Object obj)
+        {
+            if (! (obj instanceof Meta))
+                return false;
+            final Meta other = (Meta) obj;
+            return matches(other.kind, other.source, other.status, other.display);
+        }
+
+        /** Compare display info by content, since readers may create a new one for each sample */
+        private static boolean sameDisplay(final Display a, final Display b)
+        {
+            return a == b  ||
+                   (Objects.equals(a.getUnits(), b.getUnits())  &&
+                    Objects.equals(a.getFormat(), b.getFormat())  &&
+                    Objects.equals(a.getLowerDisplayLimit(), b.getLowerDisplayLimit())  &&
+                    Objects.equals(a.getUpperDisplayLimit(), b.getUpperDisplayLimit())  &&
+                    Objects.equals(a.getLowerCtrlLimit(), b.getLowerCtrlLimit())  &&
+                    Objects.equals(a.getUpperCtrlLimit(), b.getUpperCtrlLimit())  &&
+                    Objects.equals(a.getLowerAlarmLimit(), b.getLowerAlarmLimit())  &&
+                    Objects.equals(a.getUpperAlarmLimit(), b.getUpperAlarmLimit())  &&
+                    Objects.equals(a.getLowerWarningLimit(), b.getLowerWarningLimit())  &&
+                    Objects.equals(a.getUpperWarningLimit(), b.getUpperWarningLimit()));
+        }
+    }
+
+    /** {@link PlotSample} for a columnar sample */
+    private static class ColumnPlotSample extends PlotSample
+    {
+        final private AtomicInteger waveform_index;
+        final private long nanos;
+        final private double value, min, max, stddev;
+        final private int count;
+        final private byte severity;
+        final private Meta meta;
+
+        /** {@link VType}, created on demand */
+        private VType vtype = null;
+
+        ColumnPlotSample(final AtomicInteger waveform_index, final long nanos,
+                         final double value, final double min, final double max, final double stddev,
+                         final int count, final byte severity, final Meta meta)
+        {
+            super(waveform_index, meta.source, null);
+            this.waveform_index = waveform_index;
+            this.nanos = nanos;
+            this.value = value;
+            this.min = min;
+            this.max = max;
+            this.stddev = stddev;
+            this.count = count;
+            this.severity = severity;
+            this.meta = meta;
+        }
+
+        @Override
+        public VType getVType()
+        {
+            if (vtype == null)
+            {
+                final Timestamp time = Timestamp.of(Math.floorDiv(nanos, NANOS), (int) Math.floorMod(nanos, NANOS));
+                final AlarmSeverity sev = SEVERITIES[severity];
+                switch (meta.kind)
+                {
+                case STATISTICS:
+                    vtype = new ArchiveVStatistics(time, sev, meta.status, meta.display, value, min, max, stddev, count);
+                    break;
+                case LONG:
+                    vtype = new ArchiveVNumber(time, sev, meta.status, meta.display, Long.valueOf((long) value));
+                    break;
+                default:
+                    vtype = new ArchiveVNumber(time, sev, meta.status, meta.display, value);
+                }
+            }
+            return vtype;
+        }
+
+        @Override
+        public Instant getPosition()
+        {
+            return Instant.ofEpochSecond(Math.floorDiv(nanos, NANOS), Math.floorMod(nanos, NANOS));
+        }
+
+        @Override
+        public double getValue()
+        {
+            // Scalars have no elements beyond the first one
+            return waveform_index.get() == 0 ? value : Double.NaN;
+        }
+
+        @Override
+        public double getStdDev()
+        {
+            return waveform_index.get() == 0 ? stddev : Double.NaN;
+        }
+
+        @Override
+        public double getMin()
+        {
+            return waveform_index.get() == 0 ? min : Double.NaN;
+        }
+
+        @Override
+        public double getMax()
+        {
+            return waveform_index.get() == 0 ? max : Double.NaN;
+        }
+
+        @Override
+        public String toString()
+        {
+            return VTypeHelper.toString(getVType());
+        }
+    }
+
+    final private static long NANOS = 1000000000L;
+
+    final private static AlarmSeverity[] SEVERITIES = AlarmSeverity.values();
+
+    /** Waveform index */
+    final private AtomicInteger waveform_index;
+
+    /** Number of samples */
+    private int size = 0;
+
+    /** Time stamps in epoch nanoseconds */
+    private long[] nanos = new long[0];
+
+    /** Value, min, max, std. deviation. min, max, stddev are NaN unless statistics */
+    private double[] value = new double[0], min = new double[0], max = new double[0], stddev = new double[0];
+
+    /** Number of samples for statistics */
+    private int[] count = new int[0];
+
+    /** Ordinal of {@link AlarmSeverity} */
+    private byte[] severity = new byte[0];
+
+    /** Index into <code>metas</code> */
+    private int[] meta = new int[0];
+
+    /** Samples that are not columnar, <code>null</code> for columnar samples.
+     *  Array is <code>null</code> until the first such sample is added.
+     */
+    private PlotSample[] others = null;
+
+    /** Distinct meta data */
+    final private List<Meta> metas = new ArrayList<>();
+
+    /** Index of each meta data in <code>metas</code> */
+    final private Map<Meta, Integer> meta_index = new HashMap<>();
+
+    /** @param waveform_index Waveform index */
+    SampleColumns(final AtomicInteger waveform_index)
+    {
+        this.waveform_index = waveform_index;
+    }
+
+    /** @return Number of samples */
+    public int size()
+    {
+        return size;
+    }
+
+    /** @param i Sample index
+     *  @return Sample
+     */
+    public PlotSample get(final int i)
+    {
+        if (i >= size)
+            throw new IndexOutOfBoundsException("Index " + i + " exceeds size " + size); //$NON-NLS-1$ //$NON-NLS-2$
+        if (others != null  &&  others[i] != null)
+            return others[i];
+        return new ColumnPlotSample(waveform_index, nanos[i], value[i], min[i], max[i], stddev[i],
+                                    count[i], severity[i], metas.get(meta[i]));
+    }
+
+    /** @param i Sample index
+     *  @return Value of the sample, using the current waveform index
+     */
+    public double getValue(final int i)
+    {
+        if (others != null  &&  others[i] != null)
+            return others[i].getValue();
+        return waveform_index.get() == 0 ? value[i] : Double.NaN;
+    }
+
+    /** @param time Time
+     *  @return Index of last sample before that time, or -1
+     */
+    public int findSampleLessThan(final Instant time)
+    {
+        return findSampleLessThan(toNanos(time));
+    }
+
+    /** @param time Time in epoch nanoseconds
+     *  @return Index of last sample before that time, or -1
+     */
+    private int findSampleLessThan(final long time)
+    {
+        // Binary search for first sample at or after time
+        int low = 0, high = size;
+        while (low < high)
+        {
+            final int mid = (low + high) >>> 1;
+            if (nanos[mid] < time)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low - 1;
+    }
+
+    /** @param time Time in epoch nanoseconds
+     *  @return Index of first sample after that time, or size
+     */
+    private int findSampleGreaterThan(final long time)
+    {
+        int low = 0, high = size;
+        while (low < high)
+        {
+            final int mid = (low + high) >>> 1;
+            if (nanos[mid] <= time)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    /** Merge new samples.
+     *  <p>
+     *  Where the time range of the new samples overlaps existing samples,
+     *  the new samples replace the existing ones,
+     *  like {@link PlotSampleMerger}, but in place.
+     *  @param source Source of the new samples
+     *  @param add New samples, ordered by time
+     *  @return <code>true</code> if samples were added
+     */
+    public boolean merge(final String source, final List<VType> add)
+    {
+        final int Na = add.size();
+        if (Na <= 0)
+            return false;
+        // Keep old samples before the first and after the last new sample
+        final int Nl = findSampleLessThan(getNanos(add.get(0))) + 1;
+        final int r = findSampleGreaterThan(getNanos(add.get(Na-1)));
+        final int Nr = size - r;
+        final int new_size = Nl + Na + Nr;
+        ensureCapacity(new_size);
+        // Move old samples after the new ones into place
+        if (Nr > 0  &&  r != Nl + Na)
+        {
+            System.arraycopy(nanos, r, nanos, Nl+Na, Nr);
+            System.arraycopy(value, r, value, Nl+Na, Nr);
+            System.arraycopy(min, r, min, Nl+Na, Nr);
+            System.arraycopy(max, r, max, Nl+Na, Nr);
+            System.arraycopy(stddev, r, stddev, Nl+Na, Nr);
+            System.arraycopy(count, r, count, Nl+Na, Nr);
+            System.arraycopy(severity, r, severity, Nl+Na, Nr);
+            System.arraycopy(meta, r, meta, Nl+Na, Nr);
+            if (others != null)
+                System.arraycopy(others, r, others, Nl+Na, Nr);
+        }
+        // Release samples beyond the new end
+        if (others != null  &&  new_size < size)
+            Arrays.fill(others, new_size, size, null);
+        size = new_size;
+        // Add new samples
+        Meta last = null;
+        int last_index = -1;
+        for (int i=0; i<Na; ++i)
+        {
+            final VType vtype = add.get(i);
+            final int pos = Nl + i;
+            nanos[pos] = getNanos(vtype);
+            severity[pos] = (byte) VTypeHelper.getSeverity(vtype).ordinal();
+            final Kind kind;
+            if (vtype instanceof VStatistics)
+            {
+                final VStatistics stats = (VStatistics) vtype;
+                kind = Kind.STATISTICS;
+                value[pos] = stats.getAverage();
+                min[pos] = stats.getMin();
+                max[pos] = stats.getMax();
+                stddev[pos] = stats.getStdDev();
+                count[pos] = stats.getNSamples();
+            }
+            else if (vtype instanceof VNumber)
+            {
+                final Number number = ((VNumber) vtype).getValue();
+                kind = (number instanceof Double  ||  number instanceof Float) ? Kind.DOUBLE : Kind.LONG;
+                value[pos] = number.doubleValue();
+                min[pos] = max[pos] = stddev[pos] = Double.NaN;
+                count[pos] = 0;
+            }
+            else
+            {   // Keep as PlotSample
+                if (others == null)
+                    others = new PlotSample[nanos.length];
+                others[pos] = new PlotSample(waveform_index, source, vtype);
+                value[pos] = min[pos] = max[pos] = stddev[pos] = Double.NaN;
+                meta[pos] = -1;
+                continue;
+            }
+            if (others != null)
+                others[pos] = null;
+            // Samples of a request tend to share the same meta data
+            final String status = VTypeHelper.getMessage(vtype);
+            if (last == null  ||  ! last.matches(kind, source, status, (Display) vtype))
+            {
+                final Meta sample_meta = new Meta(kind, source, status, (Display) vtype);
+                Integer index = meta_index.get(sample_meta);
+                if (index == null)
+                {
+                    index = metas.size();
+                    metas.add(sample_meta);
+                    meta_index.put(sample_meta, index);
+                }
+                last = sample_meta;
+                last_index = index;
+            }
+            meta[pos] = last_index;
+        }
+        return true;
+    }
+
+    /** Delete all samples */
+    public void clear()
+    {
+        size = 0;
+        nanos = new long[0];
+        value = new double[0];
+        min = new double[0];
+        max = new double[0];
+        stddev = new double[0];
+        count = new int[0];
+        severity = new byte[0];
+        meta = new int[0];
+        others = null;
+        metas.clear();
+        meta_index.clear();
+    }
+
+    /** @param needed Number of samples that need to fit */
+    private void ensureCapacity(final int needed)
+    {
+        if (needed <= nanos.length)
+            return;
+        final int capacity = Math.max(needed, nanos.length + nanos.length/2);
+        nanos = Arrays.copyOf(nanos, capacity);
+        value = Arrays.copyOf(value, capacity);
+        min = Arrays.copyOf(min, capacity);
+        max = Arrays.copyOf(max, capacity);
+        stddev = Arrays.copyOf(stddev, capacity);
+        count = Arrays.copyOf(count, capacity);
+        severity = Arrays.copyOf(severity, capacity);
+        meta = Arrays.copyOf(meta, capacity);
+        if (others != null)
+            others = Arrays.copyOf(others, capacity);
+    }
+
+    /** @param vtype Value
+     *  @return Time stamp in epoch nanoseconds
+     */
+    private static long getNanos(final VType vtype)
+    {
+        // Like PlotSample, not checking if time is valid
+        final Timestamp time = (vtype instanceof Time)
+            ? ((Time) vtype).getTimestamp()
+            : Timestamp.now();
+        return time.getSec() * NANOS + time.getNanoSec();
+    }
+
+    /** @param time Time
+     *  @return Epoch nanoseconds
+     */
+    private static long toNanos(final Instant time)
+    {
+        return time.getEpochSecond() * NANOS + time.getNano();
+    }
+}
@@ -53,7 +53,12 @@ public class Preferences
 			UPDATE_PERIOD = "update_period", LINE_WIDTH = "line_width",
 			TRACE_TYPE = "trace_type",
 			ARCHIVE_FETCH_DELAY = "archive_fetch_delay",
-			PLOT_BINS = "plot_bins", URLS = "urls", ARCHIVES = "archives",
+			PLOT_BINS = "plot_bins",
+			CONCURRENT_REQUESTS = "concurrent_requests",
+			ARCHIVE_CACHE_SAMPLES = "archive_cache_samples",
+			ARCHIVE_CACHE_DIRECTORY = "archive_cache_directory",
+			ARCHIVE_CACHE_DISK_MB = "archive_cache_disk_mb",
+			URLS = "urls", ARCHIVES = "archives",
 			USE_DEFAULT_ARCHIVES = "use_default_archives",
 			PROMPT_FOR_ERRORS = "prompt_for_errors",
 			ARCHIVE_RESCALE = "archive_rescale",
@@ -157,6 +162,45 @@ public class Preferences
         return prefs.getInt(Activator.PLUGIN_ID, PLOT_BINS, 800, null);
     }
 
+    public static int getConcurrentRequests()
+    {
+        int requests = 4;
+        final IPreferencesService prefs = Platform.getPreferencesService();
+        if (prefs != null)
+            requests = prefs.getInt(Activator.PLUGIN_ID, CONCURRENT_REQUESTS, requests, null);
+        return requests;
+    }
+
+    /** @return Number of archived samples to cache in memory, 0 to disable the cache */
+    public static int getArchiveCacheSamples()
+    {
+        int samples = 200000;
+        final IPreferencesService prefs = Platform.getPreferencesService();
+        if (prefs != null)
+            samples = prefs.getInt(Activator.PLUGIN_ID, ARCHIVE_CACHE_SAMPLES, samples, null);
+        return samples;
+    }
+
+    /** @return Directory for archived samples evicted from memory, empty for memory-only cache */
+    public static String getArchiveCacheDirectory()
+    {
+        String directory = "";
+        final IPreferencesService prefs = Platform.getPreferencesService();
+        if (prefs != null)
+            directory = prefs.getString(Activator.PLUGIN_ID, ARCHIVE_CACHE_DIRECTORY, directory, null).trim();
+        return directory;
+    }
+
+    /** @return Maximum size of the archive cache directory in MB */
+    public static long getArchiveCacheDiskMB()
+    {
+        long size = 100;
+        final IPreferencesService prefs = Platform.getPreferencesService();
+        if (prefs != null)
+            size = prefs.getLong(Activator.PLUGIN_ID, ARCHIVE_CACHE_DISK_MB, size, null);
+        return size;
+    }
+
     public static ArchiveServerURL[] getArchiveServerURLs()
     {
         final IPreferencesService prefs = Platform.getPreferencesService();